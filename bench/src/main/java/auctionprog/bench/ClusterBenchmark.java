@@ -0,0 +1,119 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+package auctionprog.bench;
+
+/**
+ ** This class benchmarks a whole front end, with its shard groups running
+ ** in-process over a loopback JGroups stack, so a bid takes the same
+ ** `RpcDispatcher` path as in production without touching the network.
+ **/
+
+import java.nio.file.Files;
+import java.security.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Djava.net.preferIPv4Stack=true", "-Dauctionprog.jgroups=loopback.xml"})
+public class ClusterBenchmark {
+   private static final String USERNAME = "bench";
+
+   private Object frontEnd;
+   private Object bidder;
+   private PrivateKey userKey;
+   private byte[] challenge;
+   private float price;
+
+   /**
+    **   Starts the front end and its replicas, and registers a user with
+    **   a key pair to authenticate with.
+    **/
+   @Setup
+   public void setUp() throws Throwable {
+      System.setProperty("auctionprog.keys", Files.createTempDirectory("auctionprog").toString());
+      Files.createDirectories(java.nio.file.Paths.get(System.getProperty("auctionprog.keys"), "server"));
+      System.setProperty("auctionprog.archive", Files.createTempDirectory("auctionprog").toString());
+
+      frontEnd = Core.NEW_FRONT_END.invoke(0);
+
+      bidder = Core.REGISTER_USER.invoke(frontEnd, 0L, System.currentTimeMillis(), Core.NEW_USER.invoke("Bench", "bench@test.com", USERNAME));
+      KeyPairGenerator keyGen = KeyPairGenerator.getInstance("DSA");
+      keyGen.initialize(1024, SecureRandom.getInstance("SHA1PRNG"));
+      KeyPair pair = keyGen.generateKeyPair();
+      userKey = pair.getPrivate();
+      Core.SEND_PUBLIC_KEY.invoke(frontEnd, pair.getPublic(), USERNAME);
+
+      challenge = new byte[1024];
+      new SecureRandom().nextBytes(challenge);
+      price = 100.0f;
+   }
+
+   /**
+    **   Stops the replicas, the shard group connections and the event
+    **   hub.
+    **/
+   @TearDown(Level.Trial)
+   public void tearDown() throws Throwable {
+      Core.STOP_FRONT_END.invoke(frontEnd);
+   }
+
+   /**
+    **   Bids on a test auction: the replicated `setBid` on the owning
+    **   shard, which compares the prices as it takes the bid, then the
+    **   event publication.
+    **/
+   @Benchmark
+   public void bidOnAuction() throws Throwable {
+      price += 1.0f;
+      Core.BID_ON_AUCTION.invoke(frontEnd, 0L, System.currentTimeMillis(), 1, bidder, price);
+   }
+
+   /**
+    **   Has the server sign a client's challenge.
+    **/
+   @Benchmark
+   public Object challengeServer() throws Throwable {
+      return Core.CHALLENGE_SERVER.invoke(frontEnd, challenge);
+   }
+
+   /**
+    **   Fetches a challenge, signs it as the client would and has the
+    **   server verify it.
+    **/
+   @Benchmark
+   public Object returnChallenge() throws Throwable {
+      byte[] received = (byte[])Core.GET_CHALLENGE.invoke(frontEnd);
+      Signature dsa = Signature.getInstance("SHA1withDSA");
+      dsa.initSign(userKey);
+      dsa.update(received);
+      return Core.RETURN_CHALLENGE.invoke(frontEnd, dsa.sign(), USERNAME);
+   }
+}
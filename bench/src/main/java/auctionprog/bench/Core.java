@@ -0,0 +1,103 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+package auctionprog.bench;
+
+/**
+ ** This class gives the benchmarks access to the auction core. The core
+ ** lives in the default package, which cannot be imported and which JMH
+ ** will not generate benchmarks in, so its classes are reached through
+ ** method handles.
+ **/
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+final class Core {
+   static final Class<?> USER_WRAPPER = type("UserWrapper");
+   static final Class<?> AUCTION_WRAPPER = type("AuctionWrapper");
+   static final Class<?> AUCTION_STORE = type("AuctionStore");
+   static final Class<?> AUCTION_IMPL = type("AuctionImpl");
+
+   static final MethodHandle NEW_USER = constructor(USER_WRAPPER, String.class, String.class, String.class);
+   static final MethodHandle NEW_AUCTION = constructor(AUCTION_WRAPPER, int.class, String.class, USER_WRAPPER, float.class, float.class);
+   static final MethodHandle NEW_STORE = constructor(AUCTION_STORE, int.class, int.class);
+   static final MethodHandle NEW_FRONT_END = constructor(AUCTION_IMPL, int.class);
+
+   static final MethodHandle GET_ID = method(AUCTION_WRAPPER, "getID", int.class);
+
+   static final MethodHandle CREATE_AUCTION = method(AUCTION_STORE, "createAuction", int.class, long.class, long.class, AUCTION_WRAPPER);
+   static final MethodHandle REMOVE_AUCTION = method(AUCTION_STORE, "removeAuction", AUCTION_WRAPPER, long.class, long.class, int.class, String.class);
+   static final MethodHandle GET_AUCTION = method(AUCTION_STORE, "getAuction", AUCTION_WRAPPER, int.class);
+   static final MethodHandle SET_BID = method(AUCTION_STORE, "setBid", AUCTION_WRAPPER, long.class, long.class, int.class, USER_WRAPPER, float.class);
+   static final MethodHandle CLOSE_STORE = method(AUCTION_STORE, "close", void.class);
+
+   static final MethodHandle OPEN_NEW_AUCTION = method(AUCTION_IMPL, "openNewAuction", void.class, long.class, long.class, AUCTION_WRAPPER);
+   static final MethodHandle BID_ON_AUCTION = method(AUCTION_IMPL, "bidOnAuction", void.class, long.class, long.class, int.class, USER_WRAPPER, float.class);
+   static final MethodHandle REGISTER_USER = method(AUCTION_IMPL, "registerUser", USER_WRAPPER, long.class, long.class, USER_WRAPPER);
+   static final MethodHandle SEND_PUBLIC_KEY = method(AUCTION_IMPL, "sendPublicKey", void.class, java.security.PublicKey.class, String.class);
+   static final MethodHandle GET_PUBLIC_KEY = method(AUCTION_IMPL, "getPublicKey", java.security.PublicKey.class);
+   static final MethodHandle CHALLENGE_SERVER = method(AUCTION_IMPL, "challengeServer", byte[].class, byte[].class);
+   static final MethodHandle GET_CHALLENGE = method(AUCTION_IMPL, "getChallenge", byte[].class);
+   static final MethodHandle RETURN_CHALLENGE = method(AUCTION_IMPL, "returnChallenge", boolean.class, byte[].class, String.class);
+   static final MethodHandle STOP_FRONT_END = method(AUCTION_IMPL, "stop", void.class);
+
+   private Core() {}
+
+   /*
+    *    Loads a class from the default package.
+    */
+   private static Class<?> type(String name) {
+      try {
+         return Class.forName(name);
+      } catch (ClassNotFoundException e) {
+         throw new IllegalStateException("The auction core is not on the classpath", e);
+      }
+   }
+
+   /*
+    *    Finds a public constructor.
+    */
+   private static MethodHandle constructor(Class<?> type, Class<?>... parameters) {
+      try {
+         return MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class, parameters));
+      } catch (ReflectiveOperationException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   /*
+    *    Finds a public instance method.
+    */
+   private static MethodHandle method(Class<?> type, String name, Class<?> returns, Class<?>... parameters) {
+      try {
+         return MethodHandles.publicLookup().findVirtual(type, name, MethodType.methodType(returns, parameters));
+      } catch (ReflectiveOperationException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+}
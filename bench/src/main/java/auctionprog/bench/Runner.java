@@ -0,0 +1,62 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+package auctionprog.bench;
+
+/**
+ ** This class runs the benchmarks from the command line, writing the
+ ** results as JSON so that they can be compared between versions.
+ **/
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.options.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class Runner {
+   /**
+    **   Takes the usual JMH options. Unless told otherwise, writes the
+    **   results to `jmh-result-<version>.json`.
+    **
+    **   @param args The JMH command line.
+    **/
+   public static void main(String[] args) throws Exception {
+      CommandLineOptions cmd = new CommandLineOptions(args);
+      if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams()
+            || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+         org.openjdk.jmh.Main.main(args);
+         return;
+      }
+      String version = Runner.class.getPackage().getImplementationVersion();
+
+      ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+      if (!cmd.getResultFormat().hasValue()) {
+         options.resultFormat(ResultFormatType.JSON);
+      }
+      if (!cmd.getResult().hasValue()) {
+         options.result("jmh-result-"+((version == null) ? "dev" : version)+".json");
+      }
+      new org.openjdk.jmh.runner.Runner(options.build()).run();
+   }
+}
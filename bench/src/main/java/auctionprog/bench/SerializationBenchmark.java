@@ -0,0 +1,103 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+package auctionprog.bench;
+
+/**
+ ** This class benchmarks the Java serialisation of the wrappers, which is
+ ** what RMI and the JGroups RPCs put on the wire.
+ **/
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+   private Object user;
+   private Object auction;
+   private byte[] userBytes;
+   private byte[] auctionBytes;
+
+   /**
+    **   Creates a user and an auction with a bid on it.
+    **/
+   @Setup
+   public void setUp() throws Throwable {
+      user = Core.NEW_USER.invoke("Test", "test@test.com", "test");
+      Object store = Core.NEW_STORE.invoke(0, 1);
+      auction = Core.NEW_AUCTION.invoke(0, "A benchmark auction", user, 12.0f, 14.0f);
+      int id = (int)Core.CREATE_AUCTION.invoke(store, 0L, 0L, auction);
+      Core.SET_BID.invoke(store, 0L, 0L, id, Core.NEW_USER.invoke("Bidder", "bidder@test.com", "bidder"), 13.0f);
+      auction = Core.GET_AUCTION.invoke(store, id);
+      userBytes = serialise(user);
+      auctionBytes = serialise(auction);
+   }
+
+   @Benchmark
+   public byte[] writeUser() throws IOException {
+      return serialise(user);
+   }
+
+   @Benchmark
+   public Object readUser() throws IOException, ClassNotFoundException {
+      return deserialise(userBytes);
+   }
+
+   @Benchmark
+   public byte[] writeAuction() throws IOException {
+      return serialise(auction);
+   }
+
+   @Benchmark
+   public Object readAuction() throws IOException, ClassNotFoundException {
+      return deserialise(auctionBytes);
+   }
+
+   /*
+    *    Serialises an object to a byte array.
+    */
+   private static byte[] serialise(Object object) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(object);
+      out.close();
+      return bytes.toByteArray();
+   }
+
+   /*
+    *    Deserialises an object from a byte array.
+    */
+   private static Object deserialise(byte[] bytes) throws IOException, ClassNotFoundException {
+      ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+      return in.readObject();
+   }
+}
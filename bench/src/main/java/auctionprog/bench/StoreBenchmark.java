@@ -0,0 +1,105 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+package auctionprog.bench;
+
+/**
+ ** This class benchmarks the replicated auction store on its own, without
+ ** any JGroups traffic.
+ **/
+
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoreBenchmark {
+   @Param({"100", "10000"})
+   public int size;
+
+   private Object store;
+   private Object user;
+   private Object bidder;
+   private float price;
+
+   /**
+    **   Fills a store with `size` auctions.
+    **/
+   @Setup
+   public void setUp() throws Throwable {
+      System.setProperty("auctionprog.archive", Files.createTempDirectory("auctionprog").toString());
+      store = Core.NEW_STORE.invoke(0, 1);
+      user = Core.NEW_USER.invoke("Test", "test@test.com", "test");
+      bidder = Core.NEW_USER.invoke("Bidder", "bidder@test.com", "bidder");
+      for (int i = 0; i < size; i++) {
+         Core.CREATE_AUCTION.invoke(store, 0L, 0L, Core.NEW_AUCTION.invoke(0, "bench"+i, user, 1.0f, 100.0f));
+      }
+      price = 1.0f;
+   }
+
+   /**
+    **   Stops the store's writer thread.
+    **/
+   @TearDown
+   public void tearDown() throws Throwable {
+      Core.CLOSE_STORE.invoke(store);
+   }
+
+   /**
+    **   Opens an auction, which allocates the next ID, and closes it again
+    **   so the store stays at `size` auctions.
+    **/
+   @Benchmark
+   public Object createAuction() throws Throwable {
+      Object created = Core.NEW_AUCTION.invoke(0, "created", user, 1.0f, 100.0f);
+      int id = (int)Core.CREATE_AUCTION.invoke(store, 0L, 0L, created);
+      Core.REMOVE_AUCTION.invoke(store, 0L, 0L, id, "test");
+      return id;
+   }
+
+   /**
+    **   Looks an auction up by ID.
+    **/
+   @Benchmark
+   public Object getAuction() throws Throwable {
+      return Core.GET_AUCTION.invoke(store, ThreadLocalRandom.current().nextInt(size) + 1);
+   }
+
+   /**
+    **   Bids on an auction, which also updates the price and user indexes.
+    **/
+   @Benchmark
+   public void setBid() throws Throwable {
+      price += 1.0f;
+      Core.SET_BID.invoke(store, 0L, System.currentTimeMillis(), size / 2, bidder, price);
+   }
+}
@@ -1,3 +1,3 @@
 set CLASSPATH=%CLASSPATH%;C:\JGroups\jgroups-3.6.0.Final.jar;
-java -Djava.net.preferIPv4Stack=true AuctionServer
+java -Djava.net.preferIPv4Stack=true AuctionServer %1
 pause
\ No newline at end of file
@@ -0,0 +1,3 @@
+rem Options: -Dauctionprog.load.users, .rate (ops/s), .duration (s) and .mix
+java -Djava.net.preferIPv4Stack=true %* AuctionClient --load
+pause
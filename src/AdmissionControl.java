@@ -0,0 +1,206 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class decides whether a front end takes on a call. Each caller,
+ ** known by the host the call came from rather than by any name it sends,
+ ** may make changes at a set rate, and the calls in flight across the front
+ ** end are capped at a limit that shrinks as they slow down and grows
+ ** back as they recover. A call over either is turned away at once with
+ ** an `OverloadedException`, rather than queueing behind the backlog.
+ **/
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class AdmissionControl {
+   private static final double CALLER_RATE = Double.parseDouble(System.getProperty("auctionprog.admit.rate", "20"));
+   private static final int CALLER_BURST = Integer.getInteger("auctionprog.admit.burst", 40);
+   private static final int MIN_LIMIT = Integer.getInteger("auctionprog.admit.min", 8);
+   private static final int MAX_LIMIT = Integer.getInteger("auctionprog.admit.max", 1000);
+   // A call this slow has waited out the RPC timeout on a shard group.
+   private static final long TIMEOUT = TimeUnit.MILLISECONDS.toMicros(Long.getLong("auctionprog.admit.timeout", 5000));
+   private static final int MAX_BUCKETS = 100000;
+   // These calls are answered by the front end alone, so are never
+   // turned away.
+   private static final Set<String> EXEMPT = new HashSet<String>(Arrays.asList("getStatusofLast", "getPublicKey",
+         "getChallenge", "challengeServer", "sendPublicKey", "subscribeToAuction", "subscribeToUser", "unsubscribe",
+         "replicate", "close"));
+   // These calls change state, so count against the caller's rate.
+   private static final Set<String> RATE_LIMITED = new HashSet<String>(Arrays.asList("openNewAuction", "openNewAuctions",
+         "closeAuction", "bidOnAuction"));
+
+   // Each caller's bucket is the time at which it would next be full, in
+   // the manner of the generic cell rate algorithm: a call moves it on by
+   // one interval, and is allowed while it stays within a burst of now.
+   private final long interval;
+   private final long tolerance;
+   private final ConcurrentHashMap<String, AtomicLong> buckets;
+   private final AtomicInteger inFlight;
+   private volatile int limit;
+   // The limit before rounding, and the short- and long-term average
+   // latencies it is worked out from, in microseconds. Guarded by
+   // `this`.
+   private double estimate;
+   private double shortLatency;
+   private double longLatency;
+   private final OperationMetrics rejected;
+
+   /**
+    **   Constructor Method.
+    **/
+   public AdmissionControl() {
+      interval = (long)(1e9 / CALLER_RATE);
+      tolerance = interval * CALLER_BURST;
+      buckets = new ConcurrentHashMap<String, AtomicLong>();
+      inFlight = new AtomicInteger();
+      estimate = Math.min(MAX_LIMIT, Math.max(MIN_LIMIT, 64));
+      limit = (int)estimate;
+      rejected = new OperationMetrics();
+   }
+
+   /**
+    **   Admits a call or turns it away. A call admitted must be followed
+    **   by `release` once it finishes.
+    **
+    **   @param method The name of the `Auction` method called.
+    **   @param caller The host the call came from, as the endpoint saw
+    **   it.
+    **   @return Whether the call holds a place under the limit, and so
+    **   must be released.
+    **/
+   public boolean admit(String method, String caller) throws OverloadedException {
+      if (EXEMPT.contains(method)) return false;
+
+      if (RATE_LIMITED.contains(method)) {
+         long wait = this.take(caller);
+         if (wait > 0) {
+            rejected.error(method);
+            throw new OverloadedException("Too many requests from "+caller, Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+         }
+      }
+
+      if (inFlight.incrementAndGet() > limit) {
+         inFlight.decrementAndGet();
+         rejected.error(method);
+         long wait;
+         synchronized (this) {
+            wait = (long)(shortLatency / 1000);
+         }
+         throw new OverloadedException("Server busy", Math.max(1, wait));
+      }
+      return true;
+   }
+
+   /**
+    **   Frees the place held by a call, and adjusts the limit by how long
+    **   it took. While calls take no longer than they usually do, the
+    **   limit grows by its square root; as they slow, it shrinks in
+    **   proportion; and it halves whenever a call waits out the RPC
+    **   timeout.
+    **
+    **   @param latency How long the call took, in microseconds.
+    **/
+   public void release(long latency) {
+      int busy = inFlight.getAndDecrement();
+      synchronized (this) {
+         shortLatency = (shortLatency == 0) ? latency : shortLatency * 0.9 + latency * 0.1;
+         longLatency = (longLatency == 0) ? latency : longLatency * 0.995 + latency * 0.005;
+
+         if (latency >= TIMEOUT) {
+            estimate = estimate / 2;
+         } else {
+            // Calls up to half as slow again as usual are taken as
+            // noise.
+            double gradient = Math.max(0.5, Math.min(1.0, 1.5 * longLatency / shortLatency));
+            double target = estimate * gradient + Math.sqrt(estimate);
+            // Only grows while the limit is being used, so that a quiet
+            // spell does not leave it far above what has been tested.
+            if (target > estimate && busy * 2 < estimate) target = estimate;
+            estimate = estimate * 0.8 + target * 0.2;
+         }
+         estimate = Math.max(MIN_LIMIT, Math.min(MAX_LIMIT, estimate));
+         limit = (int)estimate;
+      }
+   }
+
+   /**
+    **   Accessor Method. Gets the current limit on calls in flight.
+    **   @return The limit.
+    **/
+   public int getLimit() {
+      return this.limit;
+   }
+
+   /**
+    **   Accessor Method. Gets the number of calls in flight.
+    **   @return The count.
+    **/
+   public int getInFlight() {
+      return inFlight.get();
+   }
+
+   /**
+    **   Accessor Method. Gets the number of calls turned away.
+    **   @return The counts, by method.
+    **/
+   public SortedMap<String, Long> getRejected() {
+      return rejected.getErrors();
+   }
+
+   /*
+    *    Takes a token from a caller's bucket, returning 0 if there was
+    *    one or otherwise how long until there will be, in nanoseconds.
+    */
+   private long take(String caller) {
+      AtomicLong bucket = buckets.get(caller);
+      if (bucket == null) {
+         if (buckets.size() >= MAX_BUCKETS) this.sweep();
+         bucket = buckets.computeIfAbsent(caller, k -> new AtomicLong(System.nanoTime()));
+      }
+
+      long now = System.nanoTime();
+      while (true) {
+         long full = bucket.get();
+         long next = ((full - now > 0) ? full : now) + interval;
+         long wait = next - now - tolerance;
+         if (wait > 0) return wait;
+         if (bucket.compareAndSet(full, next)) return 0;
+      }
+   }
+
+   /*
+    *    Drops the buckets of callers who are back to a full allowance, as
+    *    they are no different from having none.
+    */
+   private void sweep() {
+      long now = System.nanoTime();
+      buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+   }
+}
@@ -43,31 +43,57 @@ public interface Auction extends java.rmi.Remote {
    
    /**
     **   Invokes the creation of a new auction.
+    **   A retry with the same request ID does not open it twice.
     **   
+    **   @param requestId An ID the caller makes up for the request, which
+    **   it passes again if it retries, or `RequestIds.NONE`.
+    **   @param time When the caller made the request, which it passes
+    **   again, unchanged, with the request ID.
     **   @param newAuction The new auction to create.
     **/
-   public void openNewAuction(AuctionWrapper newAuction) throws java.rmi.RemoteException;
+   public void openNewAuction(long requestId, long time, AuctionWrapper newAuction) throws java.rmi.RemoteException;
+
+   /**
+    **   Invokes the creation of a batch of new auctions, such as a
+    **   consignment read from a file.
+    **   
+    **   @param requestId An ID the caller makes up for the request, which
+    **   it passes again if it retries, or `RequestIds.NONE`.
+    **   @param time When the caller made the request, which it passes
+    **   again, unchanged, with the request ID.
+    **   @param newAuctions The new auctions to create.
+    **   @return The number of auctions opened.
+    **/
+   public int openNewAuctions(long requestId, long time, ArrayList<AuctionWrapper> newAuctions) throws java.rmi.RemoteException;
 
    /**
     **   Validates that the calling user owns the auction in question, and
     **   if invokes the closing of the auction, returning the winning
     **   bidder (if applicaable).
     **   
+    **   @param requestId An ID the caller makes up for the request, which
+    **   it passes again if it retries, or `RequestIds.NONE`.
+    **   @param time When the caller made the request, which it passes
+    **   again, unchanged, with the request ID.
     **   @param id The ID of the auction to bid on.
     **   @param currentUser The user placing the bid.
     **   @return The highest bidder, or `null`.
     **/
-   public void closeAuction(int id, UserWrapper currentUser) throws java.rmi.RemoteException;
+   public void closeAuction(long requestId, long time, int id, UserWrapper currentUser) throws java.rmi.RemoteException;
 
    /**
     **   Validates a bid is higher than the given auctions current price,
     **   and if so invokes the setting the a new bid and bidder.
     **   
+    **   @param requestId An ID the caller makes up for the request, which
+    **   it passes again if it retries, or `RequestIds.NONE`.
+    **   @param time When the caller made the request, which it passes
+    **   again, unchanged, with the request ID.
     **   @param id The ID of the auction in question.
     **   @param bidder The user bidding on the auction.
     **   @param price The amount bid.
     **/
-   public void bidOnAuction(int id, UserWrapper bidder, float price) throws java.rmi.RemoteException;
+   public void bidOnAuction(long requestId, long time, int id, UserWrapper bidder, float price) throws java.rmi.RemoteException;
    
    /**
     **   Invokes the returning of a list of all the current auctions.
@@ -75,6 +101,120 @@ public interface Auction extends java.rmi.Remote {
     **   @return An `ArrayList` of `AuctionWrapper`s.
     **/
    public ArrayList<AuctionWrapper> showAllAuctions() throws java.rmi.RemoteException;
+   
+   /**
+    **   Invokes the returning of a page of the current auctions, so that
+    **   they can be gone through without holding them all at once.
+    **   
+    **   @param afterId The ID to start after (0 for the first page).
+    **   @param limit The most auctions to return.
+    **   @return An `ArrayList` of `AuctionWrapper`s, in order of ID.
+    **/
+   public ArrayList<AuctionWrapper> showAuctionsAfter(int afterId, int limit) throws java.rmi.RemoteException;
+   
+   /**
+    **   Invokes the returning of a list of the auctions whose current
+    **   price lies in the given range.
+    **   
+    **   @param min The lowest price, inclusive.
+    **   @param max The highest price, inclusive.
+    **   @return An `ArrayList` of `AuctionWrapper`s, cheapest first.
+    **/
+   public ArrayList<AuctionWrapper> showAuctionsByPrice(float min, float max) throws java.rmi.RemoteException;
+   
+   /**
+    **   Invokes the returning of a list of the auctions whose reserve
+    **   price has not yet been met.
+    **   
+    **   @return An `ArrayList` of `AuctionWrapper`s, closest to the
+    **   reserve first.
+    **/
+   public ArrayList<AuctionWrapper> showAuctionsBelowReserve() throws java.rmi.RemoteException;
+   
+   /**
+    **   Invokes the returning of a list of the auctions ending within
+    **   the given time from now.
+    **   
+    **   @param within The window to search, in milliseconds.
+    **   @return An `ArrayList` of `AuctionWrapper`s, soonest first, which
+    **   is empty if the window is negative.
+    **/
+   public ArrayList<AuctionWrapper> showAuctionsEndingWithin(long within) throws java.rmi.RemoteException;
+   
+   /**
+    **   Invokes the returning of a list of the open auctions owned by
+    **   the given user.
+    **   
+    **   @param user The user in question.
+    **   @return An `ArrayList` of `AuctionWrapper`s.
+    **/
+   public ArrayList<AuctionWrapper> showMyAuctions(UserWrapper user) throws java.rmi.RemoteException;
+   
+   /**
+    **   Invokes the returning of a list of the open auctions on which
+    **   the given user is the highest bidder.
+    **   
+    **   @param user The user in question.
+    **   @return An `ArrayList` of `AuctionWrapper`s.
+    **/
+   public ArrayList<AuctionWrapper> showMyLeadingBids(UserWrapper user) throws java.rmi.RemoteException;
+   
+   /**
+    **   Invokes the returning of a list of the closed auctions won by
+    **   the given user.
+    **   
+    **   @param user The user in question.
+    **   @return An `ArrayList` of `AuctionWrapper`s.
+    **/
+   public ArrayList<AuctionWrapper> showMyWins(UserWrapper user) throws java.rmi.RemoteException;
+   
+   /**
+    **   Invokes the returning of a list of the closed auctions owned by
+    **   the given user.
+    **   
+    **   @param user The user in question.
+    **   @return An `ArrayList` of `AuctionWrapper`s.
+    **/
+   public ArrayList<AuctionWrapper> showMyClosedAuctions(UserWrapper user) throws java.rmi.RemoteException;
+   
+   /**
+    **   Accessor Method. Invokes the retrieval of a closed auction by its
+    **   ID.
+    **   
+    **   @param id The ID of the auction.
+    **   @return The relevant `AuctionWrapper`, or `null`.
+    **/
+   public AuctionWrapper getClosedAuction(int id) throws java.rmi.RemoteException;
+   
+   /**
+    **   Invokes the returning of a page of the bids placed on an
+    **   auction, open or closed, oldest first.
+    **   
+    **   @param id The ID of the auction.
+    **   @param offset The number of bids to skip.
+    **   @param limit The most bids to return.
+    **   @return An `ArrayList` of `BidWrapper`s, or `null` if there is no
+    **   such auction.
+    **/
+   public ArrayList<BidWrapper> showBidHistory(int id, int offset, int limit) throws java.rmi.RemoteException;
+   
+   /**
+    **   Invokes the returning of the number of open auctions in each
+    **   category and price band.
+    **   
+    **   @return The `FacetCounts`, or `null`.
+    **/
+   public FacetCounts showCategoryCounts() throws java.rmi.RemoteException;
+   
+   /**
+    **   Invokes the returning of the open auctions with the most bids
+    **   over the last five minutes, or over the last hour.
+    **   
+    **   @param lastHour Whether to count over the last hour.
+    **   @param limit The most auctions to return.
+    **   @return An `ArrayList` of `HotAuctionWrapper`s, busiest first.
+    **/
+   public ArrayList<HotAuctionWrapper> showHottestAuctions(boolean lastHour, int limit) throws java.rmi.RemoteException;
     
    /**
     **   Accessor Method. Invokes the retrieval of a preexisting user, 
@@ -89,10 +229,39 @@ public interface Auction extends java.rmi.Remote {
     **   Tests that the username entered is not already taken, and
     **   invokes the creation of a new user with the given details if not.
     **   
+    **   @param requestId An ID the caller makes up for the request, which
+    **   it passes again if it retries, or `RequestIds.NONE`.
+    **   @param time When the caller made the request, which it passes
+    **   again, unchanged, with the request ID.
     **   @param newUser The new user to validate and create.
     **   @return The newly-created user.
     **/
-   public UserWrapper registerUser(UserWrapper newUser) throws java.rmi.RemoteException;
+   public UserWrapper registerUser(long requestId, long time, UserWrapper newUser) throws java.rmi.RemoteException;
+   
+   /**
+    **   Subscribes a client to the price changes and closing of an
+    **   auction.
+    **   
+    **   @param listener The client's callback.
+    **   @param id The ID of the auction.
+    **/
+   public void subscribeToAuction(AuctionListener listener, int id) throws java.rmi.RemoteException;
+   
+   /**
+    **   Subscribes a client to the events that concern a user: being
+    **   outbid, and the closing of auctions they own or have won.
+    **   
+    **   @param listener The client's callback.
+    **   @param username The user's username.
+    **/
+   public void subscribeToUser(AuctionListener listener, String username) throws java.rmi.RemoteException;
+   
+   /**
+    **   Removes all of a client's subscriptions.
+    **   
+    **   @param listener The client's callback.
+    **/
+   public void unsubscribe(AuctionListener listener) throws java.rmi.RemoteException;
    
    /*
     *    Methods that are called by the `AuctionClient` program via RMI.
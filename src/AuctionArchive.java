@@ -0,0 +1,414 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class represents the closed auctions of one store, kept on disk
+ ** so that the open auctions held in memory stay few. Closed auctions are
+ ** gathered into blocks, each compressed and appended to the end of the
+ ** file, and read back through a memory map. Only where each auction's
+ ** block starts is held in memory.
+ **/
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class AuctionArchive implements Closeable {
+   // The file starts with `MAGIC`. Each block follows as its length
+   // before and after compression, then the compressed bytes: records
+   // one after another, each an auction written with `WireFormat` and
+   // then the length of its bid history and the history itself.
+   private static final int MAGIC = 0x41504143;
+   private static final int BLOCK_SIZE = Integer.getInteger("auctionprog.archive.block", 256);
+
+   private final FileChannel channel;
+   private final FileLock lock;
+   private long size;
+   private MappedByteBuffer mapped;
+   // Where the block holding each archived auction starts, and the blocks
+   // holding each user's auctions.
+   private final HashMap<Integer, Long> byID;
+   private final HashMap<String, Offsets> byOwner;
+   private final HashMap<String, Offsets> byWinner;
+   private int lastID;
+   // The auctions not yet written out, and their histories.
+   private final ArrayList<AuctionWrapper> pending;
+   private final ArrayList<byte[]> pendingBids;
+
+   /**
+    **   Constructor Method. Opens an archive file, creating it if need be,
+    **   and reads through any blocks already in it.
+    **
+    **   @param channel The file, open for reading and writing.
+    **   @param lock A lock held on the file.
+    **/
+   private AuctionArchive(FileChannel channel, FileLock lock) throws IOException {
+      this.channel = channel;
+      this.lock = lock;
+      byID = new HashMap<Integer, Long>();
+      byOwner = new HashMap<String, Offsets>();
+      byWinner = new HashMap<String, Offsets>();
+      pending = new ArrayList<AuctionWrapper>(BLOCK_SIZE);
+      pendingBids = new ArrayList<byte[]>(BLOCK_SIZE);
+
+      if (channel.size() == 0) {
+         ByteBuffer header = ByteBuffer.allocate(4).putInt(MAGIC);
+         header.flip();
+         channel.write(header, 0);
+      }
+      size = channel.size();
+      this.map();
+      if (mapped.getInt(0) != MAGIC) throw new UnknownFormatException();
+      this.recover();
+   }
+
+   /**
+    **   Opens the archive for a store, in the directory named by
+    **   `auctionprog.archive`. Each store in a shard group takes the first
+    **   of the group's files not already in use, so a replica restarted
+    **   in the same place carries on with its history. Files that are not
+    **   archives of this version are left alone.
+    **
+    **   @param shard The index of the shard group.
+    **   @return The archive.
+    **/
+   public static AuctionArchive open(int shard) throws IOException {
+      Path dir = Paths.get(System.getProperty("auctionprog.archive", "archive"));
+      Files.createDirectories(dir);
+      for (int i = 0; ; i++) {
+         Path file = dir.resolve("shard-"+shard+"-"+i+".arc");
+         FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+         FileLock lock = null;
+         try {
+            lock = channel.tryLock();
+            if (lock != null) return new AuctionArchive(channel, lock);
+         } catch (OverlappingFileLockException e) {
+            // Held by another store in this process.
+         } catch (UnknownFormatException e) {
+            Log.warn("Skipping {}, which is not an auction archive", file);
+            lock.release();
+         }
+         channel.close();
+      }
+   }
+
+   /**
+    **   Archives a closed auction and its bids. It is written out once a
+    **   block's worth have closed, or the archive is closed.
+    **
+    **   @param auction The closed auction.
+    **   @param history The bids on it, or `null` if there were none.
+    **   @param bidders The bidders the bids' numbers refer to.
+    **/
+   public synchronized void add(AuctionWrapper auction, BidHistory history, BidHistory.Bidders bidders) throws IOException {
+      ByteArrayOutputStream bids = new ByteArrayOutputStream();
+      if (history != null) history.writeTo(new DataOutputStream(bids), bidders);
+      pending.add(auction);
+      pendingBids.add(bids.toByteArray());
+      lastID = Math.max(lastID, auction.getID());
+      if (pending.size() >= BLOCK_SIZE) this.flush();
+   }
+
+   /**
+    **   Gets an archived auction by ID.
+    **
+    **   @param id The auction ID.
+    **   @return The auction, or `null`.
+    **/
+   public synchronized AuctionWrapper get(int id) throws IOException {
+      for(AuctionWrapper auction: pending) {
+         if (auction.getID() == id) return auction;
+      }
+      Long offset = byID.get(id);
+      if (offset == null) return null;
+      for(AuctionWrapper auction: this.read(offset)) {
+         if (auction.getID() == id) return auction;
+      }
+      return null;
+   }
+
+   /**
+    **   Gets a page of the bids on an archived auction, oldest first.
+    **
+    **   @param id The auction ID.
+    **   @param offset The number of bids to skip.
+    **   @param limit The most bids to return.
+    **   @return The bids, or `null` if no such auction was archived.
+    **/
+   public synchronized ArrayList<BidWrapper> getBids(int id, int offset, int limit) throws IOException {
+      byte[] found = null;
+      for (int i = 0; i < pending.size() && found == null; i++) {
+         if (pending.get(i).getID() == id) found = pendingBids.get(i);
+      }
+      Long offsetOf = byID.get(id);
+      if (found == null && offsetOf != null) {
+         DataInputStream in = this.open(offsetOf);
+         while (found == null && in.available() > 0) {
+            AuctionWrapper auction = (AuctionWrapper)WireFormat.readValue(in);
+            byte[] bids = new byte[in.readInt()];
+            in.readFully(bids);
+            if (auction.getID() == id) found = bids;
+         }
+      }
+      if (found == null) return null;
+      if (found.length == 0) return new ArrayList<BidWrapper>();
+      return BidHistory.readPage(new DataInputStream(new ByteArrayInputStream(found)), offset, limit);
+   }
+
+   /**
+    **   Gets the archived auctions a user owned.
+    **
+    **   @param username The user's username.
+    **   @return The auctions, oldest first.
+    **/
+   public synchronized ArrayList<AuctionWrapper> getOwnedBy(String username) throws IOException {
+      ArrayList<AuctionWrapper> result = new ArrayList<AuctionWrapper>();
+      Offsets offsets = byOwner.get(username);
+      for (int i = 0; offsets != null && i < offsets.size; i++) {
+         for(AuctionWrapper auction: this.read(offsets.values[i])) {
+            if (username.equals(owner(auction))) result.add(auction);
+         }
+      }
+      for(AuctionWrapper auction: pending) {
+         if (username.equals(owner(auction))) result.add(auction);
+      }
+      return result;
+   }
+
+   /**
+    **   Gets the archived auctions a user won.
+    **
+    **   @param username The user's username.
+    **   @return The auctions, oldest first.
+    **/
+   public synchronized ArrayList<AuctionWrapper> getWonBy(String username) throws IOException {
+      ArrayList<AuctionWrapper> result = new ArrayList<AuctionWrapper>();
+      Offsets offsets = byWinner.get(username);
+      for (int i = 0; offsets != null && i < offsets.size; i++) {
+         for(AuctionWrapper auction: this.read(offsets.values[i])) {
+            if (username.equals(winner(auction))) result.add(auction);
+         }
+      }
+      for(AuctionWrapper auction: pending) {
+         if (username.equals(winner(auction))) result.add(auction);
+      }
+      return result;
+   }
+
+   /**
+    **   Accessor Method. Gets the highest ID of any auction archived, which
+    **   the store's next ID must follow even after a restart.
+    **
+    **   @return The ID, or 0 if there are none.
+    **/
+   public synchronized int getLastID() {
+      return this.lastID;
+   }
+
+   /**
+    **   Accessor Method. Gets the number of auctions archived.
+    **
+    **   @return The count.
+    **/
+   public synchronized int getCount() {
+      return byID.size() + pending.size();
+   }
+
+   /**
+    **   Writes out any auctions still pending and closes the file.
+    **/
+   public synchronized void close() throws IOException {
+      try {
+         this.flush();
+      } finally {
+         if (lock.isValid()) lock.release();
+         channel.close();
+      }
+   }
+
+   /*
+    *    Compresses the pending auctions into a block and appends it.
+    */
+   private void flush() throws IOException {
+      if (pending.isEmpty()) return;
+      ByteArrayOutputStream raw = new ByteArrayOutputStream(pending.size() * 128);
+      DataOutputStream out = new DataOutputStream(raw);
+      for (int i = 0; i < pending.size(); i++) {
+         WireFormat.writeValue(out, pending.get(i));
+         out.writeInt(pendingBids.get(i).length);
+         out.write(pendingBids.get(i));
+      }
+      byte[] bytes = raw.toByteArray();
+
+      Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      deflater.setInput(bytes);
+      deflater.finish();
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2 + 64);
+      byte[] chunk = new byte[8192];
+      while (!deflater.finished()) {
+         compressed.write(chunk, 0, deflater.deflate(chunk));
+      }
+      deflater.end();
+
+      ByteBuffer block = ByteBuffer.allocate(8 + compressed.size());
+      block.putInt(bytes.length).putInt(compressed.size()).put(compressed.toByteArray());
+      block.flip();
+      long offset = size;
+      while (block.hasRemaining()) {
+         channel.write(block, offset + block.position());
+      }
+      size += block.limit();
+
+      for(AuctionWrapper auction: pending) {
+         this.index(auction, offset);
+      }
+      pending.clear();
+      pendingBids.clear();
+   }
+
+   /*
+    *    Reads the blocks already in the file to build the indexes,
+    *    cutting off a block left half-written.
+    */
+   private void recover() throws IOException {
+      long offset = 4;
+      while (offset + 8 <= size) {
+         int length = mapped.getInt((int)offset + 4);
+         if (length < 0 || offset + 8 + length > size) break;
+         try {
+            for(AuctionWrapper auction: this.read(offset)) {
+               this.index(auction, offset);
+            }
+         } catch (IOException e) {
+            break;
+         }
+         offset += 8 + length;
+      }
+      if (offset < size) {
+         Log.warn("Cutting off {} bytes of a damaged archive block", size - offset);
+         channel.truncate(offset);
+         size = offset;
+      }
+   }
+
+   /*
+    *    Records which block an auction was written to.
+    */
+   private void index(AuctionWrapper auction, long offset) {
+      byID.put(auction.getID(), offset);
+      lastID = Math.max(lastID, auction.getID());
+      String owner = owner(auction);
+      if (owner != null) byOwner.computeIfAbsent(owner, k -> new Offsets()).add(offset);
+      String winner = winner(auction);
+      if (winner != null) byWinner.computeIfAbsent(winner, k -> new Offsets()).add(offset);
+   }
+
+   /*
+    *    Reads the auctions in the block at an offset, skipping their
+    *    bids.
+    */
+   private ArrayList<AuctionWrapper> read(long offset) throws IOException {
+      ArrayList<AuctionWrapper> auctions = new ArrayList<AuctionWrapper>();
+      DataInputStream in = this.open(offset);
+      while (in.available() > 0) {
+         auctions.add((AuctionWrapper)WireFormat.readValue(in));
+         in.skipBytes(in.readInt());
+      }
+      return auctions;
+   }
+
+   /*
+    *    Decompresses the block at an offset.
+    */
+   private DataInputStream open(long offset) throws IOException {
+      if (offset + 8 > mapped.capacity()) this.map();
+      ByteBuffer view = mapped.duplicate();
+      view.position((int)offset);
+      int rawLength = view.getInt();
+      byte[] compressed = new byte[view.getInt()];
+      view.get(compressed);
+
+      byte[] bytes = new byte[rawLength];
+      Inflater inflater = new Inflater();
+      try {
+         inflater.setInput(compressed);
+         if (inflater.inflate(bytes) != rawLength) throw new IOException("Archive block at "+offset+" is damaged");
+      } catch (DataFormatException e) {
+         throw new IOException("Archive block at "+offset+" is damaged", e);
+      } finally {
+         inflater.end();
+      }
+
+      return new DataInputStream(new ByteArrayInputStream(bytes));
+   }
+
+   /*
+    *    Maps the whole file as it now stands. Blocks are only ever added,
+    *    so an old mapping stays good for the blocks it covers.
+    */
+   private void map() throws IOException {
+      if (mapped == null || mapped.capacity() < size) {
+         if (size > Integer.MAX_VALUE) throw new IOException("Archive too large to map");
+         mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+   }
+
+   private static String owner(AuctionWrapper auction) {
+      return (auction.getOwner() == null) ? null : auction.getOwner().getUsername();
+   }
+
+   private static String winner(AuctionWrapper auction) {
+      return (auction.getHighestBidder() != null && auction.isSold()) ? auction.getHighestBidder().getUsername() : null;
+   }
+
+   /*
+    *    Thrown when a file does not start with `MAGIC`.
+    */
+   private static final class UnknownFormatException extends IOException {
+   }
+
+   /*
+    *    A growable list of block offsets, each added at most once.
+    */
+   private static final class Offsets {
+      long[] values = new long[4];
+      int size;
+
+      void add(long offset) {
+         if (size > 0 && values[size - 1] == offset) return;
+         if (size == values.length) values = Arrays.copyOf(values, size * 2);
+         values[size++] = offset;
+      }
+   }
+}
@@ -28,6 +28,7 @@ import java.io.*;
 import java.rmi.Naming;
 import java.rmi.RemoteException;
 import java.net.MalformedURLException;
+import java.nio.file.Paths;
 import java.rmi.NotBoundException;
 import java.util.*;
 import java.util.Scanner;
@@ -46,6 +47,10 @@ public class AuctionClient {
    // (Source: http://stackoverflow.com/a/153751/4580273)
    private static final Pattern rfc2822 = Pattern.compile("^[a-z0-9!#$%&'*+/=?^_`{|}~-]+(?:\\.[a-z0-9!#$%&'*+/=?^_`{|}~-]+)*@(?:[a-z0-9](?:[a-z0-9-]*[a-z0-9])?\\.)+[a-z0-9](?:[a-z0-9-]*[a-z0-9])?$");
    private static Auction a;
+   // The exported callback, kept so it is not collected, and the stub
+   // handed to the server in its place.
+   private static Notifier notifier;
+   private static AuctionListener listener;
    private static ArrayList<String> options, debugOptions;
    private static boolean debugMode;
     
@@ -60,10 +65,22 @@ public class AuctionClient {
       displayIntro();
       
       // Create the reference to the remote object through the 
-      // remiregistry. This comes first because if it fails we can 
-      // skip doing everything else.
+      // remiregistry, or over the binary protocol if a front end's
+      // `host:port` is given in `auctionprog.nio`. This comes first
+      // because if it fails we can skip doing everything else.
       try {
-         a = (Auction) Naming.lookup("rmi://localhost/AuctionService");
+         String nio = System.getProperty("auctionprog.nio");
+         if (nio != null) {
+            a = NioClient.connect(nio.substring(0, nio.lastIndexOf(':')), Integer.parseInt(nio.substring(nio.lastIndexOf(':') + 1)));
+         } else {
+            a = LoadBalancer.connect("rmi://localhost/");
+         }
+         
+         // Runs the headless load generator instead of the menu, if asked.
+         if (args.length > 0 && args[0].equals("--load")) {
+            new LoadGenerator(a).run();
+            System.exit(0);
+         }
          
          setOptions();
          
@@ -71,6 +88,14 @@ public class AuctionClient {
          // as an argument. Otherwise, prompts the user to create a new
          // user.
          UserWrapper currentUser = login((args.length > 0) ? args[0] : "server");
+         
+         // Asks the server to push news of the user being outbid and of
+         // their auctions closing. The stub is sent explicitly: only RMI
+         // swaps an exported object for its stub, and the binary protocol
+         // would send a copy of the object itself.
+         notifier = new Notifier();
+         listener = (AuctionListener)java.rmi.server.RemoteObject.toStub(notifier);
+         a.subscribeToUser(listener, currentUser.getUsername());
       
          eventLoop(currentUser);
       } catch (Exception e) {
@@ -110,7 +135,49 @@ public class AuctionClient {
                case "Bid on auction":
                   placeBid(currentUser);
                   break; 
+               // These cases display the auctions matching a query.
+               case "View auctions by price":
+                  displayAuctionsByPrice();
+                  break;
+               case "View auctions below reserve":
+                  printAuctions(a.showAuctionsBelowReserve());
+                  break;
+               case "View auctions ending soon":
+                  printAuctions(a.showAuctionsEndingWithin(60 * 60 * 1000L));
+                  break;
+               case "View my auctions":
+                  printAuctions(a.showMyAuctions(currentUser));
+                  break;
+               case "View my leading bids":
+                  printAuctions(a.showMyLeadingBids(currentUser));
+                  break;
+               case "View my wins":
+                  printAuctions(a.showMyWins(currentUser));
+                  break;
+               case "View my closed auctions":
+                  printAuctions(a.showMyClosedAuctions(currentUser));
+                  break;
+               case "View closed auction":
+                  displayClosedAuction();
+                  break;
+               case "View bid history":
+                  displayBidHistory();
+                  break;
+               case "View categories":
+                  displayCategoryCounts();
+                  break;
+               case "View hottest auctions":
+                  displayHottestAuctions();
+                  break;
+               // These cases move auctions in bulk to and from a file.
+               case "Import auctions":
+                  importAuctions(currentUser);
+                  break;
+               case "Export auctions":
+                  exportAuctions();
+                  break;
                case "Quit":
+                  a.unsubscribe(listener);
                   System.exit(1);
                   break;
                default: break;
@@ -130,6 +197,10 @@ public class AuctionClient {
             }
          } catch (NumberFormatException e) {
             System.out.println("\nError: That is not a valid option.\n");
+         } catch (RemoteException e) {
+            OverloadedException busy = OverloadedException.find(e);
+            if (busy == null) throw e;
+            System.out.println("\nThe server is busy. Please try again in "+busy.getRetryAfter()+" ms.\n");
          }
       }
    }
@@ -145,35 +216,16 @@ public class AuctionClient {
       // authenticate that user.
       if (!username.equals("server")) {
          boolean verifies;
-         byte[] challenge, serverResponse, userResponse;
-         Signature signed, signing;
          
          // Sends the server a number to sign with its private key.
          System.out.println("Authenticating server...");
-         
-         challenge = new byte[1024];
-         new Random().nextBytes(challenge);
-         serverResponse = a.challengeServer(challenge);
-         
-         signed = Signature.getInstance("SHA1withDSA");
-         signed.initVerify(readKey());
-         signed.update(challenge);
-         
-         verifies = signed.verify(serverResponse);
+         verifies = verifyServer(a, readKey());
          System.out.println("server signature verifies: " + verifies);
          
          // Receives a number from the server to sign with the user's
          // private key.
          System.out.println("Authenticating user '"+username+"'...");
-         
-         challenge = a.getChallenge();
-         
-         signing = Signature.getInstance("SHA1withDSA"); 
-         signing.initSign(readKey(username));
-         signing.update(challenge);
-         userResponse = signing.sign();
-         
-         verifies = a.returnChallenge(userResponse, username);
+         verifies = verifyUser(a, username, readKey(username));
          System.out.println(username+" authenticated by server: " + verifies);
          
          // Closes the program on authentication fail.
@@ -204,7 +256,7 @@ public class AuctionClient {
             }
              
             try {
-               user = a.registerUser(new UserWrapper(name, email, username));
+               user = a.registerUser(RequestIds.next(), System.currentTimeMillis(), new UserWrapper(name, email, username));
                System.out.println(a.getStatusofLast());
             } catch (NullPointerException e) {
                System.out.println(a.getStatusofLast());
@@ -214,18 +266,68 @@ public class AuctionClient {
          
          // Upon a successful user creation, new keys are generated and
          // exchanged with the server.
-         KeyPairGenerator keyGen = KeyPairGenerator.getInstance("DSA");
-         SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
-         keyGen.initialize(1024, random);
-
-         KeyPair pair = keyGen.generateKeyPair();   
+         KeyPair pair = exchangeKeys(a, username);
          writeKey(pair.getPrivate(), username);
-         a.sendPublicKey(pair.getPublic(), username);
          writeKey(a.getPublicKey(), "server");
       }
       return user;
    }
    
+   /**
+    **   Sends the server a random number to sign, and checks the
+    **   signature against the server's public key.
+    **   
+    **   @param a The server stub.
+    **   @param serverKey The server's public key.
+    **   @return Whether the server has been verified or not.
+    **/
+   static boolean verifyServer(Auction a, PublicKey serverKey) throws java.rmi.RemoteException, java.security.NoSuchAlgorithmException, java.security.InvalidKeyException, java.security.SignatureException {
+      byte[] challenge = new byte[1024];
+      new Random().nextBytes(challenge);
+      byte[] serverResponse = a.challengeServer(challenge);
+      
+      Signature signed = Signature.getInstance("SHA1withDSA");
+      signed.initVerify(serverKey);
+      signed.update(challenge);
+      return signed.verify(serverResponse);
+   }
+   
+   /**
+    **   Signs the server's challenge with a user's private key and has the
+    **   server verify it.
+    **   
+    **   @param a The server stub.
+    **   @param username The user's username.
+    **   @param userKey The user's private key.
+    **   @return Whether the user has been verified or not.
+    **/
+   static boolean verifyUser(Auction a, String username, PrivateKey userKey) throws java.rmi.RemoteException, java.security.NoSuchAlgorithmException, java.security.InvalidKeyException, java.security.SignatureException {
+      byte[] challenge = a.getChallenge();
+      
+      Signature signing = Signature.getInstance("SHA1withDSA"); 
+      signing.initSign(userKey);
+      signing.update(challenge);
+      return a.returnChallenge(signing.sign(), username);
+   }
+   
+   /**
+    **   Generates a new pair of keys for a user and sends the server the
+    **   public one.
+    **   
+    **   @param a The server stub.
+    **   @param username The user's username.
+    **   @return The user's keys.
+    **/
+   static KeyPair exchangeKeys(Auction a, String username) throws java.rmi.RemoteException, java.security.NoSuchAlgorithmException {
+      KeyPairGenerator keyGen = KeyPairGenerator.getInstance("DSA");
+      SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+      keyGen.initialize(1024, random);
+
+      KeyPair pair = keyGen.generateKeyPair();   
+      a.sendPublicKey(pair.getPublic(), username);
+      return pair;
+   }
+   
    /*
     *    Sets the suite of options to present to the user.
     */
@@ -235,6 +337,19 @@ public class AuctionClient {
       options.add("Close auction");
       options.add("View all auctions");
       options.add("Bid on auction");
+      options.add("View auctions by price");
+      options.add("View auctions below reserve");
+      options.add("View auctions ending soon");
+      options.add("View my auctions");
+      options.add("View my leading bids");
+      options.add("View my wins");
+      options.add("View my closed auctions");
+      options.add("View closed auction");
+      options.add("View bid history");
+      options.add("View categories");
+      options.add("View hottest auctions");
+      options.add("Import auctions");
+      options.add("Export auctions");
       options.add("Quit");
       
       debugOptions = new ArrayList<String>();
@@ -266,12 +381,16 @@ public class AuctionClient {
    private static void createNewAuction(UserWrapper currentUser) throws java.rmi.RemoteException {
       float startPrice = 0.0f;
       float reservePrice = 0.0f;
+      long endTime = Long.MAX_VALUE;
       Scanner in = new Scanner(System.in);
       
       try {
          System.out.print("Enter description: ");
          String desc = in.nextLine();
          
+         System.out.print("Enter category (leave blank for "+AuctionWrapper.DEFAULT_CATEGORY+"): ");
+         String category = in.nextLine();
+         
          System.out.print("Enter starting price: \u00A3");
          startPrice = Float.parseFloat(in.nextLine());
          
@@ -280,13 +399,53 @@ public class AuctionClient {
             reservePrice = Float.parseFloat(in.nextLine());
          }
          
-         a.openNewAuction(new AuctionWrapper(0, desc, currentUser, startPrice, reservePrice));
+         System.out.print("Enter duration in hours (leave blank for no end): ");
+         String duration = in.nextLine().trim();
+         if (!duration.isEmpty()) {
+            endTime = System.currentTimeMillis() + (long)(Float.parseFloat(duration) * 60 * 60 * 1000);
+         }
+         
+         a.openNewAuction(RequestIds.next(), System.currentTimeMillis(), new AuctionWrapper(0, desc, currentUser, startPrice, reservePrice, endTime, category));
          System.out.println(a.getStatusofLast());
       } catch(NumberFormatException ex){
          System.out.println("\nError: not a valid price\n");
       }   
    }
    
+   /*
+    *    Prompts for a CSV file and opens every auction in it.
+    */
+   private static void importAuctions(UserWrapper currentUser) throws java.rmi.RemoteException {
+      Scanner in = new Scanner(System.in);
+      
+      System.out.print("Enter file to import: ");
+      try {
+         int opened = AuctionTransfer.importCsv(a, Paths.get(in.nextLine().trim()), currentUser);
+         System.out.println(opened+" auctions opened.");
+      } catch (RemoteException e) {
+         throw e;
+      } catch (IOException e) {
+         System.out.println("\nError: "+e.getMessage()+"\n");
+      }
+   }
+   
+   /*
+    *    Prompts for a file and writes every open auction to it as CSV.
+    */
+   private static void exportAuctions() throws java.rmi.RemoteException {
+      Scanner in = new Scanner(System.in);
+      
+      System.out.print("Enter file to export to: ");
+      try {
+         int written = AuctionTransfer.exportCsv(a, Paths.get(in.nextLine().trim()));
+         System.out.println(written+" auctions exported.");
+      } catch (RemoteException e) {
+         throw e;
+      } catch (IOException e) {
+         System.out.println("\nError: "+e.getMessage()+"\n");
+      }
+   }
+   
    /*
     *    Closes an auction (after sending the request off for validation).
     */
@@ -299,7 +458,7 @@ public class AuctionClient {
          System.out.print("Enter auction number: ");
          id = Integer.parseInt(in.nextLine());
          
-         a.closeAuction(id, currentUser);
+         a.closeAuction(RequestIds.next(), System.currentTimeMillis(), id, currentUser);
          System.out.println(a.getStatusofLast());
       } else {
          System.out.println("\nNo auctions available\n");
@@ -341,13 +500,153 @@ public class AuctionClient {
     *    Displays all the available auctions.
     */
    private static void displayAuctions() throws java.rmi.RemoteException {
-      if (!a.showAllAuctions().isEmpty()) {
+      printAuctions(a.showAllAuctions());
+   }
+   
+   /*
+    *    Prompts for a price range and displays the auctions in it.
+    */
+   private static void displayAuctionsByPrice() throws java.rmi.RemoteException {
+      Scanner in = new Scanner(System.in);
+      
+      try {
+         System.out.print("Enter minimum price: \u00A3");
+         float min = Float.parseFloat(in.nextLine());
+         
+         System.out.print("Enter maximum price: \u00A3");
+         float max = Float.parseFloat(in.nextLine());
+         
+         printAuctions(a.showAuctionsByPrice(min, max));
+      } catch(NumberFormatException ex){
+         System.out.println("\nError: not a valid price\n");
+      }
+   }
+   
+   /*
+    *    Displays a closed auction, looked up by ID.
+    */
+   private static void displayClosedAuction() throws java.rmi.RemoteException {
+      Scanner in = new Scanner(System.in);
+      
+      try {
+         System.out.print("Enter auction ID: ");
+         AuctionWrapper auction = a.getClosedAuction(Integer.parseInt(in.nextLine()));
+         
+         if (auction == null) {
+            System.out.println("\nError: no closed auction with that ID\n");
+         } else {
+            printAuctions(new ArrayList<AuctionWrapper>(Arrays.asList(auction)));
+         }
+      } catch(NumberFormatException ex){
+         System.out.println("\nError: not a valid ID\n");
+      }
+   }
+   
+   /*
+    *    Displays the bids on an auction, a page at a time.
+    */
+   private static void displayBidHistory() throws java.rmi.RemoteException {
+      Scanner in = new Scanner(System.in);
+      
+      try {
+         System.out.print("Enter auction ID: ");
+         int id = Integer.parseInt(in.nextLine());
+         
+         int offset = 0;
+         ArrayList<BidWrapper> page;
+         do {
+            page = a.showBidHistory(id, offset, 20);
+            if (page == null) {
+               System.out.println("\nError: no auction with that ID\n");
+               return;
+            }
+            if (offset == 0 && page.isEmpty()) {
+               System.out.println("\nNo bids placed\n");
+               return;
+            }
+            if (offset == 0) {
+               System.out.println();
+               System.out.println("Time\t\t\t\tBidder\tPrice");
+               for (int i = 0; i < 80; i++) System.out.print("-");
+               System.out.println();
+            }
+            for(BidWrapper bid: page) {
+               System.out.println(java.time.Instant.ofEpochMilli(bid.getTime())+"\t"+bid.getBidder().getUsername()+"\t\u00A3"+String.format("%.2f", bid.getPrice()));
+            }
+            offset += page.size();
+            if (page.size() < 20) break;
+            System.out.print("Show more? (y/n) ");
+         } while (in.nextLine().trim().equalsIgnoreCase("y"));
+         System.out.println("");
+      } catch(NumberFormatException ex){
+         System.out.println("\nError: not a valid ID\n");
+      }
+   }
+   
+   /*
+    *    Displays the number of open auctions in each category, split by
+    *    price.
+    */
+   private static void displayCategoryCounts() throws java.rmi.RemoteException {
+      FacetCounts counts = a.showCategoryCounts();
+      if (counts == null || counts.getTotal() == 0) {
+         System.out.println("\nNo auctions available\n");
+         return;
+      }
+      
+      System.out.println();
+      System.out.print("Category\tTotal");
+      for (int band = 0; band < FacetCounts.getBandCount(); band++) {
+         System.out.print("\t\u00A3"+FacetCounts.getBandLabel(band));
+      }
+      System.out.println();
+      for (int i = 0; i < 80; i++) System.out.print("-");
+      System.out.println();
+      for(String category: counts.getCategories()) {
+         System.out.print(category+"\t"+counts.getCount(category));
+         for (int band = 0; band < FacetCounts.getBandCount(); band++) {
+            System.out.print("\t"+counts.getCount(category, band));
+         }
+         System.out.println();
+      }
+      System.out.println("");
+   }
+   
+   /*
+    *    Displays the auctions with the most bids over the last five
+    *    minutes and over the last hour.
+    */
+   private static void displayHottestAuctions() throws java.rmi.RemoteException {
+      String[] titles = {"Last 5 minutes", "Last hour"};
+      for (int i = 0; i < titles.length; i++) {
+         ArrayList<HotAuctionWrapper> hottest = a.showHottestAuctions(i == 1, 10);
+         System.out.println("\n"+titles[i]);
+         if (hottest == null || hottest.isEmpty()) {
+            System.out.println("No bids placed");
+            continue;
+         }
+         System.out.println("#\tBids\tPrice\tDesc");
+         for (int j = 0; j < 80; j++) System.out.print("-");
+         System.out.println();
+         for(HotAuctionWrapper hot: hottest) {
+            AuctionWrapper auction = hot.getAuction();
+            System.out.println(auction.getID()+"\t"+hot.getBids()+"\t\u00A3"+String.format("%.2f", auction.getPrice())+"\t"+auction.getDesc());
+         }
+      }
+      System.out.println("");
+   }
+   
+   /*
+    *    Displays the given auctions.
+    */
+   private static void printAuctions(ArrayList<AuctionWrapper> auctions) {
+      if (auctions != null && !auctions.isEmpty()) {
          System.out.println();
-         System.out.println("#\tOwner\tPrice\tDesc");
+         System.out.println("#\tOwner\tPrice\tCategory\tDesc");
          for (int i = 0; i < 80; i++) System.out.print("-");
          System.out.println();
-         for(AuctionWrapper auction: a.showAllAuctions()){
-            System.out.println(auction.getID()+"\t"+auction.getOwner().getUsername()+"\t\u00A3"+String.format("%.2f", auction.getPrice())+"\t"+auction.getDesc());
+         for(AuctionWrapper auction: auctions){
+            System.out.println(auction.getID()+"\t"+auction.getOwner().getUsername()+"\t\u00A3"+String.format("%.2f", auction.getPrice())+"\t"+auction.getCategory()+"\t"+auction.getDesc());
          }
          System.out.println("");
       } else {
@@ -372,8 +671,9 @@ public class AuctionClient {
             System.out.print("Enter bid amount: \u00A3");
             price = Float.parseFloat(in.nextLine());
             
-            a.bidOnAuction(id, currentUser, price);
+            a.bidOnAuction(RequestIds.next(), System.currentTimeMillis(), id, currentUser, price);
             System.out.println(a.getStatusofLast());
+            a.subscribeToAuction(listener, id);
          } catch(NumberFormatException ex){
             System.out.println("\nError: not a valid price\n");
          }
@@ -382,6 +682,19 @@ public class AuctionClient {
       }   
    }
    
+   /*
+    *    Prints the events pushed by the server as they arrive.
+    */
+   private static class Notifier extends java.rmi.server.UnicastRemoteObject implements AuctionListener {
+      Notifier() throws java.rmi.RemoteException {
+         super();
+      }
+      
+      public void onEvent(AuctionEvent event) {
+         System.out.println("\n[Notification] "+event+"\n");
+      }
+   }
+   
    /*
     *    Reads a user's private key from a file.
     */
@@ -0,0 +1,154 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class represents a change to an auction pushed to subscribers.
+ **/
+
+import java.io.*;
+import java.util.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class AuctionEvent implements Serializable {
+   /**
+    **   The kinds of event.
+    **/
+   public enum Type { PRICE_CHANGED, OUTBID, CLOSED }
+
+   private long request;
+   private Type type;
+   private int auctionID;
+   private String desc;
+   private float price;
+   private UserWrapper user;
+   private ArrayList<String> recipients;
+
+   /**
+    **   Constructor Method.
+    **   @param type The kind of event.
+    **   @param auction The auction it concerns.
+    **   @param price The price the event leaves the auction at.
+    **   @param user The new highest bidder or the winner, if any.
+    **   @param recipients The usernames of the users to tell, besides the
+    **   subscribers to the auction.
+    **/
+   public AuctionEvent(Type type, AuctionWrapper auction, float price, UserWrapper user, String... recipients) {
+      this(RequestIds.NONE, type, auction, price, user, recipients);
+   }
+
+   /**
+    **   Constructor Method.
+    **   @param request The ID of the request that raised the event, so
+    **   that the copies raised by a request sent more than once are
+    **   delivered once, or `RequestIds.NONE`.
+    **   @param type The kind of event.
+    **   @param auction The auction it concerns.
+    **   @param price The price the event leaves the auction at.
+    **   @param user The new highest bidder or the winner, if any.
+    **   @param recipients The usernames of the users to tell, besides the
+    **   subscribers to the auction.
+    **/
+   public AuctionEvent(long request, Type type, AuctionWrapper auction, float price, UserWrapper user, String... recipients) {
+      this.request = request;
+      this.type = type;
+      this.auctionID = auction.getID();
+      this.desc = auction.getDesc();
+      this.price = price;
+      this.user = user;
+      this.recipients = new ArrayList<String>(Arrays.asList(recipients));
+   }
+
+   /**
+    **   Accessor Method. Gets the ID of the request that raised the event.
+    **   @return The request ID, or `RequestIds.NONE`.
+    **/
+   public long getRequest() {
+      return this.request;
+   }
+
+   /**
+    **   Accessor Method. Gets the kind of event.
+    **   @return The event type.
+    **/
+   public Type getType() {
+      return this.type;
+   }
+
+   /**
+    **   Accessor Method. Gets the ID of the auction.
+    **   @return The auction ID.
+    **/
+   public int getAuctionID() {
+      return this.auctionID;
+   }
+
+   /**
+    **   Accessor Method. Gets the auction description.
+    **   @return The auction description.
+    **/
+   public String getDesc() {
+      return this.desc;
+   }
+
+   /**
+    **   Accessor Method. Gets the auction price after the event.
+    **   @return The auction price.
+    **/
+   public float getPrice() {
+      return this.price;
+   }
+
+   /**
+    **   Accessor Method. Gets the new highest bidder or the winner.
+    **   @return The user, or `null`.
+    **/
+   public UserWrapper getUser() {
+      return this.user;
+   }
+
+   /**
+    **   Accessor Method. Gets the usernames to tell besides the auction's
+    **   subscribers.
+    **   @return The usernames.
+    **/
+   public List<String> getRecipients() {
+      return this.recipients;
+   }
+
+   /**
+    **   Describes the event for display.
+    **   @return The description.
+    **/
+   public String toString() {
+      switch(type) {
+      case PRICE_CHANGED:
+         return "Auction #"+auctionID+" ("+desc+") is now \u00A3"+String.format("%.2f", price)+", bid by "+user.getUsername();
+      case OUTBID:
+         return "You have been outbid on auction #"+auctionID+" ("+desc+"): now \u00A3"+String.format("%.2f", price);
+      default:
+         return "Auction #"+auctionID+" ("+desc+") has closed"+((user == null) ? " with no winner" : ", won by "+user.getUsername());
+      }
+   }
+}
@@ -29,10 +29,8 @@ import java.util.*;
 import java.security.*;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
-import org.jgroups.JChannel;
-import org.jgroups.blocks.RpcDispatcher;
-import org.jgroups.blocks.RequestOptions;
-import org.jgroups.blocks.ResponseMode;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.jgroups.View;
 import org.jgroups.util.*;
 import java.lang.reflect.InvocationTargetException;
@@ -41,49 +39,120 @@ import java.lang.reflect.InvocationTargetException;
  **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
  **   @version 2.0
  **/
-public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements Auction {
-   private ArrayList<AuctionWrapper> auctions;
-   private ArrayList<UserWrapper> users;
+public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements Auction, FrontEndMXBean {
+   private static final Comparator<AuctionWrapper> BY_ID = (x, y) -> Integer.compare(x.getID(), y.getID());
+   private static final Comparator<AuctionWrapper> BY_PRICE = (x, y) -> Float.compare(x.getPrice(), y.getPrice());
+   private static final Comparator<AuctionWrapper> BY_RESERVE_GAP = (x, y) -> Float.compare(x.getReserveGap(), y.getReserveGap());
+   private static final Comparator<AuctionWrapper> BY_END_TIME = (x, y) -> Long.compare(x.getEndTime(), y.getEndTime());
+   private static final Comparator<HotAuctionWrapper> BY_BIDS = (x, y) -> (x.getBids() != y.getBids()) ? Integer.compare(y.getBids(), x.getBids()) : Integer.compare(x.getAuction().getID(), y.getAuction().getID());
+   private static final int SHARDS = Integer.getInteger("auctionprog.shards", 2);
+   private static final int REPLICAS = Integer.getInteger("auctionprog.replicas", 3);
+   private static final int MAX_PAGE = 1000;
+   private static final long CLOCK_SKEW = Long.getLong("auctionprog.clock.skew", 60 * 1000L);
+   private static final String KEY_DIR = System.getProperty("auctionprog.keys", "../key")+"/server/";
    String status;
+   private static final ThreadLocal<String> threadStatus = new ThreadLocal<String>();
    byte[] challenge = new byte[1024];
-   static JChannel channel;
-   static RpcDispatcher disp;
-   static RequestOptions opts = new RequestOptions(ResponseMode.GET_ALL, 5000);
+   static Shard[] shards;
+   static EventHub events;
+   static AtomicInteger nextShard = new AtomicInteger();
+   private TrafficRecorder recorder;
+   private OperationMetrics operations = new OperationMetrics();
+   private AdmissionControl admission = new AdmissionControl();
    
    /**   
     **   Constructor Method. Required to declare the `RemoteException`
-    **   instance. Also sets up three replicas and creates a test suite of
-    **   three auctions.
+    **   instance. The first front end also generates the server keys,
+    **   sets up the shard groups, each with three replicas, and creates a
+    **   test suite of three auctions; later ones join the existing groups
+    **   and share the keys.
+    **   
+    **   @param frontEnd The index of this front end.
     **/
-   public AuctionImpl() throws java.rmi.RemoteException {
+   public AuctionImpl(int frontEnd) throws java.rmi.RemoteException {
       super();
       
-      System.out.println("Server initilising...");
+      Log.info("Server initialising...");
       
-      auctions = new ArrayList<AuctionWrapper>();
-      users = new ArrayList<UserWrapper>();
       status = "";
-      generateKeys();
+      if (frontEnd == 0) generateKeys();
       
-      System.out.println("Server initiliasation successful.");
+      Log.info("Server initialisation successful.");
       
       try {
-         channel=new JChannel();
-         disp = new RpcDispatcher(channel, this);
-         channel.connect("AuctionProg");
-         
-         System.out.println("Creating replicas...");
-         new Replica().start();
-         new Replica().start();
-         new Replica().start();
-         System.out.println("Replicas created.");
-         
-         UserWrapper testUser = new UserWrapper("Test", "test@test.com", "test");
-         this.openNewAuction(new AuctionWrapper(1, "test1", testUser, 12.0f, 14.0f));
-         this.openNewAuction(new AuctionWrapper(2, "test2", testUser, 12.0f, 14.0f));
-         this.openNewAuction(new AuctionWrapper(3, "test3", testUser, 12.0f, 14.0f));
+         shards = new Shard[SHARDS];
+         if (frontEnd == 0) {
+            Log.info("Creating replicas...");
+            for (int i = 0; i < SHARDS; i++) {
+               for (int j = 0; j < REPLICAS; j++) {
+                  new Replica().start(i, SHARDS);
+               }
+            }
+            Log.info("Replicas created.");
+         }
+         for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(i, frontEnd);
+            shards[i].connect();
+         }
+         events = new EventHub();
+         events.connect(SHARDS);
+         if (frontEnd == 0) {
+            UserWrapper testUser = new UserWrapper("Test", "test@test.com", "test");
+            this.openNewAuction(RequestIds.NONE, System.currentTimeMillis(), new AuctionWrapper(1, "test1", testUser, 12.0f, 14.0f));
+            this.openNewAuction(RequestIds.NONE, System.currentTimeMillis(), new AuctionWrapper(2, "test2", testUser, 12.0f, 14.0f));
+            this.openNewAuction(RequestIds.NONE, System.currentTimeMillis(), new AuctionWrapper(3, "test3", testUser, 12.0f, 14.0f));
+         }
       } catch (Exception e) {
-         System.out.println(e);
+         Log.error(e);
+      }
+      
+      // Only calls from clients are captured, not the test suite above.
+      recorder = TrafficRecorder.open(frontEnd);
+      OperationMetrics.register(this, "AuctionProg:type=FrontEnd,index="+frontEnd);
+   }
+   
+   /**
+    **   Invokes an `Auction` method on behalf of a client, timing it.
+    **   Both the RMI and the binary endpoints call in through here. A
+    **   call that admission control turns away fails with an
+    **   `OverloadedException`.
+    **   
+    **   @param method The method.
+    **   @param args The arguments to pass.
+    **   @param caller The host the call came from, whose rate it counts
+    **   against.
+    **   @return The method's return value.
+    **/
+   public Object invoke(java.lang.reflect.Method method, Object[] args, String caller) throws IllegalAccessException, InvocationTargetException {
+      boolean admitted;
+      try {
+         admitted = admission.admit(method.getName(), caller);
+      } catch (OverloadedException e) {
+         throw new InvocationTargetException(e);
+      }
+      FlightEvents.RemoteCall event = new FlightEvents.RemoteCall();
+      event.begin();
+      long start = System.nanoTime();
+      try {
+         return method.invoke(this, args);
+      } catch (InvocationTargetException e) {
+         operations.error(method.getName());
+         throw e;
+      } finally {
+         long latency = (System.nanoTime() - start) / 1000;
+         if (admitted) admission.release(latency);
+         operations.record(method.getName(), latency);
+         if (event.shouldCommit()) {
+            event.operation = method.getName();
+            event.auctionId = -1;
+            for(Object arg: (args == null) ? new Object[0] : args) {
+               if (arg instanceof Integer) {
+                  event.auctionId = (Integer)arg;
+                  break;
+               }
+            }
+            event.commit();
+         }
       }
    }
    
@@ -101,12 +170,55 @@ public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements
          writeKey(pair.getPublic());
          writeKey(pair.getPrivate());
       } catch (Exception e) {
-         System.out.println();
-         System.out.println("Exception");
-         System.out.println(e);
+         Log.error(e);
+      }
+   }
+   
+   /*
+    *    Records an incoming call, if traffic capture is on.
+    */
+   private void capture(String method, Object... args) {
+      if (recorder != null) recorder.record(method, args);
+   }
+   
+   /*
+    *    Picks the shard group to open the first of a number of new
+    *    auctions on. A request with an ID always picks the same one, so
+    *    that a retry lands where the first attempt did; otherwise the
+    *    groups are taken in turn.
+    */
+   private static int firstShard(long requestId, int count) {
+      if (requestId != RequestIds.NONE) return Long.hashCode(requestId);
+      return nextShard.getAndAdd(count);
+   }
+   
+   /*
+    *    Checks the time a caller stamped on a request. Every copy of a
+    *    request carries the same stamp, which the shard groups record as
+    *    the time of the change, so it is used as it is; only a stamp so
+    *    far ahead of this front end that it would push every replica's
+    *    deduplication window forward is turned away.
+    */
+   private static void checkStamp(long time) throws java.rmi.RemoteException {
+      if (time > System.currentTimeMillis() + CLOCK_SKEW) {
+         throw new java.rmi.RemoteException("Request stamped "+time+", ahead of this front end's clock");
       }
    }
    
+   /*
+    *    Routes an auction ID to the shard group holding it.
+    */
+   private static Shard shardFor(int id) {
+      return shards[Shard.indexOf(id, shards.length)];
+   }
+   
+   /*
+    *    Gets the shard group holding the users.
+    */
+   private static Shard userShard() {
+      return shards[0];
+   }
+   
    /*
     *    Methods to validate operations and then remotely invoke methods
     *    using JGroups.
@@ -114,87 +226,168 @@ public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements
     */
    
    /**
-    **   Invokes the creation of a new auction.
+    **   Invokes the creation of a new auction on the next shard group in
+    **   turn. A retry goes to the same group as the first attempt, which
+    **   hands back the ID it gave then rather than opening the auction
+    **   twice.
     **   
+    **   @param requestId An ID the caller makes up for the request, which
+    **   it passes again if it retries, or `RequestIds.NONE`.
+    **   @param time When the caller made the request, which it passes
+    **   again, unchanged, with the request ID.
     **   @param newAuction The new auction to create.
     **/
-   public void openNewAuction(AuctionWrapper newAuction) throws java.rmi.RemoteException {
-      System.out.println("Opening new auction...");
+   public void openNewAuction(long requestId, long time, AuctionWrapper newAuction) throws java.rmi.RemoteException {
+      capture("openNewAuction", requestId, time, newAuction);
+      checkStamp(time);
+      Log.debug("Opening new auction...");
       try {
-         disp.callRemoteMethods(null, "createAuction", new Object[]{newAuction}, new Class[]{AuctionWrapper.class}, opts);
-         status = "Auction successfully opened.";
-         System.out.println("Auction successfully opened.");
-         return;
+         Shard shard = shards[Math.floorMod(firstShard(requestId, 1), shards.length)];
+         Integer id = shard.callFirst("createAuction", new Object[]{requestId, time, newAuction}, new Class[]{long.class, long.class, AuctionWrapper.class});
+         // `null` if no replica in the group answered.
+         if (id != null) {
+            setStatus("Auction no. "+id+" successfully opened.");
+            Log.debug("Auction no. {} successfully opened.", id);
+            return;
+         }
       } catch (Exception e) {
-         System.out.println(e);
+         Log.error(e);
       }
-         status = "Auction could not be opened.";
-      System.out.println("Auction unsuccessfully opened.");
+      setStatus("Auction could not be opened.");
+      Log.debug("Auction unsuccessfully opened.");
+   }
+   
+   /**
+    **   Invokes the creation of a batch of new auctions. The auctions are
+    **   dealt out across the shard groups as `openNewAuction` would deal
+    **   them one at a time, but each group is sent its share in a single
+    **   call, and the groups are called at once. A retry deals them out
+    **   the same way, so no group opens its share twice.
+    **   
+    **   @param requestId An ID the caller makes up for the request, which
+    **   it passes again if it retries, or `RequestIds.NONE`.
+    **   @param time When the caller made the request, which it passes
+    **   again, unchanged, with the request ID.
+    **   @param newAuctions The new auctions to create.
+    **   @return The number of auctions opened.
+    **/
+   public int openNewAuctions(long requestId, long time, ArrayList<AuctionWrapper> newAuctions) throws java.rmi.RemoteException {
+      capture("openNewAuctions", requestId, time, newAuctions);
+      checkStamp(time);
+      Log.debug("Opening {} new auctions...", newAuctions.size());
+      int opened = 0;
+      try {
+         ArrayList<ArrayList<AuctionWrapper>> batches = new ArrayList<ArrayList<AuctionWrapper>>();
+         for (int i = 0; i < shards.length; i++) {
+            batches.add(new ArrayList<AuctionWrapper>());
+         }
+         int first = firstShard(requestId, newAuctions.size());
+         for (int i = 0; i < newAuctions.size(); i++) {
+            batches.get(Math.floorMod(first + i, shards.length)).add(newAuctions.get(i));
+         }
+         
+         ArrayList<NotifyingFuture<RspList<int[]>>> futures = new ArrayList<NotifyingFuture<RspList<int[]>>>();
+         for (int i = 0; i < shards.length; i++) {
+            if (!batches.get(i).isEmpty()) {
+               futures.add(shards[i].<int[]>callAsync("createAuctions", new Object[]{requestId, time, batches.get(i)}, new Class[]{long.class, long.class, ArrayList.class}));
+            }
+         }
+         for(NotifyingFuture<RspList<int[]>> future: futures) {
+            int[] ids = future.get().getFirst();
+            if (ids != null) opened += ids.length;
+         }
+      } catch (Exception e) {
+         Log.error(e);
+      }
+      setStatus(opened+" of "+newAuctions.size()+" auctions successfully opened.");
+      Log.debug("{} of {} auctions successfully opened.", opened, newAuctions.size());
+      return opened;
    }
    
    /**
     **   Validates that the calling user owns the auction in question, and
     **   if invokes the closing of the auction, returning the winning
-    **   bidder (if applicaable).
+    **   bidder (if applicaable). The shard group checks the owner as it
+    **   closes the auction, so that a retry finds the auction it closed.
     **   
+    **   @param requestId An ID the caller makes up for the request, which
+    **   it passes again if it retries, or `RequestIds.NONE`.
+    **   @param time When the caller made the request, which it passes
+    **   again, unchanged, with the request ID.
     **   @param id The ID of the auction to bid on.
     **   @param currentUser The user placing the bid.
     **   @return The highest bidder, or `null`.
     **/
-   public void closeAuction(int id, UserWrapper currentUser) throws java.rmi.RemoteException {
-      System.out.println("Closing auction #"+id+"...");
-      AuctionWrapper auction = this.getAuction(id);
-      UserWrapper response = null;
+   public void closeAuction(long requestId, long time, int id, UserWrapper currentUser) throws java.rmi.RemoteException {
+      capture("closeAuction", requestId, time, id, currentUser);
+      checkStamp(time);
+      Log.debug("Closing auction #{}...", id);
+      AuctionWrapper auction = null;
       
-      if (auction.getOwner().getUsername().equals(currentUser.getUsername())) {
-         System.out.println("Ownership rights confirmed.");
-         try {
-            RspList rsp_list = disp.callRemoteMethods(null, "removeAuction", new Object[]{auction}, new Class[]{AuctionWrapper.class}, opts);
-            System.out.println("Auction successfully closed.");
-            
-            response = (UserWrapper)rsp_list.getFirst();
-            if (response.getUsername().equals("server")) {
-               status = "Auction closed with no winner";
-            } else {
-               status = "Auction won by: "+response.getName()+" <"+response.getEmail()+">";
-            }
-            return;
-         } catch (Exception e) {
-            System.out.println(e);
+      try {
+         auction = shardFor(id).callFirst("removeAuction", new Object[]{requestId, time, id, currentUser.getUsername()}, new Class[]{long.class, long.class, int.class, String.class});
+      } catch (Exception e) {
+         Log.error(e);
+      }
+      
+      if (validate("closeAuction", id, auction != null)) {
+         Log.debug("Auction #{} successfully closed.", id);
+         UserWrapper winner = auction.getHighestBidder();
+         if (winner == null || !auction.isSold()) {
+            setStatus("Auction closed with no winner");
+            events.publish(new AuctionEvent(requestId, AuctionEvent.Type.CLOSED, auction, auction.getPrice(), null, currentUser.getUsername()));
+         } else {
+            setStatus("Auction won by: "+winner.getName()+" <"+winner.getEmail()+">");
+            events.publish(new AuctionEvent(requestId, AuctionEvent.Type.CLOSED, auction, auction.getPrice(), winner, currentUser.getUsername(), winner.getUsername()));
          }
+         return;
       }
-      status = "You do not own this auction.";
-      System.out.println("Auction closing unsuccessful.");
+      setStatus("You do not own this auction.");
+      Log.debug("Auction closing unsuccessful.");
    }
    
    /**
     **   Validates a bid is higher than the given auctions current price,
-    **   and if so invokes the setting the a new bid and bidder.
+    **   and if so invokes the setting the a new bid and bidder. The shard
+    **   group compares the prices as it takes the bid, and hands back the
+    **   auction as it was, so a retry is told the same as the first
+    **   attempt.
     **   
+    **   @param requestId An ID the caller makes up for the request, which
+    **   it passes again if it retries, or `RequestIds.NONE`.
+    **   @param time When the caller made the request, which it passes
+    **   again, unchanged, with the request ID.
     **   @param id The ID of the auction in question.
     **   @param bidder The user bidding on the auction.
     **   @param price The amount bid.
     **/
-   public void bidOnAuction(int id, UserWrapper bidder, float price) throws java.rmi.RemoteException {
-      AuctionWrapper auction;
-      System.out.println("Placing bid on auction #"+id+"...");
+   public void bidOnAuction(long requestId, long time, int id, UserWrapper bidder, float price) throws java.rmi.RemoteException {
+      capture("bidOnAuction", requestId, time, id, bidder, price);
+      checkStamp(time);
+      Log.debug("Placing bid on auction #{}...", id);
       
       try {
-         if ((auction = this.getAuction(id)) != null) {
-            if (price > auction.getPrice()) {
-               disp.callRemoteMethods(null, "setBid", new Object[]{auction, bidder, price}, new Class[]{AuctionWrapper.class, UserWrapper.class, float.class}, opts);
-               System.out.println("Bid successful.");
-               status = "Bid successful";
+         AuctionWrapper auction = shardFor(id).callFirst("setBid", new Object[]{requestId, time, id, bidder, price}, new Class[]{long.class, long.class, int.class, UserWrapper.class, float.class});
+         if (auction != null) {
+            if (validate("bidOnAuction", id, price > auction.getPrice())) {
+               Log.debug("Bid successful.");
+               setStatus("Bid successful");
+               
+               UserWrapper previous = auction.getHighestBidder();
+               events.publish(new AuctionEvent(requestId, AuctionEvent.Type.PRICE_CHANGED, auction, price, bidder, auction.getOwner().getUsername()));
+               if (previous != null && !previous.getUsername().equals(bidder.getUsername())) {
+                  events.publish(new AuctionEvent(requestId, AuctionEvent.Type.OUTBID, auction, price, bidder, previous.getUsername()));
+               }
             } else {
-               System.out.println("Bid unsuccessful.");
-               status = "Price less than highest bid";
+               Log.debug("Bid unsuccessful.");
+               setStatus("Price less than highest bid");
             }
          } else {
-            System.out.println("Bid unsuccessful.");
-            status = "Invalid auction ID";
+            Log.debug("Bid unsuccessful.");
+            setStatus("Invalid auction ID");
          }
       } catch (Exception e) {
-         System.out.println(e);
+         Log.error(e);
       }
    }
    
@@ -204,14 +397,252 @@ public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements
     **   @return An `ArrayList` of `AuctionWrapper`s.
     **/
    public ArrayList<AuctionWrapper> showAllAuctions() throws java.rmi.RemoteException {
+      capture("showAllAuctions");
+      return this.queryAuctions("getAllAuctions", null, null, BY_ID);
+   }   
+   
+   /**
+    **   Invokes the returning of a page of the current auctions. Each
+    **   shard group returns its own next page, and the lowest IDs of the
+    **   merged pages make up the page overall.
+    **   
+    **   @param afterId The ID to start after (0 for the first page).
+    **   @param limit The most auctions to return.
+    **   @return An `ArrayList` of `AuctionWrapper`s, in order of ID.
+    **/
+   public ArrayList<AuctionWrapper> showAuctionsAfter(int afterId, int limit) throws java.rmi.RemoteException {
+      capture("showAuctionsAfter", afterId, limit);
+      limit = Math.max(limit, 0);
+      ArrayList<AuctionWrapper> merged = this.queryAuctions("getAuctionsAfter", new Object[]{afterId, limit}, new Class[]{int.class, int.class}, BY_ID);
+      if (merged != null && merged.size() > limit) {
+         merged.subList(limit, merged.size()).clear();
+      }
+      return merged;
+   }
+   
+   /**
+    **   Invokes the returning of a list of the auctions whose current
+    **   price lies in the given range.
+    **   
+    **   @param min The lowest price, inclusive.
+    **   @param max The highest price, inclusive.
+    **   @return An `ArrayList` of `AuctionWrapper`s, cheapest first.
+    **/
+   public ArrayList<AuctionWrapper> showAuctionsByPrice(float min, float max) throws java.rmi.RemoteException {
+      capture("showAuctionsByPrice", min, max);
+      return this.queryAuctions("getAuctionsByPrice", new Object[]{min, max}, new Class[]{float.class, float.class}, BY_PRICE);
+   }
+   
+   /**
+    **   Invokes the returning of a list of the auctions whose reserve
+    **   price has not yet been met.
+    **   
+    **   @return An `ArrayList` of `AuctionWrapper`s, closest to the
+    **   reserve first.
+    **/
+   public ArrayList<AuctionWrapper> showAuctionsBelowReserve() throws java.rmi.RemoteException {
+      capture("showAuctionsBelowReserve");
+      return this.queryAuctions("getAuctionsBelowReserve", null, null, BY_RESERVE_GAP);
+   }
+   
+   /**
+    **   Invokes the returning of a list of the auctions ending within
+    **   the given time from now.
+    **   
+    **   @param within The window to search, in milliseconds. A window too
+    **   long to add to the current time takes in every auction still to
+    **   end.
+    **   @return An `ArrayList` of `AuctionWrapper`s, soonest first, which
+    **   is empty if the window is negative.
+    **/
+   public ArrayList<AuctionWrapper> showAuctionsEndingWithin(long within) throws java.rmi.RemoteException {
+      capture("showAuctionsEndingWithin", within);
+      if (within < 0) {
+         setStatus("The window cannot be negative.");
+         return new ArrayList<AuctionWrapper>();
+      }
+      long now = System.currentTimeMillis();
+      long until = (within > Long.MAX_VALUE - now) ? Long.MAX_VALUE : now + within;
+      
+      return this.queryAuctions("getAuctionsEndingBetween", new Object[]{now, until}, new Class[]{long.class, long.class}, BY_END_TIME);
+   }
+     
+   /**
+    **   Invokes the returning of a list of the open auctions owned by
+    **   the given user.
+    **   
+    **   @param user The user in question.
+    **   @return An `ArrayList` of `AuctionWrapper`s.
+    **/
+   public ArrayList<AuctionWrapper> showMyAuctions(UserWrapper user) throws java.rmi.RemoteException {
+      capture("showMyAuctions", user);
+      return this.queryAuctions("getAuctionsOwnedBy", new Object[]{user.getUsername()}, new Class[]{String.class}, BY_ID);
+   }
+   
+   /**
+    **   Invokes the returning of a list of the open auctions on which
+    **   the given user is the highest bidder.
+    **   
+    **   @param user The user in question.
+    **   @return An `ArrayList` of `AuctionWrapper`s.
+    **/
+   public ArrayList<AuctionWrapper> showMyLeadingBids(UserWrapper user) throws java.rmi.RemoteException {
+      capture("showMyLeadingBids", user);
+      return this.queryAuctions("getAuctionsLedBy", new Object[]{user.getUsername()}, new Class[]{String.class}, BY_ID);
+   }
+   
+   /**
+    **   Invokes the returning of a list of the closed auctions won by
+    **   the given user.
+    **   
+    **   @param user The user in question.
+    **   @return An `ArrayList` of `AuctionWrapper`s.
+    **/
+   public ArrayList<AuctionWrapper> showMyWins(UserWrapper user) throws java.rmi.RemoteException {
+      capture("showMyWins", user);
+      return this.queryAuctions("getAuctionsWonBy", new Object[]{user.getUsername()}, new Class[]{String.class}, BY_ID);
+   }
+   
+   /**
+    **   Invokes the returning of a list of the closed auctions owned by
+    **   the given user.
+    **   
+    **   @param user The user in question.
+    **   @return An `ArrayList` of `AuctionWrapper`s.
+    **/
+   public ArrayList<AuctionWrapper> showMyClosedAuctions(UserWrapper user) throws java.rmi.RemoteException {
+      capture("showMyClosedAuctions", user);
+      return this.queryAuctions("getClosedAuctionsOwnedBy", new Object[]{user.getUsername()}, new Class[]{String.class}, BY_ID);
+   }
+   
+   /**
+    **   Accessor Method. Retrieves a closed auction by its ID from the
+    **   archive of the shard group that held it.
+    **   
+    **   @param id The ID of the auction.
+    **   @return The relevant `AuctionWrapper`, or `null`.
+    **/
+   public AuctionWrapper getClosedAuction(int id) throws java.rmi.RemoteException {
+      capture("getClosedAuction", id);
       try {
-         RspList rsp_list=disp.callRemoteMethods(null, "getAllAuctions", null, null, opts);
-         return (ArrayList<AuctionWrapper>)rsp_list.getFirst();
+         return shardFor(id).read("getClosedAuction", new Object[]{id}, new Class[]{int.class});
       } catch (Exception e) {
-         System.out.println(e);
+         Log.error(e);
       }
       return null;
-   }   
+   }
+   
+   /**
+    **   Invokes the returning of a page of the bids placed on an
+    **   auction, open or closed, oldest first. At most `MAX_PAGE` bids
+    **   are returned at once.
+    **   
+    **   @param id The ID of the auction.
+    **   @param offset The number of bids to skip.
+    **   @param limit The most bids to return.
+    **   @return An `ArrayList` of `BidWrapper`s, or `null` if there is no
+    **   such auction.
+    **/
+   public ArrayList<BidWrapper> showBidHistory(int id, int offset, int limit) throws java.rmi.RemoteException {
+      capture("showBidHistory", id, offset, limit);
+      try {
+         return shardFor(id).read("getBidHistory", new Object[]{id, Math.max(0, offset), Math.max(0, Math.min(limit, MAX_PAGE))}, new Class[]{int.class, int.class, int.class});
+      } catch (Exception e) {
+         Log.error(e);
+      }
+      return null;
+   }
+   
+   /**
+    **   Invokes the returning of the number of open auctions in each
+    **   category and price band. Each shard group keeps its own counts as
+    **   its auctions change, so this costs only as much as there are
+    **   counts, however many auctions there are.
+    **   
+    **   @return The `FacetCounts`, or `null`.
+    **/
+   public FacetCounts showCategoryCounts() throws java.rmi.RemoteException {
+      capture("showCategoryCounts");
+      try {
+         ArrayList<Future<FacetCounts>> futures = new ArrayList<Future<FacetCounts>>();
+         for(Shard shard: shards) {
+            futures.add(shard.<FacetCounts>readAsync("getFacetCounts", null, null));
+         }
+         
+         FacetCounts merged = new FacetCounts();
+         for(Future<FacetCounts> future: futures) {
+            FacetCounts part = future.get();
+            if (part != null) merged.addAll(part);
+         }
+         return merged;
+      } catch (Exception e) {
+         Log.error(e);
+      }
+      return null;
+   }
+   
+   /**
+    **   Invokes the returning of the open auctions with the most bids
+    **   over the last five minutes, or over the last hour. Each shard group
+    **   keeps its auctions ranked as bids are placed and returns its own
+    **   busiest, and the busiest of those make up the list overall. At
+    **   most `MAX_PAGE` auctions are returned.
+    **   
+    **   @param lastHour Whether to count over the last hour.
+    **   @param limit The most auctions to return.
+    **   @return An `ArrayList` of `HotAuctionWrapper`s, busiest first.
+    **/
+   public ArrayList<HotAuctionWrapper> showHottestAuctions(boolean lastHour, int limit) throws java.rmi.RemoteException {
+      capture("showHottestAuctions", lastHour, limit);
+      limit = Math.max(0, Math.min(limit, MAX_PAGE));
+      try {
+         ArrayList<Future<ArrayList<HotAuctionWrapper>>> futures = new ArrayList<Future<ArrayList<HotAuctionWrapper>>>();
+         for(Shard shard: shards) {
+            futures.add(shard.<ArrayList<HotAuctionWrapper>>readAsync("getHottestAuctions", new Object[]{lastHour, limit}, new Class[]{boolean.class, int.class}));
+         }
+         
+         ArrayList<HotAuctionWrapper> merged = new ArrayList<HotAuctionWrapper>();
+         for(Future<ArrayList<HotAuctionWrapper>> future: futures) {
+            ArrayList<HotAuctionWrapper> part = future.get();
+            if (part != null) merged.addAll(part);
+         }
+         Collections.sort(merged, BY_BIDS);
+         if (merged.size() > limit) {
+            merged.subList(limit, merged.size()).clear();
+         }
+         return merged;
+      } catch (Exception e) {
+         Log.error(e);
+      }
+      return null;
+   }
+   
+   /*
+    *    Remotely invokes a query returning a list of auctions on one
+    *    replica in every shard group at once, then merges the replies in
+    *    the given order.
+    *    Each shard's reply is already in that order, so the sort only has
+    *    to merge the runs.
+    */
+   private ArrayList<AuctionWrapper> queryAuctions(String method, Object[] args, Class[] types, Comparator<AuctionWrapper> order) {
+      try {
+         ArrayList<Future<ArrayList<AuctionWrapper>>> futures = new ArrayList<Future<ArrayList<AuctionWrapper>>>();
+         for(Shard shard: shards) {
+            futures.add(shard.<ArrayList<AuctionWrapper>>readAsync(method, args, types));
+         }
+         
+         ArrayList<AuctionWrapper> merged = new ArrayList<AuctionWrapper>();
+         for(Future<ArrayList<AuctionWrapper>> future: futures) {
+            ArrayList<AuctionWrapper> part = future.get();
+            if (part != null) merged.addAll(part);
+         }
+         Collections.sort(merged, order);
+         return merged;
+      } catch (Exception e) {
+         Log.error(e);
+      }
+      return null;
+   }
      
    /**
     **   Accessor Method. Invokes the retrieval of a preexisting user, 
@@ -221,151 +652,127 @@ public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements
     **   @return The relevant `UserWrapper`.
     **/
    public UserWrapper getUser(String username) throws java.rmi.RemoteException {
+      capture("getUser", username);
       try {
-         RspList rsp_list=disp.callRemoteMethods(null, "getAllUsers", null, null, opts);
-         for(UserWrapper user: (ArrayList<UserWrapper>)rsp_list.getFirst()) {
+         ArrayList<UserWrapper> users = userShard().read("getAllUsers", null, null);
+         for(UserWrapper user: users) {
             if (user.getUsername().equals(username)) {
-               status = "Welcome back, "+user.getName()+".";
+               setStatus("Welcome back, "+user.getName()+".");
                return user;
             }
          }
       } catch (Exception e) {
-         System.out.println(e);
+         Log.error(e);
       }
-      status = "No such user.";
+      setStatus("No such user.");
       return null;
    }
    
    /**
     **   Tests that the username entered is not already taken, and
     **   invokes the creation of a new user with the given details if not.
+    **   The shard group checks the username as it creates the user, so
+    **   two users cannot register the same one at once, and a retry is
+    **   handed back the user it created.
     **   
+    **   @param requestId An ID the caller makes up for the request, which
+    **   it passes again if it retries, or `RequestIds.NONE`.
+    **   @param time When the caller made the request, which it passes
+    **   again, unchanged, with the request ID.
     **   @param newUser The new user to validate and create.
     **   @return The newly-created user.
     **/
-   public UserWrapper registerUser(UserWrapper newUser) throws java.rmi.RemoteException {
+   public UserWrapper registerUser(long requestId, long time, UserWrapper newUser) throws java.rmi.RemoteException {
+      capture("registerUser", requestId, time, newUser);
+      checkStamp(time);
       try {
-         RspList rsp_list=disp.callRemoteMethods(null, "getAllUsers", null, null, opts);
-
-         if (!rsp_list.isEmpty()) {
-            for(UserWrapper user: (ArrayList<UserWrapper>)rsp_list.getFirst()){
-               if (user.getUsername().equals(newUser.getUsername())) {
-                  status = "Username taken. Either choose a new username or, if trying to login to an existing account, rerun the program as 'AuctionClient <username>'.";
-                  return null;
-               }
-            }
+         UserWrapper created = userShard().callFirst("createUser", new Object[]{requestId, time, newUser}, new Class[]{long.class, long.class, UserWrapper.class});
+         if (created == null) {
+            setStatus("Username taken. Either choose a new username or, if trying to login to an existing account, rerun the program as 'AuctionClient <username>'.");
+            return null;
          }
          
-         disp.callRemoteMethods(null, "createUser", new Object[]{newUser}, new Class[]{UserWrapper.class}, opts);
-         status = "New user created. Hello "+newUser.getName()+".";
-         return newUser;    
+         setStatus("New user created. Hello "+created.getName()+".");
+         return created;    
       } catch (Exception e) {
-         System.out.println(e);
+         Log.error(e);
       }   
-      status = "Something went wrong";
+      setStatus("Something went wrong");
       return null;
    }
    
    /*
-    *    Methods that are remotely invoked via RPC on both this and the
-    *    `Replica`s due to multicasting.
+    *    Methods to manage subscriptions to pushed events.
     */
-    
-   /**
-    **   Creates an auction with the given details.
-    **   
-    **   @param newAuction An `AuctionWrapper` of the new auction.
-    **/
-   private void createAuction(AuctionWrapper newAuction) throws java.rmi.RemoteException {
-      int id = 0;
-      
-      // Gives the new auction the lowest unclaimed ID.
-      for(AuctionWrapper auction: auctions){
-         if (id <= auction.getID()) {
-            id = auction.getID();
-         }
-      }
-      
-      newAuction.setID(++id);
-      auctions.add(newAuction);
-      status = "Auction no. "+id+" successfully created.";
-   }
    
    /**
-    **   Removes an auction. If the reserve price was met, also returns 
-    **   the winning bidder, otherwise an indicative `UserWrapper` with
-    **   username of "server".
+    **   Subscribes a client to the price changes and closing of an
+    **   auction.
     **   
-    **   @param auction The `AuctionWrapper` of the auction to remove.
-    **   @return The `UserWrapper` of the highest bidder, or `null`.
+    **   @param listener The client's callback.
+    **   @param id The ID of the auction.
     **/
-   private UserWrapper removeAuction(AuctionWrapper auction) throws java.rmi.RemoteException {
-      auctions.remove(auction);
-      
-      if (auction.getPrice() >= auction.getReserve()) {
-         return auction.getHighestBidder();
-      } else {
-         return new UserWrapper("err", "err", "server");
-      }
+   public void subscribeToAuction(AuctionListener listener, int id) throws java.rmi.RemoteException {
+      events.subscribeToAuction(listener, id);
    }
    
    /**
-    **   Mutator Method. Sets the bid on an auction.
+    **   Subscribes a client to the events that concern a user: being
+    **   outbid, and the closing of auctions they own or have won.
     **   
-    **   @param auction The `AuctionWrapper` of the auction to bid on.
-    **   @param user The user bidding on the auction.
-    **   @param price The amount the user has bid.
+    **   @param listener The client's callback.
+    **   @param username The user's username.
     **/
-   private void setBid(AuctionWrapper auction, UserWrapper user, float price) {
-      this.getAuction(auction.getID()).setBid(user, price);
+   public void subscribeToUser(AuctionListener listener, String username) throws java.rmi.RemoteException {
+      events.subscribeToUser(listener, username);
    }
    
    /**
-    **   Accessor Method. Retrieves a list of all the auctions.
+    **   Removes all of a client's subscriptions.
     **   
-    **   @return An `ArrayList` of `AuctionWrapper`s.
+    **   @param listener The client's callback.
     **/
-   private ArrayList<AuctionWrapper> getAllAuctions() {
-      return this.auctions;
+   public void unsubscribe(AuctionListener listener) throws java.rmi.RemoteException {
+      events.unsubscribe(listener);
    }
    
    /**
-    **   Accessor Method. Retrieves an auction by its ID.
+    **   Accessor Method. Retrieves an auction by its ID from the shard
+    **   group holding it.
     **   
     **   @param id The ID of the auction to retrieve.
     **   @return The `AuctionWrapper` indicated.
     **/
    private AuctionWrapper getAuction(int id) {
+      FlightEvents.Lookup event = new FlightEvents.Lookup();
+      event.begin();
+      AuctionWrapper auction = null;
       try {
-         RspList rsp_list=disp.callRemoteMethods(null, "getAllAuctions", null, null, opts);
-         for(AuctionWrapper auction: (ArrayList<AuctionWrapper>)rsp_list.getFirst()) {
-            if (auction.getID() == id) {
-               return auction;
-            }
-         }
+         auction = shardFor(id).read("getAuction", new Object[]{id}, new Class[]{int.class});
       } catch (Exception e) {
-         System.out.println(e);
+         Log.error(e);
       }
-      return null;
+      if (event.shouldCommit()) {
+         event.auctionId = id;
+         event.shard = Shard.indexOf(id, shards.length);
+         event.found = (auction != null);
+         event.commit();
+      }
+      return auction;
    }
    
-   /**
-    **   Creates a new user.
-    **
-    **   @param newUser The new user to create.
-    **/
-   private void createUser(UserWrapper newUser) {
-      System.out.println("doing it");
-      this.users.add(newUser);
-   }
-  
-   /**
-    **   Gets the list of all users.
-    **
-    **   @return An `ArrayList` of users.
-    **/
-   private ArrayList<UserWrapper> getAllUsers() {
-      return this.users;
+   /*
+    *    Records the outcome of checking an operation is allowed.
+    */
+   private static boolean validate(String operation, int id, boolean passed) {
+      FlightEvents.Validation event = new FlightEvents.Validation();
+      if (event.shouldCommit()) {
+         event.operation = operation;
+         event.auctionId = id;
+         event.passed = passed;
+         event.commit();
+      }
+      return passed;
    }
    
    /*
@@ -379,15 +786,38 @@ public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements
     **   @return The status message.
     **/
    public String getStatusofLast() {
+      capture("getStatusofLast");
       return "\n"+status+"\n";
    }
    
+   /**
+    **   Accessor Method. Gets and clears the status left by the last
+    **   action taken on the calling thread. Unlike `getStatusofLast`, this
+    **   is not overwritten by other clients' calls in between.
+    **   
+    **   @return The status message, or `null` if none was set.
+    **/
+   public String takeThreadStatus() {
+      String last = threadStatus.get();
+      threadStatus.remove();
+      return last;
+   }
+   
+   /*
+    *    Sets the status resulting from an action.
+    */
+   private void setStatus(String status) {
+      this.status = status;
+      threadStatus.set(status);
+   }
+   
    /**
     **   Accessor Method. Gets the server's public key.
     **   
     **   @return The public key.
     **/
    public PublicKey getPublicKey() throws java.rmi.RemoteException {
+      capture("getPublicKey");
       return this.readKey("server");
    }
    
@@ -398,6 +828,7 @@ public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements
     **   @param usernam The user's username.
     **/
    public void sendPublicKey(PublicKey key, String username) throws java.rmi.RemoteException {
+      capture("sendPublicKey", key, username);
       this.writeKey(key, username);
    }
    
@@ -409,13 +840,11 @@ public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements
    private static void writeKey(PrivateKey pKey) throws java.rmi.RemoteException {
       try {
          byte[] key = pKey.getEncoded();
-         FileOutputStream keyfos = new FileOutputStream("../key/server/serverpriv.key");
+         FileOutputStream keyfos = new FileOutputStream(KEY_DIR+"serverpriv.key");
          keyfos.write(key);
          keyfos.close();
       } catch (Exception e) {
-         System.out.println();
-         System.out.println("Exception");
-         System.out.println(e);
+         Log.error(e);
       }
    }
    
@@ -427,13 +856,11 @@ public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements
    private static void writeKey(PublicKey pKey) throws java.rmi.RemoteException {
       try {
          byte[] key = pKey.getEncoded();
-         FileOutputStream keyfos = new FileOutputStream("../key/server/serverpub.key");
+         FileOutputStream keyfos = new FileOutputStream(KEY_DIR+"serverpub.key");
          keyfos.write(key);
          keyfos.close();
       } catch (Exception e) {
-         System.out.println();
-         System.out.println("Exception");
-         System.out.println(e);
+         Log.error(e);
       }
    }
    
@@ -445,13 +872,11 @@ public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements
    private static void writeKey(PublicKey pKey, String username) throws java.rmi.RemoteException {
       try {
          byte[] key = pKey.getEncoded();
-         FileOutputStream keyfos = new FileOutputStream("../key/server/"+username+"pub.key");
+         FileOutputStream keyfos = new FileOutputStream(KEY_DIR+username+"pub.key");
          keyfos.write(key);
          keyfos.close();
       } catch (Exception e) {
-         System.out.println();
-         System.out.println("Exception");
-         System.out.println(e);
+         Log.error(e);
       }
    }
    
@@ -461,20 +886,23 @@ public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements
     *    @return The private key.
     */
    private static PrivateKey readKey() throws java.rmi.RemoteException {
+      FlightEvents.KeyLoad event = new FlightEvents.KeyLoad();
+      event.begin();
       try {
-         FileInputStream keyfis = new FileInputStream("../key/server/serverpriv.key");
+         FileInputStream keyfis = new FileInputStream(KEY_DIR+"serverpriv.key");
          byte[] encKey = new byte[keyfis.available()];
          keyfis.read(encKey);
          keyfis.close();
+         event.owner = "server";
+         event.bytes = encKey.length;
+         event.commit();
 
          PKCS8EncodedKeySpec privKeySpec = new PKCS8EncodedKeySpec(encKey);
 
          KeyFactory keyFactory = KeyFactory.getInstance("DSA");
          return keyFactory.generatePrivate(privKeySpec);
       } catch (Exception e) {
-         System.out.println();
-         System.out.println("Exception");
-         System.out.println(e);
+         Log.error(e);
          return null;
       }
    }
@@ -486,21 +914,24 @@ public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements
     *    @return The public key.
     */
    private static PublicKey readKey(String username) throws java.rmi.RemoteException {
+      FlightEvents.KeyLoad event = new FlightEvents.KeyLoad();
+      event.begin();
       try {
-         FileInputStream keyfis = new FileInputStream("../key/server/"+username+"pub.key");
+         FileInputStream keyfis = new FileInputStream(KEY_DIR+username+"pub.key");
          byte[] encKey = new byte[keyfis.available()];  
          keyfis.read(encKey);
 
          keyfis.close();
+         event.owner = username;
+         event.bytes = encKey.length;
+         event.commit();
          
          X509EncodedKeySpec pubKeySpec = new X509EncodedKeySpec(encKey);
          
          KeyFactory keyFactory = KeyFactory.getInstance("DSA");
       return keyFactory.generatePublic(pubKeySpec);
       } catch (Exception e) {
-         System.out.println();
-         System.out.println("Exception");
-         System.out.println(e);
+         Log.error(e);
          return null;
       }
    }
@@ -513,6 +944,7 @@ public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements
     **   @return The signature.
     **/
    public byte[] challengeServer(byte[] challenge) throws java.rmi.RemoteException {   
+      capture("challengeServer", challenge);
       try {
          Signature dsa = Signature.getInstance("SHA1withDSA"); 
          dsa.initSign(this.readKey());
@@ -521,9 +953,7 @@ public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements
          
          return realSig;
       } catch (Exception e) {
-         System.out.println();
-         System.out.println("Exception");
-         System.out.println(e);
+         Log.error(e);
          return null;
       }
    }
@@ -534,6 +964,7 @@ public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements
     **   @return The challenge.
     **/
    public byte[] getChallenge() throws java.rmi.RemoteException {
+      capture("getChallenge");
       challenge = new byte[1024];
       new Random().nextBytes(this.challenge);
       return this.challenge;
@@ -548,11 +979,11 @@ public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements
     **   @return Whether the user has been verified or not.
     **/
    public boolean returnChallenge(byte[] retChal, String username) throws java.rmi.RemoteException {
-      System.out.println("Authenticating user '"+username+"'...");
-      System.out.println(users);
+      capture("returnChallenge", retChal, username);
+      Log.debug("Authenticating user '{}'...", username);
       try {
-         RspList rsp_list=disp.callRemoteMethods(null, "getAllUsers", null, null, opts);
-         for(UserWrapper user: (ArrayList<UserWrapper>)rsp_list.getFirst()) {
+         ArrayList<UserWrapper> users = userShard().read("getAllUsers", null, null);
+         for(UserWrapper user: users) {
             if (user.getUsername().equals(username)) {
                Signature sig = Signature.getInstance("SHA1withDSA");
                sig.initVerify(this.readKey(username));
@@ -560,43 +991,191 @@ public class AuctionImpl extends java.rmi.server.UnicastRemoteObject implements
                sig.update(this.challenge);
                
                boolean verifies = sig.verify(retChal);
-               System.out.println(username+" signature verifies: " + verifies);
+               Log.info("{} signature verifies: {}", username, verifies);
                return verifies;
             }
          }
       } catch (Exception e) {
-         System.out.println(e);
+         Log.error(e);
       }
       
-      System.out.println("User '"+username+"' not found.");
+      Log.warn("User '{}' not found.", username);
       return false;
    }
    
    /**
-    **   Creates a new replica of the server.
+    **   Creates a new replica of the server in each shard group.
     **/
    public void replicate() throws java.rmi.RemoteException {
       try {
-         new Replica().start();
-         status = "Server replication successful.";
+         for (int i = 0; i < shards.length; i++) {
+            new Replica().start(i, shards.length);
+         }
+         setStatus("Server replication successful.");
       } catch (Exception e) {
-         System.out.println(e);
-         status = "Server replication failed.";
+         Log.error(e);
+         setStatus("Server replication failed.");
+      }
+   }
+   
+   /*
+    *    Metrics published over JMX.
+    */
+   
+   /**
+    **   Accessor Method. Gets the latency of each `Auction` method, in
+    **   microseconds.
+    **   
+    **   @return The latencies, by method.
+    **/
+   public SortedMap<String, LatencyHistogram> getOperationLatencies() {
+      return operations.getValues();
+   }
+   
+   /**
+    **   Accessor Method. Gets the number of calls to each `Auction`
+    **   method that failed.
+    **   
+    **   @return The error counts, by method.
+    **/
+   public SortedMap<String, Long> getOperationErrors() {
+      return operations.getErrors();
+   }
+   
+   /**
+    **   Accessor Method. Gets the time from sending each kind of RPC to a
+    **   shard group to having all its responses, in microseconds.
+    **   
+    **   @return The latencies, by `<shard>/<method>`.
+    **/
+   public SortedMap<String, LatencyHistogram> getRpcLatencies() {
+      TreeMap<String, LatencyHistogram> all = new TreeMap<String, LatencyHistogram>();
+      for(Shard shard: shards) {
+         for(Map.Entry<String, LatencyHistogram> entry: shard.getCalls().getValues().entrySet()) {
+            all.put(shard.getIndex()+"/"+entry.getKey(), entry.getValue());
+         }
+      }
+      return all;
+   }
+   
+   /**
+    **   Accessor Method. Gets the number of RPCs to a shard group that
+    **   failed outright.
+    **   
+    **   @return The error counts, by `<shard>/<method>`.
+    **/
+   public SortedMap<String, Long> getRpcErrors() {
+      TreeMap<String, Long> all = new TreeMap<String, Long>();
+      for(Shard shard: shards) {
+         for(Map.Entry<String, Long> entry: shard.getCalls().getErrors().entrySet()) {
+            all.put(shard.getIndex()+"/"+entry.getKey(), entry.getValue());
+         }
+      }
+      return all;
+   }
+   
+   /**
+    **   Accessor Method. Gets how each replica has answered this front
+    **   end's RPCs.
+    **   
+    **   @return The counts, by `<shard>/<replica>`.
+    **/
+   public SortedMap<String, ReplicaStats> getReplicaResponses() {
+      TreeMap<String, ReplicaStats> all = new TreeMap<String, ReplicaStats>();
+      for(Shard shard: shards) {
+         for(Map.Entry<String, ReplicaStats> entry: shard.getReplicaStats().entrySet()) {
+            all.put(shard.getIndex()+"/"+entry.getKey(), entry.getValue());
+         }
       }
+      return all;
+   }
+   
+   /**
+    **   Accessor Method. Gets the size of the RPC messages this front end
+    **   has marshalled, in bytes.
+    **   
+    **   @return The sizes, by `<shard>/<direction>`.
+    **/
+   public SortedMap<String, LatencyHistogram> getPayloadSizes() {
+      TreeMap<String, LatencyHistogram> all = new TreeMap<String, LatencyHistogram>();
+      for(Shard shard: shards) {
+         for(Map.Entry<String, LatencyHistogram> entry: shard.getPayloads().getValues().entrySet()) {
+            all.put(shard.getIndex()+"/"+entry.getKey(), entry.getValue());
+         }
+      }
+      return all;
+   }
+   
+   /**
+    **   Accessor Method. Gets how well the messages this front end sends
+    **   and receives compress, and the time spent compressing them.
+    **   
+    **   @return The metrics, by `<shard>/<metric>` or `rmi/<metric>`.
+    **/
+   public SortedMap<String, LatencyHistogram> getCompression() {
+      TreeMap<String, LatencyHistogram> all = new TreeMap<String, LatencyHistogram>();
+      for(Shard shard: shards) {
+         for(Map.Entry<String, LatencyHistogram> entry: shard.getCompression().getValues().entrySet()) {
+            all.put(shard.getIndex()+"/"+entry.getKey(), entry.getValue());
+         }
+      }
+      for(Map.Entry<String, LatencyHistogram> entry: CompressingSocketFactory.getMetrics().getValues().entrySet()) {
+         all.put("rmi/"+entry.getKey(), entry.getValue());
+      }
+      return all;
+   }
+   
+   /**
+    **   Accessor Method. Gets the current limit on calls in flight.
+    **   
+    **   @return The limit.
+    **/
+   public int getConcurrencyLimit() {
+      return admission.getLimit();
+   }
+   
+   /**
+    **   Accessor Method. Gets the number of calls in flight.
+    **   
+    **   @return The count.
+    **/
+   public int getCallsInFlight() {
+      return admission.getInFlight();
+   }
+   
+   /**
+    **   Accessor Method. Gets the number of calls admission control has
+    **   turned away.
+    **   
+    **   @return The counts, by method.
+    **/
+   public SortedMap<String, Long> getRejectedCalls() {
+      return admission.getRejected();
    }
    
    /**
     **   Closes the server and replicas.
     **/
    public void close() throws java.rmi.RemoteException {
-      System.out.println("Stopping replicas");
-      try {
-         disp.callRemoteMethods(null, "stop", null, null, opts);
-      } catch (Exception e) {
-         System.out.println(e);
-      }
-      channel.close();
-      disp.stop();
+      this.stop();
       System.exit(-1);
    }
+   
+   /**
+    **   Stops the replicas, the shard group connections and the event
+    **   hub, leaving the process running.
+    **/
+   public void stop() {
+      Log.info("Stopping replicas");
+      if (recorder != null) recorder.stop();
+      events.stop();
+      for(Shard shard: shards) {
+         try {
+            shard.call("stop", null, null);
+         } catch (Exception e) {
+            Log.error(e);
+         }
+         shard.stop();
+      }
+   }
 }
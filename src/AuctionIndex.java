@@ -0,0 +1,148 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class represents the sorted secondary indexes over a set of
+ ** auctions. An index is never changed once made; each change makes a new
+ ** one sharing the rest, so it can be published with the snapshot it
+ ** indexes.
+ **/
+
+import java.util.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public final class AuctionIndex {
+   /**
+    **   The indexes over no auctions.
+    **/
+   public static final AuctionIndex EMPTY = new AuctionIndex(SortedTree.<Key, AuctionWrapper>empty(),
+         SortedTree.<Key, AuctionWrapper>empty(), SortedTree.<Key, AuctionWrapper>empty());
+
+   private final SortedTree<Key, AuctionWrapper> byPrice;
+   private final SortedTree<Key, AuctionWrapper> byReserveGap;
+   private final SortedTree<Key, AuctionWrapper> byEndTime;
+
+   /*
+    *    Constructor Method.
+    */
+   private AuctionIndex(SortedTree<Key, AuctionWrapper> byPrice, SortedTree<Key, AuctionWrapper> byReserveGap, SortedTree<Key, AuctionWrapper> byEndTime) {
+      this.byPrice = byPrice;
+      this.byReserveGap = byReserveGap;
+      this.byEndTime = byEndTime;
+   }
+
+   /**
+    **   Makes the indexes with an auction added. The indexed values are
+    **   captured now, so the auction must be removed before they change.
+    **
+    **   @param auction The auction to add.
+    **   @return The new indexes.
+    **/
+   public AuctionIndex with(AuctionWrapper auction) {
+      return new AuctionIndex(byPrice.with(new Key(auction.getPrice(), auction.getID()), auction),
+            byReserveGap.with(new Key(auction.getReserveGap(), auction.getID()), auction),
+            byEndTime.with(new Key(auction.getEndTime(), auction.getID()), auction));
+   }
+
+   /**
+    **   Makes the indexes with an auction removed.
+    **
+    **   @param auction The auction to remove.
+    **   @return The new indexes.
+    **/
+   public AuctionIndex without(AuctionWrapper auction) {
+      return new AuctionIndex(byPrice.without(new Key(auction.getPrice(), auction.getID())),
+            byReserveGap.without(new Key(auction.getReserveGap(), auction.getID())),
+            byEndTime.without(new Key(auction.getEndTime(), auction.getID())));
+   }
+
+   /**
+    **   Gets the auctions whose current price lies in the given range,
+    **   cheapest first.
+    **
+    **   @param min The lowest price, inclusive.
+    **   @param max The highest price, inclusive.
+    **   @return The matching auctions.
+    **/
+   public ArrayList<AuctionWrapper> getByPrice(float min, float max) {
+      return byPrice.getBetween(Key.lowest(min), Key.highest(max));
+   }
+
+   /**
+    **   Gets the auctions whose reserve price has not yet been met,
+    **   closest to the reserve first.
+    **
+    **   @return The matching auctions.
+    **/
+   public ArrayList<AuctionWrapper> getBelowReserve() {
+      return byReserveGap.getAbove(Key.highest(0));
+   }
+
+   /**
+    **   Gets the auctions ending in the given window, soonest first.
+    **
+    **   @param from The start of the window, inclusive.
+    **   @param to The end of the window, inclusive.
+    **   @return The matching auctions.
+    **/
+   public ArrayList<AuctionWrapper> getEndingBetween(long from, long to) {
+      return byEndTime.getBetween(Key.lowest(from), Key.highest(to));
+   }
+
+   /*
+    *    An immutable index key. Ties on the indexed value are broken by
+    *    auction ID, so every auction has a distinct key.
+    */
+   private static final class Key implements Comparable<Key> {
+      private final double value;
+      private final int id;
+
+      Key(double value, int id) {
+         this.value = value;
+         this.id = id;
+      }
+
+      static Key lowest(double value) {
+         return new Key(value, Integer.MIN_VALUE);
+      }
+
+      static Key highest(double value) {
+         return new Key(value, Integer.MAX_VALUE);
+      }
+
+      public int compareTo(Key other) {
+         int cmp = Double.compare(this.value, other.value);
+         return (cmp != 0) ? cmp : Integer.compare(this.id, other.id);
+      }
+
+      public boolean equals(Object o) {
+         return (o instanceof Key) && compareTo((Key)o) == 0;
+      }
+
+      public int hashCode() {
+         return 31 * Double.hashCode(value) + id;
+      }
+   }
+}
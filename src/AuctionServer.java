@@ -32,28 +32,37 @@ import java.util.*;
  **   @version 2.0
  **/
 public class AuctionServer {
+   public static final String SERVICE_NAME = "AuctionService-";
+   public static final int NIO_PORT = Integer.getInteger("auctionprog.nio.port", 7070);
+   
    /**   
-    **   Constructor Method.
+    **   Constructor Method. Serves the front end over both RMI and the
+    **   binary protocol, the latter on `NIO_PORT` plus the index.
+    **
+    **   @param index The index of this front end.
     **/
-   public AuctionServer() {
+   public AuctionServer(int index) {
       
       try {
-       	Auction a = new AuctionImpl();
-       	Naming.rebind("rmi://localhost/AuctionService", a);
+       	AuctionImpl a = new AuctionImpl(index);
+       	Naming.rebind("rmi://localhost/"+SERVICE_NAME+index, MeteredAuction.export(a));
+         new NioServer(a, NIO_PORT + index).start();
       } catch (Exception e) {
-         System.out.println("Server Error: " + e);
+         Log.error("Server Error: {}", e);
       }
    }
 
    /**   
-    **   Runs the server.
+    **   Runs the server. The first front end (index 0) also starts the
+    **   replicas; any others started with a higher index join them.
     **
     **   @param args Command-line arguments.
     **/
    public static void main(String args[]) {
+      EventHub.boundCallbacks();
       displayIntro();
       
-      new AuctionServer();
+      new AuctionServer((args.length > 0) ? Integer.parseInt(args[0]) : 0);
    }
    
    /*
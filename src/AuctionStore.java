@@ -0,0 +1,711 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class represents the replicated auction and user state held by
+ ** each member of the group. Changes are applied one at a time by a
+ ** `MutationEngine`, and each batch of them is published to readers at
+ ** once; reads never wait on a change. Open auctions are kept by a
+ ** `StoreBackend`, on the heap unless `auctionprog.store` is `offheap`,
+ ** and closed auctions move out to an `AuctionArchive`. A `MerkleTree`
+ ** over the open auctions lets replicas check that they agree,
+ ** `FacetCounts` count them by category and price as they change, and
+ ** `HotAuctions` ranks them by how often they have been bid on lately.
+ **/
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class AuctionStore {
+   private static final int CREATE = 0;
+   private static final int CREATE_ALL = 1;
+   private static final int REMOVE = 2;
+   private static final int BID = 3;
+   private static final int CREATE_USER = 4;
+   private static final int REPAIR = 5;
+   private static final int CATCH_UP = 6;
+
+   private StoreBackend backend;
+   private MutationEngine engine;
+   private AuctionArchive archive;
+   private MerkleTree tree;
+   private FacetCounts facets;
+   private HotAuctions hot;
+   // The bids on each open auction, and the users who placed them.
+   private ConcurrentHashMap<Integer, BidHistory> histories;
+   private BidHistory.Bidders bidders;
+   // The results of recent requests, and the usernames taken. Only the
+   // engine's thread touches them.
+   private DedupCache dedup;
+   private volatile int dedupSize;
+   private HashSet<String> usernames;
+   // The highest auction ID handed out. IDs are never used twice, even
+   // after a restart, as the count carries on from the archive's. Only
+   // the engine's thread changes it.
+   private volatile int lastID;
+   private int shard;
+   private int shards;
+
+   /**
+    **   Constructor Method.
+    **
+    **   @param shard The index of the shard group this store belongs to.
+    **   @param shards The number of shard groups.
+    **/
+   public AuctionStore(int shard, int shards) {
+      this.shard = shard;
+      this.shards = shards;
+      if ("offheap".equals(System.getProperty("auctionprog.store"))) {
+         backend = new OffHeapBackend(shard, shards);
+      } else {
+         backend = new HeapBackend();
+      }
+      histories = new ConcurrentHashMap<Integer, BidHistory>();
+      bidders = new BidHistory.Bidders();
+      dedup = new DedupCache();
+      usernames = new HashSet<String>();
+      tree = new MerkleTree(shard, shards);
+      facets = new FacetCounts();
+      hot = new HotAuctions();
+      try {
+         archive = AuctionArchive.open(shard);
+         lastID = archive.getLastID();
+      } catch (IOException e) {
+         throw new UncheckedIOException("Could not open the archive for shard "+shard, e);
+      }
+      engine = new MutationEngine(new Writer(), "Store-"+shard);
+   }
+
+   /**
+    **   Stops applying changes, once those already made are done, and
+    **   closes the archive.
+    **/
+   public void close() {
+      engine.stop();
+      backend.close();
+      try {
+         archive.close();
+      } catch (IOException e) {
+         Log.error("Could not close the archive: {}", e);
+      }
+   }
+
+   /**
+    **   Creates a new auction. IDs are handed out in steps of the shard
+    **   count, so every ID maps back to this shard group, and are never
+    **   handed out again once the auction has closed.
+    **
+    **   @param request The ID of the request, or `RequestIds.NONE`.
+    **   @param time When the request was made, as stamped by the front
+    **   end.
+    **   @param newAuction The new auction to create.
+    **   @return The ID given to the auction.
+    **/
+   public int createAuction(long request, long time, AuctionWrapper newAuction) {
+      return (Integer)engine.submit(CREATE, request, newAuction, null, 0, time);
+   }
+
+   /**
+    **   Creates a batch of new auctions, which readers see appear all at
+    **   once.
+    **
+    **   @param request The ID of the request, or `RequestIds.NONE`.
+    **   @param time When the request was made, as stamped by the front
+    **   end.
+    **   @param newAuctions The new auctions to create.
+    **   @return The IDs given to the auctions, in the same order.
+    **/
+   public int[] createAuctions(long request, long time, ArrayList<AuctionWrapper> newAuctions) {
+      return (int[])engine.submit(CREATE_ALL, request, newAuctions, null, 0, time);
+   }
+
+   /**
+    **   Removes an auction, provided it is owned by the given user.
+    **
+    **   @param request The ID of the request, or `RequestIds.NONE`.
+    **   @param time When the request was made, as stamped by the front
+    **   end.
+    **   @param id The ID of the auction to remove.
+    **   @param username The username of the user closing it.
+    **   @return The auction as it was when closed, or `null` if there was
+    **   no such auction or the user does not own it.
+    **/
+   public AuctionWrapper removeAuction(long request, long time, int id, String username) {
+      return (AuctionWrapper)engine.submit(REMOVE, request, id, username, 0, time);
+   }
+
+   /**
+    **   Mutator Method. Sets a new bid on an auction, provided it is
+    **   higher than the current price, and adds it to the auction's
+    **   history.
+    **
+    **   @param request The ID of the request, or `RequestIds.NONE`.
+    **   @param time When the bid was placed, as stamped by the front end
+    **   so that every replica records the same time.
+    **   @param id The ID of the auction to bid on.
+    **   @param user The user bidding.
+    **   @param price The user's bid.
+    **   @return The auction as it was before the bid, or `null` if there
+    **   is no such auction. The bid was taken if its price is higher than
+    **   the auction's.
+    **/
+   public AuctionWrapper setBid(long request, long time, int id, UserWrapper user, float price) {
+      return (AuctionWrapper)engine.submit(BID, request, id, user, price, time);
+   }
+
+   /**
+    **   Creates a new user, provided the username is not taken.
+    **
+    **   @param request The ID of the request, or `RequestIds.NONE`.
+    **   @param time When the request was made, as stamped by the front
+    **   end.
+    **   @param newUser The new user to create.
+    **   @return The user, or `null` if the username is taken.
+    **/
+   public UserWrapper createUser(long request, long time, UserWrapper newUser) {
+      return (UserWrapper)engine.submit(CREATE_USER, request, newUser, null, 0, time);
+   }
+
+   /**
+    **   Brings auctions up to date with another replica's copies. An
+    **   auction missing here is added, unless it has been closed here or
+    **   its ID is above the last handed out here, as its creation is then
+    **   still on its way; one the other replica has closed is closed here
+    **   too; and of two open copies, the one with the higher bid is kept,
+    **   or with the same bid, the one whose bidder's username sorts last.
+    **   Every replica settles on the same copy whichever way round they
+    **   compare. Each auction added, replaced or closed takes the other
+    **   replica's bids on it in place of those here, the bids placed since
+    **   the latest here count towards the hottest auctions, and its owner
+    **   and bidders are added to the users if they are missing. The
+    **   facet counts follow the auctions themselves.
+    **
+    **   @param open The other replica's open auctions.
+    **   @param closed The other replica's closed auctions.
+    **   @param bids The other replica's bids on those of the auctions
+    **   that are behind here, by auction ID. An auction without them
+    **   keeps the bids it has here.
+    **   @return The number of auctions changed here.
+    **/
+   public int repair(ArrayList<AuctionWrapper> open, ArrayList<AuctionWrapper> closed, Map<Integer, ArrayList<BidWrapper>> bids) {
+      return (Integer)engine.submit(REPAIR, RequestIds.NONE, new Theirs(open, closed, bids), null, 0, 0);
+   }
+
+   /**
+    **   Gets the IDs of those of another replica's open auctions that are
+    **   missing here or further on there, so their bids can be fetched
+    **   for a repair.
+    **
+    **   @param open The other replica's open auctions.
+    **   @return The IDs.
+    **/
+   public int[] getBehind(ArrayList<AuctionWrapper> open) {
+      int[] ids = new int[open.size()];
+      int count = 0;
+      for(AuctionWrapper theirs: open) {
+         AuctionWrapper local = backend.get(theirs.getID());
+         if ((local == null) ? theirs.getID() <= lastID : isLater(theirs, local)) ids[count++] = theirs.getID();
+      }
+      return Arrays.copyOf(ids, count);
+   }
+
+   /**
+    **   Accessor Method. Gets the highest auction ID handed out, which
+    **   marks how far through the shard group's creations this store has
+    **   got.
+    **
+    **   @return The ID, or 0 if there has been none.
+    **/
+   public int getLastID() {
+      return this.lastID;
+   }
+
+   /**
+    **   Carries on handing out IDs from where another replica has got to,
+    **   when joining a shard group whose earlier creations this store has
+    **   not seen.
+    **
+    **   @param lastID The other replica's last ID.
+    **/
+   public void catchUp(int lastID) {
+      engine.submit(CATCH_UP, RequestIds.NONE, lastID, null, 0, 0);
+   }
+
+   /**
+    **   Gets the hashes of some nodes of the tree over the open auctions.
+    **
+    **   @param nodes The node indices.
+    **   @return The hashes, in the same order.
+    **/
+   public long[] getMerkleHashes(int[] nodes) {
+      return tree.get(nodes);
+   }
+
+   /**
+    **   Accessor Method. Gets the number of open auctions in each category
+    **   and price band. The counts are kept as auctions change, so this
+    **   costs only as much as there are counts.
+    **
+    **   @return A copy of the counts.
+    **/
+   public FacetCounts getFacetCounts() {
+      return facets.copy();
+   }
+
+   /**
+    **   Gets the open auctions with the most bids over the last few
+    **   minutes, or over the last hour. The ranking is kept as bids are
+    **   placed, so this costs only as much as the auctions asked for.
+    **
+    **   @param lastHour Whether to count over the last hour.
+    **   @param limit The most auctions to return.
+    **   @return The auctions and their bid counts, busiest first.
+    **/
+   public ArrayList<HotAuctionWrapper> getHottestAuctions(boolean lastHour, int limit) {
+      int[] top = hot.getTop(lastHour, limit, System.currentTimeMillis());
+      ArrayList<HotAuctionWrapper> result = new ArrayList<HotAuctionWrapper>(top.length / 2);
+      for (int i = 0; i < top.length; i += 2) {
+         // Leaves out an auction opened in a batch not yet published.
+         AuctionWrapper auction = backend.get(top[i]);
+         if (auction != null) result.add(new HotAuctionWrapper(auction, top[i + 1]));
+      }
+      return result;
+   }
+
+   /**
+    **   Accessor Method. Gets the open auctions hashed into some leaves of
+    **   the tree. Every auction is looked at, so this is for repairs
+    **   rather than reads.
+    **
+    **   @param leaves The leaves.
+    **   @return The auctions, in order of ID.
+    **/
+   public ArrayList<AuctionWrapper> getAuctionsInLeaves(int[] leaves) {
+      BitSet wanted = new BitSet();
+      for(int leaf: leaves) {
+         wanted.set(leaf);
+      }
+      ArrayList<AuctionWrapper> result = new ArrayList<AuctionWrapper>();
+      for(AuctionWrapper auction: backend.getAll()) {
+         if (wanted.get(tree.leafOf(auction.getID()))) result.add(auction);
+      }
+      return result;
+   }
+
+   /**
+    **   Accessor Method. Gets those of some auctions that have been
+    **   closed.
+    **
+    **   @param ids The auction IDs.
+    **   @return The closed auctions found.
+    **/
+   public ArrayList<AuctionWrapper> getClosedAuctions(int[] ids) throws IOException {
+      ArrayList<AuctionWrapper> result = new ArrayList<AuctionWrapper>();
+      for(int id: ids) {
+         AuctionWrapper auction = archive.get(id);
+         if (auction != null) result.add(auction);
+      }
+      return result;
+   }
+
+   /**
+    **   Accessor Method. Gets the number of requests remembered for
+    **   deduplication.
+    **
+    **   @return The count.
+    **/
+   public int getDedupSize() {
+      return dedupSize;
+   }
+
+   /*
+    *    Tests whether one open copy of an auction is further on than
+    *    another.
+    */
+   private static boolean isLater(AuctionWrapper a, AuctionWrapper b) {
+      if (a.getPrice() != b.getPrice()) return a.getPrice() > b.getPrice();
+      String x = (a.getHighestBidder() == null) ? "" : a.getHighestBidder().getUsername();
+      String y = (b.getHighestBidder() == null) ? "" : b.getHighestBidder().getUsername();
+      return x.compareTo(y) > 0;
+   }
+
+   /*
+    *    Applies changes on the engine's thread. Each sees the changes
+    *    before it in the same batch, whether or not they are published. A
+    *    change whose request has been seen already is not applied again;
+    *    the first result is handed back instead.
+    */
+   private class Writer implements MutationEngine.Handler {
+      public Object apply(int type, long request, Object a, Object b, float price, long time) {
+         if (request != RequestIds.NONE && dedup.contains(request)) {
+            return dedup.get(request);
+         }
+
+         Object result;
+         switch (type) {
+         case CREATE:
+            result = this.create((AuctionWrapper)a);
+            break;
+         case CREATE_ALL:
+            @SuppressWarnings("unchecked")
+            ArrayList<AuctionWrapper> newAuctions = (ArrayList<AuctionWrapper>)a;
+            int[] ids = new int[newAuctions.size()];
+            for (int i = 0; i < ids.length; i++) {
+               ids[i] = this.create(newAuctions.get(i));
+            }
+            result = ids;
+            break;
+         case REMOVE:
+            result = this.remove((Integer)a, (String)b);
+            break;
+         case BID:
+            result = this.bid((Integer)a, (UserWrapper)b, price, time);
+            break;
+         case CREATE_USER:
+            result = this.createUser((UserWrapper)a);
+            break;
+         case REPAIR:
+            result = this.repair((Theirs)a);
+            break;
+         case CATCH_UP:
+            lastID = Math.max(lastID, (Integer)a);
+            result = lastID;
+            break;
+         default:
+            throw new IllegalArgumentException("Unknown change "+type);
+         }
+
+         if (request != RequestIds.NONE) {
+            dedup.put(request, time, result);
+            dedupSize = dedup.size();
+         }
+         return result;
+      }
+
+      public void publish() {
+         backend.publish();
+      }
+
+      private int create(AuctionWrapper newAuction) {
+         // Gives the new auction the next unclaimed ID in this shard.
+         int id = (lastID == 0) ? shard + 1 : lastID + shards;
+         lastID = id;
+         newAuction.setID(id);
+         backend.add(newAuction);
+         tree.update(id, 0, MerkleTree.hash(newAuction));
+         facets.add(newAuction.getCategory(), newAuction.getPrice());
+         return id;
+      }
+
+      private AuctionWrapper remove(int id, String username) {
+         AuctionWrapper local = backend.getLatest(id);
+         if (local == null || local.getOwner() == null || !local.getOwner().getUsername().equals(username)) {
+            return null;
+         }
+
+         this.close(local, local);
+         return local;
+      }
+
+      /*
+       *    Closes an auction, archiving the given copy of it.
+       */
+      private void close(AuctionWrapper local, AuctionWrapper closed) {
+         int id = local.getID();
+         backend.remove(id);
+         tree.update(id, MerkleTree.hash(local), 0);
+         facets.remove(local.getCategory(), local.getPrice());
+         hot.remove(id);
+         try {
+            archive.add(closed, histories.remove(id), bidders);
+         } catch (IOException e) {
+            throw new UncheckedIOException("Could not archive auction "+id, e);
+         }
+      }
+
+      private AuctionWrapper bid(int id, UserWrapper user, float price, long time) {
+         AuctionWrapper local = backend.getLatest(id);
+         if (local != null && price > local.getPrice()) {
+            backend.bid(id, user, price);
+            tree.update(id, MerkleTree.hash(local), MerkleTree.hash(local, user, price));
+            facets.move(local.getCategory(), local.getPrice(), price);
+            hot.record(id, time);
+            histories.computeIfAbsent(id, k -> new BidHistory()).add(time, bidders.numberOf(user), price);
+         }
+         return local;
+      }
+
+      private int repair(Theirs other) {
+         int repaired = 0;
+         for(AuctionWrapper theirs: other.open) {
+            int id = theirs.getID();
+            AuctionWrapper local = backend.getLatest(id);
+            if (local == null) {
+               if (id > lastID || this.isClosed(id)) continue;
+               backend.add(theirs);
+               tree.update(id, 0, MerkleTree.hash(theirs));
+               facets.add(theirs.getCategory(), theirs.getPrice());
+               this.adopt(theirs, other.bids.get(id), true);
+               repaired++;
+            } else if (isLater(theirs, local)) {
+               backend.bid(id, theirs.getHighestBidder(), theirs.getPrice());
+               tree.update(id, MerkleTree.hash(local), MerkleTree.hash(local, theirs.getHighestBidder(), theirs.getPrice()));
+               facets.move(local.getCategory(), local.getPrice(), theirs.getPrice());
+               this.adopt(theirs, other.bids.get(id), true);
+               repaired++;
+            }
+         }
+         for(AuctionWrapper theirs: other.closed) {
+            AuctionWrapper local = backend.getLatest(theirs.getID());
+            if (local != null) {
+               this.adopt(theirs, other.bids.get(theirs.getID()), false);
+               this.close(local, theirs);
+               repaired++;
+            }
+         }
+         return repaired;
+      }
+
+      /*
+       *    Takes another replica's bids on an auction in place of those
+       *    here, counting those placed since the latest here towards the
+       *    hottest auctions if asked, and adds the auction's owner and
+       *    bidders to the users if they are missing.
+       */
+      private void adopt(AuctionWrapper theirs, ArrayList<BidWrapper> bids, boolean count) {
+         int id = theirs.getID();
+         if (theirs.getOwner() != null) this.createUser(theirs.getOwner());
+         if (theirs.getHighestBidder() != null) this.createUser(theirs.getHighestBidder());
+         if (bids == null) return;
+
+         BidHistory previous = histories.get(id);
+         long latest = (previous == null) ? Long.MIN_VALUE : previous.getLatestTime();
+         BidHistory history = new BidHistory();
+         for(BidWrapper bid: bids) {
+            this.createUser(bid.getBidder());
+            history.add(bid.getTime(), bidders.numberOf(bid.getBidder()), bid.getPrice());
+            if (count && bid.getTime() > latest) hot.record(id, bid.getTime());
+         }
+         histories.put(id, history);
+      }
+
+      private boolean isClosed(int id) {
+         try {
+            return archive.get(id) != null;
+         } catch (IOException e) {
+            throw new UncheckedIOException("Could not read auction "+id+" from the archive", e);
+         }
+      }
+
+      private UserWrapper createUser(UserWrapper newUser) {
+         if (!usernames.add(newUser.getUsername())) return null;
+         backend.addUser(newUser);
+         return newUser;
+      }
+   }
+
+   /*
+    *    Another replica's auctions and bids, for a repair.
+    */
+   private static final class Theirs {
+      final ArrayList<AuctionWrapper> open;
+      final ArrayList<AuctionWrapper> closed;
+      final Map<Integer, ArrayList<BidWrapper>> bids;
+
+      Theirs(ArrayList<AuctionWrapper> open, ArrayList<AuctionWrapper> closed, Map<Integer, ArrayList<BidWrapper>> bids) {
+         this.open = open;
+         this.closed = closed;
+         this.bids = bids;
+      }
+   }
+
+   /**
+    **   Accessor Method. Gets all the auctions. The list must not be
+    **   changed.
+    **
+    **   @return The list of auctions.
+    **/
+   public ArrayList<AuctionWrapper> getAllAuctions() {
+      return backend.getAll();
+   }
+
+   /**
+    **   Gets a page of the auctions, in order of ID.
+    **
+    **   @param afterId The ID to start after.
+    **   @param limit The most auctions to return.
+    **   @return The auctions with IDs above `afterId`, lowest first.
+    **/
+   public ArrayList<AuctionWrapper> getAuctionsAfter(int afterId, int limit) {
+      return backend.getAfter(afterId, limit);
+   }
+
+   /**
+    **   Gets an auction by ID.
+    **
+    **   @param id The auction ID.
+    **   @return The auction requested, or `null`.
+    **/
+   public AuctionWrapper getAuction(int id) {
+      return backend.get(id);
+   }
+
+   /**
+    **   Gets the auctions whose current price lies in the given range.
+    **
+    **   @param min The lowest price, inclusive.
+    **   @param max The highest price, inclusive.
+    **   @return The matching auctions, cheapest first.
+    **/
+   public ArrayList<AuctionWrapper> getAuctionsByPrice(float min, float max) {
+      return backend.getByPrice(min, max);
+   }
+
+   /**
+    **   Gets the auctions whose reserve price has not yet been met.
+    **
+    **   @return The matching auctions, closest to the reserve first.
+    **/
+   public ArrayList<AuctionWrapper> getAuctionsBelowReserve() {
+      return backend.getBelowReserve();
+   }
+
+   /**
+    **   Gets the auctions ending in the given window.
+    **
+    **   @param from The start of the window, inclusive.
+    **   @param to The end of the window, inclusive.
+    **   @return The matching auctions, soonest first.
+    **/
+   public ArrayList<AuctionWrapper> getAuctionsEndingBetween(long from, long to) {
+      return backend.getEndingBetween(from, to);
+   }
+
+   /**
+    **   Gets the open auctions owned by a user.
+    **
+    **   @param username The user's username.
+    **   @return The matching auctions.
+    **/
+   public ArrayList<AuctionWrapper> getAuctionsOwnedBy(String username) {
+      return backend.getOwnedBy(username);
+   }
+
+   /**
+    **   Gets the open auctions a user is the highest bidder on.
+    **
+    **   @param username The user's username.
+    **   @return The matching auctions.
+    **/
+   public ArrayList<AuctionWrapper> getAuctionsLedBy(String username) {
+      return backend.getLedBy(username);
+   }
+
+   /**
+    **   Gets the closed auctions a user has won.
+    **
+    **   @param username The user's username.
+    **   @return The matching auctions.
+    **/
+   public ArrayList<AuctionWrapper> getAuctionsWonBy(String username) throws IOException {
+      return archive.getWonBy(username);
+   }
+
+   /**
+    **   Gets a page of the bids on an auction, open or closed, oldest
+    **   first.
+    **
+    **   @param id The auction ID.
+    **   @param offset The number of bids to skip.
+    **   @param limit The most bids to return.
+    **   @return The bids, or `null` if there is no such auction.
+    **/
+   public ArrayList<BidWrapper> getBidHistory(int id, int offset, int limit) throws IOException {
+      BidHistory history = histories.get(id);
+      if (history != null) return history.page(offset, limit, bidders);
+      if (backend.get(id) != null) return new ArrayList<BidWrapper>();
+      return archive.getBids(id, offset, limit);
+   }
+
+   /**
+    **   Gets the closed auctions a user owned.
+    **
+    **   @param username The user's username.
+    **   @return The matching auctions.
+    **/
+   public ArrayList<AuctionWrapper> getClosedAuctionsOwnedBy(String username) throws IOException {
+      return archive.getOwnedBy(username);
+   }
+
+   /**
+    **   Gets a closed auction by ID.
+    **
+    **   @param id The auction ID.
+    **   @return The auction requested, or `null`.
+    **/
+   public AuctionWrapper getClosedAuction(int id) throws IOException {
+      return archive.get(id);
+   }
+
+   /**
+    **   Accessor Method. Gets the number of open auctions.
+    **
+    **   @return The count.
+    **/
+   public int getAuctionCount() {
+      return backend.getAuctionCount();
+   }
+
+   /**
+    **   Accessor Method. Gets the number of users.
+    **
+    **   @return The count.
+    **/
+   public int getUserCount() {
+      return backend.getUserCount();
+   }
+
+   /**
+    **   Accessor Method. Gets the number of closed auctions archived.
+    **
+    **   @return The count.
+    **/
+   public int getClosedAuctionCount() {
+      return archive.getCount();
+   }
+
+   /**
+    **   Accessor Method. Gets the list of all users. The list must not
+    **   be changed.
+    **
+    **   @return The list of users.
+    **/
+   public ArrayList<UserWrapper> getAllUsers() {
+      return backend.getUsers();
+   }
+}
@@ -0,0 +1,303 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class moves auctions in bulk between the server and CSV files.
+ ** Files are streamed through a fixed-size buffer and auctions are sent
+ ** and fetched a batch at a time, so memory use does not grow with the
+ ** size of the file.
+ **/
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class AuctionTransfer {
+   private static final int BATCH = Integer.getInteger("auctionprog.transfer.batch", 500);
+   private static final int BUFFER = 64 * 1024;
+   // A file starts with a header naming its columns. An import needs
+   // `description`, `price` and `reserve`, and takes `endTime` and
+   // `category` if there are; other columns are ignored, so an export
+   // can be imported as it is. End times are ISO-8601 instants, left blank for no end.
+   private static final String[] COLUMNS = {"id", "description", "owner", "price", "reserve", "highestBidder", "endTime", "category"};
+
+   private AuctionTransfer() {}
+
+   /**
+    **   Reads auctions from a CSV file and opens them on the server in
+    **   batches. Lines that cannot be read are reported and skipped.
+    **
+    **   @param a The server stub.
+    **   @param file The file to read.
+    **   @param owner The user the auctions are opened for.
+    **   @return The number of auctions opened.
+    **/
+   public static int importCsv(Auction a, Path file, UserWrapper owner) throws IOException {
+      try (CsvReader in = new CsvReader(file)) {
+         List<String> header = in.next();
+         if (header == null) return 0;
+         int desc = column(header, "description");
+         int price = column(header, "price");
+         int reserve = column(header, "reserve");
+         int endTime = header.indexOf("endTime");
+         int category = header.indexOf("category");
+
+         int opened = 0;
+         ArrayList<AuctionWrapper> batch = new ArrayList<AuctionWrapper>(BATCH);
+         List<String> record;
+         while ((record = in.next()) != null) {
+            if (record.size() == 1 && record.get(0).isEmpty()) continue;
+            try {
+               float startPrice = Float.parseFloat(record.get(price));
+               float reservePrice = Float.parseFloat(record.get(reserve));
+               if (reservePrice <= startPrice) throw new IllegalArgumentException("reserve must be higher than price");
+               long end = Long.MAX_VALUE;
+               if (endTime >= 0 && endTime < record.size() && !record.get(endTime).isEmpty()) {
+                  end = Instant.parse(record.get(endTime)).toEpochMilli();
+               }
+               String group = (category >= 0 && category < record.size()) ? record.get(category) : null;
+               batch.add(new AuctionWrapper(0, record.get(desc), owner, startPrice, reservePrice, end, group));
+            } catch (RuntimeException e) {
+               System.out.println("Skipping line "+in.getLine()+": "+e.getMessage());
+               continue;
+            }
+
+            if (batch.size() == BATCH) {
+               opened += a.openNewAuctions(RequestIds.next(), System.currentTimeMillis(), batch);
+               batch = new ArrayList<AuctionWrapper>(BATCH);
+            }
+         }
+         if (!batch.isEmpty()) opened += a.openNewAuctions(RequestIds.next(), System.currentTimeMillis(), batch);
+         return opened;
+      }
+   }
+
+   /**
+    **   Writes every open auction to a CSV file, fetching them from the
+    **   server a page at a time. Auctions opened or closed while the
+    **   export runs may or may not be included.
+    **
+    **   @param a The server stub.
+    **   @param file The file to write.
+    **   @return The number of auctions written.
+    **/
+   public static int exportCsv(Auction a, Path file) throws IOException {
+      try (CsvWriter out = new CsvWriter(file)) {
+         out.write(COLUMNS);
+         int after = 0;
+         int count = 0;
+         ArrayList<AuctionWrapper> page;
+         do {
+            page = a.showAuctionsAfter(after, BATCH);
+            if (page == null) throw new IOException("The server could not list the auctions");
+            for(AuctionWrapper auction: page) {
+               UserWrapper bidder = auction.getHighestBidder();
+               out.write(Integer.toString(auction.getID()), auction.getDesc(), auction.getOwner().getUsername(),
+                     Float.toString(auction.getPrice()), Float.toString(auction.getReserve()),
+                     (bidder == null) ? "" : bidder.getUsername(),
+                     (auction.getEndTime() == Long.MAX_VALUE) ? "" : Instant.ofEpochMilli(auction.getEndTime()).toString(),
+                     auction.getCategory());
+               after = auction.getID();
+               count++;
+            }
+         } while (page.size() == BATCH);
+         return count;
+      }
+   }
+
+   /*
+    *    Finds a column the header must have.
+    */
+   private static int column(List<String> header, String name) throws IOException {
+      int column = header.indexOf(name);
+      if (column < 0) throw new IOException("The file has no '"+name+"' column");
+      return column;
+   }
+
+   /*
+    *    Reads CSV records from a file through a fixed-size buffer. Fields
+    *    may be quoted, with `""` for a quote, and quoted fields may span
+    *    lines.
+    */
+   private static final class CsvReader implements Closeable {
+      private final FileChannel channel;
+      private final ByteBuffer bytes;
+      private final CharBuffer chars;
+      private final CharsetDecoder decoder;
+      private boolean eof;
+      private int line;
+
+      CsvReader(Path file) throws IOException {
+         channel = FileChannel.open(file, StandardOpenOption.READ);
+         bytes = ByteBuffer.allocateDirect(BUFFER);
+         chars = CharBuffer.allocate(BUFFER);
+         chars.flip();
+         decoder = StandardCharsets.UTF_8.newDecoder()
+               .onMalformedInput(CodingErrorAction.REPLACE)
+               .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      }
+
+      /*
+       *    Reads the next record, or returns `null` at the end of the
+       *    file.
+       */
+      List<String> next() throws IOException {
+         ArrayList<String> fields = new ArrayList<String>();
+         StringBuilder field = new StringBuilder();
+         boolean quoted = false;
+         boolean started = false;
+
+         while (true) {
+            if (!chars.hasRemaining() && !this.fill()) {
+               if (!started) return null;
+               fields.add(field.toString());
+               line++;
+               return fields;
+            }
+            char c = chars.get();
+            started = true;
+            if (quoted) {
+               if (c != '"') {
+                  field.append(c);
+               } else if ((chars.hasRemaining() || this.fill()) && chars.get(chars.position()) == '"') {
+                  chars.get();
+                  field.append('"');
+               } else {
+                  quoted = false;
+               }
+            } else if (c == '"') {
+               quoted = true;
+            } else if (c == ',') {
+               fields.add(field.toString());
+               field.setLength(0);
+            } else if (c == '\n') {
+               fields.add(field.toString());
+               line++;
+               return fields;
+            } else if (c != '\r') {
+               field.append(c);
+            }
+         }
+      }
+
+      /*
+       *    Accessor Method. Gets the number of the line last read.
+       */
+      int getLine() {
+         return this.line;
+      }
+
+      /*
+       *    Decodes more of the file once every character read so far has
+       *    been used, returning `false` at the end of the file.
+       */
+      private boolean fill() throws IOException {
+         chars.clear();
+         while (!eof && chars.position() == 0) {
+            int read = channel.read(bytes);
+            bytes.flip();
+            decoder.decode(bytes, chars, read < 0);
+            bytes.compact();
+            if (read < 0) {
+               decoder.flush(chars);
+               eof = true;
+            }
+         }
+         chars.flip();
+         return chars.hasRemaining();
+      }
+
+      public void close() throws IOException {
+         channel.close();
+      }
+   }
+
+   /*
+    *    Writes CSV records to a file through a fixed-size buffer.
+    */
+   private static final class CsvWriter implements Closeable {
+      private final FileChannel channel;
+      private final ByteBuffer bytes;
+      private final CharsetEncoder encoder;
+      private final StringBuilder record;
+
+      CsvWriter(Path file) throws IOException {
+         channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+         bytes = ByteBuffer.allocateDirect(BUFFER);
+         encoder = StandardCharsets.UTF_8.newEncoder()
+               .onMalformedInput(CodingErrorAction.REPLACE)
+               .onUnmappableCharacter(CodingErrorAction.REPLACE);
+         record = new StringBuilder(256);
+      }
+
+      /*
+       *    Writes a record, quoting any field that needs it.
+       */
+      void write(String... fields) throws IOException {
+         record.setLength(0);
+         for (int i = 0; i < fields.length; i++) {
+            if (i > 0) record.append(',');
+            String field = fields[i];
+            if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+               record.append(field);
+            } else {
+               record.append('"').append(field.replace("\"", "\"\"")).append('"');
+            }
+         }
+         record.append('\n');
+
+         CharBuffer in = CharBuffer.wrap(record);
+         while (encoder.encode(in, bytes, false).isOverflow()) {
+            this.drain();
+         }
+      }
+
+      /*
+       *    Writes out everything buffered.
+       */
+      private void drain() throws IOException {
+         bytes.flip();
+         while (bytes.hasRemaining()) {
+            channel.write(bytes);
+         }
+         bytes.clear();
+      }
+
+      public void close() throws IOException {
+         try {
+            this.drain();
+         } finally {
+            channel.close();
+         }
+      }
+   }
+}
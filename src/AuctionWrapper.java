@@ -31,15 +31,22 @@ import java.io.*;
  **   @version 2.0
  **/
 public class AuctionWrapper implements Serializable {
+   /**
+    **   The category an auction is put in if none is given.
+    **/
+   public static final String DEFAULT_CATEGORY = "General";
+
    private int id;
    private String desc;
    private UserWrapper owner;
    private UserWrapper highestBidder;
    private float price;
    private float reserve;
+   private long endTime;
+   private String category;
 
-   /**   
-    **   Constructor Method.
+   /**
+    **   Constructor Method. Creates an auction with no fixed end time.
     **   @param id The ID of the auction.
     **   @param desc The description of the auction.
     **   @param owner The user creating the auction.
@@ -47,12 +54,44 @@ public class AuctionWrapper implements Serializable {
     **   @param reserve The reserve price of the auction.
     **/
 	public AuctionWrapper(int id, String desc, UserWrapper owner, float startingPrice, float reserve) {
+		this(id, desc, owner, startingPrice, reserve, Long.MAX_VALUE);
+	}
+
+   /**
+    **   Constructor Method.
+    **   @param id The ID of the auction.
+    **   @param desc The description of the auction.
+    **   @param owner The user creating the auction.
+    **   @param startingPrice The starting price of the auction.
+    **   @param reserve The reserve price of the auction.
+    **   @param endTime When the auction ends, in milliseconds since the
+    **   epoch (`Long.MAX_VALUE` for no fixed end).
+    **/
+	public AuctionWrapper(int id, String desc, UserWrapper owner, float startingPrice, float reserve, long endTime) {
+		this(id, desc, owner, startingPrice, reserve, endTime, DEFAULT_CATEGORY);
+	}
+
+   /**
+    **   Constructor Method.
+    **   @param id The ID of the auction.
+    **   @param desc The description of the auction.
+    **   @param owner The user creating the auction.
+    **   @param startingPrice The starting price of the auction.
+    **   @param reserve The reserve price of the auction.
+    **   @param endTime When the auction ends, in milliseconds since the
+    **   epoch (`Long.MAX_VALUE` for no fixed end).
+    **   @param category The category of the auction, or `null` or blank
+    **   for `DEFAULT_CATEGORY`.
+    **/
+	public AuctionWrapper(int id, String desc, UserWrapper owner, float startingPrice, float reserve, long endTime, String category) {
 		this.id = id;
 		this.desc = desc;
 		this.owner = owner;
       this.highestBidder = null;
       this.price = startingPrice;
       this.reserve = reserve;
+      this.endTime = endTime;
+      this.category = (category == null || category.trim().isEmpty()) ? DEFAULT_CATEGORY : category.trim();
 	}
    
    /**   
@@ -72,6 +111,19 @@ public class AuctionWrapper implements Serializable {
       this.highestBidder = bidder;
       this.price = price;
    }
+
+   /**
+    **   Makes a copy of the auction with a new highest bid, leaving this
+    **   one as it was.
+    **   @param bidder The user bidding.
+    **   @param price The bid price.
+    **   @return The copy.
+    **/
+   public AuctionWrapper withBid(UserWrapper bidder, float price) {
+      AuctionWrapper copy = new AuctionWrapper(this.id, this.desc, this.owner, price, this.reserve, this.endTime, this.category);
+      copy.highestBidder = bidder;
+      return copy;
+   }
    
    /**   
     **   Accessor Method. Gets the auction ID.
@@ -120,7 +172,33 @@ public class AuctionWrapper implements Serializable {
    public float getReserve() {
 		return this.reserve;
 	}
-   
+
+   /**
+    **   Accessor Method. Gets the amount still needed to meet the
+    **   reserve price.
+    **   @return The reserve price less the current price.
+    **/
+   public float getReserveGap() {
+		return this.reserve - this.price;
+	}
+
+   /**
+    **   Accessor Method. Gets the time the auction ends.
+    **   @return The end time in milliseconds since the epoch, or
+    **   `Long.MAX_VALUE` if the auction has no fixed end.
+    **/
+   public long getEndTime() {
+		return this.endTime;
+	}
+
+   /**
+    **   Accessor Method. Gets the auction category.
+    **   @return The auction category.
+    **/
+   public String getCategory() {
+		return this.category;
+	}
+
    
    /**   
     **   Mutator Method. Sets the auction ID.
@@ -0,0 +1,211 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class represents the bids placed on one auction, oldest first.
+ ** Bids are held in parallel arrays of primitives that double as they
+ ** fill, so each costs sixteen bytes, and bidders are stored as numbers
+ ** handed out by the store's `Bidders`. One thread adds bids while any
+ ** number read them.
+ **/
+
+import java.io.*;
+import java.util.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public final class BidHistory {
+   // Bids are only ever added, and an array is only replaced by a longer
+   // copy, so a reader that reads `size` first finds every bid below it
+   // in whichever arrays it then sees.
+   private volatile long[] times;
+   private volatile int[] bidders;
+   private volatile float[] prices;
+   private volatile int size;
+
+   /**
+    **   Constructor Method.
+    **/
+   public BidHistory() {
+      times = new long[4];
+      bidders = new int[4];
+      prices = new float[4];
+   }
+
+   /**
+    **   Adds a bid. Only ever called by one thread.
+    **
+    **   @param time When the bid was placed.
+    **   @param bidder The number of the bidder.
+    **   @param price The price bid.
+    **/
+   public void add(long time, int bidder, float price) {
+      int n = size;
+      if (n == times.length) {
+         int capacity = n * 2;
+         times = Arrays.copyOf(times, capacity);
+         bidders = Arrays.copyOf(bidders, capacity);
+         prices = Arrays.copyOf(prices, capacity);
+      }
+      times[n] = time;
+      bidders[n] = bidder;
+      prices[n] = price;
+      size = n + 1;
+   }
+
+   /**
+    **   Accessor Method. Gets the number of bids.
+    **
+    **   @return The count.
+    **/
+   public int size() {
+      return this.size;
+   }
+
+   /**
+    **   Accessor Method. Gets when the latest bid was placed.
+    **
+    **   @return The time, or `Long.MIN_VALUE` if there are no bids.
+    **/
+   public long getLatestTime() {
+      int n = size;
+      return (n == 0) ? Long.MIN_VALUE : times[n - 1];
+   }
+
+   /**
+    **   Gets a page of the bids, oldest first.
+    **
+    **   @param offset The number of bids to skip.
+    **   @param limit The most bids to return.
+    **   @param table The bidders the bids' numbers refer to.
+    **   @return The bids.
+    **/
+   public ArrayList<BidWrapper> page(int offset, int limit, Bidders table) {
+      int end = (int)Math.min(size, (long)Math.max(offset, 0) + Math.max(limit, 0));
+      long[] t = times;
+      int[] b = bidders;
+      float[] p = prices;
+      ArrayList<BidWrapper> page = new ArrayList<BidWrapper>(Math.max(0, end - offset));
+      for (int i = Math.max(offset, 0); i < end; i++) {
+         page.add(new BidWrapper(t[i], table.get(b[i]), p[i]));
+      }
+      return page;
+   }
+
+   /**
+    **   Writes the bids out on their own, with each bidder written in full
+    **   the first time it appears, for `readPage` to read back.
+    **
+    **   @param out The stream to write to.
+    **   @param table The bidders the bids' numbers refer to.
+    **/
+   public void writeTo(DataOutput out, Bidders table) throws IOException {
+      int n = size;
+      HashMap<Integer, Integer> local = new HashMap<Integer, Integer>();
+      out.writeInt(n);
+      for (int i = 0; i < n; i++) {
+         Integer seen = local.get(bidders[i]);
+         if (seen == null) {
+            out.writeInt(-1);
+            WireFormat.writeValue(out, table.get(bidders[i]));
+            local.put(bidders[i], local.size());
+         } else {
+            out.writeInt(seen);
+         }
+         out.writeLong(times[i]);
+         out.writeFloat(prices[i]);
+      }
+   }
+
+   /**
+    **   Reads a page of the bids written by `writeTo`.
+    **
+    **   @param in The stream to read from.
+    **   @param offset The number of bids to skip.
+    **   @param limit The most bids to return.
+    **   @return The bids.
+    **/
+   public static ArrayList<BidWrapper> readPage(DataInput in, int offset, int limit) throws IOException {
+      int n = in.readInt();
+      long end = (long)Math.max(offset, 0) + Math.max(limit, 0);
+      ArrayList<UserWrapper> local = new ArrayList<UserWrapper>();
+      ArrayList<BidWrapper> page = new ArrayList<BidWrapper>();
+      for (int i = 0; i < n && i < end; i++) {
+         int seen = in.readInt();
+         if (seen < 0) local.add((UserWrapper)WireFormat.readValue(in));
+         UserWrapper bidder = local.get((seen < 0) ? local.size() - 1 : seen);
+         long time = in.readLong();
+         float price = in.readFloat();
+         if (i >= offset) page.add(new BidWrapper(time, bidder, price));
+      }
+      return page;
+   }
+
+   /**
+    **   This class numbers the users who bid in a store, so a history need
+    **   only hold a number for each bid. Numbers are handed out in the
+    **   order bids arrive, so every replica of a shard agrees on them. One
+    **   thread adds bidders while any number look them up.
+    **/
+   public static final class Bidders {
+      private final HashMap<String, Integer> numbers;
+      private volatile UserWrapper[] users;
+
+      /**
+       **   Constructor Method.
+       **/
+      public Bidders() {
+         numbers = new HashMap<String, Integer>();
+         users = new UserWrapper[16];
+      }
+
+      /**
+       **   Gets a user's number, handing out the next if they have none.
+       **   Only ever called by the thread adding bids.
+       **
+       **   @param user The user.
+       **   @return The number.
+       **/
+      public int numberOf(UserWrapper user) {
+         Integer number = numbers.get(user.getUsername());
+         if (number != null) return number;
+         int n = numbers.size();
+         if (n == users.length) users = Arrays.copyOf(users, n * 2);
+         users[n] = user;
+         numbers.put(user.getUsername(), n);
+         return n;
+      }
+
+      /**
+       **   Gets the user with a number. The number must have come from a
+       **   bid already added to a history.
+       **
+       **   @param number The number.
+       **   @return The user.
+       **/
+      public UserWrapper get(int number) {
+         return users[number];
+      }
+   }
+}
@@ -0,0 +1,74 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class represents a bid from an auction's history.
+ **/
+
+import java.io.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class BidWrapper implements Serializable {
+   private long time;
+   private UserWrapper bidder;
+   private float price;
+
+   /**
+    **   Constructor Method.
+    **   @param time When the bid was placed, in milliseconds since the
+    **   epoch.
+    **   @param bidder The user who bid.
+    **   @param price The price bid.
+    **/
+   public BidWrapper(long time, UserWrapper bidder, float price) {
+      this.time = time;
+      this.bidder = bidder;
+      this.price = price;
+   }
+
+   /**
+    **   Accessor Method. Returns when the bid was placed.
+    **   @return The time, in milliseconds since the epoch.
+    **/
+   public long getTime() {
+      return this.time;
+   }
+
+   /**
+    **   Accessor Method. Returns the user who bid.
+    **   @return The bidder.
+    **/
+   public UserWrapper getBidder() {
+      return this.bidder;
+   }
+
+   /**
+    **   Accessor Method. Returns the price bid.
+    **   @return The price.
+    **/
+   public float getPrice() {
+      return this.price;
+   }
+}
@@ -0,0 +1,243 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class makes the sockets an RMI object is exported on compress
+ ** what they carry. Each end buffers what it writes until RMI flushes the
+ ** stream, at the end of a call or a reply, and sends the whole as one
+ ** frame packed by `Compression`, so a large listing is deflated while a
+ ** small call goes as it is. The client end travels to callers inside the
+ ** stub.
+ **/
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMIServerSocketFactory;
+import java.util.Arrays;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class CompressingSocketFactory implements RMIClientSocketFactory, RMIServerSocketFactory, Serializable {
+   private static final long serialVersionUID = 1L;
+   // A frame holds at most this much, so that neither end buffers a
+   // whole reply of unbounded size.
+   private static final int MAX_FRAME = 1 << 20;
+   private static final Compression compression = new Compression();
+
+   /**
+    **   Creates a client socket.
+    **
+    **   @param host The host to connect to.
+    **   @param port The port to connect to.
+    **   @return The socket.
+    **/
+   public Socket createSocket(String host, int port) throws IOException {
+      return new CompressingSocket(host, port);
+   }
+
+   /**
+    **   Creates a server socket, whose accepted sockets compress.
+    **
+    **   @param port The port to listen on, or 0 for any.
+    **   @return The server socket.
+    **/
+   public ServerSocket createServerSocket(int port) throws IOException {
+      return new ServerSocket(port) {
+         public Socket accept() throws IOException {
+            if (isClosed()) throw new SocketException("Socket is closed");
+            Socket socket = new CompressingSocket();
+            implAccept(socket);
+            return socket;
+         }
+      };
+   }
+
+   /**
+    **   Accessor Method. Gets the compression of everything sent over
+    **   these sockets in this process.
+    **
+    **   @return The metrics.
+    **/
+   public static OperationMetrics getMetrics() {
+      return compression.getMetrics();
+   }
+
+   /**
+    **   Tests whether another factory makes the same sockets, so RMI can
+    **   share connections between objects exported with either.
+    **/
+   public boolean equals(Object o) {
+      return (o != null) && (o.getClass() == this.getClass());
+   }
+
+   public int hashCode() {
+      return this.getClass().hashCode();
+   }
+
+   /*
+    *    A socket whose streams are framed and compressed.
+    */
+   private static final class CompressingSocket extends Socket {
+      private InputStream in;
+      private OutputStream out;
+
+      CompressingSocket() {}
+
+      CompressingSocket(String host, int port) throws IOException {
+         super(host, port);
+      }
+
+      public synchronized InputStream getInputStream() throws IOException {
+         if (in == null) in = new FrameInputStream(super.getInputStream());
+         return in;
+      }
+
+      public synchronized OutputStream getOutputStream() throws IOException {
+         if (out == null) out = new FrameOutputStream(super.getOutputStream());
+         return out;
+      }
+   }
+
+   /*
+    *    Buffers what is written and sends it as a frame, its length then
+    *    the packed bytes, whenever the stream is flushed.
+    */
+   private static final class FrameOutputStream extends FilterOutputStream {
+      private byte[] buffer = new byte[8192];
+      private int size;
+
+      FrameOutputStream(OutputStream out) {
+         super(new BufferedOutputStream(out, 8192));
+      }
+
+      public void write(int b) throws IOException {
+         if (size == MAX_FRAME) this.send();
+         if (size == buffer.length) this.grow(1);
+         buffer[size++] = (byte)b;
+      }
+
+      public void write(byte[] b, int off, int len) throws IOException {
+         while (len > 0) {
+            if (size == MAX_FRAME) this.send();
+            int n = Math.min(len, MAX_FRAME - size);
+            if (size + n > buffer.length) this.grow(n);
+            System.arraycopy(b, off, buffer, size, n);
+            size += n;
+            off += n;
+            len -= n;
+         }
+      }
+
+      public void flush() throws IOException {
+         this.send();
+         out.flush();
+      }
+
+      public void close() throws IOException {
+         try {
+            this.flush();
+         } finally {
+            out.close();
+         }
+      }
+
+      private void grow(int more) {
+         buffer = Arrays.copyOf(buffer, Math.min(MAX_FRAME, Math.max(buffer.length * 2, size + more)));
+      }
+
+      private void send() throws IOException {
+         if (size == 0) return;
+         byte[] packed = compression.pack(buffer, 0, size);
+         size = 0;
+         if (buffer.length > 65536) buffer = new byte[8192];
+         DataOutputStream data = new DataOutputStream(out);
+         data.writeInt(packed.length);
+         data.write(packed);
+      }
+   }
+
+   /*
+    *    Reads frames and hands out their unpacked bytes in turn.
+    */
+   private static final class FrameInputStream extends FilterInputStream {
+      private ByteBuffer frame = ByteBuffer.allocate(0);
+
+      FrameInputStream(InputStream in) {
+         super(new DataInputStream(new BufferedInputStream(in, 8192)));
+      }
+
+      public int read() throws IOException {
+         if (!frame.hasRemaining() && !this.next()) return -1;
+         return frame.get() & 0xff;
+      }
+
+      public int read(byte[] b, int off, int len) throws IOException {
+         if (len == 0) return 0;
+         if (!frame.hasRemaining() && !this.next()) return -1;
+         len = Math.min(len, frame.remaining());
+         frame.get(b, off, len);
+         return len;
+      }
+
+      public long skip(long n) throws IOException {
+         if (!frame.hasRemaining() && !this.next()) return 0;
+         int skipped = (int)Math.min(n, frame.remaining());
+         frame.position(frame.position() + skipped);
+         return skipped;
+      }
+
+      public int available() {
+         return frame.remaining();
+      }
+
+      public boolean markSupported() {
+         return false;
+      }
+
+      /*
+       *    Reads the next frame with anything in it, returning `false` at
+       *    the end of the stream.
+       */
+      private boolean next() throws IOException {
+         DataInputStream data = (DataInputStream)in;
+         do {
+            int length;
+            try {
+               length = data.readInt();
+            } catch (EOFException e) {
+               return false;
+            }
+            if (length < 1 || length > MAX_FRAME + 1) throw new IOException("Bad frame length "+length);
+            byte[] packed = new byte[length];
+            data.readFully(packed);
+            frame = compression.unpack(packed, 0, length);
+         } while (!frame.hasRemaining());
+         return true;
+      }
+   }
+}
@@ -0,0 +1,167 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class compresses message payloads that are large enough to be
+ ** worth it. Every payload starts with a byte saying whether the rest is
+ ** deflated, so the receiver needs no agreement beyond that: small
+ ** payloads, and those that would not shrink, go as they are. Deflaters
+ ** and inflaters are costly to set up, so a few of each are pooled and
+ ** shared.
+ **/
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class Compression {
+   private static final int THRESHOLD = Integer.getInteger("auctionprog.compress.threshold", 2048);
+   private static final int LEVEL = Integer.getInteger("auctionprog.compress.level", Deflater.BEST_SPEED);
+   private static final int POOL = 16;
+   private static final byte PLAIN = 0;
+   private static final byte DEFLATED = 1;
+   // A deflated payload gives its length before compression after the
+   // flag.
+   private static final int HEADER = 5;
+   private static final ArrayBlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<Deflater>(POOL);
+   private static final ArrayBlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<Inflater>(POOL);
+
+   private final OperationMetrics metrics;
+
+   /**
+    **   Constructor Method.
+    **/
+   public Compression() {
+      metrics = new OperationMetrics();
+   }
+
+   /**
+    **   Packs a payload for sending, deflating it if it is at least
+    **   `auctionprog.compress.threshold` bytes and comes out smaller.
+    **
+    **   @param raw The payload.
+    **   @param offset Where it starts.
+    **   @param length Its length.
+    **   @return The packed payload.
+    **/
+   public byte[] pack(byte[] raw, int offset, int length) {
+      if (length >= THRESHOLD) {
+         long start = System.nanoTime();
+         byte[] packed = new byte[length];
+         int size = deflate(raw, offset, length, packed);
+         if (size > 0) {
+            metrics.record("deflateTime", (System.nanoTime() - start) / 1000);
+            metrics.record("ratio", 100L * size / length);
+            metrics.record("deflatedFrom", length);
+            packed[0] = DEFLATED;
+            packed[1] = (byte)(length >>> 24);
+            packed[2] = (byte)(length >>> 16);
+            packed[3] = (byte)(length >>> 8);
+            packed[4] = (byte)length;
+            return Arrays.copyOf(packed, size);
+         }
+         metrics.record("incompressible", length);
+      } else {
+         metrics.record("skipped", length);
+      }
+
+      byte[] packed = new byte[length + 1];
+      packed[0] = PLAIN;
+      System.arraycopy(raw, offset, packed, 1, length);
+      return packed;
+   }
+
+   /**
+    **   Unpacks a payload packed by `pack`.
+    **
+    **   @param packed The packed payload.
+    **   @param offset Where it starts.
+    **   @param length Its length.
+    **   @return The payload. A plain payload is not copied, so shares the
+    **   array passed in.
+    **/
+   public ByteBuffer unpack(byte[] packed, int offset, int length) throws IOException {
+      if (length < 1) throw new IOException("Empty payload");
+      if (packed[offset] == PLAIN) return ByteBuffer.wrap(packed, offset + 1, length - 1);
+      if (packed[offset] != DEFLATED || length < HEADER) throw new IOException("Unknown payload encoding "+packed[offset]);
+
+      long start = System.nanoTime();
+      int rawLength = ((packed[offset + 1] & 0xff) << 24) | ((packed[offset + 2] & 0xff) << 16)
+            | ((packed[offset + 3] & 0xff) << 8) | (packed[offset + 4] & 0xff);
+      byte[] raw = new byte[rawLength];
+      Inflater inflater = inflaters.poll();
+      if (inflater == null) inflater = new Inflater();
+      try {
+         inflater.setInput(packed, offset + HEADER, length - HEADER);
+         if (inflater.inflate(raw) != rawLength || !inflater.finished()) throw new IOException("Deflated payload is damaged");
+      } catch (DataFormatException e) {
+         throw new IOException("Deflated payload is damaged", e);
+      } finally {
+         inflater.reset();
+         if (!inflaters.offer(inflater)) inflater.end();
+      }
+      metrics.record("inflateTime", (System.nanoTime() - start) / 1000);
+      return ByteBuffer.wrap(raw);
+   }
+
+   /**
+    **   Accessor Method. Gets the compression metrics: the time taken to
+    **   deflate and inflate, in microseconds; the size of each deflated
+    **   payload as a percentage of the original; and the sizes of the
+    **   payloads deflated, too small to deflate, or that would not
+    **   shrink.
+    **
+    **   @return The metrics.
+    **/
+   public OperationMetrics getMetrics() {
+      return this.metrics;
+   }
+
+   /*
+    *    Deflates a payload into an array after the header, returning the
+    *    packed length, or 0 if it would not fit.
+    */
+   private static int deflate(byte[] raw, int offset, int length, byte[] packed) {
+      Deflater deflater = deflaters.poll();
+      if (deflater == null) deflater = new Deflater(LEVEL);
+      try {
+         deflater.setInput(raw, offset, length);
+         deflater.finish();
+         int size = HEADER;
+         while (!deflater.finished() && size < packed.length) {
+            size += deflater.deflate(packed, size, packed.length - size);
+         }
+         return deflater.finished() ? size : 0;
+      } finally {
+         deflater.reset();
+         if (!deflaters.offer(deflater)) deflater.end();
+      }
+   }
+}
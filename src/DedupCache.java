@@ -0,0 +1,112 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class remembers the results of recent changes by the ID of the
+ ** request that made them, so a request retried or sent twice gets the
+ ** first result back instead of being applied again. Entries are kept for
+ ** a window of time and up to a set number, measured by the times the
+ ** front ends stamp on requests rather than any replica's clock, so every
+ ** replica of a shard forgets the same entries at the same point.
+ **/
+
+import java.util.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class DedupCache {
+   private static final long WINDOW = Long.getLong("auctionprog.dedup.window", 10 * 60 * 1000L);
+   private static final int MAX_ENTRIES = Integer.getInteger("auctionprog.dedup.size", 100000);
+
+   // In the order requests were first seen.
+   private final LinkedHashMap<Long, Entry> entries;
+   private long latest;
+
+   /**
+    **   Constructor Method.
+    **/
+   public DedupCache() {
+      entries = new LinkedHashMap<Long, Entry>();
+   }
+
+   /**
+    **   Tests whether a request has been seen within the window.
+    **
+    **   @param request The request ID.
+    **   @return Whether it has.
+    **/
+   public boolean contains(long request) {
+      return entries.containsKey(request);
+   }
+
+   /**
+    **   Gets the result of a request seen within the window.
+    **
+    **   @param request The request ID.
+    **   @return The result, which may be `null`.
+    **/
+   public Object get(long request) {
+      Entry entry = entries.get(request);
+      return (entry == null) ? null : entry.result;
+   }
+
+   /**
+    **   Remembers the result of a request, forgetting any that have left
+    **   the window or are over the limit.
+    **
+    **   @param request The request ID.
+    **   @param time When the request was stamped.
+    **   @param result Its result.
+    **/
+   public void put(long request, long time, Object result) {
+      latest = Math.max(latest, time);
+      entries.put(request, new Entry(time, result));
+
+      Iterator<Entry> oldest = entries.values().iterator();
+      while (oldest.hasNext()) {
+         Entry entry = oldest.next();
+         if (entries.size() <= MAX_ENTRIES && entry.time >= latest - WINDOW) break;
+         oldest.remove();
+      }
+   }
+
+   /**
+    **   Accessor Method. Gets the number of requests remembered.
+    **
+    **   @return The count.
+    **/
+   public int size() {
+      return entries.size();
+   }
+
+   private static final class Entry {
+      final long time;
+      final Object result;
+
+      Entry(long time, Object result) {
+         this.time = time;
+         this.result = result;
+      }
+   }
+}
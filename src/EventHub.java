@@ -0,0 +1,285 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class fans auction events out to the clients subscribed to them.
+ ** Callbacks are made from a fixed pool of threads, and a client whose
+ ** callback blocks for too long is dropped, so slow clients cannot tie up
+ ** more than the pool. An RMI call cannot be interrupted, so each
+ ** callback is bounded by the RMI response timeout, which
+ ** `boundCallbacks` sets before RMI first connects anywhere.
+ **/
+
+import java.rmi.RemoteException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.jgroups.ReceiverAdapter;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class EventHub extends ReceiverAdapter {
+   private static final int QUEUE_SIZE = Integer.getInteger("auctionprog.events.queue", 256);
+   private static final int THREADS = Integer.getInteger("auctionprog.events.threads", 16);
+   private static final long TIMEOUT = Long.getLong("auctionprog.events.timeout", 5000);
+   private static final int RECENT = Integer.getInteger("auctionprog.events.recent", 10000);
+   private static final String RESPONSE_TIMEOUT = "sun.rmi.transport.tcp.responseTimeout";
+
+   private JChannel channel;
+   private ThreadPoolExecutor delivery;
+   private ScheduledExecutorService watchdog;
+   private ConcurrentHashMap<AuctionListener, Subscriber> subscribers;
+   private ConcurrentHashMap<Integer, Set<Subscriber>> byAuction;
+   private ConcurrentHashMap<String, Set<Subscriber>> byUser;
+   // The requests behind the latest events, so a repeat is dropped.
+   private Map<String, Boolean> recent;
+
+   /**
+    **   Constructor Method.
+    **/
+   public EventHub() {
+      delivery = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), daemon("EventDelivery"));
+      delivery.allowCoreThreadTimeOut(true);
+      watchdog = Executors.newSingleThreadScheduledExecutor(daemon("EventWatchdog"));
+      watchdog.scheduleWithFixedDelay(this::dropBlocked, 1, 1, TimeUnit.SECONDS);
+      subscribers = new ConcurrentHashMap<AuctionListener, Subscriber>();
+      byAuction = new ConcurrentHashMap<Integer, Set<Subscriber>>();
+      byUser = new ConcurrentHashMap<String, Set<Subscriber>>();
+      recent = Collections.synchronizedMap(new LinkedHashMap<String, Boolean>() {
+         protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return this.size() > RECENT;
+         }
+      });
+   }
+
+   /**
+    **   Makes RMI give up on a call whose reply has not arrived within
+    **   `auctionprog.events.timeout` milliseconds, unless a response
+    **   timeout has been set already. RMI reads this once, so it must be
+    **   called before the JVM makes its first outgoing call.
+    **/
+   public static void boundCallbacks() {
+      if (System.getProperty(RESPONSE_TIMEOUT) == null) {
+         System.setProperty(RESPONSE_TIMEOUT, String.valueOf(TIMEOUT));
+      }
+   }
+
+   /**
+    **   Joins the channel shared by every front end, so that an event
+    **   raised on one reaches subscribers on all of them.
+    **
+    **   @param offset The multicast port offset to use.
+    **/
+   public void connect(int offset) throws Exception {
+      channel = Shard.newChannel(offset);
+      channel.setReceiver(this);
+      channel.connect("AuctionProg-events");
+   }
+
+   /**
+    **   Leaves the channel.
+    **/
+   public void stop() {
+      if (channel != null) channel.close();
+      watchdog.shutdownNow();
+      delivery.shutdownNow();
+   }
+
+   /**
+    **   Sends an event to every front end, including this one.
+    **
+    **   @param event The event to send.
+    **/
+   public void publish(AuctionEvent event) {
+      try {
+         channel.send(null, event);
+      } catch (Exception e) {
+         Log.error(e);
+      }
+   }
+
+   /**
+    **   Receives an event from a front end and queues it for each
+    **   interested subscriber. Every front end a request was sent to
+    **   raises its events, so an event from a request already seen is
+    **   dropped.
+    **
+    **   @param msg The message holding the event.
+    **/
+   public void receive(Message msg) {
+      AuctionEvent event = (AuctionEvent)msg.getObject();
+      if (event.getRequest() != RequestIds.NONE && recent.put(event.getRequest()+":"+event.getType(), Boolean.TRUE) != null) {
+         return;
+      }
+
+      HashSet<Subscriber> targets = new HashSet<Subscriber>(get(byAuction, event.getAuctionID()));
+      for(String username: event.getRecipients()) {
+         targets.addAll(get(byUser, username));
+      }
+      for(Subscriber subscriber: targets) {
+         subscriber.offer(event);
+      }
+   }
+
+   /**
+    **   Subscribes a listener to the events on an auction.
+    **
+    **   @param listener The client's callback.
+    **   @param id The ID of the auction.
+    **/
+   public void subscribeToAuction(AuctionListener listener, int id) {
+      Subscriber subscriber = subscribers.computeIfAbsent(listener, Subscriber::new);
+      subscriber.auctions.add(id);
+      byAuction.computeIfAbsent(id, k -> ConcurrentHashMap.<Subscriber>newKeySet()).add(subscriber);
+   }
+
+   /**
+    **   Subscribes a listener to the events that concern a user.
+    **
+    **   @param listener The client's callback.
+    **   @param username The user's username.
+    **/
+   public void subscribeToUser(AuctionListener listener, String username) {
+      Subscriber subscriber = subscribers.computeIfAbsent(listener, Subscriber::new);
+      subscriber.users.add(username);
+      byUser.computeIfAbsent(username, k -> ConcurrentHashMap.<Subscriber>newKeySet()).add(subscriber);
+   }
+
+   /**
+    **   Removes all of a listener's subscriptions.
+    **
+    **   @param listener The client's callback.
+    **/
+   public void unsubscribe(AuctionListener listener) {
+      Subscriber subscriber = subscribers.remove(listener);
+      if (subscriber == null) return;
+
+      for(Integer id: subscriber.auctions) {
+         get(byAuction, id).remove(subscriber);
+      }
+      for(String username: subscriber.users) {
+         get(byUser, username).remove(subscriber);
+      }
+   }
+
+   /*
+    *    Drops the subscribers whose callbacks have blocked for longer
+    *    than the timeout, so no more events are queued for them. The
+    *    thread making the callback is freed once RMI gives up on it.
+    */
+   private void dropBlocked() {
+      long now = System.nanoTime();
+      for(Subscriber subscriber: subscribers.values()) {
+         long since = subscriber.since;
+         if (since != 0 && now - since > TimeUnit.MILLISECONDS.toNanos(TIMEOUT)) {
+            Log.warn("Dropping subscriber {}, whose callback has blocked", subscriber.listener);
+            subscriber.drop();
+         }
+      }
+   }
+
+   private static ThreadFactory daemon(String name) {
+      return r -> {
+         Thread thread = new Thread(r, name);
+         thread.setDaemon(true);
+         return thread;
+      };
+   }
+
+   /*
+    *    Gets the subscribers under a key, or an empty set.
+    */
+   private static <K> Set<Subscriber> get(ConcurrentHashMap<K, Set<Subscriber>> index, K key) {
+      Set<Subscriber> set = index.get(key);
+      return (set == null) ? Collections.<Subscriber>emptySet() : set;
+   }
+
+   /*
+    *    A single client's callback, with a bounded queue of events not
+    *    yet delivered. At most one delivery task runs per subscriber, so
+    *    events arrive in order and a slow client only ties up one thread,
+    *    until it is dropped.
+    */
+   private class Subscriber implements Runnable {
+      final AuctionListener listener;
+      final Set<Integer> auctions = ConcurrentHashMap.newKeySet();
+      final Set<String> users = ConcurrentHashMap.newKeySet();
+      final ArrayBlockingQueue<AuctionEvent> queue = new ArrayBlockingQueue<AuctionEvent>(QUEUE_SIZE);
+      final AtomicBoolean scheduled = new AtomicBoolean();
+      // When the callback under way started, or 0 if there is none.
+      volatile long since;
+      volatile boolean dropped;
+
+      Subscriber(AuctionListener listener) {
+         this.listener = listener;
+      }
+
+      /*
+       *    Queues an event, dropping the subscriber if it has fallen a
+       *    whole queue behind.
+       */
+      void offer(AuctionEvent event) {
+         if (dropped) return;
+         if (!queue.offer(event)) {
+            Log.warn("Dropping slow subscriber {}", listener);
+            this.drop();
+            return;
+         }
+         if (scheduled.compareAndSet(false, true)) {
+            delivery.execute(this);
+         }
+      }
+
+      /*
+       *    Unsubscribes the client and throws away what is queued for it.
+       */
+      void drop() {
+         dropped = true;
+         unsubscribe(listener);
+         queue.clear();
+      }
+
+      /*
+       *    Delivers queued events until the queue is empty.
+       */
+      public void run() {
+         do {
+            AuctionEvent event;
+            while (!dropped && (event = queue.poll()) != null) {
+               since = System.nanoTime();
+               try {
+                  listener.onEvent(event);
+               } catch (RemoteException e) {
+                  this.drop();
+               } finally {
+                  since = 0;
+               }
+            }
+            scheduled.set(false);
+         } while (!dropped && !queue.isEmpty() && scheduled.compareAndSet(false, true));
+      }
+   }
+}
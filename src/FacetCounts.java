@@ -0,0 +1,220 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class counts the open auctions in each category, and in each
+ ** band of current price within a category, so that a listing can show
+ ** how many auctions lie behind each filter without finding them. The
+ ** counts are kept up to date as auctions open, are bid on and close,
+ ** so reading them costs only as much as there are counts.
+ **/
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class FacetCounts implements Serializable {
+   // The upper bound of each price band but the last, which has none.
+   private static final float[] BANDS = {10, 50, 100, 500, 1000};
+
+   // The count in each band, by category. A category is dropped once it
+   // has no auctions left. Guarded by `this`.
+   private final TreeMap<String, int[]> counts;
+
+   /**
+    **   Constructor Method. Starts with no auctions.
+    **/
+   public FacetCounts() {
+      counts = new TreeMap<String, int[]>();
+   }
+
+   /**
+    **   Counts an auction opening.
+    **
+    **   @param category The auction's category.
+    **   @param price The auction's current price.
+    **/
+   public synchronized void add(String category, float price) {
+      this.change(category, bandOf(price), 1);
+   }
+
+   /**
+    **   Counts an auction closing.
+    **
+    **   @param category The auction's category.
+    **   @param price The auction's current price.
+    **/
+   public synchronized void remove(String category, float price) {
+      this.change(category, bandOf(price), -1);
+   }
+
+   /**
+    **   Counts an auction's price changing, which may move it to another
+    **   band.
+    **
+    **   @param category The auction's category.
+    **   @param from The price before.
+    **   @param to The price after.
+    **/
+   public synchronized void move(String category, float from, float to) {
+      int before = bandOf(from);
+      int after = bandOf(to);
+      if (before == after) return;
+      this.change(category, before, -1);
+      this.change(category, after, 1);
+   }
+
+   /**
+    **   Adds another set of counts to these, such as those of another
+    **   shard group.
+    **
+    **   @param other The counts to add.
+    **/
+   public void addAll(FacetCounts other) {
+      // Copied first, so that the two are never locked at once.
+      FacetCounts theirs = other.copy();
+      synchronized (this) {
+         for(Map.Entry<String, int[]> entry: theirs.counts.entrySet()) {
+            int[] bands = counts.computeIfAbsent(entry.getKey(), k -> new int[BANDS.length + 1]);
+            for (int band = 0; band < bands.length; band++) {
+               bands[band] += entry.getValue()[band];
+            }
+         }
+      }
+   }
+
+   /**
+    **   Makes a copy of the counts as they stand, which later changes do
+    **   not touch.
+    **
+    **   @return The copy.
+    **/
+   public synchronized FacetCounts copy() {
+      FacetCounts copy = new FacetCounts();
+      for(Map.Entry<String, int[]> entry: counts.entrySet()) {
+         copy.counts.put(entry.getKey(), entry.getValue().clone());
+      }
+      return copy;
+   }
+
+   /**
+    **   Accessor Method. Gets the categories with open auctions.
+    **
+    **   @return The categories, in alphabetical order.
+    **/
+   public synchronized ArrayList<String> getCategories() {
+      return new ArrayList<String>(counts.keySet());
+   }
+
+   /**
+    **   Accessor Method. Gets the number of open auctions in a category.
+    **
+    **   @param category The category.
+    **   @return The count.
+    **/
+   public synchronized int getCount(String category) {
+      int[] bands = counts.get(category);
+      int total = 0;
+      for (int band = 0; bands != null && band < bands.length; band++) {
+         total += bands[band];
+      }
+      return total;
+   }
+
+   /**
+    **   Accessor Method. Gets the number of open auctions in a category
+    **   whose price lies in a band.
+    **
+    **   @param category The category.
+    **   @param band The band, from 0.
+    **   @return The count.
+    **/
+   public synchronized int getCount(String category, int band) {
+      int[] bands = counts.get(category);
+      return (bands == null) ? 0 : bands[band];
+   }
+
+   /**
+    **   Accessor Method. Gets the number of open auctions in all.
+    **
+    **   @return The count.
+    **/
+   public synchronized int getTotal() {
+      int total = 0;
+      for(String category: counts.keySet()) {
+         total += this.getCount(category);
+      }
+      return total;
+   }
+
+   /**
+    **   Accessor Method. Gets the number of price bands.
+    **
+    **   @return The count.
+    **/
+   public static int getBandCount() {
+      return BANDS.length + 1;
+   }
+
+   /**
+    **   Accessor Method. Gets a description of the prices in a band.
+    **
+    **   @param band The band, from 0.
+    **   @return The description, such as "10-50".
+    **/
+   public static String getBandLabel(int band) {
+      if (band == 0) return "<"+(int)BANDS[0];
+      if (band == BANDS.length) return (int)BANDS[BANDS.length - 1]+"+";
+      return (int)BANDS[band - 1]+"-"+(int)BANDS[band];
+   }
+
+   /**
+    **   Gets the band a price lies in. Each band includes its lower bound
+    **   but not its upper.
+    **
+    **   @param price The price.
+    **   @return The band, from 0.
+    **/
+   public static int bandOf(float price) {
+      int band = 0;
+      while (band < BANDS.length && price >= BANDS[band]) {
+         band++;
+      }
+      return band;
+   }
+
+   /*
+    *    Adds to the count in a band, dropping the category once it has
+    *    no auctions left.
+    */
+   private void change(String category, int band, int delta) {
+      int[] bands = counts.computeIfAbsent(category, k -> new int[BANDS.length + 1]);
+      bands[band] += delta;
+      for(int count: bands) {
+         if (count != 0) return;
+      }
+      counts.remove(category);
+   }
+}
@@ -0,0 +1,164 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class holds the JDK Flight Recorder events raised along the bid
+ ** and replication path. Unless a recording has them enabled, each costs
+ ** no more than a check of a flag.
+ **/
+
+import jdk.jfr.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public final class FlightEvents {
+   private FlightEvents() {}
+
+   /**
+    **   A call from a client arriving at a front end, over RMI or the
+    **   binary protocol.
+    **/
+   @Name("auctionprog.RemoteCall")
+   @Label("Remote Call")
+   @Category({"AuctionProg", "Front End"})
+   @StackTrace(false)
+   public static class RemoteCall extends Event {
+      @Label("Operation")
+      public String operation;
+
+      @Label("Auction ID")
+      public int auctionId;
+   }
+
+   /**
+    **   A front end fetching an auction from its shard group.
+    **/
+   @Name("auctionprog.Lookup")
+   @Label("Auction Lookup")
+   @Category({"AuctionProg", "Front End"})
+   @StackTrace(false)
+   public static class Lookup extends Event {
+      @Label("Auction ID")
+      public int auctionId;
+
+      @Label("Shard")
+      public int shard;
+
+      @Label("Found")
+      public boolean found;
+   }
+
+   /**
+    **   A front end checking a bid or a close is allowed.
+    **/
+   @Name("auctionprog.Validation")
+   @Label("Validation")
+   @Category({"AuctionProg", "Front End"})
+   @StackTrace(false)
+   public static class Validation extends Event {
+      @Label("Operation")
+      public String operation;
+
+      @Label("Auction ID")
+      public int auctionId;
+
+      @Label("Passed")
+      public boolean passed;
+   }
+
+   /**
+    **   An RPC from a front end to a shard group, until every response
+    **   is in.
+    **/
+   @Name("auctionprog.Rpc")
+   @Label("Shard RPC")
+   @Category({"AuctionProg", "JGroups"})
+   @StackTrace(false)
+   public static class Rpc extends Event {
+      @Label("Shard")
+      public int shard;
+
+      @Label("Method")
+      public String method;
+
+      @Label("Replicas")
+      public int replicas;
+
+      @Label("Responses")
+      public int responses;
+   }
+
+   /**
+    **   An RPC message being marshalled or unmarshalled.
+    **/
+   @Name("auctionprog.Serialization")
+   @Label("RPC Serialization")
+   @Category({"AuctionProg", "JGroups"})
+   @StackTrace(false)
+   public static class Serialization extends Event {
+      @Label("Direction")
+      public String direction;
+
+      @Label("Method")
+      public String method;
+
+      @Label("Size")
+      @DataAmount
+      public int bytes;
+   }
+
+   /**
+    **   A replica applying a bid to its store.
+    **/
+   @Name("auctionprog.ReplicaApply")
+   @Label("Replica Apply Bid")
+   @Category({"AuctionProg", "Replica"})
+   @StackTrace(false)
+   public static class ReplicaApply extends Event {
+      @Label("Shard")
+      public int shard;
+
+      @Label("Auction ID")
+      public int auctionId;
+
+      @Label("Price")
+      public float price;
+   }
+
+   /**
+    **   A front end reading a key from disk.
+    **/
+   @Name("auctionprog.KeyLoad")
+   @Label("Key Load")
+   @Category({"AuctionProg", "Security"})
+   @StackTrace(false)
+   public static class KeyLoad extends Event {
+      @Label("Owner")
+      public String owner;
+
+      @Label("Size")
+      @DataAmount
+      public int bytes;
+   }
+}
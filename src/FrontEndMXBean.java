@@ -0,0 +1,100 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class defines the metrics a front end publishes over JMX.
+ **/
+
+import java.util.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public interface FrontEndMXBean {
+   /**
+    **   Gets the latency of each `Auction` method, in microseconds.
+    **   @return The latencies, by method.
+    **/
+   public SortedMap<String, LatencyHistogram> getOperationLatencies();
+
+   /**
+    **   Gets the number of calls to each `Auction` method that failed.
+    **   @return The error counts, by method.
+    **/
+   public SortedMap<String, Long> getOperationErrors();
+
+   /**
+    **   Gets the time from sending each kind of RPC to a shard group to
+    **   having all its responses, in microseconds.
+    **   @return The latencies, by `<shard>/<method>`.
+    **/
+   public SortedMap<String, LatencyHistogram> getRpcLatencies();
+
+   /**
+    **   Gets the number of RPCs to a shard group that failed outright.
+    **   @return The error counts, by `<shard>/<method>`.
+    **/
+   public SortedMap<String, Long> getRpcErrors();
+
+   /**
+    **   Gets how each replica has answered this front end's RPCs.
+    **   @return The counts, by `<shard>/<replica>`.
+    **/
+   public SortedMap<String, ReplicaStats> getReplicaResponses();
+
+   /**
+    **   Gets the size of the RPC messages this front end has marshalled,
+    **   in bytes.
+    **   @return The sizes, by `<shard>/<direction>`.
+    **/
+   public SortedMap<String, LatencyHistogram> getPayloadSizes();
+
+   /**
+    **   Gets how well the messages this front end sends and receives
+    **   compress, and the time spent compressing them: deflate and
+    **   inflate times in microseconds, deflated sizes as a percentage of
+    **   the original, and the sizes of messages deflated or left as they
+    **   were. RMI traffic counts every front end in the process.
+    **   @return The metrics, by `<shard>/<metric>` or `rmi/<metric>`.
+    **/
+   public SortedMap<String, LatencyHistogram> getCompression();
+
+   /**
+    **   Gets the current limit on calls in flight, which adapts to how
+    **   long calls are taking.
+    **   @return The limit.
+    **/
+   public int getConcurrencyLimit();
+
+   /**
+    **   Gets the number of calls in flight.
+    **   @return The count.
+    **/
+   public int getCallsInFlight();
+
+   /**
+    **   Gets the number of calls turned away by admission control.
+    **   @return The counts, by method.
+    **/
+   public SortedMap<String, Long> getRejectedCalls();
+}
@@ -0,0 +1,65 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class represents an auction ranked by how many bids it has had
+ ** lately.
+ **/
+
+import java.io.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class HotAuctionWrapper implements Serializable {
+   private AuctionWrapper auction;
+   private int bids;
+
+   /**
+    **   Constructor Method.
+    **   @param auction The auction.
+    **   @param bids The number of bids placed on it in the window asked
+    **   about.
+    **/
+   public HotAuctionWrapper(AuctionWrapper auction, int bids) {
+      this.auction = auction;
+      this.bids = bids;
+   }
+
+   /**
+    **   Accessor Method. Returns the auction.
+    **   @return The auction.
+    **/
+   public AuctionWrapper getAuction() {
+      return this.auction;
+   }
+
+   /**
+    **   Accessor Method. Returns the number of bids placed on the
+    **   auction in the window asked about.
+    **   @return The count.
+    **/
+   public int getBids() {
+      return this.bids;
+   }
+}
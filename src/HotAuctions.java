@@ -0,0 +1,243 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class ranks a store's open auctions by how many bids they have
+ ** had over the last few minutes and over the last hour. Time is cut into
+ ** buckets, and each auction bid on lately has a ring of bid counts, one
+ ** per bucket of the last hour, with running totals over both windows.
+ ** The auctions are kept sorted by each total, so the busiest are read
+ ** straight off the front. As a bucket falls out of a window, only the
+ ** auctions bid on in it are looked at again.
+ **/
+
+import java.util.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class HotAuctions {
+   // The width of a bucket, in milliseconds, and the number of buckets
+   // in each window.
+   private static final long WIDTH = Long.getLong("auctionprog.hot.bucket", 60 * 1000L);
+   private static final int RECENT = 5;
+   private static final int HOUR = 60;
+
+   // Only auctions with bids in the last hour have counters. Guarded by
+   // `this`.
+   private final HashMap<Integer, Counter> counters;
+   private final TreeSet<Counter> byRecent;
+   private final TreeSet<Counter> byHour;
+   // The auctions bid on in each bucket of the last hour, in the same
+   // ring as the counts.
+   private final IdList[] touched;
+   // The latest bucket seen.
+   private long current;
+
+   /**
+    **   Constructor Method. Starts with no bids.
+    **/
+   public HotAuctions() {
+      counters = new HashMap<Integer, Counter>();
+      byRecent = new TreeSet<Counter>((x, y) -> (x.recent != y.recent) ? Integer.compare(y.recent, x.recent) : Integer.compare(x.id, y.id));
+      byHour = new TreeSet<Counter>((x, y) -> (x.total != y.total) ? Integer.compare(y.total, x.total) : Integer.compare(x.id, y.id));
+      touched = new IdList[HOUR];
+      for (int i = 0; i < HOUR; i++) {
+         touched[i] = new IdList();
+      }
+   }
+
+   /**
+    **   Counts a bid on an auction. A bid stamped over an hour before the
+    **   latest seen is not counted.
+    **
+    **   @param id The auction ID.
+    **   @param time When the bid was placed, in milliseconds since the
+    **   epoch.
+    **/
+   public synchronized void record(int id, long time) {
+      long bucket = time / WIDTH;
+      this.advance(bucket);
+      if (bucket <= current - HOUR) return;
+
+      Counter counter = counters.get(id);
+      if (counter == null) {
+         counter = new Counter(id);
+         counters.put(id, counter);
+      }
+      int slot = slotOf(bucket);
+      this.unrank(counter);
+      if (counter.counts[slot] == 0) touched[slot].add(id);
+      counter.counts[slot]++;
+      counter.total++;
+      if (bucket > current - RECENT) counter.recent++;
+      this.rank(counter);
+   }
+
+   /**
+    **   Stops ranking an auction, once it has closed.
+    **
+    **   @param id The auction ID.
+    **/
+   public synchronized void remove(int id) {
+      Counter counter = counters.remove(id);
+      if (counter != null) this.unrank(counter);
+   }
+
+   /**
+    **   Gets the auctions with the most bids over the last few minutes,
+    **   or over the last hour. Buckets that have fallen out of the
+    **   windows since the last bid are let go first, which costs as much
+    **   as the bids in them; otherwise this costs only as much as the
+    **   auctions asked for.
+    **
+    **   @param lastHour Whether to count over the last hour, rather than
+    **   the last few minutes.
+    **   @param limit The most auctions to return.
+    **   @param now The time now, in milliseconds since the epoch.
+    **   @return The IDs and bid counts of the auctions, as pairs, busiest
+    **   first.
+    **/
+   public synchronized int[] getTop(boolean lastHour, int limit, long now) {
+      this.advance(now / WIDTH);
+      TreeSet<Counter> ranked = lastHour ? byHour : byRecent;
+      int[] top = new int[2 * Math.min(limit, ranked.size())];
+      Iterator<Counter> it = ranked.iterator();
+      for (int i = 0; i < top.length; i += 2) {
+         Counter counter = it.next();
+         top[i] = counter.id;
+         top[i + 1] = lastHour ? counter.total : counter.recent;
+      }
+      return top;
+   }
+
+   /**
+    **   Accessor Method. Gets the number of auctions bid on in the last
+    **   hour.
+    **
+    **   @return The count.
+    **/
+   public synchronized int getSize() {
+      return counters.size();
+   }
+
+   /*
+    *    Moves the latest bucket on, taking each bucket that falls out of
+    *    a window off the totals of the auctions bid on in it.
+    */
+   private void advance(long bucket) {
+      if (bucket <= current) return;
+      if (bucket - current >= HOUR) {
+         // Every bucket held has fallen out of both windows.
+         counters.clear();
+         byRecent.clear();
+         byHour.clear();
+         for(IdList ids: touched) {
+            ids.size = 0;
+         }
+         current = bucket;
+         return;
+      }
+      while (current < bucket) {
+         current++;
+         // The bucket an hour ago shares its slot with the new one, and
+         // left the last few minutes long since.
+         int slot = slotOf(current);
+         IdList ids = touched[slot];
+         for (int i = 0; i < ids.size; i++) {
+            this.expire(ids.values[i], slot, true);
+         }
+         ids.size = 0;
+
+         slot = slotOf(current - RECENT);
+         ids = touched[slot];
+         for (int i = 0; i < ids.size; i++) {
+            this.expire(ids.values[i], slot, false);
+         }
+      }
+   }
+
+   /*
+    *    Takes one bucket's bids off an auction's total for the last few
+    *    minutes, or for the last hour, dropping its counter once it has
+    *    none left.
+    */
+   private void expire(int id, int slot, boolean fromHour) {
+      Counter counter = counters.get(id);
+      if (counter == null) return;
+      this.unrank(counter);
+      if (fromHour) {
+         counter.total -= counter.counts[slot];
+         counter.counts[slot] = 0;
+      } else {
+         counter.recent -= counter.counts[slot];
+      }
+      if (counter.total == 0) {
+         counters.remove(id);
+      } else {
+         this.rank(counter);
+      }
+   }
+
+   private void rank(Counter counter) {
+      if (counter.recent > 0) byRecent.add(counter);
+      if (counter.total > 0) byHour.add(counter);
+   }
+
+   private void unrank(Counter counter) {
+      byRecent.remove(counter);
+      byHour.remove(counter);
+   }
+
+   private static int slotOf(long bucket) {
+      return (int)Math.floorMod(bucket, (long)HOUR);
+   }
+
+   /*
+    *    An auction's bid counts, one per bucket of the last hour, with
+    *    their totals over each window.
+    */
+   private static final class Counter {
+      final int id;
+      final int[] counts = new int[HOUR];
+      int recent;
+      int total;
+
+      Counter(int id) {
+         this.id = id;
+      }
+   }
+
+   /*
+    *    A growable list of auction IDs.
+    */
+   private static final class IdList {
+      int[] values = new int[4];
+      int size;
+
+      void add(int id) {
+         if (size == values.length) values = Arrays.copyOf(values, size * 2);
+         values[size++] = id;
+      }
+   }
+}
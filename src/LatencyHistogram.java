@@ -0,0 +1,179 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class records latencies into log-linear buckets, in the manner
+ ** of an HDR histogram, so percentiles can be read off to within 1%.
+ **/
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class LatencyHistogram {
+   // Values below 2^SUB_BITS get a bucket each; above that, every power
+   // of two is split into 2^(SUB_BITS - 1) equal buckets.
+   private static final int SUB_BITS = 7;
+   private static final int SUB_COUNT = 1 << SUB_BITS;
+   private static final int HALF_COUNT = SUB_COUNT >> 1;
+   private static final int BUCKETS = SUB_COUNT + (63 - SUB_BITS) * HALF_COUNT;
+
+   private AtomicLongArray counts;
+   private LongAdder total;
+   private LongAdder sum;
+   private AtomicLong max;
+
+   /**
+    **   Constructor Method.
+    **/
+   public LatencyHistogram() {
+      counts = new AtomicLongArray(BUCKETS);
+      total = new LongAdder();
+      sum = new LongAdder();
+      max = new AtomicLong();
+   }
+
+   /**
+    **   Records a value. Safe to call from any number of threads at once.
+    **
+    **   @param value The value, which must not be negative.
+    **/
+   public void record(long value) {
+      if (value < 0) value = 0;
+      counts.incrementAndGet(indexOf(value));
+      total.increment();
+      sum.add(value);
+      if (value > max.get()) max.accumulateAndGet(value, Math::max);
+   }
+
+   /**
+    **   Accessor Method. Gets the number of values recorded.
+    **   @return The count.
+    **/
+   public long getCount() {
+      return total.sum();
+   }
+
+   /**
+    **   Accessor Method. Gets the mean of the values recorded.
+    **   @return The mean, or 0 if none have been.
+    **/
+   public double getMean() {
+      long count = total.sum();
+      return (count == 0) ? 0 : (double)sum.sum() / count;
+   }
+
+   /**
+    **   Accessor Method. Gets the largest value recorded.
+    **   @return The maximum.
+    **/
+   public long getMax() {
+      return this.max.get();
+   }
+
+   /**
+    **   Accessor Method. Gets the median.
+    **   @return The 50th percentile.
+    **/
+   public long getP50() {
+      return this.getPercentile(50);
+   }
+
+   /**
+    **   Accessor Method. Gets the 90th percentile.
+    **   @return The 90th percentile.
+    **/
+   public long getP90() {
+      return this.getPercentile(90);
+   }
+
+   /**
+    **   Accessor Method. Gets the 99th percentile.
+    **   @return The 99th percentile.
+    **/
+   public long getP99() {
+      return this.getPercentile(99);
+   }
+
+   /**
+    **   Accessor Method. Gets the 99.9th percentile.
+    **   @return The 99.9th percentile.
+    **/
+   public long getP999() {
+      return this.getPercentile(99.9);
+   }
+
+   /**
+    **   Gets the value below which the given percentage of the recorded
+    **   values fall.
+    **
+    **   @param percentile The percentile, from 0 to 100.
+    **   @return The highest value in the bucket holding the percentile.
+    **/
+   public long getPercentile(double percentile) {
+      long count = total.sum();
+      if (count == 0) return 0;
+
+      long rank = Math.max(1, (long)Math.ceil(percentile / 100.0 * count));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         seen += counts.get(i);
+         if (seen >= rank) return Math.min(highestIn(i), max.get());
+      }
+      return max.get();
+   }
+
+   /**
+    **   Forgets every value recorded.
+    **/
+   public void reset() {
+      for (int i = 0; i < BUCKETS; i++) {
+         counts.set(i, 0);
+      }
+      total.reset();
+      sum.reset();
+      max.set(0);
+   }
+
+   /*
+    *    Gets the bucket a value falls in.
+    */
+   private static int indexOf(long value) {
+      if (value < SUB_COUNT) return (int)value;
+      int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BITS - 1);
+      return SUB_COUNT + (shift - 1) * HALF_COUNT + (int)(value >>> shift) - HALF_COUNT;
+   }
+
+   /*
+    *    Gets the highest value that falls in a bucket.
+    */
+   private static long highestIn(int index) {
+      if (index < SUB_COUNT) return index;
+      int shift = (index - SUB_COUNT) / HALF_COUNT + 1;
+      long sub = (index - SUB_COUNT) % HALF_COUNT + HALF_COUNT;
+      return ((sub + 1) << shift) - 1;
+   }
+}
@@ -0,0 +1,277 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class spreads a client's calls across every running front end.
+ ** Calls that carry a request ID may be applied only once however often
+ ** they are sent, so a slow one is hedged on a second front end and one
+ ** whose answer was lost is sent again.
+ **/
+
+import java.lang.reflect.*;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.Naming;
+import java.rmi.NoSuchObjectException;
+import java.rmi.UnmarshalException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class LoadBalancer implements InvocationHandler {
+   private static final long REFRESH_INTERVAL = 10000;
+   // How long a call with a request ID waits on one front end before
+   // also being sent to another.
+   private static final long HEDGE_DELAY = Long.getLong("auctionprog.hedge.delay", 200);
+   private static final ExecutorService SENDERS = Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, "HedgedCall");
+      thread.setDaemon(true);
+      return thread;
+   });
+   // These calls read state left behind by the caller's previous call
+   // (the status message and the login challenge), so they have to go to
+   // the same front end.
+   private static final Set<String> STICKY = new HashSet<String>(Arrays.asList("getStatusofLast", "returnChallenge"));
+
+   private String registry;
+   private CopyOnWriteArrayList<Endpoint> endpoints;
+   private ThreadLocal<Endpoint> last;
+   private volatile long lastRefresh;
+
+   /*
+    *    Constructor Method.
+    */
+   private LoadBalancer(String registry) {
+      this.registry = registry;
+      this.endpoints = new CopyOnWriteArrayList<Endpoint>();
+      this.last = new ThreadLocal<Endpoint>();
+   }
+
+   /**
+    **   Finds the front ends registered with the given registry and
+    **   returns a stub that balances calls across them.
+    **
+    **   @param registry The registry URL, e.g. "rmi://localhost/".
+    **   @return The balancing stub.
+    **/
+   public static Auction connect(String registry) throws Exception {
+      LoadBalancer balancer = new LoadBalancer(registry);
+      balancer.refresh();
+      if (balancer.endpoints.isEmpty()) {
+         throw new ConnectException("No front ends registered at "+registry);
+      }
+      return (Auction)Proxy.newProxyInstance(Auction.class.getClassLoader(), new Class[]{Auction.class}, balancer);
+   }
+
+   /**
+    **   Invokes a call on the front end with the fewest calls in flight,
+    **   failing over to another if it cannot be reached. A call with a
+    **   request ID is hedged instead.
+    **/
+   public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+         return method.invoke(this, args);
+      }
+
+      if (System.currentTimeMillis() - lastRefresh > REFRESH_INTERVAL) {
+         this.refresh();
+      }
+      if (RequestIds.isCarriedBy(method) && args[0] instanceof Long && (Long)args[0] != RequestIds.NONE) {
+         return this.hedge(method, args);
+      }
+
+      Endpoint endpoint = STICKY.contains(method.getName()) ? last.get() : null;
+      for (int attempt = 0; attempt <= endpoints.size(); attempt++) {
+         if (endpoint == null || !endpoint.alive) {
+            endpoint = this.choose(Collections.<Endpoint>emptySet());
+         }
+         if (endpoint == null) {
+            this.refresh();
+            endpoint = this.choose(Collections.<Endpoint>emptySet());
+         }
+         if (endpoint == null) break;
+
+         last.set(endpoint);
+         endpoint.outstanding.incrementAndGet();
+         try {
+            return method.invoke(endpoint.stub, args);
+         } catch (InvocationTargetException e) {
+            // Only failures that mean the call never reached the front end
+            // are safe to retry elsewhere.
+            if (!isUnreachable(e.getCause())) throw e.getCause();
+            endpoint.alive = false;
+         } finally {
+            endpoint.outstanding.decrementAndGet();
+         }
+      }
+      throw new ConnectException("No front end reachable at "+registry);
+   }
+
+   /*
+    *    Sends a call with a request ID to one front end, and to a second
+    *    as well if the first has not answered within `HEDGE_DELAY`. The
+    *    shard groups apply the request once, so whichever answers first
+    *    is taken, and the caller's next sticky call follows it. A call
+    *    whose answer was lost, and so may or may not have got through,
+    *    is sent again elsewhere like one that never arrived.
+    */
+   private Object hedge(Method method, Object[] args) throws Throwable {
+      LinkedBlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<Outcome>();
+      HashSet<Endpoint> tried = new HashSet<Endpoint>();
+      int pending = this.send(method, args, tried, outcomes);
+      boolean hedged = false;
+      Throwable failure = null;
+      while (pending > 0) {
+         Outcome outcome = hedged ? outcomes.take() : outcomes.poll(HEDGE_DELAY, TimeUnit.MILLISECONDS);
+         if (outcome == null) {
+            hedged = true;
+            pending += this.send(method, args, tried, outcomes);
+            continue;
+         }
+
+         pending--;
+         if (outcome.failure == null) {
+            last.set(outcome.endpoint);
+            return outcome.result;
+         }
+         boolean unreachable = isUnreachable(outcome.failure);
+         if (!unreachable && !(outcome.failure instanceof UnmarshalException)) throw outcome.failure;
+         if (unreachable) outcome.endpoint.alive = false;
+         failure = outcome.failure;
+         if (pending == 0) pending += this.send(method, args, tried, outcomes);
+      }
+      if (failure != null && !isUnreachable(failure)) throw failure;
+      throw new ConnectException("No front end reachable at "+registry);
+   }
+
+   /*
+    *    Sends a call to the best front end not yet tried, returning how
+    *    many were sent: 1, or 0 if there were none left.
+    */
+   private int send(Method method, Object[] args, Set<Endpoint> tried, BlockingQueue<Outcome> outcomes) {
+      Endpoint endpoint = this.choose(tried);
+      if (endpoint == null) {
+         this.refresh();
+         endpoint = this.choose(tried);
+      }
+      if (endpoint == null) return 0;
+
+      tried.add(endpoint);
+      endpoint.outstanding.incrementAndGet();
+      final Endpoint target = endpoint;
+      SENDERS.execute(() -> {
+         Outcome outcome = new Outcome(target);
+         try {
+            outcome.result = method.invoke(target.stub, args);
+         } catch (InvocationTargetException e) {
+            outcome.failure = e.getCause();
+         } catch (Throwable t) {
+            outcome.failure = t;
+         } finally {
+            target.outstanding.decrementAndGet();
+         }
+         outcomes.add(outcome);
+      });
+      return 1;
+   }
+
+   /*
+    *    Picks the live front end with the fewest calls in flight, other
+    *    than those given.
+    */
+   private Endpoint choose(Set<Endpoint> excluded) {
+      Endpoint best = null;
+      for(Endpoint endpoint: endpoints) {
+         if (endpoint.alive && !excluded.contains(endpoint) && (best == null || endpoint.outstanding.get() < best.outstanding.get())) {
+            best = endpoint;
+         }
+      }
+      return best;
+   }
+
+   /*
+    *    Looks up every front end in the registry, keeping the call counts
+    *    of any that are already known.
+    */
+   private synchronized void refresh() {
+      lastRefresh = System.currentTimeMillis();
+      try {
+         for(String name: Naming.list(registry)) {
+            if (!name.substring(name.lastIndexOf('/') + 1).startsWith(AuctionServer.SERVICE_NAME)) continue;
+
+            Auction stub = (Auction)Naming.lookup(name);
+            Endpoint known = null;
+            for(Endpoint endpoint: endpoints) {
+               if (endpoint.name.equals(name)) known = endpoint;
+            }
+            if (known == null) {
+               endpoints.add(new Endpoint(name, stub));
+            } else {
+               known.stub = stub;
+               known.alive = true;
+            }
+         }
+      } catch (Exception e) {
+         Log.error(e);
+      }
+   }
+
+   /*
+    *    Tests whether an exception means the front end could not be
+    *    reached at all.
+    */
+   private static boolean isUnreachable(Throwable t) {
+      return (t instanceof ConnectException) || (t instanceof ConnectIOException) || (t instanceof NoSuchObjectException);
+   }
+
+   /*
+    *    The answer one front end gave to a hedged call.
+    */
+   private static class Outcome {
+      final Endpoint endpoint;
+      Object result;
+      Throwable failure;
+
+      Outcome(Endpoint endpoint) {
+         this.endpoint = endpoint;
+      }
+   }
+
+   /*
+    *    A single front end.
+    */
+   private static class Endpoint {
+      final String name;
+      final AtomicInteger outstanding = new AtomicInteger();
+      volatile Auction stub;
+      volatile boolean alive = true;
+
+      Endpoint(String name, Auction stub) {
+         this.name = name;
+         this.stub = stub;
+      }
+   }
+}
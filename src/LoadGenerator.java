@@ -0,0 +1,295 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class drives load against the server headlessly, standing in for
+ ** many interactive clients at once. The load is open: every call is sent
+ ** when it falls due on a thread of its own, so a slow server cannot slow
+ ** the load down and hide its own latency.
+ **/
+
+import java.rmi.RemoteException;
+import java.security.PublicKey;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class LoadGenerator {
+   private static final int USERS = Integer.getInteger("auctionprog.load.users", 10);
+   private static final double RATE = Double.parseDouble(System.getProperty("auctionprog.load.rate", "100"));
+   private static final int DURATION = Integer.getInteger("auctionprog.load.duration", 60);
+   private static final String MIX = System.getProperty("auctionprog.load.mix", "create=10,list=30,bid=50,close=10");
+   private static final int IN_FLIGHT = Integer.getInteger("auctionprog.load.inflight", 1000);
+   private static final int DRAIN = Integer.getInteger("auctionprog.load.drain", 30);
+
+   /**
+    **   The operations a virtual user can carry out.
+    **/
+   public enum Operation { CREATE, LIST, BID, CLOSE }
+
+   private Auction a;
+   private EnumMap<Operation, Integer> weights;
+   private int totalWeight;
+   private EnumMap<Operation, LatencyHistogram> latencies;
+   private EnumMap<Operation, LongAdder> errors;
+   private EnumMap<Operation, LongAdder> rejected;
+   private LatencyHistogram overall;
+   // Calls that fell due, those that could not be sent because
+   // `IN_FLIGHT` calls were already waiting on the server, and those that
+   // came back, however they ended.
+   private LongAdder scheduled;
+   private LongAdder unsent;
+   private LongAdder finished;
+   private ThreadPoolExecutor senders;
+   // The auctions last listed, shared by every virtual user to pick bids
+   // and closes from.
+   private volatile ArrayList<AuctionWrapper> known;
+
+   /**
+    **   Constructor Method.
+    **
+    **   @param a The server stub, as used by the interactive client.
+    **/
+   public LoadGenerator(Auction a) {
+      this.a = a;
+      this.known = new ArrayList<AuctionWrapper>();
+      weights = new EnumMap<Operation, Integer>(Operation.class);
+      latencies = new EnumMap<Operation, LatencyHistogram>(Operation.class);
+      errors = new EnumMap<Operation, LongAdder>(Operation.class);
+      rejected = new EnumMap<Operation, LongAdder>(Operation.class);
+      overall = new LatencyHistogram();
+      scheduled = new LongAdder();
+      unsent = new LongAdder();
+      finished = new LongAdder();
+      for(Operation op: Operation.values()) {
+         weights.put(op, 0);
+         latencies.put(op, new LatencyHistogram());
+         errors.put(op, new LongAdder());
+         rejected.put(op, new LongAdder());
+      }
+      for(String entry: MIX.split(",")) {
+         String[] pair = entry.trim().split("=");
+         weights.put(Operation.valueOf(pair[0].trim().toUpperCase()), Integer.parseInt(pair[1].trim()));
+      }
+      for(int weight: weights.values()) {
+         totalWeight += weight;
+      }
+   }
+
+   /**
+    **   Logs in the virtual users, runs them for the set duration and
+    **   prints a report.
+    **/
+   public void run() throws Exception {
+      System.out.println("Logging in "+USERS+" virtual users...");
+      List<UserWrapper> users = this.login();
+      System.out.println("Running "+MIX+" at "+RATE+" ops/s for "+DURATION+"s...");
+
+      known = a.showAllAuctions();
+      senders = new ThreadPoolExecutor(0, IN_FLIGHT, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), r -> {
+         Thread thread = new Thread(r, "LoadSender");
+         thread.setDaemon(true);
+         return thread;
+      });
+      ExecutorService pool = Executors.newFixedThreadPool(users.size());
+      long start = System.nanoTime();
+      long end = start + TimeUnit.SECONDS.toNanos(DURATION);
+      // Each user keeps to a fixed schedule for its share of the rate,
+      // handing each call to a sender as it falls due, so no call waits
+      // for an earlier one to come back.
+      long interval = (long)(1e9 * users.size() / RATE);
+      for (int i = 0; i < users.size(); i++) {
+         UserWrapper user = users.get(i);
+         long offset = interval * i / users.size();
+         pool.execute(() -> this.drive(user, start + offset, interval, end));
+      }
+      pool.shutdown();
+      pool.awaitTermination(DURATION + 60, TimeUnit.SECONDS);
+      double seconds = (System.nanoTime() - start) / 1e9;
+      // Gives the calls still out a while to come back.
+      senders.shutdown();
+      senders.awaitTermination(DRAIN, TimeUnit.SECONDS);
+
+      this.report(seconds);
+   }
+
+   /*
+    *    Registers the virtual users and puts each through the same
+    *    handshake as the interactive client. This is done one user at a
+    *    time, as the server holds a single outstanding challenge.
+    */
+   private List<UserWrapper> login() throws Exception {
+      PublicKey serverKey = a.getPublicKey();
+      String run = Long.toString(System.currentTimeMillis(), 36);
+      ArrayList<UserWrapper> users = new ArrayList<UserWrapper>();
+
+      for (int i = 0; i < USERS; i++) {
+         String username = "load-"+run+"-"+i;
+         UserWrapper user = a.registerUser(RequestIds.next(), System.currentTimeMillis(), new UserWrapper("Load "+i, username+"@load.test", username));
+         if (user == null) {
+            System.out.println(a.getStatusofLast());
+            continue;
+         }
+         java.security.KeyPair pair = AuctionClient.exchangeKeys(a, username);
+         if (AuctionClient.verifyServer(a, serverKey) && AuctionClient.verifyUser(a, username, pair.getPrivate())) {
+            users.add(user);
+         } else {
+            System.out.println("Virtual user '"+username+"' failed to authenticate.");
+         }
+      }
+      if (users.isEmpty()) throw new IllegalStateException("No virtual users could log in.");
+      return users;
+   }
+
+   /*
+    *    Runs one virtual user's schedule, sending each call as it falls
+    *    due.
+    */
+   private void drive(UserWrapper user, long next, long interval, long end) {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      while (next < end) {
+         long wait;
+         while ((wait = next - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+         }
+
+         Operation op = this.pick(random);
+         long due = next;
+         scheduled.increment();
+         try {
+            senders.execute(() -> this.call(op, user, due));
+         } catch (RejectedExecutionException e) {
+            unsent.increment();
+         }
+         next += interval;
+      }
+   }
+
+   /*
+    *    Makes a call on a sender thread. Latency is measured from when the
+    *    call was due rather than when it was sent.
+    */
+   private void call(Operation op, UserWrapper user, long due) {
+      try {
+         this.perform(op, user, ThreadLocalRandom.current());
+         long latency = (System.nanoTime() - due) / 1000;
+         latencies.get(op).record(latency);
+         overall.record(latency);
+      } catch (RemoteException e) {
+         // Calls turned away by admission control are counted apart
+         // from failures.
+         if (OverloadedException.find(e) != null) {
+            rejected.get(op).increment();
+         } else {
+            errors.get(op).increment();
+         }
+      } catch (RuntimeException e) {
+         errors.get(op).increment();
+      } finally {
+         finished.increment();
+      }
+   }
+
+   /*
+    *    Picks an operation according to the mix.
+    */
+   private Operation pick(ThreadLocalRandom random) {
+      int roll = random.nextInt(totalWeight);
+      for(Map.Entry<Operation, Integer> entry: weights.entrySet()) {
+         roll -= entry.getValue();
+         if (roll < 0) return entry.getKey();
+      }
+      return Operation.LIST;
+   }
+
+   /*
+    *    Carries out an operation as a user.
+    */
+   private void perform(Operation op, UserWrapper user, ThreadLocalRandom random) throws RemoteException {
+      ArrayList<AuctionWrapper> auctions = known;
+      switch(op) {
+      case CREATE:
+         float start = 1 + random.nextInt(100);
+         a.openNewAuction(RequestIds.next(), System.currentTimeMillis(), new AuctionWrapper(0, "Load test lot", user, start, start * 2, System.currentTimeMillis() + 60 * 60 * 1000L));
+         break;
+      case LIST:
+         known = a.showAllAuctions();
+         break;
+      case BID:
+         if (auctions.isEmpty()) {
+            known = a.showAllAuctions();
+            break;
+         }
+         AuctionWrapper lot = auctions.get(random.nextInt(auctions.size()));
+         a.bidOnAuction(RequestIds.next(), System.currentTimeMillis(), lot.getID(), user, lot.getPrice() + 1 + random.nextInt(10));
+         break;
+      case CLOSE:
+         for(AuctionWrapper auction: auctions) {
+            if (auction.getOwner().getUsername().equals(user.getUsername())) {
+               a.closeAuction(RequestIds.next(), System.currentTimeMillis(), auction.getID(), user);
+               return;
+            }
+         }
+         // With none of its own auctions to close, the user opens one
+         // for later.
+         a.openNewAuction(RequestIds.next(), System.currentTimeMillis(), new AuctionWrapper(0, "Load test lot", user, 1.0f, 2.0f, System.currentTimeMillis() + 60 * 60 * 1000L));
+         break;
+      }
+   }
+
+   /*
+    *    Prints the throughput and latency percentiles of each operation.
+    */
+   private void report(double seconds) {
+      long errorCount = 0;
+      long rejectedCount = 0;
+      System.out.println();
+      System.out.println(String.format("%-8s%10s%10s%10s%10s%10s%10s%10s%8s%10s", "Op", "Count", "Ops/s", "p50", "p90", "p99", "p99.9", "Max", "Errors", "Rejected"));
+      for (int i = 0; i < 96; i++) System.out.print("-");
+      System.out.println();
+      for(Operation op: Operation.values()) {
+         this.printRow(op.toString(), latencies.get(op), errors.get(op).sum(), rejected.get(op).sum(), seconds);
+         errorCount += errors.get(op).sum();
+         rejectedCount += rejected.get(op).sum();
+      }
+      this.printRow("ALL", overall, errorCount, rejectedCount, seconds);
+      System.out.println("Latencies in microseconds, measured from when each call was due.");
+      long notSent = unsent.sum();
+      long notFinished = scheduled.sum() - notSent - finished.sum();
+      System.out.println(scheduled.sum()+" calls fell due: "+notSent+" could not be sent with "+IN_FLIGHT+" already in flight, and "
+            +notFinished+" had not come back "+DRAIN+"s after the run.");
+   }
+
+   /*
+    *    Prints a row of the report.
+    */
+   private void printRow(String name, LatencyHistogram histogram, long errorCount, long rejectedCount, double seconds) {
+      System.out.println(String.format("%-8s%10d%10.1f%10d%10d%10d%10d%10d%8d%10d", name, histogram.getCount(), histogram.getCount() / seconds,
+            histogram.getPercentile(50), histogram.getPercentile(90), histogram.getPercentile(99), histogram.getPercentile(99.9),
+            histogram.getMax(), errorCount, rejectedCount));
+   }
+}
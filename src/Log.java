@@ -0,0 +1,305 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class is the server's logger. Callers hand a message to a
+ ** lock-free ring buffer and carry on; a single background thread
+ ** formats and prints it.
+ **/
+
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public final class Log implements Runnable {
+   /**
+    **   The levels of message, least severe first.
+    **/
+   public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+   private static final Level LEVEL = Level.valueOf(System.getProperty("auctionprog.log.level", "INFO").toUpperCase());
+   // The ring size must be a power of two.
+   private static final int SIZE = Integer.highestOneBit(Integer.getInteger("auctionprog.log.buffer", 8192));
+   private static final int MASK = SIZE - 1;
+   private static final Log LOG = new Log(System.out);
+
+   private final Entry[] ring;
+   // The next sequence number to claim, and the next to print. A slot is
+   // free to claim while `claimed - printed < SIZE`.
+   private final AtomicLong claimed;
+   private volatile long printed;
+   private final LongAdder dropped;
+   private final PrintStream out;
+   private final Thread writer;
+
+   /*
+    *    Constructor Method. Fills the ring so that logging never
+    *    allocates an entry.
+    */
+   private Log(PrintStream out) {
+      this.out = out;
+      ring = new Entry[SIZE];
+      for (int i = 0; i < SIZE; i++) {
+         ring[i] = new Entry(i - SIZE);
+      }
+      claimed = new AtomicLong();
+      dropped = new LongAdder();
+
+      writer = new Thread(this, "Log");
+      writer.setDaemon(true);
+      writer.start();
+      Runtime.getRuntime().addShutdownHook(new Thread(this::drain));
+   }
+
+   /**
+    **   Checks whether messages of a level are being logged, so a caller
+    **   can skip building an expensive message.
+    **
+    **   @param level The level.
+    **   @return Whether it is enabled.
+    **/
+   public static boolean isEnabled(Level level) {
+      return level.compareTo(LEVEL) >= 0;
+   }
+
+   /**
+    **   Logs a debug message. Each `{}` in the message is replaced by the
+    **   next argument, but only when the message is printed.
+    **
+    **   @param message The message.
+    **/
+   public static void debug(String message) {
+      if (isEnabled(Level.DEBUG)) LOG.publish(Level.DEBUG, message, null, null);
+   }
+
+   /**
+    **   Logs a debug message with one argument.
+    **
+    **   @param message The message.
+    **   @param a The argument.
+    **/
+   public static void debug(String message, Object a) {
+      if (isEnabled(Level.DEBUG)) LOG.publish(Level.DEBUG, message, a, null);
+   }
+
+   /**
+    **   Logs a debug message with two arguments.
+    **
+    **   @param message The message.
+    **   @param a The first argument.
+    **   @param b The second argument.
+    **/
+   public static void debug(String message, Object a, Object b) {
+      if (isEnabled(Level.DEBUG)) LOG.publish(Level.DEBUG, message, a, b);
+   }
+
+   /**
+    **   Logs an informational message.
+    **
+    **   @param message The message.
+    **/
+   public static void info(String message) {
+      if (isEnabled(Level.INFO)) LOG.publish(Level.INFO, message, null, null);
+   }
+
+   /**
+    **   Logs an informational message with one argument.
+    **
+    **   @param message The message.
+    **   @param a The argument.
+    **/
+   public static void info(String message, Object a) {
+      if (isEnabled(Level.INFO)) LOG.publish(Level.INFO, message, a, null);
+   }
+
+   /**
+    **   Logs an informational message with two arguments.
+    **
+    **   @param message The message.
+    **   @param a The first argument.
+    **   @param b The second argument.
+    **/
+   public static void info(String message, Object a, Object b) {
+      if (isEnabled(Level.INFO)) LOG.publish(Level.INFO, message, a, b);
+   }
+
+   /**
+    **   Logs a warning.
+    **
+    **   @param message The message.
+    **/
+   public static void warn(String message) {
+      if (isEnabled(Level.WARN)) LOG.publish(Level.WARN, message, null, null);
+   }
+
+   /**
+    **   Logs a warning with one argument.
+    **
+    **   @param message The message.
+    **   @param a The argument.
+    **/
+   public static void warn(String message, Object a) {
+      if (isEnabled(Level.WARN)) LOG.publish(Level.WARN, message, a, null);
+   }
+
+   /**
+    **   Logs an error.
+    **
+    **   @param message The message.
+    **/
+   public static void error(String message) {
+      if (isEnabled(Level.ERROR)) LOG.publish(Level.ERROR, message, null, null);
+   }
+
+   /**
+    **   Logs an error with one argument.
+    **
+    **   @param message The message.
+    **   @param a The argument.
+    **/
+   public static void error(String message, Object a) {
+      if (isEnabled(Level.ERROR)) LOG.publish(Level.ERROR, message, a, null);
+   }
+
+   /**
+    **   Logs an exception as an error.
+    **
+    **   @param e The exception.
+    **/
+   public static void error(Throwable e) {
+      if (isEnabled(Level.ERROR)) LOG.publish(Level.ERROR, "{}", e, null);
+   }
+
+   /*
+    *    Claims the next slot in the ring and fills it in. If the writer
+    *    has fallen a whole ring behind, the message is dropped and
+    *    counted rather than holding up the caller.
+    */
+   private void publish(Level level, String message, Object a, Object b) {
+      long sequence;
+      do {
+         sequence = claimed.get();
+         if (sequence - printed >= SIZE) {
+            dropped.increment();
+            return;
+         }
+      } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+      Entry entry = ring[(int)(sequence & MASK)];
+      entry.time = System.currentTimeMillis();
+      entry.level = level;
+      entry.thread = Thread.currentThread().getName();
+      entry.message = message;
+      entry.a = a;
+      entry.b = b;
+      // Publishing the sequence last hands the slot to the writer.
+      entry.sequence = sequence;
+   }
+
+   /**
+    **   Prints messages as they are published.
+    **/
+   public void run() {
+      StringBuilder line = new StringBuilder(256);
+      SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+      Date date = new Date();
+      int idle = 0;
+
+      while (true) {
+         Entry entry = ring[(int)(printed & MASK)];
+         if (entry.sequence != printed) {
+            // Nothing new; flush what has been printed, then back off.
+            if (idle++ == 0) out.flush();
+            if (idle > 100) LockSupport.parkNanos(1000000);
+            continue;
+         }
+         idle = 0;
+
+         date.setTime(entry.time);
+         line.setLength(0);
+         line.append(format.format(date)).append(' ');
+         line.append(entry.level);
+         for (int i = entry.level.name().length(); i < 6; i++) line.append(' ');
+         line.append('[').append(entry.thread).append("] ");
+         format(line, entry.message, entry.a, entry.b);
+
+         entry.thread = null;
+         entry.message = null;
+         entry.a = entry.b = null;
+         printed = printed + 1;
+
+         long lost = dropped.sumThenReset();
+         out.println(line);
+         if (lost > 0) out.println("Log buffer full; "+lost+" messages dropped.");
+      }
+   }
+
+   /*
+    *    Waits for the writer to print everything already published.
+    */
+   private void drain() {
+      long target = claimed.get();
+      long deadline = System.nanoTime() + 1000000000L;
+      while (printed < target && System.nanoTime() < deadline) {
+         LockSupport.parkNanos(1000000);
+      }
+      out.flush();
+   }
+
+   /*
+    *    Substitutes the arguments for each `{}` in a message.
+    */
+   private static void format(StringBuilder line, String message, Object a, Object b) {
+      Object[] args = {a, b};
+      int arg = 0;
+      int from = 0;
+      int at;
+      while (arg < args.length && (at = message.indexOf("{}", from)) >= 0) {
+         line.append(message, from, at).append(args[arg++]);
+         from = at + 2;
+      }
+      line.append(message, from, message.length());
+   }
+
+   /*
+    *    A slot in the ring.
+    */
+   private static final class Entry {
+      volatile long sequence;
+      long time;
+      Level level;
+      String thread;
+      String message;
+      Object a, b;
+
+      Entry(long sequence) {
+         this.sequence = sequence;
+      }
+   }
+}
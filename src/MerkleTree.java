@@ -0,0 +1,181 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class summarises a store's open auctions as a tree of hashes, so
+ ** that two replicas can find where they disagree by exchanging a few
+ ** hashes rather than every auction. The auction IDs of a shard group are
+ ** cut into ranges, which are dealt out in turn to a fixed number of
+ ** leaves. A leaf holds the sum of the hashes of the auctions in its
+ ** ranges, so an auction changing only touches its own leaf and the path
+ ** above it.
+ **/
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public final class MerkleTree {
+   // The leaf count must be a power of two.
+   private static final int LEAVES = Integer.highestOneBit(Integer.getInteger("auctionprog.merkle.leaves", 1024));
+   private static final int RANGE = Integer.getInteger("auctionprog.merkle.range", 64);
+
+   /**
+    **   The index of the root node.
+    **/
+   public static final int ROOT = 1;
+
+   private final int shard;
+   private final int shards;
+   // The nodes in heap order: node `i` has children `2i` and `2i + 1`,
+   // and the leaves are nodes `LEAVES` to `2 * LEAVES - 1`.
+   private final long[] nodes;
+
+   /**
+    **   Constructor Method. Starts with no auctions.
+    **
+    **   @param shard The index of the shard group.
+    **   @param shards The number of shard groups.
+    **/
+   public MerkleTree(int shard, int shards) {
+      this.shard = shard;
+      this.shards = shards;
+      nodes = new long[2 * LEAVES];
+      for (int node = LEAVES - 1; node >= ROOT; node--) {
+         nodes[node] = combine(nodes[2 * node], nodes[2 * node + 1]);
+      }
+   }
+
+   /**
+    **   Records an auction changing, being added or being removed.
+    **
+    **   @param id The auction ID.
+    **   @param before The auction's hash before, or 0 if it was not held.
+    **   @param after The auction's hash after, or 0 if it is no longer
+    **   held.
+    **/
+   public synchronized void update(int id, long before, long after) {
+      if (before == after) return;
+      int node = LEAVES + this.leafOf(id);
+      nodes[node] += after - before;
+      for (node >>>= 1; node >= ROOT; node >>>= 1) {
+         nodes[node] = combine(nodes[2 * node], nodes[2 * node + 1]);
+      }
+   }
+
+   /**
+    **   Gets the hashes of some nodes.
+    **
+    **   @param indices The node indices.
+    **   @return The hashes, in the same order.
+    **/
+   public synchronized long[] get(int[] indices) {
+      long[] hashes = new long[indices.length];
+      for (int i = 0; i < indices.length; i++) {
+         hashes[i] = nodes[indices[i]];
+      }
+      return hashes;
+   }
+
+   /**
+    **   Gets the leaf an auction's hash is added to.
+    **
+    **   @param id The auction ID.
+    **   @return The leaf, from 0.
+    **/
+   public int leafOf(int id) {
+      int slot = (id - shard - 1) / shards;
+      return Math.floorMod(slot / RANGE, LEAVES);
+   }
+
+   /**
+    **   Tests whether a node is a leaf.
+    **
+    **   @param node The node index.
+    **   @return Whether it is.
+    **/
+   public static boolean isLeaf(int node) {
+      return node >= LEAVES;
+   }
+
+   /**
+    **   Gets the leaf a leaf node holds.
+    **
+    **   @param node The node index.
+    **   @return The leaf, from 0.
+    **/
+   public static int leafAt(int node) {
+      return node - LEAVES;
+   }
+
+   /**
+    **   Hashes an auction as it stands.
+    **
+    **   @param auction The auction.
+    **   @return The hash.
+    **/
+   public static long hash(AuctionWrapper auction) {
+      return hash(auction, auction.getHighestBidder(), auction.getPrice());
+   }
+
+   /**
+    **   Hashes an auction as it would stand with a new highest bid,
+    **   without making the copy.
+    **
+    **   @param auction The auction.
+    **   @param bidder The highest bidder.
+    **   @param price The highest bid.
+    **   @return The hash.
+    **/
+   public static long hash(AuctionWrapper auction, UserWrapper bidder, float price) {
+      long h = mix(auction.getID());
+      h = mix(h + ((auction.getDesc() == null) ? 0 : auction.getDesc().hashCode()));
+      h = mix(h + usernameHash(auction.getOwner()));
+      h = mix(h + usernameHash(bidder));
+      h = mix(h + Float.floatToIntBits(price));
+      h = mix(h + Float.floatToIntBits(auction.getReserve()));
+      h = mix(h + auction.getEndTime());
+      // 0 stands for no auction.
+      return (h == 0) ? 1 : h;
+   }
+
+   private static long usernameHash(UserWrapper user) {
+      return (user == null || user.getUsername() == null) ? 0 : user.getUsername().hashCode();
+   }
+
+   /*
+    *    Hashes two children into their parent. The order matters, so
+    *    swapped subtrees do not look the same.
+    */
+   private static long combine(long left, long right) {
+      return mix(left * 0x9E3779B97F4A7C15L + right);
+   }
+
+   /*
+    *    Scrambles the bits of a value, after the finaliser of SplitMix64.
+    */
+   private static long mix(long z) {
+      z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+      z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      return z ^ (z >>> 31);
+   }
+}
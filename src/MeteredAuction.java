@@ -0,0 +1,81 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class exports a front end over RMI through `AuctionImpl.invoke`,
+ ** so that every remote call is measured. Calls travel over sockets from
+ ** a `CompressingSocketFactory`.
+ **/
+
+import java.lang.reflect.*;
+import java.rmi.server.RemoteServer;
+import java.rmi.server.ServerNotActiveException;
+import java.rmi.server.UnicastRemoteObject;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class MeteredAuction implements InvocationHandler {
+   private AuctionImpl target;
+
+   /*
+    *    Constructor Method.
+    */
+   private MeteredAuction(AuctionImpl target) {
+      this.target = target;
+   }
+
+   /**
+    **   Exports a measured view of a front end.
+    **
+    **   @param target The front end.
+    **   @return The stub to bind in the registry.
+    **/
+   public static Auction export(AuctionImpl target) throws java.rmi.RemoteException {
+      Auction proxy = (Auction)Proxy.newProxyInstance(Auction.class.getClassLoader(), new Class[]{Auction.class}, new MeteredAuction(target));
+      CompressingSocketFactory sockets = new CompressingSocketFactory();
+      return (Auction)UnicastRemoteObject.exportObject(proxy, 0, sockets, sockets);
+   }
+
+   /**
+    **   Passes a call on to the front end, on behalf of the host RMI
+    **   took it from.
+    **/
+   public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+         return method.invoke(this, args);
+      }
+      String caller;
+      try {
+         caller = RemoteServer.getClientHost();
+      } catch (ServerNotActiveException e) {
+         // Not called over RMI, so from within this JVM.
+         caller = "localhost";
+      }
+      try {
+         return target.invoke(method, args, caller);
+      } catch (InvocationTargetException e) {
+         throw e.getCause();
+      }
+   }
+}
@@ -0,0 +1,163 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class is an `RpcDispatcher` that measures the calls it handles
+ ** and the size of everything it marshals, and compresses large
+ ** messages.
+ **/
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import org.jgroups.JChannel;
+import org.jgroups.MembershipListener;
+import org.jgroups.Message;
+import org.jgroups.blocks.MethodCall;
+import org.jgroups.blocks.RpcDispatcher;
+import org.jgroups.util.Buffer;
+import org.jgroups.util.Util;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class MeteredDispatcher extends RpcDispatcher {
+   // The method being handled on this thread, as found when its request
+   // was unmarshalled.
+   private static final ThreadLocal<String> handling = new ThreadLocal<String>();
+
+   private OperationMetrics handled;
+   private OperationMetrics payloads;
+   private Compression compression;
+
+   /**
+    **   Constructor Method.
+    **
+    **   @param channel The channel to dispatch over.
+    **   @param listener The listener for membership changes, or `null`.
+    **   @param server The object to invoke incoming calls on, or `null`.
+    **/
+   public MeteredDispatcher(JChannel channel, MembershipListener listener, Object server) {
+      super(channel, null, listener, server);
+      handled = new OperationMetrics();
+      payloads = new OperationMetrics();
+      compression = new Compression();
+      setRequestMarshaller(new Metered("requests"));
+      setResponseMarshaller(new Metered("responses"));
+   }
+
+   /**
+    **   Handles an incoming call, timing it. Without an object to invoke
+    **   it on, as on a front end that sees the writes multicast to its
+    **   shard group, the call is ignored.
+    **
+    **   @param req The request.
+    **   @return The result of the call.
+    **/
+   public Object handle(Message req) throws Exception {
+      if (server_obj == null) {
+         handling.remove();
+         return null;
+      }
+      long start = System.nanoTime();
+      try {
+         Object result = super.handle(req);
+         handled.record(String.valueOf(handling.get()), (System.nanoTime() - start) / 1000);
+         return result;
+      } catch (Exception e) {
+         handled.error(String.valueOf(handling.get()));
+         throw e;
+      } finally {
+         handling.remove();
+      }
+   }
+
+   /**
+    **   Accessor Method. Gets the time taken to handle incoming calls, in
+    **   microseconds, by method.
+    **   @return The metrics.
+    **/
+   public OperationMetrics getHandled() {
+      return this.handled;
+   }
+
+   /**
+    **   Accessor Method. Gets the size of the messages marshalled, in
+    **   bytes, by direction.
+    **   @return The metrics.
+    **/
+   public OperationMetrics getPayloads() {
+      return this.payloads;
+   }
+
+   /**
+    **   Accessor Method. Gets the compression of the messages marshalled.
+    **   @return The metrics.
+    **/
+   public OperationMetrics getCompression() {
+      return compression.getMetrics();
+   }
+
+   /*
+    *    Marshals as the dispatcher would by default, then packs the bytes
+    *    with `Compression`, recording sizes as sent.
+    */
+   private class Metered implements RpcDispatcher.Marshaller {
+      private String sent;
+      private String received;
+
+      Metered(String kind) {
+         this.sent = kind+"Sent";
+         this.received = kind+"Received";
+      }
+
+      public Buffer objectToBuffer(Object obj) throws Exception {
+         FlightEvents.Serialization event = new FlightEvents.Serialization();
+         event.begin();
+         byte[] raw = Util.objectToByteBuffer(obj);
+         byte[] bytes = compression.pack(raw, 0, raw.length);
+         payloads.record(sent, bytes.length);
+         commit(event, sent, obj, bytes.length);
+         return new Buffer(bytes);
+      }
+
+      public Object objectFromBuffer(byte[] buf, int offset, int length) throws Exception {
+         FlightEvents.Serialization event = new FlightEvents.Serialization();
+         event.begin();
+         payloads.record(received, length);
+         ByteBuffer raw = compression.unpack(buf, offset, length);
+         Object obj = Util.objectFromByteBuffer(raw.array(), raw.arrayOffset() + raw.position(), raw.remaining());
+         if (obj instanceof MethodCall) handling.set(((MethodCall)obj).getName());
+         commit(event, received, obj, length);
+         return obj;
+      }
+
+      private void commit(FlightEvents.Serialization event, String direction, Object obj, int bytes) {
+         if (event.shouldCommit()) {
+            event.direction = direction;
+            event.method = (obj instanceof MethodCall) ? ((MethodCall)obj).getName() : handling.get();
+            event.bytes = bytes;
+            event.commit();
+         }
+      }
+   }
+}
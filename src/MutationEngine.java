@@ -0,0 +1,286 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class applies a store's changes one at a time on a thread of its
+ ** own. Callers put each change in a slot of a ring allocated up front
+ ** and wait for its result; the thread takes every change waiting at
+ ** once, applies them in order and hands back the results together, so
+ ** the work of publishing them is shared across the batch.
+ **/
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public final class MutationEngine implements Runnable {
+   // The ring size must be a power of two.
+   private static final int SIZE = Integer.highestOneBit(Integer.getInteger("auctionprog.store.ring", 1024));
+   private static final int MASK = SIZE - 1;
+   // How long to spin before parking. Spinning only pays when the other
+   // side is running on another core.
+   private static final int SPINS = (Runtime.getRuntime().availableProcessors() > 1) ? 200 : 0;
+
+   /**
+    **   What the engine applies changes to.
+    **/
+   public interface Handler {
+      /**
+       **   Applies a change. Only ever called on the engine's thread.
+       **
+       **   @param type The kind of change.
+       **   @param request The ID of the request making it.
+       **   @param a The first argument.
+       **   @param b The second argument.
+       **   @param price The price, for a bid.
+       **   @param time When the request was stamped.
+       **   @return The result to hand back.
+       **/
+      public Object apply(int type, long request, Object a, Object b, float price, long time);
+
+      /**
+       **   Makes the changes applied since the last call visible, before
+       **   their results are handed back.
+       **/
+      public void publish();
+   }
+
+   private final Handler handler;
+   private final Slot[] ring;
+   // The next sequence number to claim. The thread takes slots in order
+   // of sequence number, so changes are applied in the order claimed.
+   private final AtomicLong claimed;
+   private final Thread writer;
+   private volatile boolean sleeping;
+   private volatile boolean running;
+   // Set once the thread has applied its last change.
+   private volatile boolean stopped;
+
+   /**
+    **   Constructor Method. Starts the engine's thread.
+    **
+    **   @param handler What to apply changes to.
+    **   @param name The name of the thread.
+    **/
+   public MutationEngine(Handler handler, String name) {
+      this.handler = handler;
+      ring = new Slot[SIZE];
+      for (int i = 0; i < SIZE; i++) {
+         ring[i] = new Slot(i);
+      }
+      claimed = new AtomicLong();
+      running = true;
+
+      writer = new Thread(this, name);
+      writer.setDaemon(true);
+      writer.start();
+   }
+
+   /**
+    **   Applies a change and waits for its result. If the ring is full,
+    **   waits for a slot to free up first. Anything the change throws is
+    **   thrown here, wrapped in an `IllegalStateException` if it is
+    **   checked. A change submitted once the engine is stopping is turned
+    **   away with an `IllegalStateException`.
+    **
+    **   @param type The kind of change.
+    **   @param request The ID of the request making it.
+    **   @param a The first argument.
+    **   @param b The second argument.
+    **   @param price The price, for a bid.
+    **   @param time When the request was stamped.
+    **   @return The result of the change.
+    **/
+   public Object submit(int type, long request, Object a, Object b, float price, long time) {
+      if (!running) throw new IllegalStateException("The engine has been stopped");
+      long sequence = claimed.getAndIncrement();
+      Slot slot = ring[(int)(sequence & MASK)];
+      for (int i = 0; slot.available != sequence; i++) {
+         if (stopped) throw new IllegalStateException("The engine has been stopped");
+         this.pause(i);
+      }
+
+      slot.type = type;
+      slot.request = request;
+      slot.a = a;
+      slot.b = b;
+      slot.price = price;
+      slot.time = time;
+      // Publishing the sequence last hands the slot to the thread.
+      slot.sequence = sequence;
+      if (sleeping) LockSupport.unpark(writer);
+
+      for (int i = 0; i < SPINS && slot.done != sequence; i++) {
+         Thread.onSpinWait();
+      }
+      if (slot.done != sequence) {
+         slot.waiter = Thread.currentThread();
+         // The thread may have stopped between the check above and
+         // publishing the slot, in which case it never takes it.
+         while (slot.done != sequence && !stopped) {
+            LockSupport.park(this);
+         }
+         slot.waiter = null;
+         if (slot.done != sequence) throw new IllegalStateException("The engine has been stopped");
+      }
+
+      Object result = slot.result;
+      Throwable failure = slot.failure;
+      slot.a = slot.b = slot.result = null;
+      slot.failure = null;
+      slot.available = sequence + SIZE;
+      if (failure instanceof RuntimeException) throw (RuntimeException)failure;
+      if (failure instanceof Error) throw (Error)failure;
+      if (failure != null) throw new IllegalStateException(failure);
+      return result;
+   }
+
+   /**
+    **   Stops the engine once the changes already submitted are applied,
+    **   and waits for it to finish them. Changes submitted from now on
+    **   are turned away.
+    **/
+   public void stop() {
+      running = false;
+      LockSupport.unpark(writer);
+      try {
+         writer.join();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    **   Applies changes in batches until stopped. A change that fails,
+    **   however it fails, fails only its own caller.
+    **/
+   public void run() {
+      try {
+         this.applyAll();
+      } finally {
+         stopped = true;
+         for(Slot slot: ring) {
+            Thread waiter = slot.waiter;
+            if (waiter != null) LockSupport.unpark(waiter);
+         }
+      }
+   }
+
+   /*
+    *    Applies changes in batches until stopped.
+    */
+   private void applyAll() {
+      long next = 0;
+      int idle = 0;
+      while (running || ring[(int)(next & MASK)].sequence == next) {
+         // Takes every change published so far, up to a whole ring.
+         long first = next;
+         while (next - first < SIZE) {
+            Slot slot = ring[(int)(next & MASK)];
+            if (slot.sequence != next) break;
+            try {
+               slot.result = handler.apply(slot.type, slot.request, slot.a, slot.b, slot.price, slot.time);
+            } catch (Throwable e) {
+               slot.failure = e;
+            }
+            next++;
+         }
+
+         if (next == first) {
+            this.idle(idle++, next);
+            continue;
+         }
+         idle = 0;
+
+         Throwable unpublished = null;
+         try {
+            handler.publish();
+         } catch (Throwable e) {
+            unpublished = e;
+         }
+         for (long done = first; done < next; done++) {
+            Slot slot = ring[(int)(done & MASK)];
+            if (unpublished != null && slot.failure == null) slot.failure = unpublished;
+            slot.done = done;
+            Thread waiter = slot.waiter;
+            if (waiter != null) LockSupport.unpark(waiter);
+         }
+      }
+   }
+
+   /*
+    *    Waits for the next change, spinning briefly and then sleeping
+    *    until a caller wakes the thread.
+    */
+   private void idle(int count, long next) {
+      if (count < SPINS) {
+         Thread.onSpinWait();
+         return;
+      }
+      sleeping = true;
+      // Checks again, in case a change was published before the flag
+      // was seen.
+      if (running && ring[(int)(next & MASK)].sequence != next) {
+         LockSupport.park(this);
+      }
+      sleeping = false;
+   }
+
+   /*
+    *    Backs off while waiting for a slot.
+    */
+   private void pause(int count) {
+      if (count < SPINS) {
+         Thread.onSpinWait();
+      } else {
+         LockSupport.parkNanos(1000);
+      }
+   }
+
+   /*
+    *    A slot in the ring. `sequence` marks it as published, `done` as
+    *    applied, and `available` as free to claim for that sequence
+    *    number.
+    */
+   private static final class Slot {
+      volatile long sequence;
+      volatile long done;
+      volatile long available;
+      volatile Thread waiter;
+      int type;
+      long request;
+      Object a, b;
+      float price;
+      long time;
+      Object result;
+      Throwable failure;
+
+      Slot(long available) {
+         this.available = available;
+         this.sequence = -1;
+         this.done = -1;
+      }
+   }
+}
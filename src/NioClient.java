@@ -0,0 +1,169 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class is a client for the binary protocol served by `NioServer`.
+ **/
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.Socket;
+import java.rmi.RemoteException;
+import java.rmi.UnmarshalException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class NioClient implements InvocationHandler {
+   private static final long TIMEOUT = 30000;
+
+   private Socket socket;
+   private DataOutputStream out;
+   private DataInputStream in;
+   private AtomicInteger nextId;
+   // Requests sent but not yet answered, by request ID. Responses can
+   // arrive in any order.
+   private ConcurrentHashMap<Integer, CompletableFuture<Object[]>> pending;
+   private ThreadLocal<String> status;
+   private volatile IOException failure;
+
+   /*
+    *    Constructor Method.
+    */
+   private NioClient(String host, int port) throws IOException {
+      socket = new Socket(host, port);
+      socket.setTcpNoDelay(true);
+      out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      nextId = new AtomicInteger();
+      pending = new ConcurrentHashMap<Integer, CompletableFuture<Object[]>>();
+      status = ThreadLocal.withInitial(() -> "");
+
+      Thread reader = new Thread(this::readLoop, "NioClient");
+      reader.setDaemon(true);
+      reader.start();
+   }
+
+   /**
+    **   Connects to a front end's binary endpoint. Any number of threads
+    **   may share the returned stub; their calls are pipelined over the
+    **   one connection.
+    **
+    **   @param host The front end's host.
+    **   @param port The front end's binary port.
+    **   @return The stub.
+    **/
+   public static Auction connect(String host, int port) throws IOException {
+      NioClient client = new NioClient(host, port);
+      return (Auction)Proxy.newProxyInstance(Auction.class.getClassLoader(), new Class[]{Auction.class}, client);
+   }
+
+   /**
+    **   Sends a call and waits for its response. The status left by each
+    **   call comes back with it, so `getStatusofLast` is answered here
+    **   for the calling thread.
+    **/
+   public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+         return method.invoke(this, args);
+      }
+      if (method.getName().equals("getStatusofLast")) {
+         return "\n"+status.get()+"\n";
+      }
+
+      if (failure != null) {
+         throw new RemoteException("Connection failed", failure);
+      }
+
+      int requestId = nextId.incrementAndGet();
+      CompletableFuture<Object[]> response = new CompletableFuture<Object[]>();
+      pending.put(requestId, response);
+
+      try {
+         byte[] frame = WireFormat.encodeRequest(requestId, method, args);
+         synchronized (out) {
+            out.write(frame);
+            out.flush();
+         }
+
+         Object[] result = response.get(TIMEOUT, TimeUnit.MILLISECONDS);
+         if (result[2] != null) status.set((String)result[2]);
+         if ((Byte)result[0] == WireFormat.ERROR) {
+            if (result[1] instanceof RemoteException) throw (RemoteException)result[1];
+            throw new RemoteException((String)result[1]);
+         }
+         return result[1];
+      } catch (RemoteException e) {
+         throw e;
+      } catch (IOException e) {
+         throw new RemoteException("Connection failed", e);
+      } catch (TimeoutException e) {
+         throw new RemoteException("Timed out waiting for "+method.getName());
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof RemoteException) throw (RemoteException)e.getCause();
+         throw new RemoteException("Connection failed", e.getCause());
+      } finally {
+         pending.remove(requestId);
+      }
+   }
+
+   /*
+    *    Reads responses and hands each to the call waiting on it. A whole
+    *    frame is read before it is decoded, so one that cannot be decoded
+    *    fails only the call it answers.
+    */
+   private void readLoop() {
+      try {
+         while (true) {
+            int length = in.readInt();
+            if (length < 4 || length > WireFormat.MAX_FRAME) throw new IOException("Bad frame length "+length);
+            byte[] frame = new byte[length];
+            in.readFully(frame);
+
+            DataInputStream body = new DataInputStream(new ByteArrayInputStream(frame));
+            int requestId = body.readInt();
+            CompletableFuture<Object[]> response = pending.get(requestId);
+            try {
+               byte outcome = body.readByte();
+               Object value = WireFormat.readValue(body);
+               Object message = WireFormat.readValue(body);
+               if (response != null) {
+                  response.complete(new Object[]{outcome, value, message});
+               }
+            } catch (IOException e) {
+               if (response != null) {
+                  response.completeExceptionally(new UnmarshalException("Could not decode the response to request "+requestId, e));
+               }
+            }
+         }
+      } catch (IOException e) {
+         failure = e;
+         for(CompletableFuture<Object[]> response: pending.values()) {
+            response.completeExceptionally(e);
+         }
+      }
+   }
+}
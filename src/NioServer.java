@@ -0,0 +1,296 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class serves the `Auction` operations over a non-blocking binary
+ ** protocol, alongside RMI. Each connection may have only so many
+ ** requests in flight; once it reaches the limit the server stops reading
+ ** from it until responses have been written back, so a client that
+ ** sends faster than it reads is held back by TCP rather than queued.
+ **/
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class NioServer implements Runnable {
+   private static final int WORKERS = Integer.getInteger("auctionprog.nio.workers", 64);
+   private static final int MAX_IN_FLIGHT = Integer.getInteger("auctionprog.nio.inflight", 32);
+
+   private AuctionImpl target;
+   private ServerSocketChannel server;
+   private Selector selector;
+   private ExecutorService workers;
+   // Connections with responses waiting to be written. Workers add to
+   // this and wake the selector, which is the only thread that touches
+   // the selection keys.
+   private ConcurrentLinkedQueue<Connection> ready;
+
+   /**
+    **   Constructor Method. Binds the listening socket.
+    **
+    **   @param target The front end to serve.
+    **   @param port The port to listen on.
+    **/
+   public NioServer(AuctionImpl target, int port) throws IOException {
+      this.target = target;
+      this.ready = new ConcurrentLinkedQueue<Connection>();
+      this.workers = Executors.newFixedThreadPool(WORKERS);
+
+      selector = Selector.open();
+      server = ServerSocketChannel.open();
+      server.configureBlocking(false);
+      server.bind(new InetSocketAddress(port));
+      server.register(selector, SelectionKey.OP_ACCEPT);
+   }
+
+   /**
+    **   Starts the selector thread.
+    **/
+   public void start() {
+      Thread thread = new Thread(this, "NioServer");
+      thread.setDaemon(true);
+      thread.start();
+   }
+
+   /**
+    **   Runs the selector loop.
+    **/
+   public void run() {
+      while (server.isOpen()) {
+         try {
+            selector.select();
+
+            Connection connection;
+            while ((connection = ready.poll()) != null) {
+               connection.updateInterest();
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+               SelectionKey key = keys.next();
+               keys.remove();
+               if (!key.isValid()) continue;
+
+               if (key.isAcceptable()) {
+                  this.accept();
+               } else {
+                  connection = (Connection)key.attachment();
+                  try {
+                     if (key.isReadable()) connection.read();
+                     if (key.isValid() && key.isWritable()) connection.write();
+                  } catch (IOException e) {
+                     connection.close();
+                  }
+               }
+            }
+         } catch (IOException e) {
+            Log.error(e);
+         }
+      }
+   }
+
+   /**
+    **   Stops the endpoint.
+    **/
+   public void stop() {
+      try {
+         server.close();
+         selector.close();
+      } catch (IOException e) {
+         Log.error(e);
+      }
+      workers.shutdown();
+   }
+
+   /*
+    *    Accepts a new connection.
+    */
+   private void accept() throws IOException {
+      SocketChannel channel = server.accept();
+      if (channel == null) return;
+      channel.configureBlocking(false);
+      channel.socket().setTcpNoDelay(true);
+      SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+      key.attach(new Connection(channel, key));
+   }
+
+   /*
+    *    Decodes a request, invokes it and queues the response. Runs on a
+    *    worker thread, so up to `MAX_IN_FLIGHT` requests from one
+    *    connection can be in flight at once.
+    */
+   private void handle(Connection connection, byte[] frame) {
+      int requestId = 0;
+      byte[] response;
+      try {
+         DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+         requestId = in.readInt();
+         Method method = WireFormat.OPERATIONS.get(in.readUnsignedShort());
+         Object[] args = WireFormat.readArgs(in, method);
+
+         try {
+            Object value = target.invoke(method, args, connection.host);
+            response = WireFormat.encodeResponse(requestId, WireFormat.OK, value, target.takeThreadStatus());
+         } catch (InvocationTargetException e) {
+            // An overloaded front end sends the exception itself, so the
+            // client gets the retry-after hint.
+            Object error = (e.getCause() instanceof OverloadedException) ? e.getCause() : String.valueOf(e.getCause());
+            response = WireFormat.encodeResponse(requestId, WireFormat.ERROR, error, target.takeThreadStatus());
+         }
+      } catch (Throwable e) {
+         // Whatever went wrong, the client gets an answer and the request
+         // gives up its place in the connection's limit.
+         try {
+            response = WireFormat.encodeResponse(requestId, WireFormat.ERROR, String.valueOf(e), null);
+         } catch (IOException f) {
+            connection.close();
+            return;
+         }
+      }
+      connection.send(ByteBuffer.wrap(response));
+   }
+
+   /*
+    *    A single client connection.
+    */
+   private class Connection {
+      private SocketChannel channel;
+      private SelectionKey key;
+      // The host the client connected from, which its calls' rate is
+      // counted against.
+      private String host;
+      private ByteBuffer in;
+      private ConcurrentLinkedQueue<ByteBuffer> out;
+      // Requests handed to a worker whose responses are not yet written.
+      private AtomicInteger inFlight;
+
+      Connection(SocketChannel channel, SelectionKey key) {
+         this.channel = channel;
+         this.key = key;
+         this.host = ((InetSocketAddress)channel.socket().getRemoteSocketAddress()).getAddress().getHostAddress();
+         this.in = ByteBuffer.allocate(64 * 1024);
+         this.out = new ConcurrentLinkedQueue<ByteBuffer>();
+         this.inFlight = new AtomicInteger();
+      }
+
+      /*
+       *    Reads whatever has arrived and hands on the complete frames.
+       */
+      void read() throws IOException {
+         if (channel.read(in) < 0) {
+            this.close();
+            return;
+         }
+         this.dispatch();
+      }
+
+      /*
+       *    Hands each complete frame read to a worker, until the
+       *    connection has as many requests in flight as it may. The rest
+       *    wait in the buffer, and no more is read, until responses have
+       *    been written.
+       */
+      void dispatch() throws IOException {
+         in.flip();
+         while (inFlight.get() < MAX_IN_FLIGHT && in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length < 0 || length > WireFormat.MAX_FRAME) throw new IOException("Bad frame length "+length);
+            if (in.remaining() < 4 + length) {
+               if (in.capacity() < 4 + length) {
+                  ByteBuffer bigger = ByteBuffer.allocate(4 + length);
+                  bigger.put(in);
+                  in = bigger;
+                  this.updateInterest();
+                  return;
+               }
+               break;
+            }
+
+            in.getInt();
+            byte[] frame = new byte[length];
+            in.get(frame);
+            inFlight.incrementAndGet();
+            workers.execute(() -> handle(this, frame));
+         }
+         in.compact();
+         this.updateInterest();
+      }
+
+      /*
+       *    Queues a response and wakes the selector to write it.
+       */
+      void send(ByteBuffer response) {
+         out.add(response);
+         ready.add(this);
+         selector.wakeup();
+      }
+
+      /*
+       *    Reads while the connection is under its limit, and writes
+       *    while responses are queued. Only called on the selector
+       *    thread.
+       */
+      void updateInterest() {
+         if (!key.isValid()) return;
+         int ops = (inFlight.get() < MAX_IN_FLIGHT) ? SelectionKey.OP_READ : 0;
+         if (!out.isEmpty()) ops |= SelectionKey.OP_WRITE;
+         key.interestOps(ops);
+      }
+
+      /*
+       *    Writes as many queued responses as the socket will take. Each
+       *    one written makes room for a request waiting in the buffer.
+       */
+      void write() throws IOException {
+         ByteBuffer buffer;
+         while ((buffer = out.peek()) != null) {
+            channel.write(buffer);
+            if (buffer.hasRemaining()) return;
+            out.poll();
+            inFlight.decrementAndGet();
+         }
+         // A worker may have queued a response after the loop finished;
+         // if so, this keeps the connection writing.
+         this.dispatch();
+      }
+
+      void close() {
+         key.cancel();
+         try {
+            channel.close();
+         } catch (IOException e) {
+            Log.error(e);
+         }
+      }
+   }
+}
@@ -0,0 +1,534 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class keeps a store's auctions outside the heap, so that millions
+ ** of them add little for the garbage collector to trace. Each auction is
+ ** a fixed-size record in a direct buffer, found from its ID alone; its
+ ** description is kept in a separate arena of strings, and its owner,
+ ** bidder and category are numbers in tables of users and categories,
+ ** which stay on the heap as there are far fewer of them than auctions. Queries other than by ID scan
+ ** the records, as there are no indexes to keep on the heap.
+ **/
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class OffHeapBackend implements StoreBackend {
+   // The layout of a record. `VERSION` is odd while the record is being
+   // changed, and readers try again until they see the same even
+   // version before and after reading it. A free record has ID 0.
+   private static final int VERSION = 0;
+   private static final int ID = 4;
+   private static final int DESC = 8;
+   private static final int OWNER = 16;
+   private static final int BIDDER = 20;
+   private static final int PRICE = 24;
+   private static final int RESERVE = 28;
+   private static final int END_TIME = 32;
+   private static final int CATEGORY = 40;
+   private static final int RECORD = 48;
+   // Records are allocated a chunk of 2^16 at a time, and strings 1MB at
+   // a time. A chunk is freed once everything in it has closed.
+   private static final int SHIFT = 16;
+   private static final int CHUNK = 1 << SHIFT;
+   private static final int ARENA_CHUNK = 1 << 20;
+   private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+   private final int shard;
+   private final int shards;
+   // Copied on write, so readers can take whichever array is current.
+   private volatile ByteBuffer[] records;
+   private volatile ByteBuffer[] arena;
+   private final BidHistory.Bidders users;
+   private volatile UserWrapper[] registered;
+   private volatile int userCount;
+   // Only the engine's thread adds categories; readers take whichever
+   // array is current.
+   private volatile String[] categories;
+   private HashMap<String, Integer> categoryNumbers;
+   // Only the engine's thread touches the counts of what each chunk
+   // still holds.
+   private int[] recordsLive;
+   private int[] arenaLive;
+   private int arenaChunk;
+   private int arenaUsed;
+   // The highest ID added, whether or not it is still open.
+   private int lastID;
+   // Readers ignore auctions above this ID, so auctions added in a batch
+   // appear together.
+   private volatile int visible;
+   private volatile int count;
+
+   /**
+    **   Constructor Method.
+    **
+    **   @param shard The index of the shard group the store belongs to.
+    **   @param shards The number of shard groups.
+    **/
+   public OffHeapBackend(int shard, int shards) {
+      this.shard = shard;
+      this.shards = shards;
+      records = new ByteBuffer[0];
+      recordsLive = new int[0];
+      arena = new ByteBuffer[]{allocate(ARENA_CHUNK)};
+      arenaLive = new int[1];
+      users = new BidHistory.Bidders();
+      registered = new UserWrapper[16];
+      categories = new String[0];
+      categoryNumbers = new HashMap<String, Integer>();
+   }
+
+   /**
+    **   Adds an auction, whose ID has been set, writing its record and its
+    **   description.
+    **
+    **   @param auction The auction.
+    **/
+   public void add(AuctionWrapper auction) {
+      int id = auction.getID();
+      int slot = this.slotOf(id);
+      int c = slot >>> SHIFT;
+      if (c >= records.length || records[c] == null) {
+         // A chunk may have been freed, or skipped by IDs that carry on
+         // from the archive's.
+         ByteBuffer[] grown = Arrays.copyOf(records, Math.max(records.length, c + 1));
+         grown[c] = allocate(CHUNK * RECORD);
+         recordsLive = Arrays.copyOf(recordsLive, grown.length);
+         records = grown;
+      }
+      ByteBuffer chunk = records[c];
+      int base = (slot & (CHUNK - 1)) * RECORD;
+
+      long desc = this.store(auction.getDesc());
+      int owner = (auction.getOwner() == null) ? -1 : users.numberOf(auction.getOwner());
+      int bidder = (auction.getHighestBidder() == null) ? -1 : users.numberOf(auction.getHighestBidder());
+      int category = this.numberOf(auction.getCategory());
+
+      int version = this.begin(chunk, base);
+      chunk.putInt(base + ID, id);
+      chunk.putLong(base + DESC, desc);
+      chunk.putInt(base + OWNER, owner);
+      chunk.putInt(base + BIDDER, bidder);
+      chunk.putFloat(base + PRICE, auction.getPrice());
+      chunk.putFloat(base + RESERVE, auction.getReserve());
+      chunk.putLong(base + END_TIME, auction.getEndTime());
+      chunk.putInt(base + CATEGORY, category);
+      INT.setRelease(chunk, base + VERSION, version + 2);
+
+      recordsLive[c]++;
+      lastID = Math.max(lastID, id);
+      count++;
+   }
+
+   /**
+    **   Gets an auction by ID as the engine's thread sees it, including
+    **   one added since the last `publish`. Only called by the engine's
+    **   thread.
+    **
+    **   @param id The auction ID.
+    **   @return The auction, or `null`.
+    **/
+   public AuctionWrapper getLatest(int id) {
+      return this.read(id, null);
+   }
+
+   /**
+    **   Removes an auction, freeing its record and description, and any
+    **   chunk left holding nothing.
+    **
+    **   @param id The ID of the auction.
+    **   @return The auction as it was, or `null` if there was none.
+    **/
+   public AuctionWrapper remove(int id) {
+      AuctionWrapper local = this.read(id, null);
+      if (local == null) return null;
+      int slot = this.slotOf(id);
+      int c = slot >>> SHIFT;
+      ByteBuffer chunk = records[c];
+      int base = (slot & (CHUNK - 1)) * RECORD;
+
+      long desc = chunk.getLong(base + DESC);
+      int version = this.begin(chunk, base);
+      chunk.putInt(base + ID, 0);
+      INT.setRelease(chunk, base + VERSION, version + 2);
+      count--;
+
+      this.release(desc);
+      // The chunk the next auction would go in is kept.
+      if (--recordsLive[c] == 0 && c < (this.slotOf(lastID) >>> SHIFT)) {
+         ByteBuffer[] shrunk = records.clone();
+         shrunk[c] = null;
+         records = shrunk;
+      }
+      return local;
+   }
+
+   /**
+    **   Sets a new highest bid on an auction.
+    **
+    **   @param id The ID of the auction.
+    **   @param bidder The user bidding.
+    **   @param price The bid.
+    **   @return Whether there was such an auction.
+    **/
+   public boolean bid(int id, UserWrapper bidder, float price) {
+      int slot = this.slotOf(id);
+      ByteBuffer[] chunks = records;
+      if (slot < 0 || (slot >>> SHIFT) >= chunks.length || chunks[slot >>> SHIFT] == null) return false;
+      ByteBuffer chunk = chunks[slot >>> SHIFT];
+      int base = (slot & (CHUNK - 1)) * RECORD;
+      if (chunk.getInt(base + ID) != id) return false;
+
+      int number = users.numberOf(bidder);
+      int version = this.begin(chunk, base);
+      chunk.putInt(base + BIDDER, number);
+      chunk.putFloat(base + PRICE, price);
+      INT.setRelease(chunk, base + VERSION, version + 2);
+      return true;
+   }
+
+   /**
+    **   Adds a user.
+    **
+    **   @param user The user.
+    **/
+   public void addUser(UserWrapper user) {
+      int n = userCount;
+      if (n == registered.length) registered = Arrays.copyOf(registered, n * 2);
+      registered[n] = user;
+      userCount = n + 1;
+   }
+
+   /**
+    **   Makes the changes since the last call visible to readers. Changes
+    **   to existing auctions may become visible sooner; new auctions may
+    **   not.
+    **/
+   public void publish() {
+      visible = lastID;
+   }
+
+   /**
+    **   Gets an auction by ID.
+    **
+    **   @param id The auction ID.
+    **   @return The auction, or `null`.
+    **/
+   public AuctionWrapper get(int id) {
+      return (id > visible) ? null : this.read(id, null);
+   }
+
+   /**
+    **   Gets all the auctions, in order of ID. The list must not be
+    **   changed.
+    **
+    **   @return The auctions.
+    **/
+   public ArrayList<AuctionWrapper> getAll() {
+      return this.scan(null);
+   }
+
+   /**
+    **   Gets a page of the auctions, in order of ID.
+    **
+    **   @param afterId The ID to start after.
+    **   @param limit The most auctions to return.
+    **   @return The auctions with IDs above `afterId`, lowest first.
+    **/
+   public ArrayList<AuctionWrapper> getAfter(int afterId, int limit) {
+      ArrayList<AuctionWrapper> page = new ArrayList<AuctionWrapper>();
+      int last = visible;
+      // The first ID in this shard above `afterId`.
+      int id = shard + 1 + (Math.floorDiv(afterId - shard - 1, shards) + 1) * shards;
+      for (id = Math.max(id, shard + 1); id <= last && page.size() < limit; id += shards) {
+         AuctionWrapper auction = this.read(id, null);
+         if (auction != null) page.add(auction);
+      }
+      return page;
+   }
+
+   /**
+    **   Gets the auctions whose current price lies in the given range.
+    **
+    **   @param min The lowest price, inclusive.
+    **   @param max The highest price, inclusive.
+    **   @return The auctions, cheapest first.
+    **/
+   public ArrayList<AuctionWrapper> getByPrice(float min, float max) {
+      ArrayList<AuctionWrapper> result = this.scan((owner, bidder, price, reserve, end) -> price >= min && price <= max);
+      result.sort((x, y) -> Float.compare(x.getPrice(), y.getPrice()));
+      return result;
+   }
+
+   /**
+    **   Gets the auctions whose reserve price has not yet been met.
+    **
+    **   @return The auctions, closest to the reserve first.
+    **/
+   public ArrayList<AuctionWrapper> getBelowReserve() {
+      ArrayList<AuctionWrapper> result = this.scan((owner, bidder, price, reserve, end) -> price < reserve);
+      result.sort((x, y) -> Float.compare(x.getReserveGap(), y.getReserveGap()));
+      return result;
+   }
+
+   /**
+    **   Gets the auctions ending in the given window.
+    **
+    **   @param from The start of the window, inclusive.
+    **   @param to The end of the window, inclusive.
+    **   @return The auctions, soonest first.
+    **/
+   public ArrayList<AuctionWrapper> getEndingBetween(long from, long to) {
+      ArrayList<AuctionWrapper> result = this.scan((owner, bidder, price, reserve, end) -> end >= from && end <= to);
+      result.sort((x, y) -> Long.compare(x.getEndTime(), y.getEndTime()));
+      return result;
+   }
+
+   /**
+    **   Gets the auctions owned by a user.
+    **
+    **   @param username The user's username.
+    **   @return The auctions.
+    **/
+   public ArrayList<AuctionWrapper> getOwnedBy(String username) {
+      return this.scan((owner, bidder, price, reserve, end) -> owner >= 0 && username.equals(users.get(owner).getUsername()));
+   }
+
+   /**
+    **   Gets the auctions a user is the highest bidder on.
+    **
+    **   @param username The user's username.
+    **   @return The auctions.
+    **/
+   public ArrayList<AuctionWrapper> getLedBy(String username) {
+      return this.scan((owner, bidder, price, reserve, end) -> bidder >= 0 && username.equals(users.get(bidder).getUsername()));
+   }
+
+   /**
+    **   Gets the number of auctions.
+    **
+    **   @return The count.
+    **/
+   public int getAuctionCount() {
+      return this.count;
+   }
+
+   /**
+    **   Gets the number of users.
+    **
+    **   @return The count.
+    **/
+   public int getUserCount() {
+      return this.userCount;
+   }
+
+   /**
+    **   Gets the users, in the order they were added. The list must not
+    **   be changed.
+    **
+    **   @return The users.
+    **/
+   public ArrayList<UserWrapper> getUsers() {
+      int n = userCount;
+      return new ArrayList<UserWrapper>(Arrays.asList(registered).subList(0, n));
+   }
+
+   /**
+    **   Frees the buffers. Their memory is handed back once they are
+    **   collected.
+    **/
+   public void close() {
+      records = new ByteBuffer[0];
+      arena = new ByteBuffer[0];
+   }
+
+   /*
+    *    Tests an auction's fields while it is still in its record.
+    */
+   private interface Filter {
+      boolean test(int owner, int bidder, float price, float reserve, long end);
+   }
+
+   /*
+    *    Reads every visible auction passing a filter, in order of ID.
+    */
+   private ArrayList<AuctionWrapper> scan(Filter filter) {
+      ArrayList<AuctionWrapper> result = new ArrayList<AuctionWrapper>();
+      int last = visible;
+      for (int id = shard + 1; id > 0 && id <= last; id += shards) {
+         int slot = this.slotOf(id);
+         ByteBuffer[] chunks = records;
+         if ((slot >>> SHIFT) >= chunks.length) break;
+         if (chunks[slot >>> SHIFT] == null) {
+            // Skips a chunk that has been freed.
+            id += (CHUNK - 1 - (slot & (CHUNK - 1))) * shards;
+            continue;
+         }
+         AuctionWrapper auction = this.read(id, filter);
+         if (auction != null) result.add(auction);
+      }
+      return result;
+   }
+
+   /*
+    *    Reads an auction if it is open and passes the filter, trying
+    *    again if it changes while being read.
+    */
+   private AuctionWrapper read(int id, Filter filter) {
+      int slot = this.slotOf(id);
+      if (slot < 0) return null;
+      while (true) {
+         ByteBuffer[] chunks = records;
+         int c = slot >>> SHIFT;
+         if (c >= chunks.length || chunks[c] == null) return null;
+         ByteBuffer chunk = chunks[c];
+         int base = (slot & (CHUNK - 1)) * RECORD;
+
+         int version = (int)INT.getAcquire(chunk, base + VERSION);
+         if ((version & 1) != 0) {
+            Thread.onSpinWait();
+            continue;
+         }
+         int recordId = chunk.getInt(base + ID);
+         long desc = chunk.getLong(base + DESC);
+         int owner = chunk.getInt(base + OWNER);
+         int bidder = chunk.getInt(base + BIDDER);
+         float price = chunk.getFloat(base + PRICE);
+         float reserve = chunk.getFloat(base + RESERVE);
+         long end = chunk.getLong(base + END_TIME);
+         int category = chunk.getInt(base + CATEGORY);
+         VarHandle.acquireFence();
+         if ((int)INT.get(chunk, base + VERSION) != version) continue;
+
+         if (recordId != id) return null;
+         if (filter != null && !filter.test(owner, bidder, price, reserve, end)) return null;
+         // The description is never overwritten, so is safe to read once
+         // its reference has been; a freed arena chunk means the auction
+         // has since closed.
+         String text = this.load(desc);
+         if (text == null) continue;
+
+         AuctionWrapper auction = new AuctionWrapper(id, text, (owner < 0) ? null : users.get(owner), price, reserve, end, categories[category]);
+         if (bidder >= 0) auction.setBid(users.get(bidder), price);
+         return auction;
+      }
+   }
+
+   /*
+    *    Marks a record as being changed, returning its version before.
+    */
+   private int begin(ByteBuffer chunk, int base) {
+      int version = chunk.getInt(base + VERSION);
+      INT.setOpaque(chunk, base + VERSION, version + 1);
+      VarHandle.storeStoreFence();
+      return version;
+   }
+
+   /*
+    *    Gets the number of a category, adding it to the table if it is
+    *    new. The table is published before any record refers to it.
+    */
+   private int numberOf(String category) {
+      Integer number = categoryNumbers.get(category);
+      if (number == null) {
+         number = categories.length;
+         String[] grown = Arrays.copyOf(categories, number + 1);
+         grown[number] = category;
+         categories = grown;
+         categoryNumbers.put(category, number);
+      }
+      return number;
+   }
+
+   /*
+    *    Appends a string to the arena, returning its chunk and offset.
+    */
+   private long store(String s) {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      int size = 4 + bytes.length;
+      if (arenaUsed + size > ARENA_CHUNK) {
+         ByteBuffer[] grown = Arrays.copyOf(arena, arena.length + 1);
+         grown[arena.length] = allocate(Math.max(ARENA_CHUNK, size));
+         arenaLive = Arrays.copyOf(arenaLive, grown.length);
+         arena = grown;
+         arenaChunk = grown.length - 1;
+         arenaUsed = 0;
+      }
+      ByteBuffer chunk = arena[arenaChunk];
+      chunk.putInt(arenaUsed, bytes.length);
+      chunk.put(arenaUsed + 4, bytes);
+      long ref = ((long)arenaChunk << 32) | arenaUsed;
+      arenaUsed += size;
+      arenaLive[arenaChunk] += size;
+      return ref;
+   }
+
+   /*
+    *    Reads a string from the arena, or returns `null` if its chunk has
+    *    been freed.
+    */
+   private String load(long ref) {
+      ByteBuffer[] chunks = arena;
+      int c = (int)(ref >>> 32);
+      if (c >= chunks.length || chunks[c] == null) return null;
+      int offset = (int)ref;
+      byte[] bytes = new byte[chunks[c].getInt(offset)];
+      chunks[c].get(offset + 4, bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+
+   /*
+    *    Frees a string, and its arena chunk once nothing in it is left,
+    *    unless it is the chunk still being filled.
+    */
+   private void release(long ref) {
+      int c = (int)(ref >>> 32);
+      arenaLive[c] -= 4 + arena[c].getInt((int)ref);
+      if (arenaLive[c] == 0 && c != arenaChunk) {
+         ByteBuffer[] shrunk = arena.clone();
+         shrunk[c] = null;
+         arena = shrunk;
+      }
+   }
+
+   /*
+    *    Finds the record an ID maps to. IDs in this shard run from
+    *    `shard + 1` in steps of the shard count.
+    */
+   private int slotOf(int id) {
+      if (id <= shard || (id - shard - 1) % shards != 0) return -1;
+      return (id - shard - 1) / shards;
+   }
+
+   private static ByteBuffer allocate(int size) {
+      return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+   }
+}
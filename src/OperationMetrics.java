@@ -0,0 +1,128 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class keeps a histogram and an error count for each of a set of
+ ** named operations.
+ **/
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class OperationMetrics {
+   private ConcurrentHashMap<String, LatencyHistogram> values;
+   private ConcurrentHashMap<String, LongAdder> errors;
+
+   /**
+    **   Constructor Method.
+    **/
+   public OperationMetrics() {
+      values = new ConcurrentHashMap<String, LatencyHistogram>();
+      errors = new ConcurrentHashMap<String, LongAdder>();
+   }
+
+   /**
+    **   Records a value against an operation, such as its latency or
+    **   the size of its payload. Lock-free once the operation has been
+    **   seen.
+    **
+    **   @param name The name of the operation.
+    **   @param value The value to record.
+    **/
+   public void record(String name, long value) {
+      LatencyHistogram histogram = values.get(name);
+      if (histogram == null) {
+         histogram = values.computeIfAbsent(name, k -> new LatencyHistogram());
+      }
+      histogram.record(value);
+   }
+
+   /**
+    **   Counts a failure of an operation.
+    **
+    **   @param name The name of the operation.
+    **/
+   public void error(String name) {
+      LongAdder count = errors.get(name);
+      if (count == null) {
+         count = errors.computeIfAbsent(name, k -> new LongAdder());
+      }
+      count.increment();
+   }
+
+   /**
+    **   Accessor Method. Gets the histogram of each operation.
+    **   @return The histograms, by operation name.
+    **/
+   public SortedMap<String, LatencyHistogram> getValues() {
+      return new TreeMap<String, LatencyHistogram>(values);
+   }
+
+   /**
+    **   Accessor Method. Gets the error count of each operation.
+    **   @return The error counts, by operation name.
+    **/
+   public SortedMap<String, Long> getErrors() {
+      TreeMap<String, Long> counts = new TreeMap<String, Long>();
+      for(Map.Entry<String, LongAdder> entry: errors.entrySet()) {
+         counts.put(entry.getKey(), entry.getValue().sum());
+      }
+      return counts;
+   }
+
+   /**
+    **   Publishes an MBean on the platform MBean server, replacing any
+    **   already published under the name.
+    **
+    **   @param bean The MBean.
+    **   @param name Its object name.
+    **/
+   public static void register(Object bean, String name) {
+      try {
+         javax.management.MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         javax.management.ObjectName objectName = new javax.management.ObjectName(name);
+         if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+         server.registerMBean(bean, objectName);
+      } catch (Exception e) {
+         Log.error(e);
+      }
+   }
+
+   /**
+    **   Withdraws an MBean from the platform MBean server.
+    **
+    **   @param name Its object name.
+    **/
+   public static void unregister(String name) {
+      try {
+         ManagementFactory.getPlatformMBeanServer().unregisterMBean(new javax.management.ObjectName(name));
+      } catch (Exception e) {
+         Log.error(e);
+      }
+   }
+}
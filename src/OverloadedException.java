@@ -0,0 +1,83 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class represents a call turned away because the server, or the
+ ** calling user's share of it, is at capacity.
+ **/
+
+import java.rmi.RemoteException;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class OverloadedException extends RemoteException {
+   private String reason;
+   private long retryAfter;
+
+   /**
+    **   Constructor Method.
+    **
+    **   @param reason Why the call was turned away.
+    **   @param retryAfter How long to wait before trying again, in
+    **   milliseconds.
+    **/
+   public OverloadedException(String reason, long retryAfter) {
+      super(reason+"; retry after "+retryAfter+" ms");
+      this.reason = reason;
+      this.retryAfter = retryAfter;
+   }
+
+   /**
+    **   Accessor Method. Gets why the call was turned away.
+    **
+    **   @return The reason.
+    **/
+   public String getReason() {
+      return this.reason;
+   }
+
+   /**
+    **   Accessor Method. Gets how long to wait before trying again.
+    **
+    **   @return The wait, in milliseconds.
+    **/
+   public long getRetryAfter() {
+      return this.retryAfter;
+   }
+
+   /**
+    **   Finds an `OverloadedException` among the causes of an exception,
+    **   as RMI hands one thrown by the server back inside a
+    **   `ServerException`.
+    **
+    **   @param e The exception caught.
+    **   @return The `OverloadedException`, or `null` if there is none.
+    **/
+   public static OverloadedException find(Throwable e) {
+      for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+         if (cause instanceof OverloadedException) return (OverloadedException)cause;
+      }
+      return null;
+   }
+}
@@ -26,8 +26,14 @@
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jgroups.Address;
 import org.jgroups.JChannel;
-import org.jgroups.blocks.RpcDispatcher;
 import org.jgroups.blocks.RequestOptions;
 import org.jgroups.blocks.ResponseMode;
 import org.jgroups.util.*;
@@ -36,27 +42,53 @@ import org.jgroups.util.*;
  **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
  **   @version 2.0
  **/
-public class Replica {
+public class Replica implements ReplicaMXBean {
+   // How often each replica compares itself with another.
+   private static final long SYNC_INTERVAL = Long.getLong("auctionprog.antientropy.interval", 30000);
+   private static final ScheduledThreadPoolExecutor SYNCER = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread thread = new Thread(r, "AntiEntropy");
+      thread.setDaemon(true);
+      return thread;
+   });
+   
    JChannel channel;
-   RpcDispatcher disp;
+   MeteredDispatcher disp;
    RequestOptions opts=new RequestOptions(ResponseMode.GET_ALL, 5000);
    
-   private ArrayList<AuctionWrapper> auctions;
-   private ArrayList<UserWrapper> users;
+   private AuctionStore store;
+   private String mbeanName;
+   private int shard;
+   private ScheduledFuture<?> sync;
+   private AtomicLong syncs = new AtomicLong();
+   private AtomicLong repairs = new AtomicLong();
+   // The other replicas' last ID, while this one is joining its shard
+   // group; `null` once it has joined.
+   private volatile CompletableFuture<Integer> joining;
    
    /**   
-    **   Connects to the channel and sets itself up.
+    **   Connects to its shard group's channel and sets itself up.
+    **
+    **   @param shard The index of the shard group to join.
+    **   @param shards The number of shard groups.
     **/
-	public void start() {
+	public void start(int shard, int shards) {
       try {
-         channel = new JChannel();
-         disp = new RpcDispatcher(channel, this);
-         channel.connect("AuctionProg");
+         this.shard = shard;
+         store = new AuctionStore(shard, shards);
+         
+         joining = new CompletableFuture<Integer>();
+         channel = Shard.newChannel(shard);
+         disp = new MeteredDispatcher(channel, null, this);
+         channel.connect(Shard.clusterName(shard));
+         this.join();
          
-         auctions = new ArrayList<AuctionWrapper>();
-         users = new ArrayList<UserWrapper>();
+         mbeanName = "AuctionProg:type=Replica,shard="+shard+",name="+channel.getName();
+         OperationMetrics.register(this, mbeanName);
+         
+         long delay = ThreadLocalRandom.current().nextLong(SYNC_INTERVAL) + 1;
+         sync = SYNCER.scheduleWithFixedDelay(this::antiEntropy, delay, SYNC_INTERVAL, TimeUnit.MILLISECONDS);
       } catch (Exception e) {
-         System.out.println(e);
+         Log.error(e);
       }
 	}
    
@@ -64,54 +96,75 @@ public class Replica {
     **   Shuts down the replica.
     **/
    public void stop() {
+      if (sync != null) sync.cancel(false);
+      if (mbeanName != null) OperationMetrics.unregister(mbeanName);
       channel.close();
       disp.stop();
+      store.close();
    }
    
    /**   
     **   Creates a new auction.
     **
+    **   @param request The ID of the request, or `RequestIds.NONE`.
+    **   @param time When the request was made.
     **   @param newAuction The new auction to create.
+    **   @return The ID given to the auction.
     **/
-   public void createAuction(AuctionWrapper newAuction) {
-      int id = 0;
-      
-      // Gives the new auction the lowest unclaimed ID.
-      for(AuctionWrapper auction: auctions){
-         if (id <= auction.getID()) {
-            id = auction.getID();
-         }
-      }
-      
-      newAuction.setID(++id);
-      auctions.add(newAuction);
+   public int createAuction(long request, long time, AuctionWrapper newAuction) {
+      this.checkJoined();
+      return store.createAuction(request, time, newAuction);
    }
    
    /**   
-    **   Removes an auction from the list.
-    **
-    **   @param auction The auction to remove.
-    **   @return The highest-bidding user (if applicable).
-    **/
-   public UserWrapper removeAuction(AuctionWrapper auction) {
-      auctions.remove(auction);
-      
-      if (auction.getPrice() >= auction.getReserve()) {
-         return auction.getHighestBidder();
-      } else {
-         return new UserWrapper("err", "err", "server");
-      }
+    **   Creates a batch of new auctions.
+    **
+    **   @param request The ID of the request, or `RequestIds.NONE`.
+    **   @param time When the request was made.
+    **   @param newAuctions The new auctions to create.
+    **   @return The IDs given to the auctions.
+    **/
+   public int[] createAuctions(long request, long time, ArrayList<AuctionWrapper> newAuctions) {
+      this.checkJoined();
+      return store.createAuctions(request, time, newAuctions);
    }
    
    /**   
-    **   Mutator Method. Sets a new bid on an auction.
+    **   Removes an auction from the list, provided it is owned by the
+    **   given user.
+    **
+    **   @param request The ID of the request, or `RequestIds.NONE`.
+    **   @param time When the request was made.
+    **   @param id The ID of the auction to remove.
+    **   @param username The username of the user closing it.
+    **   @return The auction as it was when closed, or `null`.
+    **/
+   public AuctionWrapper removeAuction(long request, long time, int id, String username) {
+      return store.removeAuction(request, time, id, username);
+   }
+   
+   /**   
+    **   Mutator Method. Sets a new bid on an auction, provided it is
+    **   higher than the current price.
     **  
-    **   @param auction The auction to bid on.
+    **   @param request The ID of the request, or `RequestIds.NONE`.
+    **   @param time When the bid was placed.
+    **   @param id The ID of the auction to bid on.
     **   @param user The user bidding.
     **   @param price The user's bid.
+    **   @return The auction as it was before the bid, or `null`.
     **/
-   public void setBid(AuctionWrapper auction, UserWrapper user, float price) {
-      this.getAuction(auction.getID()).setBid(user, price);
+   public AuctionWrapper setBid(long request, long time, int id, UserWrapper user, float price) {
+      FlightEvents.ReplicaApply event = new FlightEvents.ReplicaApply();
+      event.begin();
+      AuctionWrapper before = store.setBid(request, time, id, user, price);
+      if (event.shouldCommit()) {
+         event.shard = shard;
+         event.auctionId = id;
+         event.price = price;
+         event.commit();
+      }
+      return before;
    }
    
    /**   
@@ -120,7 +173,7 @@ public class Replica {
     **   @return The list of auctions.
     **/
    public ArrayList<AuctionWrapper> getAllAuctions() {
-      return this.auctions;
+      return store.getAllAuctions();
    }
    
    /**   
@@ -129,13 +182,149 @@ public class Replica {
     **   @param id The auction ID.
     **   @return The auction requested, or `null`.
     **/
-   private AuctionWrapper getAuction(int id) {
-      for(AuctionWrapper auction: auctions) {
-         if (auction.getID() == id) {
-            return auction;
-         }
+   public AuctionWrapper getAuction(int id) {
+      return store.getAuction(id);
+   }
+   
+   /**
+    **   Gets a page of the auctions, in order of ID.
+    **
+    **   @param afterId The ID to start after.
+    **   @param limit The most auctions to return.
+    **   @return The auctions with IDs above `afterId`, lowest first.
+    **/
+   public ArrayList<AuctionWrapper> getAuctionsAfter(int afterId, int limit) {
+      return store.getAuctionsAfter(afterId, limit);
+   }
+   
+   /**
+    **   Gets the auctions whose current price lies in the given range.
+    **
+    **   @param min The lowest price, inclusive.
+    **   @param max The highest price, inclusive.
+    **   @return The matching auctions, cheapest first.
+    **/
+   public ArrayList<AuctionWrapper> getAuctionsByPrice(float min, float max) {
+      return store.getAuctionsByPrice(min, max);
+   }
+   
+   /**
+    **   Gets the auctions whose reserve price has not yet been met.
+    **
+    **   @return The matching auctions, closest to the reserve first.
+    **/
+   public ArrayList<AuctionWrapper> getAuctionsBelowReserve() {
+      return store.getAuctionsBelowReserve();
+   }
+   
+   /**
+    **   Gets the auctions ending in the given window.
+    **
+    **   @param from The start of the window, inclusive.
+    **   @param to The end of the window, inclusive.
+    **   @return The matching auctions, soonest first.
+    **/
+   public ArrayList<AuctionWrapper> getAuctionsEndingBetween(long from, long to) {
+      return store.getAuctionsEndingBetween(from, to);
+   }
+   
+   /**
+    **   Gets the open auctions owned by a user.
+    **
+    **   @param username The user's username.
+    **   @return The matching auctions.
+    **/
+   public ArrayList<AuctionWrapper> getAuctionsOwnedBy(String username) {
+      return store.getAuctionsOwnedBy(username);
+   }
+   
+   /**
+    **   Gets the open auctions a user is the highest bidder on.
+    **
+    **   @param username The user's username.
+    **   @return The matching auctions.
+    **/
+   public ArrayList<AuctionWrapper> getAuctionsLedBy(String username) {
+      return store.getAuctionsLedBy(username);
+   }
+   
+   /**
+    **   Gets the closed auctions a user has won.
+    **
+    **   @param username The user's username.
+    **   @return The matching auctions.
+    **/
+   public ArrayList<AuctionWrapper> getAuctionsWonBy(String username) throws IOException {
+      return store.getAuctionsWonBy(username);
+   }
+   
+   /**
+    **   Gets a page of the bids on an auction, oldest first.
+    **
+    **   @param id The auction ID.
+    **   @param offset The number of bids to skip.
+    **   @param limit The most bids to return.
+    **   @return The bids, or `null` if there is no such auction.
+    **/
+   public ArrayList<BidWrapper> getBidHistory(int id, int offset, int limit) throws IOException {
+      return store.getBidHistory(id, offset, limit);
+   }
+   
+   /**
+    **   Gets all the bids on some auctions, open or closed, oldest first.
+    **
+    **   @param ids The auction IDs.
+    **   @return The bids on each, in the same order, or `null` for one
+    **   there is no such auction.
+    **/
+   public ArrayList<ArrayList<BidWrapper>> getBidHistories(int[] ids) throws IOException {
+      ArrayList<ArrayList<BidWrapper>> result = new ArrayList<ArrayList<BidWrapper>>(ids.length);
+      for(int id: ids) {
+         result.add(store.getBidHistory(id, 0, Integer.MAX_VALUE));
       }
-      return null;
+      return result;
+   }
+   
+   /**
+    **   Gets the closed auctions a user owned.
+    **
+    **   @param username The user's username.
+    **   @return The matching auctions.
+    **/
+   public ArrayList<AuctionWrapper> getClosedAuctionsOwnedBy(String username) throws IOException {
+      return store.getClosedAuctionsOwnedBy(username);
+   }
+   
+   /**
+    **   Accessor Method. Gets the number of open auctions in each category
+    **   and price band.
+    **
+    **   @return The counts.
+    **/
+   public FacetCounts getFacetCounts() {
+      return store.getFacetCounts();
+   }
+   
+   /**
+    **   Gets the open auctions with the most bids over the last few
+    **   minutes, or over the last hour.
+    **
+    **   @param lastHour Whether to count over the last hour.
+    **   @param limit The most auctions to return.
+    **   @return The auctions and their bid counts, busiest first.
+    **/
+   public ArrayList<HotAuctionWrapper> getHottestAuctions(boolean lastHour, int limit) {
+      return store.getHottestAuctions(lastHour, limit);
+   }
+   
+   /**
+    **   Gets a closed auction by ID.
+    **
+    **   @param id The auction ID.
+    **   @return The auction requested, or `null`.
+    **/
+   public AuctionWrapper getClosedAuction(int id) throws IOException {
+      return store.getClosedAuction(id);
    }
    
    /**   
@@ -144,15 +333,317 @@ public class Replica {
     **   @return The list of users.
     **/
    public ArrayList<UserWrapper> getAllUsers() {
-      return this.users;
+      return store.getAllUsers();
    }
    
    /**    
-    **   Creates a new user.
+    **   Creates a new user, provided the username is not taken.
     **
-    **   @param The new user to create.
+    **   @param request The ID of the request, or `RequestIds.NONE`.
+    **   @param time When the request was made.
+    **   @param newUser The new user to create.
+    **   @return The user, or `null` if the username is taken.
     **/
-   public void createUser(UserWrapper newUser) {
-      this.users.add(newUser);
+   public UserWrapper createUser(long request, long time, UserWrapper newUser) {
+      return store.createUser(request, time, newUser);
    }   
+   
+   /*
+    *    Methods to check and repair this replica against others in its
+    *    shard group.
+    */
+   
+   /**
+    **   Gets the hashes of some nodes of the tree over the open auctions.
+    **
+    **   @param nodes The node indices.
+    **   @return The hashes, in the same order.
+    **/
+   public long[] getMerkleHashes(int[] nodes) {
+      return store.getMerkleHashes(nodes);
+   }
+   
+   /**
+    **   Accessor Method. Gets the open auctions hashed into some leaves of
+    **   the tree.
+    **
+    **   @param leaves The leaves.
+    **   @return The auctions.
+    **/
+   public ArrayList<AuctionWrapper> getAuctionsInLeaves(int[] leaves) {
+      return store.getAuctionsInLeaves(leaves);
+   }
+   
+   /**
+    **   Accessor Method. Gets those of some auctions that have been
+    **   closed.
+    **
+    **   @param ids The auction IDs.
+    **   @return The closed auctions found.
+    **/
+   public ArrayList<AuctionWrapper> getClosedAuctions(int[] ids) throws IOException {
+      return store.getClosedAuctions(ids);
+   }
+   
+   /**
+    **   Accessor Method. Gets the highest auction ID handed out here.
+    **
+    **   @return The ID, or 0 if there has been none.
+    **/
+   public int getLastID() {
+      return store.getLastID();
+   }
+   
+   /**
+    **   Marks where a replica joined the shard group. The call is
+    **   multicast in the same total order as the creations, so every
+    **   replica answers with its last ID as of the same point. The
+    **   joining replica itself waits here for that answer, holding back
+    **   the creations behind it, and carries on numbering from it.
+    **
+    **   @param joiner The replica joining.
+    **   @return The last ID handed out here.
+    **/
+   public int markJoin(Address joiner) {
+      CompletableFuture<Integer> mark = joining;
+      if (joiner.equals(channel.getAddress()) && mark != null) {
+         try {
+            store.catchUp(mark.get(opts.getTimeout() * 2, TimeUnit.MILLISECONDS));
+         } catch (Exception e) {
+            Log.error("Joined without the other replicas' last ID: {}", e);
+         }
+         joining = null;
+      }
+      return store.getLastID();
+   }
+   
+   /**
+    **   Compares this replica with another, picked at random, and pulls
+    **   across whatever differs. The trees are compared from the root
+    **   down, a level per call, following only the nodes whose hashes
+    **   differ, so replicas that agree exchange a single hash. The other
+    **   replica's auctions in each differing leaf are then fetched, along
+    **   with its closed copies of any held open here but not there,
+    **   unless it has not yet got as far as creating them, and its bids
+    **   on those of them that are behind here.
+    **   Every replica does this in turn, so changes spread both ways.
+    **/
+   public void antiEntropy() {
+      try {
+         Address peer = this.pickPeer();
+         if (peer == null) return;
+         syncs.incrementAndGet();
+         
+         int[] nodes = {MerkleTree.ROOT};
+         while (true) {
+            long[] theirs = disp.callRemoteMethod(peer, "getMerkleHashes", new Object[]{nodes}, new Class[]{int[].class}, opts);
+            long[] ours = store.getMerkleHashes(nodes);
+            int[] differing = new int[nodes.length];
+            int count = 0;
+            for (int i = 0; i < nodes.length; i++) {
+               if (theirs[i] != ours[i]) differing[count++] = nodes[i];
+            }
+            if (count == 0) return;
+            if (MerkleTree.isLeaf(differing[0])) {
+               nodes = Arrays.copyOf(differing, count);
+               break;
+            }
+            nodes = new int[count * 2];
+            for (int i = 0; i < count; i++) {
+               nodes[2 * i] = 2 * differing[i];
+               nodes[2 * i + 1] = 2 * differing[i] + 1;
+            }
+         }
+         
+         int[] leaves = new int[nodes.length];
+         for (int i = 0; i < nodes.length; i++) {
+            leaves[i] = MerkleTree.leafAt(nodes[i]);
+         }
+         ArrayList<AuctionWrapper> open = disp.callRemoteMethod(peer, "getAuctionsInLeaves", new Object[]{leaves}, new Class[]{int[].class}, opts);
+         HashSet<Integer> theirIDs = new HashSet<Integer>();
+         for(AuctionWrapper auction: open) {
+            theirIDs.add(auction.getID());
+         }
+         int theirLastID = disp.<Integer>callRemoteMethod(peer, "getLastID", null, null, opts);
+         ArrayList<Integer> missing = new ArrayList<Integer>();
+         for(AuctionWrapper auction: store.getAuctionsInLeaves(leaves)) {
+            int id = auction.getID();
+            if (id <= theirLastID && !theirIDs.contains(id)) missing.add(id);
+         }
+         ArrayList<AuctionWrapper> closed = new ArrayList<AuctionWrapper>();
+         if (!missing.isEmpty()) {
+            int[] ids = new int[missing.size()];
+            for (int i = 0; i < ids.length; i++) {
+               ids[i] = missing.get(i);
+            }
+            closed = disp.callRemoteMethod(peer, "getClosedAuctions", new Object[]{ids}, new Class[]{int[].class}, opts);
+         }
+         
+         int[] behind = store.getBehind(open);
+         int[] stale = Arrays.copyOf(behind, behind.length + closed.size());
+         for (int i = 0; i < closed.size(); i++) {
+            stale[behind.length + i] = closed.get(i).getID();
+         }
+         HashMap<Integer, ArrayList<BidWrapper>> bids = new HashMap<Integer, ArrayList<BidWrapper>>();
+         if (stale.length > 0) {
+            ArrayList<ArrayList<BidWrapper>> histories = disp.callRemoteMethod(peer, "getBidHistories", new Object[]{stale}, new Class[]{int[].class}, opts);
+            for (int i = 0; i < stale.length; i++) {
+               if (histories.get(i) != null) bids.put(stale[i], histories.get(i));
+            }
+         }
+         
+         int repaired = store.repair(open, closed, bids);
+         if (repaired > 0) {
+            repairs.addAndGet(repaired);
+            Log.info("Repaired {} auctions from {}", repaired, peer);
+         }
+      } catch (Exception e) {
+         Log.error(e);
+      }
+   }
+   
+   /*
+    *    Picks another replica in the shard group at random, or `null` if
+    *    there is none.
+    */
+   private Address pickPeer() {
+      ArrayList<Address> peers = this.peers();
+      return peers.isEmpty() ? null : peers.get(ThreadLocalRandom.current().nextInt(peers.size()));
+   }
+   
+   /*
+    *    Gets the other replicas in the shard group.
+    */
+   private ArrayList<Address> peers() {
+      ArrayList<Address> peers = new ArrayList<Address>();
+      for(Address member: channel.getView().getMembers()) {
+         String name = org.jgroups.util.UUID.get(member);
+         if (!member.equals(channel.getAddress()) && (name == null || !name.startsWith(Shard.FRONT_END_PREFIX))) {
+            peers.add(member);
+         }
+      }
+      return peers;
+   }
+   
+   /*
+    *    Finds how far the other replicas have got in numbering auctions,
+    *    if there are any. Until then, creations are refused here; the
+    *    auctions they make reach this replica by repair instead.
+    */
+   private void join() {
+      CompletableFuture<Integer> mark = joining;
+      ArrayList<Address> peers = this.peers();
+      if (peers.isEmpty()) {
+         joining = null;
+         return;
+      }
+      try {
+         RspList<Integer> rsps = disp.callRemoteMethods(peers, "markJoin", new Object[]{channel.getAddress()}, new Class[]{Address.class},
+               new RequestOptions(ResponseMode.GET_FIRST, opts.getTimeout()));
+         Integer lastID = rsps.getFirst();
+         if (lastID == null) throw new IllegalStateException("No replica answered");
+         mark.complete(lastID);
+      } catch (Exception e) {
+         mark.completeExceptionally(e);
+      }
+   }
+   
+   /*
+    *    Refuses a creation while this replica is still joining, as the
+    *    ID it would give is not yet known.
+    */
+   private void checkJoined() {
+      if (joining != null) throw new IllegalStateException("Replica is still joining shard group "+shard);
+   }
+   
+   /*
+    *    Metrics published over JMX.
+    */
+   
+   /**
+    **   Accessor Method. Gets the number of open auctions held.
+    **
+    **   @return The count.
+    **/
+   public int getAuctionCount() {
+      return store.getAuctionCount();
+   }
+   
+   /**
+    **   Accessor Method. Gets the number of users held.
+    **
+    **   @return The count.
+    **/
+   public int getUserCount() {
+      return store.getUserCount();
+   }
+   
+   /**
+    **   Accessor Method. Gets the number of closed auctions archived.
+    **
+    **   @return The count.
+    **/
+   public int getClosedAuctionCount() {
+      return store.getClosedAuctionCount();
+   }
+   
+   /**
+    **   Accessor Method. Gets the number of times this replica has
+    **   compared itself with another.
+    **
+    **   @return The count.
+    **/
+   public long getAntiEntropyRounds() {
+      return syncs.get();
+   }
+   
+   /**
+    **   Accessor Method. Gets the number of auctions repaired from other
+    **   replicas.
+    **
+    **   @return The count.
+    **/
+   public long getRepairedAuctions() {
+      return repairs.get();
+   }
+   
+   /**
+    **   Accessor Method. Gets the time taken to handle each kind of RPC,
+    **   in microseconds.
+    **
+    **   @return The latencies, by method.
+    **/
+   public SortedMap<String, LatencyHistogram> getHandledLatencies() {
+      return disp.getHandled().getValues();
+   }
+   
+   /**
+    **   Accessor Method. Gets the number of RPCs of each kind that
+    **   failed.
+    **
+    **   @return The error counts, by method.
+    **/
+   public SortedMap<String, Long> getHandledErrors() {
+      return disp.getHandled().getErrors();
+   }
+   
+   /**
+    **   Accessor Method. Gets the size of the RPC messages marshalled, in
+    **   bytes.
+    **
+    **   @return The sizes, by direction.
+    **/
+   public SortedMap<String, LatencyHistogram> getPayloadSizes() {
+      return disp.getPayloads().getValues();
+   }
+   
+   /**
+    **   Accessor Method. Gets how well the RPC messages compress, and the
+    **   time spent compressing them.
+    **
+    **   @return The metrics, by name.
+    **/
+   public SortedMap<String, LatencyHistogram> getCompression() {
+      return disp.getCompression().getValues();
+   }
 }
@@ -0,0 +1,90 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class defines the metrics a replica publishes over JMX.
+ **/
+
+import java.util.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public interface ReplicaMXBean {
+   /**
+    **   Gets the number of open auctions the replica holds.
+    **   @return The count.
+    **/
+   public int getAuctionCount();
+
+   /**
+    **   Gets the number of users the replica holds.
+    **   @return The count.
+    **/
+   public int getUserCount();
+
+   /**
+    **   Gets the number of closed auctions the replica has archived.
+    **   @return The count.
+    **/
+   public int getClosedAuctionCount();
+
+   /**
+    **   Gets the number of times the replica has compared itself with
+    **   another.
+    **   @return The count.
+    **/
+   public long getAntiEntropyRounds();
+
+   /**
+    **   Gets the number of auctions the replica has repaired from others.
+    **   @return The count.
+    **/
+   public long getRepairedAuctions();
+
+   /**
+    **   Gets the time taken to handle each kind of RPC, in microseconds.
+    **   @return The latencies, by method.
+    **/
+   public SortedMap<String, LatencyHistogram> getHandledLatencies();
+
+   /**
+    **   Gets the number of RPCs of each kind that failed.
+    **   @return The error counts, by method.
+    **/
+   public SortedMap<String, Long> getHandledErrors();
+
+   /**
+    **   Gets the size of the RPC messages the replica has marshalled, in
+    **   bytes.
+    **   @return The sizes, by direction.
+    **/
+   public SortedMap<String, LatencyHistogram> getPayloadSizes();
+
+   /**
+    **   Gets how well the replica's RPC messages compress, and the time
+    **   spent compressing them.
+    **   @return The metrics, by name.
+    **/
+   public SortedMap<String, LatencyHistogram> getCompression();
+}
@@ -0,0 +1,132 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class counts how a replica has answered a front end's calls.
+ **/
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import org.jgroups.SuspectedException;
+import org.jgroups.UnreachableException;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class ReplicaStats {
+   private LongAdder responses = new LongAdder();
+   private LongAdder exceptions = new LongAdder();
+   private LongAdder suspected = new LongAdder();
+   private LongAdder timeouts = new LongAdder();
+   private LongAdder hedges = new LongAdder();
+
+   /**
+    **   Counts a response from one call to the replica.
+    **
+    **   @param rsp The replica's response.
+    **/
+   public void record(org.jgroups.util.Rsp<?> rsp) {
+      if (rsp.wasReceived()) {
+         responses.increment();
+         if (rsp.hasException()) exceptions.increment();
+      } else if (rsp.wasSuspected() || rsp.wasUnreachable()) {
+         suspected.increment();
+      } else {
+         timeouts.increment();
+      }
+   }
+
+   /**
+    **   Counts a response from a read sent to the replica alone.
+    **/
+   public void recordResponse() {
+      responses.increment();
+   }
+
+   /**
+    **   Counts a read sent to the replica alone that failed.
+    **
+    **   @param e Why it failed.
+    **/
+   public void recordFailure(Throwable e) {
+      if (e instanceof SuspectedException || e instanceof UnreachableException) {
+         suspected.increment();
+      } else if (e instanceof TimeoutException) {
+         timeouts.increment();
+      } else {
+         responses.increment();
+         exceptions.increment();
+      }
+   }
+
+   /**
+    **   Counts a read sent to the replica because the one tried before it
+    **   was slow to answer or failed.
+    **/
+   public void recordHedge() {
+      hedges.increment();
+   }
+
+   /**
+    **   Accessor Method. Gets the number of responses received.
+    **   @return The count.
+    **/
+   public long getResponses() {
+      return responses.sum();
+   }
+
+   /**
+    **   Accessor Method. Gets the number of responses that were
+    **   exceptions.
+    **   @return The count.
+    **/
+   public long getExceptions() {
+      return exceptions.sum();
+   }
+
+   /**
+    **   Accessor Method. Gets the number of calls that went unanswered
+    **   because the replica was suspected or unreachable.
+    **   @return The count.
+    **/
+   public long getSuspected() {
+      return suspected.sum();
+   }
+
+   /**
+    **   Accessor Method. Gets the number of calls that timed out.
+    **   @return The count.
+    **/
+   public long getTimeouts() {
+      return timeouts.sum();
+   }
+
+   /**
+    **   Accessor Method. Gets the number of reads sent to the replica as
+    **   a hedge against another being slow or failing.
+    **   @return The count.
+    **/
+   public long getHedges() {
+      return hedges.sum();
+   }
+}
@@ -0,0 +1,77 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class hands out the IDs that make changes safe to retry. A client
+ ** gives every call that changes state a fresh ID and the time it made
+ ** the call, and sends both again, unchanged, if it retries or hedges the
+ ** call. The shard group applying it returns the first result for any
+ ** repeat, and records the client's time rather than that of whichever
+ ** front end the copy reached.
+ **/
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public final class RequestIds {
+   /**
+    **   The ID of a change made without one, which is never deduplicated.
+    **/
+   public static final long NONE = 0;
+
+   // These `Auction` methods take a request ID and its time as their
+   // first two arguments.
+   private static final Set<String> CARRIERS = new HashSet<String>(Arrays.asList("openNewAuction", "openNewAuctions",
+         "closeAuction", "bidOnAuction", "registerUser"));
+
+   private RequestIds() {}
+
+   /**
+    **   Makes a new request ID. IDs are random, so clients need not agree
+    **   on anything to avoid sharing one.
+    **
+    **   @return The ID.
+    **/
+   public static long next() {
+      long id;
+      do {
+         id = ThreadLocalRandom.current().nextLong();
+      } while (id == NONE);
+      return id;
+   }
+
+   /**
+    **   Tests whether an `Auction` method takes a request ID and time, and
+    **   so may be sent more than once.
+    **
+    **   @param method The method.
+    **   @return Whether it does.
+    **/
+   public static boolean isCarriedBy(Method method) {
+      return CARRIERS.contains(method.getName());
+   }
+}
@@ -0,0 +1,465 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class represents the front end's connection to one shard group.
+ ** Writes are multicast to the whole group, so that every replica applies
+ ** them in the same order whichever front end sent them; reads go to one
+ ** replica at a time, in turn.
+ **/
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+import org.jgroups.MembershipListener;
+import org.jgroups.View;
+import org.jgroups.blocks.MethodCall;
+import org.jgroups.blocks.RequestOptions;
+import org.jgroups.blocks.ResponseMode;
+import org.jgroups.protocols.SEQUENCER;
+import org.jgroups.protocols.UDP;
+import org.jgroups.protocols.pbcast.GMS;
+import org.jgroups.stack.ProtocolStack;
+import org.jgroups.util.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class Shard implements MembershipListener {
+   public static final String FRONT_END_PREFIX = "FrontEnd-";
+   // How long a read waits on one replica before also asking the next.
+   private static final long HEDGE_DELAY = Long.getLong("auctionprog.read.hedge", 50);
+   private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread thread = new Thread(r, "ReadTimer");
+      thread.setDaemon(true);
+      return thread;
+   });
+   static {
+      TIMER.setRemoveOnCancelPolicy(true);
+   }
+   
+   private int index;
+   private int frontEnd;
+   private JChannel channel;
+   private MeteredDispatcher disp;
+   private RequestOptions opts;
+   private RequestOptions readOpts;
+   private volatile List<Address> replicas;
+   private AtomicInteger nextReplica;
+   private OperationMetrics calls;
+   private ConcurrentHashMap<String, ReplicaStats> replicaStats;
+
+   /**
+    **   Constructor Method.
+    **
+    **   @param index The index of the shard group.
+    **   @param frontEnd The index of the front end connecting.
+    **/
+   public Shard(int index, int frontEnd) {
+      this.index = index;
+      this.frontEnd = frontEnd;
+      this.replicas = Collections.<Address>emptyList();
+      // Not anycast: only multicasts are put in total order.
+      this.opts = new RequestOptions(ResponseMode.GET_ALL, 5000);
+      this.readOpts = new RequestOptions(ResponseMode.GET_FIRST, 5000);
+      this.nextReplica = new AtomicInteger();
+      this.calls = new OperationMetrics();
+      this.replicaStats = new ConcurrentHashMap<String, ReplicaStats>();
+   }
+
+   /**
+    **   Joins the shard group's channel under a front-end name. Front
+    **   ends hold no state of their own, so only the other members'
+    **   responses are waited for.
+    **/
+   public void connect() throws Exception {
+      channel = newChannel(index);
+      channel.setName(FRONT_END_PREFIX+frontEnd);
+      disp = new MeteredDispatcher(channel, this, null);
+      channel.connect(clusterName(index));
+   }
+
+   /**
+    **   Keeps track of which members of the shard group are replicas.
+    **
+    **   @param view The new membership.
+    **/
+   public void viewAccepted(View view) {
+      ArrayList<Address> members = new ArrayList<Address>();
+      for(Address member: view.getMembers()) {
+         String name = org.jgroups.util.UUID.get(member);
+         if (name == null || !name.startsWith(FRONT_END_PREFIX)) {
+            members.add(member);
+         }
+      }
+      this.replicas = Collections.unmodifiableList(members);
+   }
+
+   public void suspect(Address member) {}
+
+   public void block() {}
+
+   public void unblock() {}
+
+   /**
+    **   Leaves the shard group.
+    **/
+   public void stop() {
+      channel.close();
+      disp.stop();
+   }
+
+   /**
+    **   Accessor Method. Gets the index of the shard group.
+    **
+    **   @return The shard index.
+    **/
+   public int getIndex() {
+      return this.index;
+   }
+
+   /**
+    **   Invokes a method on every replica in the shard group.
+    **
+    **   @param method The name of the method.
+    **   @param args The arguments to pass.
+    **   @param types The types of the arguments.
+    **   @return The replicas' responses.
+    **/
+   public <T> RspList<T> call(String method, Object[] args, Class[] types) throws Exception {
+      FlightEvents.Rpc event = new FlightEvents.Rpc();
+      event.begin();
+      long start = System.nanoTime();
+      try {
+         RspList<T> rsps = disp.callRemoteMethods(replicas, method, args, types, opts);
+         this.record(method, start, rsps, event);
+         return rsps;
+      } catch (Exception e) {
+         calls.error(method);
+         throw e;
+      }
+   }
+
+   /**
+    **   Invokes a method on every replica in the shard group, returning
+    **   the first response.
+    **
+    **   @param method The name of the method.
+    **   @param args The arguments to pass.
+    **   @param types The types of the arguments.
+    **   @return The first response, or `null`.
+    **/
+   public <T> T callFirst(String method, Object[] args, Class[] types) throws Exception {
+      RspList<T> rsp_list = this.call(method, args, types);
+      return rsp_list.getFirst();
+   }
+
+   /**
+    **   Invokes a method on every replica in the shard group without
+    **   waiting for the responses.
+    **
+    **   @param method The name of the method.
+    **   @param args The arguments to pass.
+    **   @param types The types of the arguments.
+    **   @return A future for the replicas' responses.
+    **/
+   public <T> NotifyingFuture<RspList<T>> callAsync(String method, Object[] args, Class[] types) throws Exception {
+      FlightEvents.Rpc event = new FlightEvents.Rpc();
+      event.begin();
+      long start = System.nanoTime();
+      NotifyingFuture<RspList<T>> future = disp.callRemoteMethodsWithFuture(replicas, new MethodCall(method, args, types), opts);
+      future.setListener(done -> {
+         try {
+            this.record(method, start, done.get(), event);
+         } catch (Exception e) {
+            calls.error(method);
+         }
+      });
+      return future;
+   }
+
+   /**
+    **   Invokes a read-only method on a single replica, returning its
+    **   response.
+    **
+    **   @param method The name of the method.
+    **   @param args The arguments to pass.
+    **   @param types The types of the arguments.
+    **   @return The response.
+    **/
+   public <T> T read(String method, Object[] args, Class[] types) throws Exception {
+      try {
+         return this.<T>readAsync(method, args, types).get();
+      } catch (ExecutionException e) {
+         throw (e.getCause() instanceof Exception) ? (Exception)e.getCause() : e;
+      }
+   }
+
+   /**
+    **   Invokes a read-only method on a single replica without waiting
+    **   for the response. Replicas are taken in turn, so reads are spread
+    **   across the group. If the replica has not answered within
+    **   `auctionprog.read.hedge` milliseconds, the call is also sent to
+    **   the next, and so on; if it fails, the next is tried straight
+    **   away. The first answer wins.
+    **
+    **   @param method The name of the method.
+    **   @param args The arguments to pass.
+    **   @param types The types of the arguments.
+    **   @return A future for the response.
+    **/
+   public <T> CompletableFuture<T> readAsync(String method, Object[] args, Class[] types) {
+      CompletableFuture<T> result = new CompletableFuture<T>();
+      List<Address> members = replicas;
+      if (members.isEmpty()) {
+         calls.error(method);
+         result.completeExceptionally(new IllegalStateException("Shard group "+index+" has no replicas"));
+         return result;
+      }
+
+      int first = Math.floorMod(nextReplica.getAndIncrement(), members.size());
+      new Read<T>(method, new MethodCall(method, args, types), members, first, result).send();
+      ScheduledFuture<?> deadline = TIMER.schedule(() -> {
+         if (result.completeExceptionally(new TimeoutException(method+" timed out on shard group "+index))) {
+            calls.error(method);
+         }
+      }, readOpts.getTimeout(), TimeUnit.MILLISECONDS);
+      result.whenComplete((value, e) -> deadline.cancel(false));
+      return result;
+   }
+
+   /**
+    **   Accessor Method. Gets the time taken by each kind of call, in
+    **   microseconds, from sending it to having every response.
+    **
+    **   @return The metrics, by method.
+    **/
+   public OperationMetrics getCalls() {
+      return this.calls;
+   }
+
+   /**
+    **   Accessor Method. Gets how each replica has answered calls.
+    **
+    **   @return The counts, by replica name.
+    **/
+   public SortedMap<String, ReplicaStats> getReplicaStats() {
+      return new TreeMap<String, ReplicaStats>(replicaStats);
+   }
+
+   /**
+    **   Accessor Method. Gets the size of the messages marshalled, in
+    **   bytes.
+    **
+    **   @return The metrics, by direction.
+    **/
+   public OperationMetrics getPayloads() {
+      return disp.getPayloads();
+   }
+
+   /**
+    **   Accessor Method. Gets the compression of the messages
+    **   marshalled.
+    **
+    **   @return The metrics.
+    **/
+   public OperationMetrics getCompression() {
+      return disp.getCompression();
+   }
+
+   /*
+    *    Records the time a call took and how each replica answered it.
+    */
+   private void record(String method, long start, RspList<?> rsps, FlightEvents.Rpc event) {
+      calls.record(method, (System.nanoTime() - start) / 1000);
+      if (event.shouldCommit()) {
+         event.shard = index;
+         event.method = method;
+         event.replicas = rsps.size();
+         event.responses = rsps.numReceived();
+         event.commit();
+      }
+      for(Rsp<?> rsp: rsps.values()) {
+         this.stats(rsp.getSender()).record(rsp);
+      }
+   }
+
+   /*
+    *    Gets the counts kept for a replica.
+    */
+   private ReplicaStats stats(Address replica) {
+      String name = String.valueOf(replica);
+      ReplicaStats stats = replicaStats.get(name);
+      if (stats == null) {
+         stats = replicaStats.computeIfAbsent(name, k -> new ReplicaStats());
+      }
+      return stats;
+   }
+
+   /*
+    *    A read in progress, sent to one replica after another until one
+    *    answers.
+    */
+   private final class Read<T> {
+      private final String method;
+      private final MethodCall call;
+      private final List<Address> members;
+      private final int first;
+      private final CompletableFuture<T> result;
+      private final long start;
+      private final FlightEvents.Rpc event;
+      // The number of replicas the read has been sent to, and the number
+      // of those that failed.
+      private int sent;
+      private int failed;
+
+      Read(String method, MethodCall call, List<Address> members, int first, CompletableFuture<T> result) {
+         this.method = method;
+         this.call = call;
+         this.members = members;
+         this.first = first;
+         this.result = result;
+         this.event = new FlightEvents.Rpc();
+         event.begin();
+         this.start = System.nanoTime();
+      }
+
+      /*
+       *    Sends the read to the next replica, unless it has already been
+       *    answered or every replica has been tried, and sets a timer to
+       *    hedge if that one is slow.
+       */
+      void send() {
+         Address target;
+         synchronized (this) {
+            if (result.isDone() || sent == members.size()) return;
+            target = members.get((first + sent) % members.size());
+            if (sent++ > 0) stats(target).recordHedge();
+         }
+         try {
+            disp.<T>callRemoteMethodWithFuture(target, call, readOpts, done -> this.done(target, done));
+         } catch (Exception e) {
+            this.failed(target, e);
+            return;
+         }
+         TIMER.schedule(this::send, HEDGE_DELAY, TimeUnit.MILLISECONDS);
+      }
+
+      /*
+       *    Takes a replica's answer, if it is the first.
+       */
+      void done(Address target, Future<T> future) {
+         T value;
+         try {
+            value = future.get();
+         } catch (ExecutionException e) {
+            this.failed(target, e.getCause());
+            return;
+         } catch (Exception e) {
+            this.failed(target, e);
+            return;
+         }
+         stats(target).recordResponse();
+         if (result.complete(value)) {
+            calls.record(method, (System.nanoTime() - start) / 1000);
+            if (event.shouldCommit()) {
+               event.shard = index;
+               event.method = method;
+               synchronized (this) {
+                  event.replicas = sent;
+               }
+               event.responses = 1;
+               event.commit();
+            }
+         }
+      }
+
+      /*
+       *    Moves on to the next replica after one fails, or gives up if
+       *    none are left.
+       */
+      void failed(Address target, Throwable e) {
+         stats(target).recordFailure(e);
+         boolean last;
+         synchronized (this) {
+            last = (++failed == members.size());
+         }
+         if (!last) {
+            this.send();
+         } else if (result.completeExceptionally(e)) {
+            calls.error(method);
+         }
+      }
+   }
+
+   /**
+    **   Creates a channel for a shard group. Each group multicasts on its
+    **   own port, so members do not have to receive and discard the
+    **   other groups' traffic. The protocol stack can be replaced by
+    **   naming a JGroups configuration in `auctionprog.jgroups`, such as
+    **   an in-process loopback stack for benchmarking. A `SEQUENCER` is
+    **   added to any stack without one: replicas number new auctions in
+    **   the order they see them, and JGroups otherwise only keeps each
+    **   sender's messages in order, not those of several front ends.
+    **
+    **   @param index The index of the shard group.
+    **   @return The unconnected channel.
+    **/
+   public static JChannel newChannel(int index) throws Exception {
+      String config = System.getProperty("auctionprog.jgroups");
+      JChannel channel = (config == null) ? new JChannel() : new JChannel(config);
+      UDP udp = (UDP)channel.getProtocolStack().findProtocol(UDP.class);
+      if (udp != null) {
+         udp.setMulticastPort(udp.getMulticastPort() + index);
+      }
+      ProtocolStack stack = channel.getProtocolStack();
+      if (stack.findProtocol(SEQUENCER.class) == null && stack.findProtocol(GMS.class) != null) {
+         stack.insertProtocol(new SEQUENCER(), ProtocolStack.BELOW, GMS.class);
+      }
+      return channel;
+   }
+
+   /**
+    **   Gets the name of the channel used by a shard group.
+    **
+    **   @param index The index of the shard group.
+    **   @return The channel name.
+    **/
+   public static String clusterName(int index) {
+      return "AuctionProg-"+index;
+   }
+
+   /**
+    **   Gets the shard group an auction belongs to. Each group hands out
+    **   IDs congruent to its own index, so this is a plain modulus.
+    **
+    **   @param id The auction ID.
+    **   @param shards The number of shard groups.
+    **   @return The shard index.
+    **/
+   public static int indexOf(int id, int shards) {
+      return Math.floorMod(id - 1, shards);
+   }
+}
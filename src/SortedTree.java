@@ -0,0 +1,255 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+/**
+ ** This class represents an immutable sorted map. A change makes a new
+ ** map that shares everything it did not touch with the last, so an index
+ ** can be published along with the `StoreSnapshot` it was built for and
+ ** read without a lock.
+ **/
+
+import java.util.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public final class SortedTree<K extends Comparable<K>, V> {
+   private static final SortedTree<?, ?> EMPTY = new SortedTree<>(null);
+
+   // An AVL tree. Every change copies only the path from the root to the
+   // node changed.
+   private final Node<K, V> root;
+
+   /*
+    *    Constructor Method.
+    */
+   private SortedTree(Node<K, V> root) {
+      this.root = root;
+   }
+
+   /**
+    **   Gets the empty map.
+    **
+    **   @return The map.
+    **/
+   @SuppressWarnings("unchecked")
+   public static <K extends Comparable<K>, V> SortedTree<K, V> empty() {
+      return (SortedTree<K, V>)EMPTY;
+   }
+
+   /**
+    **   Makes a copy of this map with a value put in, replacing any under
+    **   the same key.
+    **
+    **   @param key The key.
+    **   @param value The value.
+    **   @return The new map.
+    **/
+   public SortedTree<K, V> with(K key, V value) {
+      return new SortedTree<K, V>(put(root, key, value));
+   }
+
+   /**
+    **   Makes a copy of this map with a key taken out.
+    **
+    **   @param key The key.
+    **   @return The new map, or this one if the key was not there.
+    **/
+   public SortedTree<K, V> without(K key) {
+      Node<K, V> removed = remove(root, key);
+      return (removed == root) ? this : new SortedTree<K, V>(removed);
+   }
+
+   /**
+    **   Accessor Method. Gets the number of keys.
+    **
+    **   @return The count.
+    **/
+   public int size() {
+      return size(root);
+   }
+
+   /**
+    **   Gets the values whose keys lie in a range, in order of key.
+    **
+    **   @param from The lowest key, inclusive.
+    **   @param to The highest key, inclusive.
+    **   @return The values.
+    **/
+   public ArrayList<V> getBetween(K from, K to) {
+      ArrayList<V> list = new ArrayList<V>();
+      if (from.compareTo(to) <= 0) addBetween(root, from, to, list);
+      return list;
+   }
+
+   /**
+    **   Gets the values whose keys are above a key, in order of key.
+    **
+    **   @param from The key, exclusive.
+    **   @return The values.
+    **/
+   public ArrayList<V> getAbove(K from) {
+      ArrayList<V> list = new ArrayList<V>();
+      addAbove(root, from, list);
+      return list;
+   }
+
+   /*
+    *    Adds the values under a node with keys in a range to a list, in
+    *    order of key.
+    */
+   private static <K extends Comparable<K>, V> void addBetween(Node<K, V> node, K from, K to, ArrayList<V> list) {
+      while (node != null) {
+         if (node.key.compareTo(from) < 0) {
+            node = node.right;
+         } else if (node.key.compareTo(to) > 0) {
+            node = node.left;
+         } else {
+            addBetween(node.left, from, to, list);
+            list.add(node.value);
+            node = node.right;
+         }
+      }
+   }
+
+   /*
+    *    Adds the values under a node with keys above a key to a list, in
+    *    order of key.
+    */
+   private static <K extends Comparable<K>, V> void addAbove(Node<K, V> node, K from, ArrayList<V> list) {
+      while (node != null) {
+         if (node.key.compareTo(from) <= 0) {
+            node = node.right;
+         } else {
+            addAbove(node.left, from, list);
+            list.add(node.value);
+            node = node.right;
+            // Everything on the right is above the key, so no more
+            // comparisons are needed.
+            addAll(node, list);
+            return;
+         }
+      }
+   }
+
+   /*
+    *    Adds the values under a node to a list, in order of key.
+    */
+   private static <K extends Comparable<K>, V> void addAll(Node<K, V> node, ArrayList<V> list) {
+      while (node != null) {
+         addAll(node.left, list);
+         list.add(node.value);
+         node = node.right;
+      }
+   }
+
+   /*
+    *    Returns a copy of the tree under a node with a value put in.
+    */
+   private static <K extends Comparable<K>, V> Node<K, V> put(Node<K, V> node, K key, V value) {
+      if (node == null) return new Node<K, V>(key, value, null, null);
+      int cmp = key.compareTo(node.key);
+      if (cmp < 0) return balance(node.key, node.value, put(node.left, key, value), node.right);
+      if (cmp > 0) return balance(node.key, node.value, node.left, put(node.right, key, value));
+      return new Node<K, V>(key, value, node.left, node.right);
+   }
+
+   /*
+    *    Returns a copy of the tree under a node with a key taken out, or
+    *    the same tree if it was not there.
+    */
+   private static <K extends Comparable<K>, V> Node<K, V> remove(Node<K, V> node, K key) {
+      if (node == null) return null;
+      int cmp = key.compareTo(node.key);
+      if (cmp < 0) {
+         Node<K, V> left = remove(node.left, key);
+         return (left == node.left) ? node : balance(node.key, node.value, left, node.right);
+      }
+      if (cmp > 0) {
+         Node<K, V> right = remove(node.right, key);
+         return (right == node.right) ? node : balance(node.key, node.value, node.left, right);
+      }
+      if (node.left == null) return node.right;
+      if (node.right == null) return node.left;
+
+      // Replaces the node with the lowest node on its right.
+      Node<K, V> next = node.right;
+      while (next.left != null) {
+         next = next.left;
+      }
+      return balance(next.key, next.value, node.left, remove(node.right, next.key));
+   }
+
+   /*
+    *    Makes a node from two subtrees whose heights differ by at most
+    *    two, rotating to bring them back within one.
+    */
+   private static <K extends Comparable<K>, V> Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right) {
+      int lh = height(left);
+      int rh = height(right);
+      if (lh > rh + 1) {
+         if (height(left.left) >= height(left.right)) {
+            return new Node<K, V>(left.key, left.value, left.left, new Node<K, V>(key, value, left.right, right));
+         }
+         return new Node<K, V>(left.right.key, left.right.value,
+               new Node<K, V>(left.key, left.value, left.left, left.right.left),
+               new Node<K, V>(key, value, left.right.right, right));
+      }
+      if (rh > lh + 1) {
+         if (height(right.right) >= height(right.left)) {
+            return new Node<K, V>(right.key, right.value, new Node<K, V>(key, value, left, right.left), right.right);
+         }
+         return new Node<K, V>(right.left.key, right.left.value,
+               new Node<K, V>(key, value, left, right.left.left),
+               new Node<K, V>(right.key, right.value, right.left.right, right.right));
+      }
+      return new Node<K, V>(key, value, left, right);
+   }
+
+   private static int height(Node<?, ?> node) {
+      return (node == null) ? 0 : node.height;
+   }
+
+   private static int size(Node<?, ?> node) {
+      return (node == null) ? 0 : node.size;
+   }
+
+   /*
+    *    A node of the tree. Nodes are never changed once made.
+    */
+   private static final class Node<K, V> {
+      final K key;
+      final V value;
+      final Node<K, V> left, right;
+      final int height;
+      final int size;
+
+      Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+         this.key = key;
+         this.value = value;
+         this.left = left;
+         this.right = right;
+         this.height = Math.max(height(left), height(right)) + 1;
+         this.size = size(left) + size(right) + 1;
+      }
+   }
+}
@@ -0,0 +1,178 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This interface defines where an `AuctionStore` keeps its open auctions
+ ** and users. The store's engine thread is the only one to make changes,
+ ** and marks the end of each batch with `publish`; any thread may read.
+ **/
+
+import java.util.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public interface StoreBackend {
+   /**
+    **   Gets an auction by ID as the engine's thread sees it, with the
+    **   changes not yet published. Only called by the engine's thread.
+    **
+    **   @param id The auction ID.
+    **   @return The auction, or `null`.
+    **/
+   public AuctionWrapper getLatest(int id);
+
+   /**
+    **   Adds an auction, whose ID has been set. The auction must not be
+    **   changed once it has been added.
+    **
+    **   @param auction The auction.
+    **/
+   public void add(AuctionWrapper auction);
+
+   /**
+    **   Removes an auction.
+    **
+    **   @param id The ID of the auction.
+    **   @return The auction as it was, or `null` if there was none.
+    **/
+   public AuctionWrapper remove(int id);
+
+   /**
+    **   Sets a new highest bid on an auction.
+    **
+    **   @param id The ID of the auction.
+    **   @param bidder The user bidding.
+    **   @param price The bid.
+    **   @return Whether there was such an auction.
+    **/
+   public boolean bid(int id, UserWrapper bidder, float price);
+
+   /**
+    **   Adds a user.
+    **
+    **   @param user The user.
+    **/
+   public void addUser(UserWrapper user);
+
+   /**
+    **   Makes the changes since the last call visible to readers. Changes
+    **   to existing auctions may become visible sooner; new auctions may
+    **   not.
+    **/
+   public void publish();
+
+   /**
+    **   Gets an auction by ID.
+    **
+    **   @param id The auction ID.
+    **   @return The auction, or `null`.
+    **/
+   public AuctionWrapper get(int id);
+
+   /**
+    **   Gets all the auctions, in order of ID. The list must not be
+    **   changed.
+    **
+    **   @return The auctions.
+    **/
+   public ArrayList<AuctionWrapper> getAll();
+
+   /**
+    **   Gets a page of the auctions, in order of ID.
+    **
+    **   @param afterId The ID to start after.
+    **   @param limit The most auctions to return.
+    **   @return The auctions with IDs above `afterId`, lowest first.
+    **/
+   public ArrayList<AuctionWrapper> getAfter(int afterId, int limit);
+
+   /**
+    **   Gets the auctions whose current price lies in the given range.
+    **
+    **   @param min The lowest price, inclusive.
+    **   @param max The highest price, inclusive.
+    **   @return The auctions, cheapest first.
+    **/
+   public ArrayList<AuctionWrapper> getByPrice(float min, float max);
+
+   /**
+    **   Gets the auctions whose reserve price has not yet been met.
+    **
+    **   @return The auctions, closest to the reserve first.
+    **/
+   public ArrayList<AuctionWrapper> getBelowReserve();
+
+   /**
+    **   Gets the auctions ending in the given window.
+    **
+    **   @param from The start of the window, inclusive.
+    **   @param to The end of the window, inclusive.
+    **   @return The auctions, soonest first.
+    **/
+   public ArrayList<AuctionWrapper> getEndingBetween(long from, long to);
+
+   /**
+    **   Gets the auctions owned by a user.
+    **
+    **   @param username The user's username.
+    **   @return The auctions.
+    **/
+   public ArrayList<AuctionWrapper> getOwnedBy(String username);
+
+   /**
+    **   Gets the auctions a user is the highest bidder on.
+    **
+    **   @param username The user's username.
+    **   @return The auctions.
+    **/
+   public ArrayList<AuctionWrapper> getLedBy(String username);
+
+   /**
+    **   Gets the number of auctions.
+    **
+    **   @return The count.
+    **/
+   public int getAuctionCount();
+
+   /**
+    **   Gets the number of users.
+    **
+    **   @return The count.
+    **/
+   public int getUserCount();
+
+   /**
+    **   Gets the users, in the order they were added. The list must not
+    **   be changed.
+    **
+    **   @return The users.
+    **/
+   public ArrayList<UserWrapper> getUsers();
+
+   /**
+    **   Frees anything held outside the heap. Only called once the
+    **   engine has stopped.
+    **/
+   public void close();
+}
@@ -0,0 +1,366 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class represents one immutable version of a store's auctions and
+ ** users, with the indexes over those auctions. A change makes a new
+ ** version that shares everything it did not touch with the last, so a
+ ** reader holding a version sees it whole, indexes included, for as long
+ ** as it likes without taking a lock.
+ **/
+
+import java.util.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public final class StoreSnapshot {
+   /**
+    **   The empty store every store starts from.
+    **/
+   public static final StoreSnapshot EMPTY = new StoreSnapshot(0, null, null, AuctionIndex.EMPTY, UserIndex.EMPTY);
+
+   private final long version;
+   // The auctions, in an AVL tree keyed by ID. Every change copies only
+   // the path from the root to the node changed.
+   private final Node auctions;
+   // The users, newest first, as a list sharing its tail with every
+   // earlier version.
+   private final Cell users;
+   // The indexes over exactly the auctions in this version.
+   private final AuctionIndex index;
+   private final UserIndex userIndex;
+   // Each version's lists are built at most once, on first read.
+   private volatile ArrayList<AuctionWrapper> auctionList;
+   private volatile ArrayList<UserWrapper> userList;
+
+   /*
+    *    Constructor Method.
+    */
+   private StoreSnapshot(long version, Node auctions, Cell users, AuctionIndex index, UserIndex userIndex) {
+      this.version = version;
+      this.auctions = auctions;
+      this.users = users;
+      this.index = index;
+      this.userIndex = userIndex;
+   }
+
+   /**
+    **   Makes the version after this one with an auction added, or
+    **   replaced if one with the same ID is already held. The auction
+    **   must not be changed once it has been added.
+    **
+    **   @param auction The auction.
+    **   @return The new version.
+    **/
+   public StoreSnapshot withAuction(AuctionWrapper auction) {
+      AuctionWrapper old = this.getAuction(auction.getID());
+      AuctionIndex newIndex = (old == null) ? index : index.without(old);
+      UserIndex newUserIndex = (old == null) ? userIndex : userIndex.without(old);
+      return new StoreSnapshot(version + 1, put(auctions, auction.getID(), auction), users, newIndex.with(auction), newUserIndex.with(auction));
+   }
+
+   /**
+    **   Makes the version after this one with an auction removed.
+    **
+    **   @param id The ID of the auction.
+    **   @return The new version.
+    **/
+   public StoreSnapshot withoutAuction(int id) {
+      AuctionWrapper old = this.getAuction(id);
+      if (old == null) return new StoreSnapshot(version + 1, auctions, users, index, userIndex);
+      return new StoreSnapshot(version + 1, remove(auctions, id), users, index.without(old), userIndex.without(old));
+   }
+
+   /**
+    **   Makes the version after this one with a user added.
+    **
+    **   @param user The user.
+    **   @return The new version.
+    **/
+   public StoreSnapshot withUser(UserWrapper user) {
+      return new StoreSnapshot(version + 1, auctions, new Cell(user, users), index, userIndex);
+   }
+
+   /**
+    **   Accessor Method. Gets the version number, which goes up by one
+    **   with every change.
+    **
+    **   @return The version.
+    **/
+   public long getVersion() {
+      return this.version;
+   }
+
+   /**
+    **   Accessor Method. Gets the price, reserve and end-time indexes over
+    **   this version's auctions.
+    **
+    **   @return The indexes.
+    **/
+   public AuctionIndex getIndex() {
+      return this.index;
+   }
+
+   /**
+    **   Accessor Method. Gets the per-user indexes over this version's
+    **   auctions.
+    **
+    **   @return The indexes.
+    **/
+   public UserIndex getUserIndex() {
+      return this.userIndex;
+   }
+
+   /**
+    **   Gets an auction by ID.
+    **
+    **   @param id The auction ID.
+    **   @return The auction, or `null`.
+    **/
+   public AuctionWrapper getAuction(int id) {
+      Node node = auctions;
+      while (node != null) {
+         if (id < node.id) {
+            node = node.left;
+         } else if (id > node.id) {
+            node = node.right;
+         } else {
+            return node.auction;
+         }
+      }
+      return null;
+   }
+
+   /**
+    **   Accessor Method. Gets the highest auction ID held.
+    **
+    **   @return The ID, or 0 if there are no auctions.
+    **/
+   public int getLastID() {
+      Node node = auctions;
+      if (node == null) return 0;
+      while (node.right != null) {
+         node = node.right;
+      }
+      return node.id;
+   }
+
+   /**
+    **   Accessor Method. Gets the number of auctions.
+    **
+    **   @return The count.
+    **/
+   public int getAuctionCount() {
+      return size(auctions);
+   }
+
+   /**
+    **   Accessor Method. Gets the number of users.
+    **
+    **   @return The count.
+    **/
+   public int getUserCount() {
+      return (users == null) ? 0 : users.size;
+   }
+
+   /**
+    **   Accessor Method. Gets the auctions, in order of ID. The list is
+    **   shared by every reader of this version, so must not be changed.
+    **
+    **   @return The list of auctions.
+    **/
+   public ArrayList<AuctionWrapper> getAuctions() {
+      ArrayList<AuctionWrapper> list = auctionList;
+      if (list == null) {
+         list = new ArrayList<AuctionWrapper>(size(auctions));
+         addAll(auctions, list);
+         auctionList = list;
+      }
+      return list;
+   }
+
+   /**
+    **   Gets a page of the auctions, in order of ID.
+    **
+    **   @param afterId The ID to start after.
+    **   @param limit The most auctions to return.
+    **   @return The auctions with IDs above `afterId`, lowest first.
+    **/
+   public ArrayList<AuctionWrapper> getAuctionsAfter(int afterId, int limit) {
+      ArrayList<AuctionWrapper> list = new ArrayList<AuctionWrapper>(Math.max(0, Math.min(limit, size(auctions))));
+      addAfter(auctions, afterId, limit, list);
+      return list;
+   }
+
+   /**
+    **   Accessor Method. Gets the users, in the order they were created.
+    **   The list is shared by every reader of this version, so must not
+    **   be changed.
+    **
+    **   @return The list of users.
+    **/
+   public ArrayList<UserWrapper> getUsers() {
+      ArrayList<UserWrapper> list = userList;
+      if (list == null) {
+         list = new ArrayList<UserWrapper>(getUserCount());
+         for (Cell cell = users; cell != null; cell = cell.next) {
+            list.add(cell.user);
+         }
+         Collections.reverse(list);
+         userList = list;
+      }
+      return list;
+   }
+
+   /*
+    *    Adds the auctions under a node to a list, in order of ID.
+    */
+   private static void addAll(Node node, ArrayList<AuctionWrapper> list) {
+      while (node != null) {
+         addAll(node.left, list);
+         list.add(node.auction);
+         node = node.right;
+      }
+   }
+
+   /*
+    *    Adds the auctions under a node with IDs above the given one to a
+    *    list, in order of ID, until it is full.
+    */
+   private static void addAfter(Node node, int afterId, int limit, ArrayList<AuctionWrapper> list) {
+      while (node != null && list.size() < limit) {
+         if (node.id <= afterId) {
+            node = node.right;
+            continue;
+         }
+         addAfter(node.left, afterId, limit, list);
+         if (list.size() < limit) list.add(node.auction);
+         node = node.right;
+      }
+   }
+
+   /*
+    *    Returns a copy of the tree under a node with an auction put in.
+    */
+   private static Node put(Node node, int id, AuctionWrapper auction) {
+      if (node == null) return new Node(id, auction, null, null);
+      if (id < node.id) return balance(node.id, node.auction, put(node.left, id, auction), node.right);
+      if (id > node.id) return balance(node.id, node.auction, node.left, put(node.right, id, auction));
+      return new Node(id, auction, node.left, node.right);
+   }
+
+   /*
+    *    Returns a copy of the tree under a node with an auction taken
+    *    out, or the same tree if it was not there.
+    */
+   private static Node remove(Node node, int id) {
+      if (node == null) return null;
+      if (id < node.id) {
+         Node left = remove(node.left, id);
+         return (left == node.left) ? node : balance(node.id, node.auction, left, node.right);
+      }
+      if (id > node.id) {
+         Node right = remove(node.right, id);
+         return (right == node.right) ? node : balance(node.id, node.auction, node.left, right);
+      }
+      if (node.left == null) return node.right;
+      if (node.right == null) return node.left;
+
+      // Replaces the node with the lowest node on its right.
+      Node next = node.right;
+      while (next.left != null) {
+         next = next.left;
+      }
+      return balance(next.id, next.auction, node.left, remove(node.right, next.id));
+   }
+
+   /*
+    *    Makes a node from two subtrees whose heights differ by at most
+    *    two, rotating to bring them back within one.
+    */
+   private static Node balance(int id, AuctionWrapper auction, Node left, Node right) {
+      int lh = height(left);
+      int rh = height(right);
+      if (lh > rh + 1) {
+         if (height(left.left) >= height(left.right)) {
+            return new Node(left.id, left.auction, left.left, new Node(id, auction, left.right, right));
+         }
+         return new Node(left.right.id, left.right.auction,
+               new Node(left.id, left.auction, left.left, left.right.left),
+               new Node(id, auction, left.right.right, right));
+      }
+      if (rh > lh + 1) {
+         if (height(right.right) >= height(right.left)) {
+            return new Node(right.id, right.auction, new Node(id, auction, left, right.left), right.right);
+         }
+         return new Node(right.left.id, right.left.auction,
+               new Node(id, auction, left, right.left.left),
+               new Node(right.id, right.auction, right.left.right, right.right));
+      }
+      return new Node(id, auction, left, right);
+   }
+
+   private static int height(Node node) {
+      return (node == null) ? 0 : node.height;
+   }
+
+   private static int size(Node node) {
+      return (node == null) ? 0 : node.size;
+   }
+
+   /*
+    *    A node of the auction tree. Nodes are never changed once made.
+    */
+   private static final class Node {
+      final int id;
+      final AuctionWrapper auction;
+      final Node left, right;
+      final int height;
+      final int size;
+
+      Node(int id, AuctionWrapper auction, Node left, Node right) {
+         this.id = id;
+         this.auction = auction;
+         this.left = left;
+         this.right = right;
+         this.height = Math.max(height(left), height(right)) + 1;
+         this.size = size(left) + size(right) + 1;
+      }
+   }
+
+   /*
+    *    A cell of the user list.
+    */
+   private static final class Cell {
+      final UserWrapper user;
+      final Cell next;
+      final int size;
+
+      Cell(UserWrapper user, Cell next) {
+         this.user = user;
+         this.next = next;
+         this.size = (next == null) ? 1 : next.size + 1;
+      }
+   }
+}
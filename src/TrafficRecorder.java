@@ -0,0 +1,211 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class records the calls made on a front end to a capture file,
+ ** so that real traffic can later be replayed with `TrafficReplayer`.
+ **/
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class TrafficRecorder implements Runnable {
+   // A capture file starts with `MAGIC` and the wall-clock time capture
+   // began, in milliseconds. Each call follows as the microseconds since
+   // the previous one, as a zigzag varint, then the call as a `WireFormat`
+   // request frame whose request ID is the calling thread's ID. Calls on
+   // the same thread came in on the same client connection, so replaying
+   // them in order keeps each client's calls in sequence.
+   public static final int MAGIC = 0x41504331;
+   private static final int QUEUE_SIZE = Integer.getInteger("auctionprog.capture.queue", 65536);
+   private static final Map<String, Method> METHODS = new HashMap<String, Method>();
+   static {
+      for(Method method: WireFormat.OPERATIONS) {
+         METHODS.put(method.getName(), method);
+      }
+   }
+
+   private DataOutputStream out;
+   private long start;
+   private long last;
+   private ArrayBlockingQueue<Call> queue;
+   private LongAdder dropped;
+   private Thread writer;
+   private volatile boolean running;
+
+   /**
+    **   Constructor Method. Opens the capture file and starts the thread
+    **   that writes to it.
+    **
+    **   @param file The capture file to create.
+    **/
+   public TrafficRecorder(File file) throws IOException {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+      start = System.nanoTime();
+      out.writeInt(MAGIC);
+      out.writeLong(System.currentTimeMillis());
+      queue = new ArrayBlockingQueue<Call>(QUEUE_SIZE);
+      dropped = new LongAdder();
+      running = true;
+
+      writer = new Thread(this, "TrafficRecorder");
+      writer.setDaemon(true);
+      writer.start();
+      Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
+   }
+
+   /**
+    **   Opens a recorder if capture has been turned on by naming a file
+    **   prefix in `auctionprog.capture`. Front end N writes to
+    **   `<prefix>-N.cap`.
+    **
+    **   @param frontEnd The index of the front end.
+    **   @return The recorder, or `null` if capture is off.
+    **/
+   public static TrafficRecorder open(int frontEnd) {
+      String prefix = System.getProperty("auctionprog.capture");
+      if (prefix == null) return null;
+      try {
+         File file = new File(prefix+"-"+frontEnd+".cap");
+         Log.info("Capturing traffic to {}", file);
+         return new TrafficRecorder(file);
+      } catch (IOException e) {
+         Log.error(e);
+         return null;
+      }
+   }
+
+   /**
+    **   Records a call. The arguments are encoded on the calling thread,
+    **   as some are mutable, but written out on another. If the writer
+    **   falls a whole queue behind the call is dropped rather than
+    **   holding up the caller.
+    **
+    **   @param name The name of the `Auction` method called.
+    **   @param args The arguments it was called with.
+    **/
+   public void record(String name, Object... args) {
+      long time = (System.nanoTime() - start) / 1000;
+      try {
+         byte[] frame = WireFormat.encodeRequest((int)Thread.currentThread().getId(), METHODS.get(name), args);
+         if (!running || !queue.offer(new Call(time, frame))) {
+            dropped.increment();
+         }
+      } catch (IOException e) {
+         dropped.increment();
+      }
+   }
+
+   /**
+    **   Accessor Method. Gets the number of calls not recorded.
+    **   @return The number dropped.
+    **/
+   public long getDropped() {
+      return dropped.sum();
+   }
+
+   /**
+    **   Writes queued calls until stopped.
+    **/
+   public void run() {
+      try {
+         while (running || !queue.isEmpty()) {
+            Call call = queue.poll(100, TimeUnit.MILLISECONDS);
+            if (call == null) {
+               out.flush();
+               continue;
+            }
+            writeVarLong(out, call.time - last);
+            last = call.time;
+            out.write(call.frame);
+         }
+         out.close();
+      } catch (Exception e) {
+         Log.error(e);
+      }
+   }
+
+   /**
+    **   Stops recording, writing out any calls still queued.
+    **/
+   public void stop() {
+      if (!running) return;
+      running = false;
+      try {
+         writer.join(5000);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      if (dropped.sum() > 0) Log.warn("{} calls were not captured.", dropped.sum());
+   }
+
+   /**
+    **   Writes a signed value as a zigzag varint.
+    **
+    **   @param out The stream to write to.
+    **   @param value The value.
+    **/
+   public static void writeVarLong(DataOutput out, long value) throws IOException {
+      long zigzag = (value << 1) ^ (value >> 63);
+      while ((zigzag & ~0x7FL) != 0) {
+         out.writeByte((int)((zigzag & 0x7F) | 0x80));
+         zigzag >>>= 7;
+      }
+      out.writeByte((int)zigzag);
+   }
+
+   /**
+    **   Reads a signed value written as a zigzag varint.
+    **
+    **   @param in The stream to read from.
+    **   @return The value.
+    **/
+   public static long readVarLong(DataInput in) throws IOException {
+      long zigzag = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+         byte b = in.readByte();
+         zigzag |= (long)(b & 0x7F) << shift;
+         if ((b & 0x80) == 0) break;
+      }
+      return (zigzag >>> 1) ^ -(zigzag & 1);
+   }
+
+   /*
+    *    A call waiting to be written.
+    */
+   private static class Call {
+      final long time;
+      final byte[] frame;
+
+      Call(long time, byte[] frame) {
+         this.time = time;
+         this.frame = frame;
+      }
+   }
+}
@@ -0,0 +1,227 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class replays capture files written by `TrafficRecorder` against
+ ** a running server, at up to a hundred times the recorded speed.
+ **/
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class TrafficReplayer {
+   private static final int LANES = Integer.getInteger("auctionprog.replay.lanes", 64);
+
+   private Auction a;
+   private double speed;
+   private ExecutorService[] lanes;
+   private Map<String, LatencyHistogram> latencies;
+   private Map<String, LongAdder> errors;
+   private LatencyHistogram lag;
+
+   /**
+    **   Constructor Method.
+    **
+    **   @param a The server stub to replay against.
+    **   @param speed How many times faster than recorded to replay, from
+    **   1 to 100.
+    **/
+   public TrafficReplayer(Auction a, double speed) {
+      if (speed < 1 || speed > 100) throw new IllegalArgumentException("Speed must be from 1 to 100");
+      this.a = a;
+      this.speed = speed;
+      latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+      errors = new ConcurrentHashMap<String, LongAdder>();
+      lag = new LatencyHistogram();
+      lanes = new ExecutorService[LANES];
+      for (int i = 0; i < LANES; i++) {
+         lanes[i] = Executors.newSingleThreadExecutor();
+      }
+   }
+
+   /**
+    **   Replays capture files against the server named the same way as
+    **   for the client: over the binary protocol if `auctionprog.nio`
+    **   gives a `host:port`, otherwise over RMI.
+    **
+    **   @param args The speed, then one or more capture files.
+    **/
+   public static void main(String[] args) {
+      if (args.length < 2) {
+         System.out.println("Usage: TrafficReplayer <speed> <capture file>...");
+         return;
+      }
+      try {
+         Auction a;
+         String nio = System.getProperty("auctionprog.nio");
+         if (nio != null) {
+            a = NioClient.connect(nio.substring(0, nio.lastIndexOf(':')), Integer.parseInt(nio.substring(nio.lastIndexOf(':') + 1)));
+         } else {
+            a = LoadBalancer.connect("rmi://localhost/");
+         }
+
+         ArrayList<File> files = new ArrayList<File>();
+         for (int i = 1; i < args.length; i++) {
+            files.add(new File(args[i]));
+         }
+         new TrafficReplayer(a, Double.parseDouble(args[0])).replay(files);
+      } catch (Exception e) {
+         System.out.println(e);
+      }
+      System.exit(0);
+   }
+
+   /**
+    **   Replays the calls in the files in the order they were recorded,
+    **   each when it falls due, and prints a report.
+    **
+    **   @param files The capture files, one per front end.
+    **/
+   public void replay(List<File> files) throws IOException, InterruptedException {
+      // Merges the files by the time of each call.
+      PriorityQueue<Capture> captures = new PriorityQueue<Capture>((x, y) -> Long.compare(x.time, y.time));
+      for(File file: files) {
+         Capture capture = new Capture(file);
+         if (capture.next()) captures.add(capture);
+      }
+      if (captures.isEmpty()) return;
+
+      long first = captures.peek().time;
+      long begin = System.nanoTime();
+      long count = 0;
+      System.out.println("Replaying at "+speed+"x...");
+
+      while (!captures.isEmpty()) {
+         Capture capture = captures.poll();
+         long due = begin + (long)((capture.time - first) * 1000 / speed);
+         long wait;
+         while ((wait = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+         }
+         lag.record((System.nanoTime() - due) / 1000);
+
+         byte[] frame = capture.frame;
+         lanes[Math.floorMod(capture.stream, LANES)].execute(() -> this.invoke(frame, due));
+         count++;
+         if (capture.next()) captures.add(capture);
+      }
+      for(ExecutorService lane: lanes) {
+         lane.shutdown();
+      }
+      for(ExecutorService lane: lanes) {
+         lane.awaitTermination(1, TimeUnit.HOURS);
+      }
+
+      this.report(count, (System.nanoTime() - begin) / 1e9);
+   }
+
+   /*
+    *    Decodes and makes a call, timing it from when it fell due.
+    */
+   private void invoke(byte[] frame, long due) {
+      String name = "?";
+      try {
+         DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+         in.readInt();
+         Method method = WireFormat.OPERATIONS.get(in.readUnsignedShort());
+         name = method.getName();
+         Object[] args = WireFormat.readArgs(in, method);
+         // A replayed change is a new request, not a retry of the one
+         // captured.
+         if (RequestIds.isCarriedBy(method)) {
+            args[0] = RequestIds.next();
+            args[1] = System.currentTimeMillis();
+         }
+         method.invoke(a, args);
+         latencies.computeIfAbsent(name, k -> new LatencyHistogram()).record((System.nanoTime() - due) / 1000);
+      } catch (IOException | IllegalAccessException | InvocationTargetException e) {
+         errors.computeIfAbsent(name, k -> new LongAdder()).increment();
+      }
+   }
+
+   /*
+    *    Prints the latency percentiles of each method replayed.
+    */
+   private void report(long count, double seconds) {
+      System.out.println();
+      System.out.println(count+" calls in "+String.format("%.1f", seconds)+"s ("+String.format("%.1f", count / seconds)+" calls/s)");
+      System.out.println(String.format("%-26s%10s%10s%10s%10s%8s", "Method", "Count", "p50", "p99", "Max", "Errors"));
+      for (int i = 0; i < 74; i++) System.out.print("-");
+      System.out.println();
+      TreeSet<String> names = new TreeSet<String>(latencies.keySet());
+      names.addAll(errors.keySet());
+      for(String name: names) {
+         LatencyHistogram histogram = latencies.getOrDefault(name, new LatencyHistogram());
+         LongAdder failed = errors.getOrDefault(name, new LongAdder());
+         System.out.println(String.format("%-26s%10d%10d%10d%10d%8d", name, histogram.getCount(), histogram.getPercentile(50),
+               histogram.getPercentile(99), histogram.getMax(), failed.sum()));
+      }
+      System.out.println("Latencies in microseconds, measured from when each call fell due.");
+      System.out.println("Dispatch lag: p99 "+lag.getPercentile(99)+", max "+lag.getMax()+" microseconds.");
+   }
+
+   /*
+    *    A capture file being read, positioned at its next call.
+    */
+   private static class Capture {
+      private DataInputStream in;
+      private long elapsed;
+      private long started;
+      long time;
+      int stream;
+      byte[] frame;
+
+      Capture(File file) throws IOException {
+         in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+         if (in.readInt() != TrafficRecorder.MAGIC) throw new IOException(file+" is not a capture file");
+         started = in.readLong() * 1000;
+      }
+
+      /*
+       *    Reads the next call, returning `false` at the end of the file.
+       */
+      boolean next() throws IOException {
+         try {
+            elapsed += TrafficRecorder.readVarLong(in);
+            int length = in.readInt();
+            if (length < 0 || length > WireFormat.MAX_FRAME) throw new IOException("Bad frame length "+length);
+            frame = new byte[length];
+            in.readFully(frame);
+            stream = ((frame[0] & 0xFF) << 24) | ((frame[1] & 0xFF) << 16) | ((frame[2] & 0xFF) << 8) | (frame[3] & 0xFF);
+            time = started + elapsed;
+            return true;
+         } catch (EOFException e) {
+            in.close();
+            return false;
+         }
+      }
+   }
+}
@@ -0,0 +1,144 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class represents the per-user indexes over a set of auctions. An
+ ** index is never changed once made; each change makes a new one sharing
+ ** the rest, so it can be published with the snapshot it indexes. Each
+ ** index holds a user only while they have an auction in it.
+ **/
+
+import java.util.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public final class UserIndex {
+   /**
+    **   The indexes over no auctions.
+    **/
+   public static final UserIndex EMPTY = new UserIndex(SortedTree.<Entry, Integer>empty(), SortedTree.<Entry, Integer>empty());
+
+   // Keyed by username and then auction ID, so a user's auctions are a
+   // run of neighbouring keys.
+   private final SortedTree<Entry, Integer> owned;
+   private final SortedTree<Entry, Integer> leading;
+
+   /*
+    *    Constructor Method.
+    */
+   private UserIndex(SortedTree<Entry, Integer> owned, SortedTree<Entry, Integer> leading) {
+      this.owned = owned;
+      this.leading = leading;
+   }
+
+   /**
+    **   Makes the indexes with an auction recorded against its owner and
+    **   highest bidder.
+    **
+    **   @param auction The auction.
+    **   @return The new indexes.
+    **/
+   public UserIndex with(AuctionWrapper auction) {
+      return new UserIndex(add(owned, auction.getOwner(), auction.getID()), add(leading, auction.getHighestBidder(), auction.getID()));
+   }
+
+   /**
+    **   Makes the indexes with an auction dropped from its owner and
+    **   highest bidder.
+    **
+    **   @param auction The auction.
+    **   @return The new indexes.
+    **/
+   public UserIndex without(AuctionWrapper auction) {
+      return new UserIndex(remove(owned, auction.getOwner(), auction.getID()), remove(leading, auction.getHighestBidder(), auction.getID()));
+   }
+
+   /**
+    **   Accessor Method. Gets the IDs of the auctions a user owns.
+    **
+    **   @param username The user's username.
+    **   @return The auction IDs, lowest first.
+    **/
+   public List<Integer> getOwned(String username) {
+      return get(owned, username);
+   }
+
+   /**
+    **   Accessor Method. Gets the IDs of the auctions a user is the
+    **   highest bidder on.
+    **
+    **   @param username The user's username.
+    **   @return The auction IDs, lowest first.
+    **/
+   public List<Integer> getLeading(String username) {
+      return get(leading, username);
+   }
+
+   /*
+    *    Adds an auction ID to a user's entries in the given index.
+    */
+   private static SortedTree<Entry, Integer> add(SortedTree<Entry, Integer> index, UserWrapper user, int id) {
+      return (user == null) ? index : index.with(new Entry(user.getUsername(), id), id);
+   }
+
+   /*
+    *    Removes an auction ID from a user's entries in the given index.
+    */
+   private static SortedTree<Entry, Integer> remove(SortedTree<Entry, Integer> index, UserWrapper user, int id) {
+      return (user == null) ? index : index.without(new Entry(user.getUsername(), id));
+   }
+
+   /*
+    *    Gets a user's entries in the given index.
+    */
+   private static List<Integer> get(SortedTree<Entry, Integer> index, String username) {
+      return index.getBetween(new Entry(username, Integer.MIN_VALUE), new Entry(username, Integer.MAX_VALUE));
+   }
+
+   /*
+    *    An index key: a username and one of their auction IDs.
+    */
+   private static final class Entry implements Comparable<Entry> {
+      private final String username;
+      private final int id;
+
+      Entry(String username, int id) {
+         this.username = username;
+         this.id = id;
+      }
+
+      public int compareTo(Entry other) {
+         int cmp = this.username.compareTo(other.username);
+         return (cmp != 0) ? cmp : Integer.compare(this.id, other.id);
+      }
+
+      public boolean equals(Object o) {
+         return (o instanceof Entry) && compareTo((Entry)o) == 0;
+      }
+
+      public int hashCode() {
+         return 31 * username.hashCode() + id;
+      }
+   }
+}
@@ -0,0 +1,408 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class represents the binary encoding used by the NIO endpoint.
+ **/
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.Remote;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class WireFormat {
+   // Every frame is a four-byte length followed by that many bytes. A
+   // request is then a request ID, an opcode and the arguments; a response
+   // is the request ID, an outcome, the return value and the status left
+   // by the call.
+   public static final int MAX_FRAME = 16 * 1024 * 1024;
+   public static final byte OK = 0;
+   public static final byte ERROR = 1;
+   // How deeply values may nest inside lists, keys and serialised
+   // values. The `Auction` calls nest no more than two deep, and a frame
+   // nesting deeper would otherwise recurse until the stack runs out.
+   private static final int MAX_DEPTH = 8;
+
+   // The opcode of a method is its position in this list, so both ends
+   // must be built from the same `Auction` interface. The interface has no
+   // overloads, so sorting by name gives a stable order.
+   public static final List<Method> OPERATIONS;
+   static {
+      ArrayList<Method> methods = new ArrayList<Method>(Arrays.asList(Auction.class.getMethods()));
+      Collections.sort(methods, (x, y) -> x.getName().compareTo(y.getName()));
+      OPERATIONS = Collections.unmodifiableList(methods);
+   }
+
+   private static final byte NULL = 0;
+   private static final byte BOOLEAN = 1;
+   private static final byte INT = 2;
+   private static final byte LONG = 3;
+   private static final byte FLOAT = 4;
+   private static final byte STRING = 5;
+   private static final byte BYTES = 6;
+   private static final byte USER = 7;
+   private static final byte AUCTION = 8;
+   private static final byte LIST = 9;
+   private static final byte PUBLIC_KEY = 10;
+   private static final byte SERIALIZED = 11;
+   private static final byte BID = 12;
+   private static final byte OVERLOADED = 13;
+   private static final byte REMOTE = 14;
+
+   // The classes a serialised value may be built from: the application's
+   // own values and the boxed primitives, strings, arrays and collections
+   // inside them. Frames come from anyone who can reach a socket, so
+   // anything else is refused before it is constructed.
+   private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+         "maxdepth=20;maxrefs=100000;maxarray="+MAX_FRAME+";"
+         +"AuctionWrapper;UserWrapper;BidWrapper;FacetCounts;HotAuctionWrapper;"
+         +"java.lang.String;java.lang.Number;java.lang.Boolean;java.lang.Integer;java.lang.Long;java.lang.Float;java.lang.Double;"
+         +"java.util.ArrayList;java.util.HashMap;java.util.TreeMap;java.util.HashSet;java.util.TreeSet;!*");
+
+   // The classes an RMI stub, such as a client's `AuctionListener`, may
+   // be built from: a proxy for remote interfaces and the reference
+   // inside it, which holds no objects of its own.
+   private static final Set<String> STUB_CLASSES = new HashSet<String>(Arrays.asList("java.lang.reflect.Proxy",
+         "java.rmi.server.RemoteObject", "java.rmi.server.RemoteObjectInvocationHandler",
+         "sun.rmi.server.UnicastRef", "sun.rmi.server.UnicastRef2"));
+   private static final ObjectInputFilter STUB_FILTER = info -> {
+      if (info.depth() > 5 || info.references() > 100) return ObjectInputFilter.Status.REJECTED;
+      Class<?> type = info.serialClass();
+      if (type == null) return ObjectInputFilter.Status.UNDECIDED;
+      if (type.isInterface() ? Remote.class.isAssignableFrom(type) : Proxy.isProxyClass(type) || STUB_CLASSES.contains(type.getName())) {
+         return ObjectInputFilter.Status.ALLOWED;
+      }
+      return ObjectInputFilter.Status.REJECTED;
+   };
+
+   /**
+    **   Gets the opcode of an `Auction` method.
+    **
+    **   @param method The method.
+    **   @return The opcode.
+    **/
+   public static int opcode(Method method) {
+      return OPERATIONS.indexOf(method);
+   }
+
+   /**
+    **   Encodes a request frame.
+    **
+    **   @param requestId The caller's ID for the request.
+    **   @param method The method to invoke.
+    **   @param args The arguments to pass.
+    **   @return The frame, including its length prefix.
+    **/
+   public static byte[] encodeRequest(int requestId, Method method, Object[] args) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(0);
+      out.writeInt(requestId);
+      out.writeShort(opcode(method));
+      if (args != null) {
+         for(Object arg: args) {
+            writeValue(out, arg);
+         }
+      }
+      return frame(bytes);
+   }
+
+   /**
+    **   Encodes a response frame.
+    **
+    **   @param requestId The ID of the request being answered.
+    **   @param outcome Either `OK` or `ERROR`.
+    **   @param value The return value, or the error message.
+    **   @param status The status left by the call.
+    **   @return The frame, including its length prefix.
+    **/
+   public static byte[] encodeResponse(int requestId, byte outcome, Object value, String status) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(0);
+      out.writeInt(requestId);
+      out.writeByte(outcome);
+      writeValue(out, value);
+      writeValue(out, status);
+      return frame(bytes);
+   }
+
+   /**
+    **   Decodes the arguments of a request, after its request ID and
+    **   opcode have been read.
+    **
+    **   @param in The frame body.
+    **   @param method The method being invoked.
+    **   @return The arguments.
+    **/
+   public static Object[] readArgs(DataInput in, Method method) throws IOException {
+      Object[] args = new Object[method.getParameterCount()];
+      for (int i = 0; i < args.length; i++) {
+         args[i] = readValue(in);
+      }
+      return args;
+   }
+
+   /*
+    *    Fills in the length prefix of a frame.
+    */
+   private static byte[] frame(ByteArrayOutputStream bytes) {
+      byte[] frame = bytes.toByteArray();
+      int length = frame.length - 4;
+      frame[0] = (byte)(length >>> 24);
+      frame[1] = (byte)(length >>> 16);
+      frame[2] = (byte)(length >>> 8);
+      frame[3] = (byte)length;
+      return frame;
+   }
+
+   /**
+    **   Writes a tagged value.
+    **
+    **   @param out The stream to write to.
+    **   @param value The value to write.
+    **/
+   public static void writeValue(DataOutput out, Object value) throws IOException {
+      if (value == null) {
+         out.writeByte(NULL);
+      } else if (value instanceof Boolean) {
+         out.writeByte(BOOLEAN);
+         out.writeBoolean((Boolean)value);
+      } else if (value instanceof Integer) {
+         out.writeByte(INT);
+         out.writeInt((Integer)value);
+      } else if (value instanceof Long) {
+         out.writeByte(LONG);
+         out.writeLong((Long)value);
+      } else if (value instanceof Float) {
+         out.writeByte(FLOAT);
+         out.writeFloat((Float)value);
+      } else if (value instanceof String) {
+         out.writeByte(STRING);
+         out.writeUTF((String)value);
+      } else if (value instanceof byte[]) {
+         out.writeByte(BYTES);
+         out.writeInt(((byte[])value).length);
+         out.write((byte[])value);
+      } else if (value instanceof UserWrapper) {
+         out.writeByte(USER);
+         writeUser(out, (UserWrapper)value);
+      } else if (value instanceof AuctionWrapper) {
+         out.writeByte(AUCTION);
+         writeAuction(out, (AuctionWrapper)value);
+      } else if (value instanceof BidWrapper) {
+         out.writeByte(BID);
+         out.writeLong(((BidWrapper)value).getTime());
+         writeUser(out, ((BidWrapper)value).getBidder());
+         out.writeFloat(((BidWrapper)value).getPrice());
+      } else if (value instanceof List) {
+         out.writeByte(LIST);
+         out.writeInt(((List<?>)value).size());
+         for(Object element: (List<?>)value) {
+            writeValue(out, element);
+         }
+      } else if (value instanceof PublicKey) {
+         out.writeByte(PUBLIC_KEY);
+         out.writeUTF(((PublicKey)value).getAlgorithm());
+         writeValue(out, ((PublicKey)value).getEncoded());
+      } else if (value instanceof OverloadedException) {
+         out.writeByte(OVERLOADED);
+         out.writeUTF(String.valueOf(((OverloadedException)value).getReason()));
+         out.writeLong(((OverloadedException)value).getRetryAfter());
+      } else if (value instanceof Remote) {
+         // Only a stub can be sent; an exported object itself would be
+         // rebuilt at the far end as a copy of its own.
+         out.writeByte(REMOTE);
+         writeValue(out, serialize(value));
+      } else {
+         // Anything else falls back to Java serialisation.
+         out.writeByte(SERIALIZED);
+         writeValue(out, serialize(value));
+      }
+   }
+
+   /**
+    **   Reads a tagged value.
+    **
+    **   @param in The stream to read from.
+    **   @return The value read.
+    **/
+   public static Object readValue(DataInput in) throws IOException {
+      return readValue(in, 0);
+   }
+
+   /*
+    *    Reads a tagged value nested inside `depth` others.
+    */
+   private static Object readValue(DataInput in, int depth) throws IOException {
+      if (depth > MAX_DEPTH) throw new IOException("Values nested more than "+MAX_DEPTH+" deep");
+      byte tag = in.readByte();
+      switch(tag) {
+      case NULL:
+         return null;
+      case BOOLEAN:
+         return in.readBoolean();
+      case INT:
+         return in.readInt();
+      case LONG:
+         return in.readLong();
+      case FLOAT:
+         return in.readFloat();
+      case STRING:
+         return in.readUTF();
+      case BYTES:
+         int length = in.readInt();
+         if (length < 0 || length > MAX_FRAME) throw new IOException("Bad length "+length);
+         byte[] bytes = new byte[length];
+         in.readFully(bytes);
+         return bytes;
+      case USER:
+         return readUser(in);
+      case AUCTION:
+         return readAuction(in);
+      case BID:
+         return new BidWrapper(in.readLong(), readUser(in), in.readFloat());
+      case LIST:
+         int size = in.readInt();
+         if (size < 0 || size > MAX_FRAME) throw new IOException("Bad length "+size);
+         // Each element takes at least a byte, so the list is not sized
+         // past what is left to read, whatever the header claims.
+         ArrayList<Object> list = new ArrayList<Object>(Math.min(size, remaining(in)));
+         for (int i = 0; i < size; i++) {
+            list.add(readValue(in, depth + 1));
+         }
+         return list;
+      case PUBLIC_KEY:
+         try {
+            KeyFactory keyFactory = KeyFactory.getInstance(in.readUTF());
+            return keyFactory.generatePublic(new X509EncodedKeySpec((byte[])readValue(in, depth + 1)));
+         } catch (Exception e) {
+            throw new IOException(e);
+         }
+      case OVERLOADED:
+         return new OverloadedException(in.readUTF(), in.readLong());
+      case REMOTE:
+         Object stub = deserialize(in, depth, STUB_FILTER);
+         if (!(stub instanceof Remote)) throw new InvalidClassException("Not a remote stub");
+         return stub;
+      case SERIALIZED:
+         return deserialize(in, depth, FILTER);
+      default:
+         throw new IOException("Unknown tag "+tag);
+      }
+   }
+
+   /*
+    *    Gets the number of bytes left to read, as far as the stream can
+    *    tell without blocking.
+    */
+   private static int remaining(DataInput in) throws IOException {
+      return (in instanceof InputStream) ? ((InputStream)in).available() : 0;
+   }
+
+   /*
+    *    Serialises a value.
+    */
+   private static byte[] serialize(Object value) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(bytes);
+      oos.writeObject(value);
+      oos.close();
+      return bytes.toByteArray();
+   }
+
+   /*
+    *    Reads a serialised value, building only what the filter allows.
+    */
+   private static Object deserialize(DataInput in, int depth, ObjectInputFilter filter) throws IOException {
+      Object bytes = readValue(in, depth + 1);
+      if (!(bytes instanceof byte[])) throw new IOException("Serialised value without its bytes");
+      try {
+         ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream((byte[])bytes));
+         ois.setObjectInputFilter(filter);
+         return ois.readObject();
+      } catch (ClassNotFoundException e) {
+         throw new IOException(e);
+      }
+   }
+
+   /*
+    *    Writes a user, which may be `null`.
+    */
+   private static void writeUser(DataOutput out, UserWrapper user) throws IOException {
+      out.writeBoolean(user != null);
+      if (user == null) return;
+      out.writeUTF(user.getName());
+      out.writeUTF(user.getEmail());
+      out.writeUTF(user.getUsername());
+   }
+
+   /*
+    *    Reads a user, which may be `null`.
+    */
+   private static UserWrapper readUser(DataInput in) throws IOException {
+      if (!in.readBoolean()) return null;
+      return new UserWrapper(in.readUTF(), in.readUTF(), in.readUTF());
+   }
+
+   /*
+    *    Writes an auction.
+    */
+   private static void writeAuction(DataOutput out, AuctionWrapper auction) throws IOException {
+      out.writeInt(auction.getID());
+      out.writeUTF(auction.getDesc());
+      writeUser(out, auction.getOwner());
+      writeUser(out, auction.getHighestBidder());
+      out.writeFloat(auction.getPrice());
+      out.writeFloat(auction.getReserve());
+      out.writeLong(auction.getEndTime());
+      out.writeUTF(auction.getCategory());
+   }
+
+   /*
+    *    Reads an auction.
+    */
+   private static AuctionWrapper readAuction(DataInput in) throws IOException {
+      int id = in.readInt();
+      String desc = in.readUTF();
+      UserWrapper owner = readUser(in);
+      UserWrapper highestBidder = readUser(in);
+      float price = in.readFloat();
+      float reserve = in.readFloat();
+      long endTime = in.readLong();
+      String category = in.readUTF();
+
+      AuctionWrapper auction = new AuctionWrapper(id, desc, owner, price, reserve, endTime, category);
+      if (highestBidder != null) {
+         auction.setBid(highestBidder, price);
+      }
+      return auction;
+   }
+}
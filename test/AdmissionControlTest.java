@@ -0,0 +1,62 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+/**
+ ** This class tests `AdmissionControl`'s per-caller rate: that a caller is
+ ** turned away once their burst is spent, and that one caller spending
+ ** their burst leaves another's alone.
+ **/
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class AdmissionControlTest {
+   // The default burst.
+   private static final int BURST = 40;
+
+   @Test
+   public void turnsAwayACallerPastTheirBurst() throws OverloadedException {
+      AdmissionControl admission = new AdmissionControl();
+      for (int i = 0; i < BURST; i++) {
+         this.bid(admission, "10.0.0.1");
+      }
+      OverloadedException e = assertThrows(OverloadedException.class, () -> this.bid(admission, "10.0.0.1"));
+      assertTrue(e.getRetryAfter() > 0);
+   }
+
+   @Test
+   public void eachCallerHasTheirOwnRate() throws OverloadedException {
+      AdmissionControl admission = new AdmissionControl();
+      for (int i = 0; i < BURST; i++) {
+         this.bid(admission, "10.0.0.1");
+      }
+      assertThrows(OverloadedException.class, () -> this.bid(admission, "10.0.0.1"));
+      this.bid(admission, "10.0.0.2");
+   }
+
+   private void bid(AdmissionControl admission, String caller) throws OverloadedException {
+      if (admission.admit("bidOnAuction", caller)) admission.release(100);
+   }
+}
@@ -0,0 +1,145 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class tests `AuctionArchive`: that closed auctions and their bids
+ ** read back as they were written, whether still pending or written out,
+ ** and that auctions spread over several blocks are all found again after
+ ** the archive is reopened.
+ **/
+
+import java.io.IOException;
+import java.util.ArrayList;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class AuctionArchiveTest {
+   // Shards of their own, so no other test shares their archives.
+   private static final int SHARD = 40;
+   // Enough auctions to fill two blocks and leave some pending, with
+   // the first and last of each block.
+   private static final int COUNT = 600;
+   private static final int[] SAMPLED = {0, 255, 256, 511, 512, 599};
+   private static final UserWrapper OWNER = new UserWrapper("Owner", "owner@example.com", "owner");
+   private static final UserWrapper BIDDER = new UserWrapper("Bidder", "bidder@example.com", "bidder");
+   private static final UserWrapper WINNER = new UserWrapper("Winner", "winner@example.com", "winner");
+
+   @Test
+   public void auctionsAndBidsRoundTrip() throws IOException {
+      AuctionArchive archive = AuctionArchive.open(SHARD);
+      int id;
+      try {
+         id = archive.getLastID() + 1;
+         BidHistory.Bidders bidders = new BidHistory.Bidders();
+         BidHistory history = new BidHistory();
+         history.add(10L, bidders.numberOf(BIDDER), 3f);
+         history.add(20L, bidders.numberOf(WINNER), 4f);
+         AuctionWrapper sold = new AuctionWrapper(id, "Sold", OWNER, 1f, 2f);
+         sold.setBid(WINNER, 4f);
+         archive.add(sold, history, bidders);
+         archive.add(new AuctionWrapper(id + 1, "Unsold", OWNER, 1f, 2f), null, bidders);
+
+         this.assertArchived(archive, id);
+      } finally {
+         archive.close();
+      }
+
+      AuctionArchive reopened = AuctionArchive.open(SHARD);
+      try {
+         this.assertArchived(reopened, id);
+      } finally {
+         reopened.close();
+      }
+   }
+
+   @Test
+   public void blocksRollOverAndSurviveARestart() throws IOException {
+      BidHistory.Bidders bidders = new BidHistory.Bidders();
+      AuctionArchive archive = AuctionArchive.open(SHARD + 1);
+      int first;
+      int count;
+      try {
+         first = archive.getLastID() + 1;
+         count = archive.getCount();
+         for (int i = 0; i < COUNT; i++) {
+            archive.add(new AuctionWrapper(first + i, "Lot "+i, OWNER, 1f, 2f), null, bidders);
+         }
+         this.assertRolledOver(archive, first, count);
+      } finally {
+         archive.close();
+      }
+
+      AuctionArchive reopened = AuctionArchive.open(SHARD + 1);
+      try {
+         this.assertRolledOver(reopened, first, count);
+      } finally {
+         reopened.close();
+      }
+   }
+
+   /*
+    *    Checks the sold and unsold auctions archived from `id` on, and
+    *    their bids.
+    */
+   private void assertArchived(AuctionArchive archive, int id) throws IOException {
+      AuctionWrapper sold = archive.get(id);
+      assertEquals("Sold", sold.getDesc());
+      assertEquals(4f, sold.getPrice());
+      assertEquals("winner", sold.getHighestBidder().getUsername());
+      assertEquals("Unsold", archive.get(id + 1).getDesc());
+      assertNull(archive.get(id + 2));
+
+      ArrayList<BidWrapper> bids = archive.getBids(id, 0, 10);
+      assertEquals(2, bids.size());
+      assertEquals("bidder", bids.get(0).getBidder().getUsername());
+      assertEquals(10L, bids.get(0).getTime());
+      assertEquals(3f, bids.get(0).getPrice());
+      assertEquals("winner", bids.get(1).getBidder().getUsername());
+      assertEquals(20L, bids.get(1).getTime());
+      assertEquals(4f, bids.get(1).getPrice());
+      assertEquals(1, archive.getBids(id, 1, 10).size());
+      assertTrue(archive.getBids(id + 1, 0, 10).isEmpty());
+      assertNull(archive.getBids(id + 2, 0, 10));
+
+      assertTrue(archive.getWonBy("winner").stream().anyMatch(auction -> auction.getID() == id));
+      assertTrue(archive.getWonBy("bidder").isEmpty());
+      assertEquals(2, archive.getOwnedBy("owner").stream().filter(auction -> auction.getID() >= id).count());
+   }
+
+   /*
+    *    Checks the auctions archived from `first` on, on top of `count`
+    *    archived before them, are all there.
+    */
+   private void assertRolledOver(AuctionArchive archive, int first, int count) throws IOException {
+      assertEquals(count + COUNT, archive.getCount());
+      assertEquals(first + COUNT - 1, archive.getLastID());
+      for(int i: SAMPLED) {
+         assertEquals("Lot "+i, archive.get(first + i).getDesc());
+         assertTrue(archive.getBids(first + i, 0, 10).isEmpty());
+      }
+      assertNull(archive.get(first + COUNT));
+   }
+}
@@ -0,0 +1,143 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class tests how `AuctionStore` hands out auction IDs: that the ID
+ ** of a closed auction is not given to a new one, within a run or after a
+ ** restart, that a repair leaves alone auctions whose creation has not
+ ** reached the store yet, and that it brings the bids and bidders of
+ ** those it does repair across with them.
+ **/
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class AuctionStoreTest {
+   // A shard of its own, so no other test shares its archive.
+   private static final int SHARD = 5;
+   private static final int SHARDS = 8;
+   private static final UserWrapper OWNER = new UserWrapper("Owner", "owner@example.com", "owner");
+
+   @Test
+   public void closedIdsAreNotHandedOutAgain() throws IOException {
+      AuctionStore store = new AuctionStore(SHARD, SHARDS);
+      try {
+         int first = this.create(store);
+         assertNotNull(store.removeAuction(RequestIds.NONE, 0, first, "owner"));
+         int second = this.create(store);
+         assertEquals(first + SHARDS, second);
+         assertEquals(first, store.getClosedAuction(first).getID());
+      } finally {
+         store.close();
+      }
+   }
+
+   @Test
+   public void idsCarryOnFromTheArchiveAfterARestart() throws IOException {
+      AuctionStore store = new AuctionStore(SHARD, SHARDS);
+      int closed;
+      try {
+         closed = this.create(store);
+         store.removeAuction(RequestIds.NONE, 0, closed, "owner");
+      } finally {
+         store.close();
+      }
+
+      AuctionStore restarted = new AuctionStore(SHARD, SHARDS);
+      try {
+         int id = this.create(restarted);
+         assertTrue(id > closed, id+" reuses an ID up to "+closed);
+         assertEquals(SHARD, Shard.indexOf(id, SHARDS));
+         assertEquals(closed, restarted.getClosedAuction(closed).getID());
+      } finally {
+         restarted.close();
+      }
+   }
+
+   @Test
+   public void repairLeavesAuctionsNotYetCreatedHere() {
+      AuctionStore ahead = new AuctionStore(SHARD + 1, SHARDS);
+      AuctionStore behind = new AuctionStore(SHARD + 1, SHARDS);
+      try {
+         int lastID = Math.max(ahead.getLastID(), behind.getLastID());
+         ahead.catchUp(lastID);
+         behind.catchUp(lastID);
+         int shared = this.create(ahead);
+         assertEquals(shared, this.create(behind));
+         int pending = this.create(ahead);
+
+         assertEquals(0, behind.repair(ahead.getAllAuctions(), new ArrayList<AuctionWrapper>(), new HashMap<Integer, ArrayList<BidWrapper>>()));
+         assertNull(behind.getAuction(pending));
+         // The creation arrives, and gets the same ID as it did ahead.
+         assertEquals(pending, this.create(behind));
+      } finally {
+         ahead.close();
+         behind.close();
+      }
+   }
+
+   @Test
+   public void repairBringsTheBidsAcross() throws IOException {
+      AuctionStore ahead = new AuctionStore(SHARD + 2, SHARDS);
+      AuctionStore behind = new AuctionStore(SHARD + 2, SHARDS);
+      try {
+         int lastID = Math.max(ahead.getLastID(), behind.getLastID());
+         ahead.catchUp(lastID);
+         behind.catchUp(lastID);
+         int id = this.create(ahead);
+         assertEquals(id, this.create(behind));
+         UserWrapper bidder = new UserWrapper("Bidder", "bidder@example.com", "bidder");
+         long now = System.currentTimeMillis();
+         ahead.setBid(RequestIds.NONE, now, id, bidder, 3f);
+         ahead.setBid(RequestIds.NONE, now + 1, id, bidder, 4f);
+
+         HashMap<Integer, ArrayList<BidWrapper>> bids = new HashMap<Integer, ArrayList<BidWrapper>>();
+         for(int behindID: behind.getBehind(ahead.getAllAuctions())) {
+            bids.put(behindID, ahead.getBidHistory(behindID, 0, Integer.MAX_VALUE));
+         }
+         assertEquals(1, bids.size());
+         assertEquals(1, behind.repair(ahead.getAllAuctions(), new ArrayList<AuctionWrapper>(), bids));
+
+         assertEquals(4f, behind.getAuction(id).getPrice());
+         ArrayList<BidWrapper> history = behind.getBidHistory(id, 0, 10);
+         assertEquals(2, history.size());
+         assertEquals("bidder", history.get(1).getBidder().getUsername());
+         assertEquals(2, behind.getHottestAuctions(false, 1).get(0).getBids());
+         assertEquals(1, behind.getAuctionsLedBy("bidder").size());
+         assertTrue(behind.getAllUsers().stream().anyMatch(user -> user.getUsername().equals("bidder")));
+      } finally {
+         ahead.close();
+         behind.close();
+      }
+   }
+
+   private int create(AuctionStore store) {
+      return store.createAuction(RequestIds.NONE, 0, new AuctionWrapper(0, "Lot", OWNER, 1f, 2f));
+   }
+}
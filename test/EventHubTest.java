@@ -0,0 +1,114 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class tests `EventHub`'s handling of slow clients: that callbacks
+ ** which never return give up their threads, so the other subscribers
+ ** still get their events. It also tests that the events raised by each
+ ** copy of a request are delivered once.
+ **/
+
+import java.rmi.server.UnicastRemoteObject;
+import java.util.*;
+import java.util.concurrent.*;
+import org.jgroups.Message;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class EventHubTest {
+   // More blocking clients than the default 16 delivery threads.
+   private static final int BLOCKED = 40;
+   private static final UserWrapper OWNER = new UserWrapper("Owner", "owner@example.com", "owner");
+
+   @Test
+   public void blockedCallbacksDoNotStopDelivery() throws Exception {
+      EventHub hub = new EventHub();
+      CountDownLatch release = new CountDownLatch(1);
+      ArrayList<AuctionListener> exported = new ArrayList<AuctionListener>();
+      try {
+         for (int i = 0; i < BLOCKED; i++) {
+            AuctionListener blocked = event -> {
+               try {
+                  release.await();
+               } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+               }
+            };
+            exported.add(blocked);
+            hub.subscribeToUser((AuctionListener)UnicastRemoteObject.exportObject(blocked, 0), "owner");
+         }
+         LinkedBlockingQueue<AuctionEvent> received = new LinkedBlockingQueue<AuctionEvent>();
+         AuctionListener fast = received::add;
+         exported.add(fast);
+         hub.subscribeToUser((AuctionListener)UnicastRemoteObject.exportObject(fast, 0), "owner");
+
+         hub.receive(new Message(null, event(1)));
+         assertNotNull(received.poll(20, TimeUnit.SECONDS), "The first event never arrived");
+         // Some blocked callbacks may still hold threads until RMI gives
+         // up on them, but the next event still gets through.
+         hub.receive(new Message(null, event(2)));
+         AuctionEvent next = received.poll(20, TimeUnit.SECONDS);
+         assertNotNull(next, "The second event never arrived");
+         assertEquals(2, next.getAuctionID());
+      } finally {
+         release.countDown();
+         for(AuctionListener listener: exported) {
+            UnicastRemoteObject.unexportObject(listener, true);
+         }
+         hub.stop();
+      }
+   }
+
+   @Test
+   public void eventsFromEachCopyOfARequestAreDeliveredOnce() throws Exception {
+      EventHub hub = new EventHub();
+      LinkedBlockingQueue<AuctionEvent> received = new LinkedBlockingQueue<AuctionEvent>();
+      AuctionListener listener = received::add;
+      try {
+         hub.subscribeToUser((AuctionListener)UnicastRemoteObject.exportObject(listener, 0), "owner");
+         long request = RequestIds.next();
+         AuctionWrapper auction = new AuctionWrapper(1, "Lot", OWNER, 1f, 2f);
+         // As raised by the two front ends a hedged bid reached.
+         for (int i = 0; i < 2; i++) {
+            hub.receive(new Message(null, new AuctionEvent(request, AuctionEvent.Type.PRICE_CHANGED, auction, 1.5f, OWNER, "owner")));
+            hub.receive(new Message(null, new AuctionEvent(request, AuctionEvent.Type.OUTBID, auction, 1.5f, OWNER, "owner")));
+         }
+         hub.receive(new Message(null, event(2)));
+
+         assertEquals(AuctionEvent.Type.PRICE_CHANGED, received.poll(2, TimeUnit.SECONDS).getType());
+         assertEquals(AuctionEvent.Type.OUTBID, received.poll(2, TimeUnit.SECONDS).getType());
+         assertEquals(2, received.poll(2, TimeUnit.SECONDS).getAuctionID());
+         assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+      } finally {
+         UnicastRemoteObject.unexportObject(listener, true);
+         hub.stop();
+      }
+   }
+
+   private static AuctionEvent event(int id) {
+      return new AuctionEvent(AuctionEvent.Type.CLOSED, new AuctionWrapper(id, "Lot", OWNER, 1f, 2f), 1f, null, "owner");
+   }
+}
@@ -0,0 +1,90 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class tests how `FacetCounts` follows auctions as they open, are
+ ** bid on and close: that a bid moves an auction between price bands
+ ** only when it crosses a bound, that a category leaves once its last
+ ** auction closes, and that copies and merged counts stay apart.
+ **/
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class FacetCountsTest {
+   @Test
+   public void bidsMoveAuctionsBetweenBands() {
+      FacetCounts facets = new FacetCounts();
+      facets.add("Books", 5f);
+      facets.add("Books", 9f);
+      assertEquals(2, facets.getCount("Books", FacetCounts.bandOf(5f)));
+
+      // Within the band, then onto the bound of the next.
+      facets.move("Books", 5f, 9.5f);
+      assertEquals(2, facets.getCount("Books", 0));
+      facets.move("Books", 9.5f, 10f);
+      assertEquals(1, facets.getCount("Books", 0));
+      assertEquals(1, facets.getCount("Books", 1));
+      assertEquals("10-50", FacetCounts.getBandLabel(1));
+      assertEquals(2, facets.getCount("Books"));
+   }
+
+   @Test
+   public void aCategoryLeavesWithItsLastAuction() {
+      FacetCounts facets = new FacetCounts();
+      facets.add("Books", 5f);
+      facets.add("Toys", 2000f);
+      facets.move("Books", 5f, 60f);
+      assertEquals(Arrays.asList("Books", "Toys"), facets.getCategories());
+
+      facets.remove("Books", 60f);
+      assertEquals(Arrays.asList("Toys"), facets.getCategories());
+      assertEquals(0, facets.getCount("Books"));
+      assertEquals(0, facets.getCount("Books", 2));
+      assertEquals(1, facets.getTotal());
+      facets.remove("Toys", 2000f);
+      assertTrue(facets.getCategories().isEmpty());
+      assertEquals(0, facets.getTotal());
+   }
+
+   @Test
+   public void copiesAndMergesStayApart() {
+      FacetCounts facets = new FacetCounts();
+      facets.add("Books", 5f);
+      FacetCounts copy = facets.copy();
+      facets.add("Books", 5f);
+      assertEquals(1, copy.getCount("Books"));
+
+      FacetCounts merged = new FacetCounts();
+      merged.add("Toys", 20f);
+      merged.addAll(facets);
+      merged.addAll(copy);
+      assertEquals(3, merged.getCount("Books", 0));
+      assertEquals(4, merged.getTotal());
+      assertEquals(2, facets.getCount("Books"));
+   }
+}
@@ -0,0 +1,93 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class tests the windows of `HotAuctions`: that a bucket's bids
+ ** leave the last few minutes and then the last hour as time moves on,
+ ** that bids too old to count are dropped, and that a closed auction is
+ ** no longer ranked.
+ **/
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class HotAuctionsTest {
+   // As the rankings read it, and the start of a bucket to count from.
+   private static final long WIDTH = Long.getLong("auctionprog.hot.bucket", 60 * 1000L);
+   private static final long START = 1000000 * WIDTH;
+
+   @Test
+   public void bidsLeaveEachWindowInTurn() {
+      HotAuctions hot = new HotAuctions();
+      hot.record(1, START);
+      hot.record(1, START + 1);
+      hot.record(2, at(2));
+      assertArrayEquals(new int[]{1, 2, 2, 1}, hot.getTop(false, 10, at(2)));
+
+      // The first bucket leaves the last few minutes, but not the hour.
+      assertArrayEquals(new int[]{2, 1}, hot.getTop(false, 10, at(5)));
+      assertArrayEquals(new int[]{1, 2, 2, 1}, hot.getTop(true, 10, at(5)));
+      assertArrayEquals(new int[0], hot.getTop(false, 10, at(7)));
+
+      // Then the hour.
+      assertArrayEquals(new int[]{2, 1}, hot.getTop(true, 10, at(60)));
+      assertEquals(1, hot.getSize());
+      assertArrayEquals(new int[0], hot.getTop(true, 10, at(62)));
+      assertEquals(0, hot.getSize());
+   }
+
+   @Test
+   public void bidsOverAnHourOldAreNotCounted() {
+      HotAuctions hot = new HotAuctions();
+      hot.record(1, at(100));
+      hot.record(2, at(40));
+      assertArrayEquals(new int[]{1, 1}, hot.getTop(true, 10, at(100)));
+
+      // A jump of over an hour lets every bucket go at once.
+      assertArrayEquals(new int[0], hot.getTop(true, 10, at(300)));
+      assertEquals(0, hot.getSize());
+   }
+
+   @Test
+   public void aClosedAuctionIsNoLongerRanked() {
+      HotAuctions hot = new HotAuctions();
+      hot.record(1, START);
+      hot.record(2, START);
+      hot.remove(1);
+      assertArrayEquals(new int[]{2, 1}, hot.getTop(false, 10, START));
+
+      // Its bucket still lists it, and leaves both windows cleanly.
+      assertArrayEquals(new int[]{2, 1}, hot.getTop(true, 10, at(5)));
+      assertArrayEquals(new int[0], hot.getTop(true, 10, at(60)));
+   }
+
+   /*
+    *    Gets the start of a bucket some way after `START`.
+    */
+   private static long at(int buckets) {
+      return START + buckets * WIDTH;
+   }
+}
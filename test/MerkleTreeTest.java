@@ -0,0 +1,82 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class tests how `MerkleTree` deals a shard group's auction IDs out
+ ** to its leaves: that for every shard, not just the first, each range of
+ ** consecutive auctions shares a leaf and the ranges go to the leaves in
+ ** turn, and that an auction only changes its own leaf.
+ **/
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class MerkleTreeTest {
+   // As the tree reads them.
+   private static final int LEAVES = Integer.highestOneBit(Integer.getInteger("auctionprog.merkle.leaves", 1024));
+   private static final int RANGE = Integer.getInteger("auctionprog.merkle.range", 64);
+   private static final int SHARDS = 4;
+
+   @Test
+   public void everyShardDealsItsRangesOutInTurn() {
+      for (int shard = 0; shard < SHARDS; shard++) {
+         MerkleTree tree = new MerkleTree(shard, SHARDS);
+         assertEquals(0, tree.leafOf(idAt(shard, 0)), "shard "+shard);
+         assertEquals(0, tree.leafOf(idAt(shard, RANGE - 1)), "shard "+shard);
+         assertEquals(1, tree.leafOf(idAt(shard, RANGE)), "shard "+shard);
+         assertEquals(LEAVES - 1, tree.leafOf(idAt(shard, LEAVES * RANGE - 1)), "shard "+shard);
+         // Past the last leaf, the ranges start again from the first.
+         assertEquals(0, tree.leafOf(idAt(shard, LEAVES * RANGE)), "shard "+shard);
+      }
+   }
+
+   @Test
+   public void anAuctionOnlyChangesItsOwnLeaf() {
+      int shard = SHARDS - 1;
+      MerkleTree tree = new MerkleTree(shard, SHARDS);
+      int id = idAt(shard, 3 * RANGE + 1);
+      int[] leaves = {MerkleTree.ROOT, LEAVES + 2, LEAVES + 3, LEAVES + 4};
+      long[] before = tree.get(leaves);
+
+      tree.update(id, 0, 42);
+      long[] after = tree.get(leaves);
+      assertNotEquals(before[0], after[0]);
+      assertEquals(before[1], after[1]);
+      assertEquals(before[2] + 42, after[2]);
+      assertEquals(before[3], after[3]);
+
+      tree.update(id, 42, 0);
+      assertArrayEquals(before, tree.get(leaves));
+   }
+
+   /*
+    *    Gets the ID of a shard's auction, counting from 0 in the order
+    *    they are handed out.
+    */
+   private static int idAt(int shard, int n) {
+      return shard + 1 + n * SHARDS;
+   }
+}
@@ -0,0 +1,69 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+/**
+ ** This class tests how `MutationEngine` fails: that a change which
+ ** throws anything fails only its own caller, and that changes submitted
+ ** after the engine stops are turned away rather than left waiting.
+ **/
+
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class MutationEngineTest {
+   // Change types the test handler understands.
+   private static final int ECHO = 0;
+   private static final int FAIL = 1;
+
+   @Test
+   public void aFailingChangeFailsOnlyItsCaller() {
+      MutationEngine engine = new MutationEngine(new Echo(), "MutationEngineTest");
+      try {
+         assertThrows(StackOverflowError.class, () -> engine.submit(FAIL, RequestIds.NONE, null, null, 0, 0));
+         assertEquals("next", engine.submit(ECHO, RequestIds.NONE, "next", null, 0, 0));
+      } finally {
+         engine.stop();
+      }
+   }
+
+   @Test
+   public void changesAfterStopAreTurnedAway() throws Exception {
+      MutationEngine engine = new MutationEngine(new Echo(), "MutationEngineTest");
+      engine.stop();
+      Future<Object> late = ForkJoinPool.commonPool().submit(() -> engine.submit(ECHO, RequestIds.NONE, "late", null, 0, 0));
+      ExecutionException e = assertThrows(ExecutionException.class, () -> late.get(5, TimeUnit.SECONDS));
+      assertTrue(e.getCause() instanceof IllegalStateException);
+   }
+
+   private static class Echo implements MutationEngine.Handler {
+      public Object apply(int type, long request, Object a, Object b, float price, long time) {
+         if (type == FAIL) throw new StackOverflowError();
+         return a;
+      }
+
+      public void publish() {}
+   }
+}
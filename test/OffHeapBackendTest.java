@@ -0,0 +1,120 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class tests how `OffHeapBackend` frees and reuses its space: that
+ ** a record freed by a close reads as empty and can be written again,
+ ** even once its chunk has been let go, and that freeing descriptions
+ ** leaves the auctions still open readable.
+ **/
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class OffHeapBackendTest {
+   // The first ID in the second chunk of records, with one shard.
+   private static final int NEXT_CHUNK = (1 << 16) + 1;
+   private static final UserWrapper OWNER = new UserWrapper("Owner", "owner@example.com", "owner");
+   private static final UserWrapper BIDDER = new UserWrapper("Bidder", "bidder@example.com", "bidder");
+
+   @Test
+   public void aFreedRecordIsWrittenAgain() {
+      OffHeapBackend backend = new OffHeapBackend(0, 1);
+      try {
+         backend.add(new AuctionWrapper(1, "First", OWNER, 1f, 2f));
+         backend.add(new AuctionWrapper(2, "Second", OWNER, 1f, 2f));
+         backend.bid(1, BIDDER, 5f);
+         backend.publish();
+         assertEquals("First", backend.remove(1).getDesc());
+         assertNull(backend.get(1));
+         assertFalse(backend.bid(1, BIDDER, 6f));
+
+         backend.add(new AuctionWrapper(1, "Again", OWNER, 3f, 4f));
+         backend.publish();
+         AuctionWrapper again = backend.get(1);
+         assertEquals("Again", again.getDesc());
+         assertEquals(3f, again.getPrice());
+         assertNull(again.getHighestBidder());
+         assertEquals("Second", backend.get(2).getDesc());
+         assertEquals(2, backend.getAuctionCount());
+      } finally {
+         backend.close();
+      }
+   }
+
+   @Test
+   public void aFreedChunkIsAllocatedAgain() {
+      OffHeapBackend backend = new OffHeapBackend(0, 1);
+      try {
+         backend.add(new AuctionWrapper(1, "First", OWNER, 1f, 2f));
+         backend.add(new AuctionWrapper(NEXT_CHUNK, "Later", OWNER, 1f, 2f));
+         backend.publish();
+         // The first chunk now holds nothing, and the next auction would
+         // not go in it, so it is let go.
+         backend.remove(1);
+         assertNull(backend.get(1));
+         assertTrue(backend.getAfter(0, 10).stream().allMatch(auction -> auction.getID() == NEXT_CHUNK));
+
+         backend.add(new AuctionWrapper(1, "Again", OWNER, 1f, 2f));
+         backend.publish();
+         assertEquals("Again", backend.get(1).getDesc());
+         assertEquals("Later", backend.get(NEXT_CHUNK).getDesc());
+         assertEquals(2, backend.getAll().size());
+      } finally {
+         backend.close();
+      }
+   }
+
+   @Test
+   public void freeingDescriptionsKeepsTheRestReadable() {
+      OffHeapBackend backend = new OffHeapBackend(0, 1);
+      try {
+         // Descriptions of a quarter of an arena chunk each, so the first
+         // few fill a chunk and the rest spill into the next.
+         char[] text = new char[(1 << 18) - 16];
+         int count = 12;
+         for (int id = 1; id <= count; id++) {
+            Arrays.fill(text, (char)('a' + id));
+            backend.add(new AuctionWrapper(id, new String(text), OWNER, 1f, 2f));
+         }
+         backend.publish();
+         for (int id = 1; id <= count / 2; id++) {
+            backend.remove(id);
+         }
+         for (int id = count / 2 + 1; id <= count; id++) {
+            Arrays.fill(text, (char)('a' + id));
+            assertEquals(new String(text), backend.get(id).getDesc());
+         }
+         backend.add(new AuctionWrapper(count + 1, "Short", OWNER, 1f, 2f));
+         backend.publish();
+         assertEquals("Short", backend.get(count + 1).getDesc());
+         assertEquals(count / 2 + 1, backend.getAuctionCount());
+      } finally {
+         backend.close();
+      }
+   }
+}
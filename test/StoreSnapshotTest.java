@@ -0,0 +1,141 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class tests `StoreSnapshot`: that each version sees only its own
+ ** changes, indexes included, and that the tree stays a sorted, balanced
+ ** map of auctions however they are added and removed.
+ **/
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class StoreSnapshotTest {
+   private static final UserWrapper OWNER = new UserWrapper("Owner", "owner@example.com", "owner");
+
+   @Test
+   public void emptyHasNothing() {
+      assertEquals(0, StoreSnapshot.EMPTY.getAuctionCount());
+      assertEquals(0, StoreSnapshot.EMPTY.getUserCount());
+      assertEquals(0, StoreSnapshot.EMPTY.getLastID());
+      assertNull(StoreSnapshot.EMPTY.getAuction(1));
+      assertTrue(StoreSnapshot.EMPTY.getAuctions().isEmpty());
+   }
+
+   @Test
+   public void earlierVersionsAreUnchanged() {
+      StoreSnapshot first = StoreSnapshot.EMPTY.withAuction(auction(1, 5f));
+      StoreSnapshot second = first.withAuction(auction(2, 6f));
+      StoreSnapshot third = second.withAuction(auction(1, 9f)).withoutAuction(2);
+
+      assertEquals(1, first.getAuctionCount());
+      assertNull(first.getAuction(2));
+      assertEquals(2, second.getAuctionCount());
+      assertEquals(5f, second.getAuction(1).getPrice());
+      assertEquals(1, third.getAuctionCount());
+      assertEquals(9f, third.getAuction(1).getPrice());
+      assertNull(third.getAuction(2));
+      assertTrue(third.getVersion() > second.getVersion());
+   }
+
+   @Test
+   public void removingAMissingAuctionChangesNothing() {
+      StoreSnapshot snapshot = StoreSnapshot.EMPTY.withAuction(auction(3, 1f));
+      StoreSnapshot after = snapshot.withoutAuction(4);
+      assertEquals(1, after.getAuctionCount());
+      assertSame(snapshot.getAuction(3), after.getAuction(3));
+   }
+
+   @Test
+   public void matchesASortedMapUnderRandomChanges() {
+      Random random = new Random(42);
+      TreeMap<Integer, AuctionWrapper> expected = new TreeMap<Integer, AuctionWrapper>();
+      StoreSnapshot snapshot = StoreSnapshot.EMPTY;
+      for (int i = 0; i < 20000; i++) {
+         int id = 1 + random.nextInt(2000);
+         if (random.nextInt(3) == 0) {
+            expected.remove(id);
+            snapshot = snapshot.withoutAuction(id);
+         } else {
+            AuctionWrapper auction = auction(id, i);
+            expected.put(id, auction);
+            snapshot = snapshot.withAuction(auction);
+         }
+      }
+
+      assertEquals(expected.size(), snapshot.getAuctionCount());
+      assertEquals(expected.isEmpty() ? 0 : expected.lastKey(), snapshot.getLastID());
+      assertEquals(new ArrayList<AuctionWrapper>(expected.values()), snapshot.getAuctions());
+      for (int id = 1; id <= 2000; id++) {
+         assertSame(expected.get(id), snapshot.getAuction(id));
+      }
+      ArrayList<AuctionWrapper> byPrice = new ArrayList<AuctionWrapper>(expected.values());
+      byPrice.sort((x, y) -> Float.compare(x.getPrice(), y.getPrice()));
+      assertEquals(byPrice, snapshot.getIndex().getByPrice(0, Float.MAX_VALUE));
+      assertEquals(new ArrayList<Integer>(expected.keySet()), snapshot.getUserIndex().getOwned("owner"));
+   }
+
+   @Test
+   public void indexesMatchTheirOwnVersion() {
+      UserWrapper bidder = new UserWrapper("Bidder", "bidder@example.com", "bidder");
+      StoreSnapshot first = StoreSnapshot.EMPTY.withAuction(auction(1, 5f));
+      StoreSnapshot second = first.withAuction(first.getAuction(1).withBid(bidder, 8f));
+      StoreSnapshot third = second.withoutAuction(1);
+
+      assertEquals(1, first.getIndex().getByPrice(4f, 6f).size());
+      assertTrue(first.getIndex().getByPrice(7f, 9f).isEmpty());
+      assertTrue(first.getUserIndex().getLeading("bidder").isEmpty());
+
+      assertTrue(second.getIndex().getByPrice(4f, 6f).isEmpty());
+      assertSame(second.getAuction(1), second.getIndex().getByPrice(7f, 9f).get(0));
+      assertEquals(Arrays.asList(1), second.getUserIndex().getLeading("bidder"));
+      assertEquals(Arrays.asList(1), second.getUserIndex().getOwned("owner"));
+
+      assertTrue(third.getIndex().getByPrice(0f, Float.MAX_VALUE).isEmpty());
+      assertTrue(third.getIndex().getBelowReserve().isEmpty());
+      assertTrue(third.getUserIndex().getOwned("owner").isEmpty());
+      assertTrue(third.getUserIndex().getLeading("bidder").isEmpty());
+   }
+
+   @Test
+   public void usersAreListedInTheOrderAdded() {
+      StoreSnapshot snapshot = StoreSnapshot.EMPTY;
+      for (int i = 0; i < 5; i++) {
+         snapshot = snapshot.withUser(new UserWrapper("User "+i, i+"@example.com", "user"+i));
+      }
+      ArrayList<UserWrapper> users = snapshot.getUsers();
+      assertEquals(5, snapshot.getUserCount());
+      for (int i = 0; i < 5; i++) {
+         assertEquals("user"+i, users.get(i).getUsername());
+      }
+      assertSame(users, snapshot.getUsers());
+   }
+
+   private static AuctionWrapper auction(int id, float price) {
+      return new AuctionWrapper(id, "Lot "+id, OWNER, price, price + 10);
+   }
+}
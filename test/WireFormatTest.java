@@ -0,0 +1,147 @@
+/*
+ *                             AuctionProg 2.0                        
+ *                  Copyright © 2016 Ben Goldsworthy (rumps)        
+ *                                                                      
+ * A program to facilitate a networked auction system.             
+ *                                                                           
+ * This file is part of AuctionProg.                                         
+ *                                                                            
+ * AuctionProg is free software: you can redistribute it and/or modify        
+ * it under the terms of the GNU General Public License as published by       
+ * the Free Software Foundation, either version 3 of the License, or          
+ * (at your option) any later version.                                        
+ *                                                                            
+ * AuctionProg is distributed in the hope that it will be useful,             
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+ * GNU General Public License for more details.                               
+ *                                                                            
+ * You should have received a copy of the GNU General Public License          
+ * along with AuctionProg.  If not, see <http://www.gnu.org/licenses/>.       
+ */
+
+/**
+ ** This class tests `WireFormat`: that values come back as they were
+ ** written, including overload replies and listener stubs, and that
+ ** serialised values of classes outside the allowed set, and values
+ ** nested too deeply, are refused rather than built.
+ **/
+
+import java.io.*;
+import java.lang.reflect.Proxy;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ **   @author  Ben Goldsworthy (rumps) <me+auctionprog@bengoldsworthy.net>
+ **   @version 2.0
+ **/
+public class WireFormatTest {
+   private static final UserWrapper OWNER = new UserWrapper("Owner", "owner@example.com", "owner");
+
+   @Test
+   public void auctionsRoundTrip() throws IOException {
+      AuctionWrapper auction = new AuctionWrapper(7, "Lot", OWNER, 1f, 2f, 5L, "Art");
+      auction.setBid(new UserWrapper("Bidder", "bidder@example.com", "bidder"), 1.5f);
+      AuctionWrapper copy = (AuctionWrapper)roundTrip(auction);
+      assertEquals(7, copy.getID());
+      assertEquals("Lot", copy.getDesc());
+      assertEquals("owner", copy.getOwner().getUsername());
+      assertEquals("bidder", copy.getHighestBidder().getUsername());
+      assertEquals(1.5f, copy.getPrice());
+      assertEquals(2f, copy.getReserve());
+      assertEquals(5L, copy.getEndTime());
+      assertEquals("Art", copy.getCategory());
+   }
+
+   @Test
+   public void allowedSerialisedValuesRoundTrip() throws IOException {
+      FacetCounts counts = new FacetCounts();
+      counts.add("Books", 20f);
+      FacetCounts copy = (FacetCounts)roundTrip(counts);
+      assertEquals(1, copy.getCount("Books"));
+
+      ArrayList<HotAuctionWrapper> hot = new ArrayList<HotAuctionWrapper>();
+      hot.add(new HotAuctionWrapper(new AuctionWrapper(3, "Lot", OWNER, 1f, 2f), 4));
+      @SuppressWarnings("unchecked")
+      List<HotAuctionWrapper> hotCopy = (List<HotAuctionWrapper>)roundTrip(hot);
+      assertEquals(4, hotCopy.get(0).getBids());
+      assertEquals(3, hotCopy.get(0).getAuction().getID());
+   }
+
+   @Test
+   public void otherSerialisedValuesAreRefused() throws IOException {
+      ConcurrentHashMap<String, String> map = new ConcurrentHashMap<String, String>();
+      map.put("a", "b");
+      byte[] bytes = write(map);
+      assertThrows(InvalidClassException.class, () -> WireFormat.readValue(new DataInputStream(new ByteArrayInputStream(bytes))));
+   }
+
+   @Test
+   public void overloadRepliesRoundTrip() throws IOException {
+      OverloadedException copy = (OverloadedException)roundTrip(new OverloadedException("Too many requests from owner", 250));
+      assertEquals("Too many requests from owner", copy.getReason());
+      assertEquals(250, copy.getRetryAfter());
+   }
+
+   @Test
+   public void listenerStubsRoundTrip() throws Exception {
+      Listener listener = new Listener();
+      AuctionListener stub = (AuctionListener)UnicastRemoteObject.exportObject(listener, 0);
+      try {
+         AuctionListener copy = (AuctionListener)roundTrip(stub);
+         assertTrue(Proxy.isProxyClass(copy.getClass()));
+         assertEquals(stub, copy);
+         // A call on the copy reaches the exported listener, not a copy of it.
+         copy.onEvent(new AuctionEvent(AuctionEvent.Type.CLOSED, new AuctionWrapper(3, "Lot", OWNER, 1f, 2f), 1f, null));
+         assertEquals(1, listener.events);
+      } finally {
+         UnicastRemoteObject.unexportObject(listener, true);
+      }
+   }
+
+   @Test
+   public void remoteObjectsThatAreNotStubsAreRefused() throws IOException {
+      byte[] bytes = write(new Listener());
+      assertThrows(InvalidClassException.class, () -> WireFormat.readValue(new DataInputStream(new ByteArrayInputStream(bytes))));
+   }
+
+   @Test
+   public void deeplyNestedListsAreRefused() throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      // A list holding a list holding a list, and so on, far past any
+      // stack.
+      for (int i = 0; i < 100000; i++) {
+         out.writeByte(9);
+         out.writeInt(1);
+      }
+      out.writeByte(0);
+      IOException e = assertThrows(IOException.class, () -> WireFormat.readValue(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+      assertTrue(e.getMessage().contains("nested"));
+
+      List<List<String>> shallow = Collections.singletonList(Collections.singletonList("a"));
+      assertEquals(shallow, roundTrip(shallow));
+   }
+
+   private static Object roundTrip(Object value) throws IOException {
+      return WireFormat.readValue(new DataInputStream(new ByteArrayInputStream(write(value))));
+   }
+
+   private static byte[] write(Object value) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      WireFormat.writeValue(new DataOutputStream(bytes), value);
+      return bytes.toByteArray();
+   }
+
+   private static class Listener implements AuctionListener, Serializable {
+      private volatile int events;
+
+      public void onEvent(AuctionEvent event) {
+         events++;
+      }
+   }
+}